@@ -0,0 +1,917 @@
+
+package TrcCommonLib.trclib;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class implements a binary trace log. Instead of formatting every message into a String and queuing it, the
+ * producer copies a fixed-size record into a preallocated ring buffer. The record holds the mode elapsed timestamp,
+ * the message level, an interned call site ID and up to MAX_ARGS raw numeric arguments. The logger thread streams
+ * the records to the file through a FileChannel without allocating anything. Plain text messages are still supported
+ * by packing their characters into consecutive records.
+ * <p>
+ * The ring buffer is multi-producer, single-consumer and lock-free: a producer claims a range of records with a CAS,
+ * fills them and publishes each one by storing its sequence number. If the ring buffer is full, the message is
+ * dropped and counted, or the producer waits for room if it is set to block on overflow. Newly dropped messages are
+ * reported by a text record in the log.
+ * </p>
+ * The Decoder turns a binary trace log back into the same text and XML event format written by the text trace log.
+ *
+ * <pre>
+ * File format (big endian):
+ *   Header record: magic, version, record size, reserved.
+ *   EVENT record:  timestamp (double), type/level/argCount/siteId, args[MAX_ARGS] (double).
+ *   TEXT record:   timestamp (double), type/level/charCount, the first TEXT_CHARS characters followed by as many
+ *                  continuation records of RECORD_CHARS characters as needed.
+ *   SITE record:   siteId, type/charCount, the call site definition packed like a TEXT record.
+ * </pre>
+ */
+public class TrcBinaryTraceLog
+{
+    private static final String moduleName = TrcBinaryTraceLog.class.getSimpleName();
+
+    public static final int MAGIC = 0x54524342;        // "TRCB"
+    public static final int VERSION = 1;
+    public static final int RECORD_SIZE = 64;
+    public static final int MAX_ARGS = 6;
+    public static final int DEF_CAPACITY = 8192;
+
+    private static final int RECORD_WORDS = RECORD_SIZE/Long.BYTES;
+    private static final int TEXT_CHARS = (RECORD_WORDS - 2)*4;
+    private static final int RECORD_CHARS = RECORD_WORDS*4;
+    private static final int TYPE_EVENT = 1;
+    private static final int TYPE_TEXT = 2;
+    private static final int TYPE_SITE = 3;
+    private static final int WRITE_BUFFER_SIZE = 64*1024;
+    private static final long IDLE_PARK_NANOS = 10000000L;
+    private static final long CLOSE_TIMEOUT_NANOS = 100000000L;
+
+    private final String traceLogName;
+    private final TrcLogRotator rotator;
+    private final int capacity;
+    private final int mask;
+    private final long[] ring;
+    private final AtomicLongArray published;
+    private final AtomicLong claimSeq = new AtomicLong(0);
+    private final AtomicLong droppedCount = new AtomicLong(0);
+    private final AtomicLongArray droppedCounts = new AtomicLongArray(TrcDbgTrace.MsgLevel.values().length + 1);
+    private volatile boolean blockOnOverflow = false;
+    private volatile long consumedSeq = 0;
+    private volatile boolean enabled = false;
+    private volatile boolean consumerWaiting = false;
+    private volatile Thread loggerThread = null;
+    private FileChannel channel = null;
+    private ByteBuffer writeBuffer = null;
+    private long recordsWritten = 0;
+    private long segmentBytes = 0;
+    private long totalWriteNanoTime = 0;
+    private long reportedDroppedCount = 0;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param traceLogName specifies the log file name.
+     * @param capacity specifies the ring buffer capacity in number of records, rounded up to a power of 2.
+     * @param rotator specifies the log rotator, null to write a single log file.
+     */
+    public TrcBinaryTraceLog(String traceLogName, int capacity, TrcLogRotator rotator)
+    {
+        this.traceLogName = traceLogName;
+        this.rotator = rotator;
+        this.capacity = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.ring = new long[this.capacity*RECORD_WORDS];
+        this.published = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++)
+        {
+            published.set(i, -1);
+        }
+    }   //TrcBinaryTraceLog
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param traceLogName specifies the log file name.
+     * @param capacity specifies the ring buffer capacity in number of records, rounded up to a power of 2.
+     */
+    public TrcBinaryTraceLog(String traceLogName, int capacity)
+    {
+        this(traceLogName, capacity, null);
+    }   //TrcBinaryTraceLog
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param traceLogName specifies the log file name.
+     */
+    public TrcBinaryTraceLog(String traceLogName)
+    {
+        this(traceLogName, DEF_CAPACITY);
+    }   //TrcBinaryTraceLog
+
+    /**
+     * This method returns the trace log name.
+     *
+     * @return trace log name.
+     */
+    @Override
+    public String toString()
+    {
+        return traceLogName;
+    }   //toString
+
+    /**
+     * This method enables/disables the logger thread. Disabling it lets the thread write the remaining records
+     * before closing the file.
+     *
+     * @param enabled specifies true to enable logger thread, false to disable.
+     */
+    public synchronized void setEnabled(boolean enabled)
+    {
+        if (loggerThread == null && enabled)
+        {
+            String fileName = rotator != null? rotator.openSegment(): traceLogName;
+            try
+            {
+                channel = new FileOutputStream(fileName, true).getChannel();
+                segmentBytes = channel.size();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+                throw new RuntimeException("Failed to open trace log file " + fileName);
+            }
+            writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            this.enabled = true;
+            loggerThread = new Thread(this::loggerTask, traceLogName);
+            loggerThread.start();
+        }
+        else if (loggerThread != null && !enabled && this.enabled)
+        {
+            this.enabled = false;
+            LockSupport.unpark(loggerThread);
+        }
+    }   //setEnabled
+
+    /**
+     * This method checks if the binary trace log is enabled.
+     *
+     * @return true if enabled, false otherwise.
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }   //isEnabled
+
+    /**
+     * This method sets whether producers wait for room in the ring buffer when it is full instead of dropping the
+     * message.
+     *
+     * @param block specifies true to block on overflow, false to drop the new message.
+     */
+    public void setBlockOnOverflow(boolean block)
+    {
+        blockOnOverflow = block;
+    }   //setBlockOnOverflow
+
+    /**
+     * This method returns the number of messages dropped because the ring buffer was full.
+     *
+     * @return number of dropped messages.
+     */
+    public long getDroppedCount()
+    {
+        return droppedCount.get();
+    }   //getDroppedCount
+
+    /**
+     * This method returns the number of messages of the given level dropped because the ring buffer was full.
+     *
+     * @param level specifies the message level, null for messages of unknown level.
+     * @return number of dropped messages.
+     */
+    public long getDroppedCount(TrcDbgTrace.MsgLevel level)
+    {
+        return droppedCounts.get(level != null? level.getValue(): 0);
+    }   //getDroppedCount
+
+    /**
+     * This method counts a dropped message.
+     *
+     * @param levelValue specifies the message level value, 0 if unknown.
+     */
+    private void countDroppedMessage(int levelValue)
+    {
+        droppedCounts.incrementAndGet(levelValue);
+        droppedCount.incrementAndGet();
+    }   //countDroppedMessage
+
+    /**
+     * This method returns the number of records written to the file.
+     *
+     * @return number of records written.
+     */
+    public long getRecordsWritten()
+    {
+        return recordsWritten;
+    }   //getRecordsWritten
+
+    /**
+     * This method logs a call site event record. It does not allocate.
+     *
+     * @param site specifies the call site.
+     * @param timestamp specifies the mode elapsed time in seconds.
+     * @param argCount specifies the number of valid arguments.
+     * @param arg0 specifies argument 0.
+     * @param arg1 specifies argument 1.
+     * @param arg2 specifies argument 2.
+     * @param arg3 specifies argument 3.
+     * @param arg4 specifies argument 4.
+     * @param arg5 specifies argument 5.
+     * @return true if the record was queued, false if it was dropped.
+     */
+    public boolean logEvent(
+        TrcDbgTrace.CallSite site, double timestamp, int argCount, double arg0, double arg1, double arg2,
+        double arg3, double arg4, double arg5)
+    {
+        boolean success = false;
+
+        if (enabled)
+        {
+            long seq = claimRecords(1, blockOnOverflow);
+
+            if (seq < 0)
+            {
+                countDroppedMessage(site.getLevel().getValue());
+            }
+            else
+            {
+                int index = (int) (seq & mask)*RECORD_WORDS;
+
+                ring[index] = Double.doubleToRawLongBits(timestamp);
+                ring[index + 1] = recordInfo(TYPE_EVENT, site.getLevel().getValue(), argCount, site.getId());
+                ring[index + 2] = Double.doubleToRawLongBits(arg0);
+                ring[index + 3] = Double.doubleToRawLongBits(arg1);
+                ring[index + 4] = Double.doubleToRawLongBits(arg2);
+                ring[index + 5] = Double.doubleToRawLongBits(arg3);
+                ring[index + 6] = Double.doubleToRawLongBits(arg4);
+                ring[index + 7] = Double.doubleToRawLongBits(arg5);
+                publish(seq);
+                success = true;
+            }
+        }
+
+        return success;
+    }   //logEvent
+
+    /**
+     * This method logs a text message. The characters are copied straight into the ring buffer so it does not
+     * allocate.
+     *
+     * @param level specifies the message level, null if unknown.
+     * @param timestamp specifies the mode elapsed time in seconds.
+     * @param msg specifies the message.
+     * @return true if the message was queued, false if it was dropped.
+     */
+    public boolean logText(TrcDbgTrace.MsgLevel level, double timestamp, String msg)
+    {
+        return enabled && writePayload(
+            TYPE_TEXT, level != null? level.getValue(): 0, Double.doubleToRawLongBits(timestamp), msg, false);
+    }   //logText
+
+    /**
+     * This method logs the definition of a call site so the decoder can resolve the events referencing it. It is
+     * retried until there is room in the ring buffer because the events of the call site are undecodable without it.
+     *
+     * @param site specifies the call site.
+     */
+    public void logCallSite(TrcDbgTrace.CallSite site)
+    {
+        if (enabled)
+        {
+            writePayload(TYPE_SITE, 0, site.getId(), site.getDefinition(), true);
+        }
+    }   //logCallSite
+
+    /**
+     * This method packs a string payload into a header record followed by continuation records.
+     *
+     * @param type specifies the record type.
+     * @param level specifies the message level.
+     * @param word0 specifies the first word of the header record.
+     * @param text specifies the payload.
+     * @param mustSucceed specifies true to wait for room in the ring buffer instead of dropping the payload.
+     * @return true if the payload was queued, false if it was dropped.
+     */
+    private boolean writePayload(int type, int level, long word0, String text, boolean mustSucceed)
+    {
+        // Don't let a single message take more than half of the ring buffer.
+        int maxChars = TEXT_CHARS + (capacity/2 - 1)*RECORD_CHARS;
+        int charCount = Math.min(text.length(), maxChars);
+        int numRecords = 1 + continuationRecords(charCount);
+        long seq;
+
+        seq = claimRecords(numRecords, mustSucceed || blockOnOverflow);
+        if (seq < 0)
+        {
+            countDroppedMessage(level);
+        }
+        else
+        {
+            int index = (int) (seq & mask)*RECORD_WORDS;
+            int wordIndex = 2;
+
+            ring[index] = word0;
+            ring[index + 1] = recordInfo(type, level, 0, charCount);
+            for (int i = 0; i < charCount; i += 4)
+            {
+                if (wordIndex == RECORD_WORDS)
+                {
+                    publish(seq++);
+                    index = (int) (seq & mask)*RECORD_WORDS;
+                    wordIndex = 0;
+                }
+                ring[index + wordIndex++] = packChars(text, i, charCount);
+            }
+            publish(seq);
+        }
+
+        return seq >= 0;
+    }   //writePayload
+
+    /**
+     * This method packs four characters of a string into a word, padding with zeros beyond the given length.
+     *
+     * @param text specifies the string.
+     * @param index specifies the index of the first character.
+     * @param length specifies the number of valid characters.
+     * @return packed word.
+     */
+    private static long packChars(String text, int index, int length)
+    {
+        long word = 0;
+
+        for (int i = index; i < index + 4; i++)
+        {
+            word = (word << 16) | (i < length? text.charAt(i): 0);
+        }
+
+        return word;
+    }   //packChars
+
+    /**
+     * This method returns the number of continuation records following the first record of a text payload.
+     *
+     * @param charCount specifies the number of characters in the payload.
+     * @return number of continuation records.
+     */
+    private static int continuationRecords(int charCount)
+    {
+        return (Math.max(charCount - TEXT_CHARS, 0) + RECORD_CHARS - 1)/RECORD_CHARS;
+    }   //continuationRecords
+
+    /**
+     * This method packs the record info word.
+     *
+     * @param type specifies the record type.
+     * @param level specifies the message level.
+     * @param argCount specifies the argument count.
+     * @param value specifies the call site ID or the character count.
+     * @return packed record info word.
+     */
+    private static long recordInfo(int type, int level, int argCount, int value)
+    {
+        return ((long) type << 56) | ((long) (level & 0xff) << 48) | ((long) (argCount & 0xff) << 40) |
+               (value & 0xffffffffL);
+    }   //recordInfo
+
+    /**
+     * This method claims consecutive records in the ring buffer, optionally waiting for room. The logger thread itself
+     * never waits since it is the one making room.
+     *
+     * @param numRecords specifies the number of records to claim.
+     * @param block specifies true to wait for room if the ring buffer is full.
+     * @return sequence number of the first claimed record, -1 if the ring buffer is full.
+     */
+    private long claimRecords(int numRecords, boolean block)
+    {
+        long seq;
+
+        while ((seq = claim(numRecords)) < 0 && block && enabled && Thread.currentThread() != loggerThread)
+        {
+            Thread.yield();
+        }
+
+        return seq;
+    }   //claimRecords
+
+    /**
+     * This method claims consecutive records in the ring buffer.
+     *
+     * @param numRecords specifies the number of records to claim.
+     * @return sequence number of the first claimed record, -1 if the ring buffer is full.
+     */
+    private long claim(int numRecords)
+    {
+        long seq;
+
+        do
+        {
+            seq = claimSeq.get();
+            if (seq + numRecords - consumedSeq > capacity)
+            {
+                wakeConsumer();
+                return -1;
+            }
+        } while (!claimSeq.compareAndSet(seq, seq + numRecords));
+
+        if (seq + numRecords - consumedSeq > capacity/2)
+        {
+            wakeConsumer();
+        }
+
+        return seq;
+    }   //claim
+
+    /**
+     * This method publishes a filled record to the consumer.
+     *
+     * @param seq specifies the sequence number of the record.
+     */
+    private void publish(long seq)
+    {
+        published.lazySet((int) (seq & mask), seq);
+    }   //publish
+
+    /**
+     * This method wakes up the logger thread if it is idle.
+     */
+    private void wakeConsumer()
+    {
+        Thread thread = loggerThread;
+
+        if (consumerWaiting && thread != null)
+        {
+            consumerWaiting = false;
+            LockSupport.unpark(thread);
+        }
+    }   //wakeConsumer
+
+    /**
+     * This method runs the logger thread. It writes the header and the definitions of all registered call sites, then
+     * streams published records to the file until it is disabled and the ring buffer is drained.
+     */
+    private void loggerTask()
+    {
+        long readSeq = consumedSeq;
+        int pendingContinuations = 0;
+
+        try
+        {
+            writeSegmentHeader();
+
+            long closeDeadline = 0;
+            while (true)
+            {
+                int count = 0;
+
+                while (published.get((int) (readSeq & mask)) == readSeq)
+                {
+                    int index = (int) (readSeq & mask)*RECORD_WORDS;
+
+                    if (pendingContinuations > 0)
+                    {
+                        pendingContinuations--;
+                    }
+                    else
+                    {
+                        // Only start a new segment on a record boundary so a message is never split.
+                        if (rotator != null && rotator.isRotationDue(segmentBytes + writeBuffer.position()))
+                        {
+                            rotateSegment();
+                        }
+
+                        if ((int) (ring[index + 1] >>> 56) != TYPE_EVENT)
+                        {
+                            pendingContinuations = continuationRecords((int) ring[index + 1]);
+                        }
+                    }
+
+                    if (writeBuffer.remaining() < RECORD_SIZE)
+                    {
+                        flushWriteBuffer();
+                    }
+
+                    for (int i = 0; i < RECORD_WORDS; i++)
+                    {
+                        writeBuffer.putLong(ring[index + i]);
+                    }
+                    readSeq++;
+                    count++;
+                    if ((count & 0xff) == 0)
+                    {
+                        consumedSeq = readSeq;
+                    }
+                }
+                consumedSeq = readSeq;
+                recordsWritten += count;
+                reportDroppedMessages();
+
+                if (count == 0)
+                {
+                    flushWriteBuffer();
+                    if (!enabled)
+                    {
+                        // Wait briefly for producers that claimed records before the log was disabled.
+                        if (closeDeadline == 0)
+                        {
+                            closeDeadline = System.nanoTime() + CLOSE_TIMEOUT_NANOS;
+                        }
+
+                        if (readSeq == claimSeq.get() || System.nanoTime() > closeDeadline)
+                        {
+                            break;
+                        }
+                        Thread.yield();
+                    }
+                    else
+                    {
+                        consumerWaiting = true;
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                        consumerWaiting = false;
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            TrcDbgTrace.globalTraceErr(moduleName, "Failed to write trace log %s: %s", traceLogName, e);
+            enabled = false;
+        }
+        finally
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+            channel = null;
+            if (rotator != null)
+            {
+                rotator.close(segmentBytes);
+            }
+            loggerThread = null;
+        }
+    }   //loggerTask
+
+    /**
+     * This method writes the file header if the file is empty, followed by the definitions of all registered call
+     * sites so every segment of a rotated log can be decoded on its own. Sites registered later go through the ring
+     * buffer. It is only called by the logger thread.
+     *
+     * @throws IOException if the write failed.
+     */
+    private void writeSegmentHeader() throws IOException
+    {
+        if (segmentBytes == 0)
+        {
+            writeBuffer.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0);
+            writeBuffer.putLong(0).putLong(0).putLong(0).putLong(0).putLong(0).putLong(0);
+        }
+
+        for (TrcDbgTrace.CallSite site: TrcDbgTrace.getRegisteredCallSites())
+        {
+            writePayloadDirect(TYPE_SITE, 0, site.getId(), site.getDefinition());
+        }
+        flushWriteBuffer();
+    }   //writeSegmentHeader
+
+    /**
+     * This method closes the current log segment and continues the log in a new one. It is only called by the
+     * logger thread.
+     *
+     * @throws IOException if the new segment could not be opened.
+     */
+    private void rotateSegment() throws IOException
+    {
+        flushWriteBuffer();
+        channel.close();
+        channel = new FileOutputStream(rotator.rotate(segmentBytes), true).getChannel();
+        segmentBytes = channel.size();
+        writeSegmentHeader();
+    }   //rotateSegment
+
+    /**
+     * This method writes a string payload straight to the write buffer. It is only called by the logger thread.
+     *
+     * @param type specifies the record type.
+     * @param level specifies the message level.
+     * @param word0 specifies the first word of the header record.
+     * @param text specifies the payload.
+     * @throws IOException if the write failed.
+     */
+    private void writePayloadDirect(int type, int level, long word0, String text) throws IOException
+    {
+        int charCount = text.length();
+        int wordIndex = 2;
+
+        if (writeBuffer.remaining() < RECORD_SIZE)
+        {
+            flushWriteBuffer();
+        }
+        writeBuffer.putLong(word0).putLong(recordInfo(type, level, 0, charCount));
+        for (int i = 0; i < charCount; i += 4)
+        {
+            if (wordIndex == RECORD_WORDS)
+            {
+                if (writeBuffer.remaining() < RECORD_SIZE)
+                {
+                    flushWriteBuffer();
+                }
+                wordIndex = 0;
+            }
+            writeBuffer.putLong(packChars(text, i, charCount));
+            wordIndex++;
+        }
+
+        while (wordIndex < RECORD_WORDS)
+        {
+            writeBuffer.putLong(0);
+            wordIndex++;
+        }
+    }   //writePayloadDirect
+
+    /**
+     * This method writes a text record into the log if messages were dropped since the last report. It is only
+     * called by the logger thread.
+     *
+     * @throws IOException if the write failed.
+     */
+    private void reportDroppedMessages() throws IOException
+    {
+        long dropped = droppedCount.get();
+
+        if (dropped != reportedDroppedCount)
+        {
+            double timestamp = TrcTimer.getModeElapsedTime();
+            String report =
+                traceLogName + ".loggerTask_WARN [" + timestamp + "] Dropped " + (dropped - reportedDroppedCount) +
+                " messages (total=" + dropped + levelCounts(droppedCounts) + ",sampledOut=" +
+                TrcDbgTrace.getSampledOutCount() + ")";
+
+            writePayloadDirect(
+                TYPE_TEXT, TrcDbgTrace.MsgLevel.WARN.getValue(), Double.doubleToRawLongBits(timestamp), report);
+            reportedDroppedCount = dropped;
+        }
+    }   //reportDroppedMessages
+
+    /**
+     * This method formats per level counts as a list of level=count pairs.
+     *
+     * @param counts specifies the counts indexed by message level value, 0 for unknown level.
+     * @return formatted counts, each preceded by a comma.
+     */
+    static String levelCounts(AtomicLongArray counts)
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for (TrcDbgTrace.MsgLevel level: TrcDbgTrace.MsgLevel.values())
+        {
+            sb.append(",").append(level).append("=").append(counts.get(level.getValue()));
+        }
+
+        return sb.append(",unknown=").append(counts.get(0)).toString();
+    }   //levelCounts
+
+    /**
+     * This method writes the content of the write buffer to the file.
+     *
+     * @throws IOException if the write failed.
+     */
+    private void flushWriteBuffer() throws IOException
+    {
+        if (writeBuffer.position() > 0)
+        {
+            long startNanoTime = System.nanoTime();
+
+            writeBuffer.flip();
+            segmentBytes += writeBuffer.remaining();
+            while (writeBuffer.hasRemaining())
+            {
+                channel.write(writeBuffer);
+            }
+            writeBuffer.clear();
+            totalWriteNanoTime += System.nanoTime() - startNanoTime;
+        }
+    }   //flushWriteBuffer
+
+    /**
+     * This method returns the average time spent writing a record to the file.
+     *
+     * @return average write time per record in seconds.
+     */
+    public double getAverageWriteTime()
+    {
+        return recordsWritten > 0? totalWriteNanoTime/1000000000.0/recordsWritten: 0.0;
+    }   //getAverageWriteTime
+
+    /**
+     * This class implements the decoder that converts a binary trace log back to the text trace log format.
+     */
+    public static class Decoder
+    {
+        private final HashMap<Integer, TrcDbgTrace.CallSite> callSites = new HashMap<>();
+        private final double[] args = new double[MAX_ARGS];
+        private final long[] record = new long[RECORD_WORDS];
+        private final DataInputStream in;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param in specifies the input stream of the binary trace log.
+         * @throws IOException if the stream is not a binary trace log.
+         */
+        public Decoder(InputStream in) throws IOException
+        {
+            this.in = new DataInputStream(new BufferedInputStream(in));
+
+            if (this.in.readInt() != MAGIC)
+            {
+                throw new IOException("Not a binary trace log.");
+            }
+
+            int version = this.in.readInt();
+            int recordSize = this.in.readInt();
+
+            if (version != VERSION || recordSize != RECORD_SIZE)
+            {
+                throw new IOException(
+                    "Unsupported binary trace log (version=" + version + ", recordSize=" + recordSize + ").");
+            }
+            this.in.readFully(new byte[RECORD_SIZE - 3*Integer.BYTES]);
+        }   //Decoder
+
+        /**
+         * This method decodes the next message.
+         *
+         * @return next message in text format, null if the end of the log is reached.
+         * @throws IOException if the log is corrupted.
+         */
+        public String nextMessage() throws IOException
+        {
+            String msg = null;
+
+            while (msg == null && readRecord())
+            {
+                int type = (int) (record[1] >>> 56);
+                int value = (int) record[1];
+
+                if (type == TYPE_EVENT)
+                {
+                    TrcDbgTrace.CallSite site = callSites.get(value);
+                    int argCount = (int) (record[1] >>> 40) & 0xff;
+
+                    for (int i = 0; i < MAX_ARGS; i++)
+                    {
+                        args[i] = Double.longBitsToDouble(record[i + 2]);
+                    }
+                    msg = site != null?
+                        site.formatMessage(Double.longBitsToDouble(record[0]), argCount, args):
+                        "<Unknown call site " + value + ">";
+                }
+                else if (type == TYPE_TEXT)
+                {
+                    msg = readPayload(value);
+                }
+                else if (type == TYPE_SITE)
+                {
+                    int siteId = (int) record[0];
+                    callSites.put(siteId, TrcDbgTrace.CallSite.fromDefinition(siteId, readPayload(value)));
+                }
+                else
+                {
+                    throw new IOException("Invalid record type " + type + ".");
+                }
+            }
+
+            return msg;
+        }   //nextMessage
+
+        /**
+         * This method decodes the entire log to the given writer in the text trace log format.
+         *
+         * @param out specifies the writer.
+         * @throws IOException if the log is corrupted or the write failed.
+         */
+        public void decodeTo(Writer out) throws IOException
+        {
+            String msg;
+
+            while ((msg = nextMessage()) != null)
+            {
+                out.write(msg);
+                out.write("\r\n");
+            }
+            out.flush();
+        }   //decodeTo
+
+        /**
+         * This method reads the next record.
+         *
+         * @return true if a record is read, false if the end of the log is reached.
+         * @throws IOException if the log is truncated.
+         */
+        private boolean readRecord() throws IOException
+        {
+            try
+            {
+                record[0] = in.readLong();
+            }
+            catch (EOFException e)
+            {
+                return false;
+            }
+
+            for (int i = 1; i < RECORD_WORDS; i++)
+            {
+                record[i] = in.readLong();
+            }
+
+            return true;
+        }   //readRecord
+
+        /**
+         * This method unpacks a string payload starting in the current record.
+         *
+         * @param charCount specifies the number of characters.
+         * @return unpacked string.
+         * @throws IOException if the log is truncated.
+         */
+        private String readPayload(int charCount) throws IOException
+        {
+            StringBuilder sb = new StringBuilder(charCount);
+            int wordIndex = 2;
+
+            while (sb.length() < charCount)
+            {
+                if (wordIndex == RECORD_WORDS)
+                {
+                    if (!readRecord())
+                    {
+                        throw new EOFException("Truncated trace log.");
+                    }
+                    wordIndex = 0;
+                }
+
+                long word = record[wordIndex++];
+                for (int shift = 48; shift >= 0 && sb.length() < charCount; shift -= 16)
+                {
+                    sb.append((char) (word >>> shift));
+                }
+            }
+
+            return sb.toString();
+        }   //readPayload
+
+    }   //class Decoder
+
+    /**
+     * This method decodes a binary trace log file into a text trace log file.
+     *
+     * @param args specifies the binary trace log path (compressed segments are decompressed on the fly) and
+     *        optionally the output path, stdout if none.
+     * @throws IOException if the decoding failed.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.err.println("Usage: TrcBinaryTraceLog <binaryLogFile> [<textLogFile>]");
+            return;
+        }
+
+        try (InputStream in = TrcLogRotator.openLogStream(args[0]);
+             Writer out = args.length > 1? new FileWriter(args[1]): new PrintWriter(System.out))
+        {
+            new Decoder(in).decodeTo(out);
+        }
+    }   //main
+
+}   //class TrcBinaryTraceLog
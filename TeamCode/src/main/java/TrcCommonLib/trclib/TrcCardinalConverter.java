@@ -104,6 +104,17 @@ public class TrcCardinalConverter<D>
         this.enabled = enabled;
     }   //setEnabled
 
+    /**
+     * This method returns the task object of the converter task so that consumers of the converted data can
+     * declare that they run after it.
+     *
+     * @return converter task object.
+     */
+    TrcTaskMgr.TaskObject getTaskObject()
+    {
+        return converterTaskObj;
+    }   //getTaskObject
+
     /**
      * This method resets the indexed converter.
      *
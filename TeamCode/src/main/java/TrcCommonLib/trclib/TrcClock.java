@@ -0,0 +1,116 @@
+
+package TrcCommonLib.trclib;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This interface specifies a clock source. All of trclib reads time and waits for time to pass through the clock
+ * installed in TrcTimer, so replacing the system clock with a TrcSimulatedClock lets the periodic threads, the timer
+ * thread and anything else built on TrcTimer run on virtual time, for example faster than real time in a simulation.
+ */
+public interface TrcClock
+{
+    /**
+     * This method returns the nano second timestamp since a fixed arbitrary time.
+     *
+     * @return current time in nano second.
+     */
+    long nanoTime();
+
+    /**
+     * This method returns the current epoch time in msec.
+     *
+     * @return current epoch time in msec.
+     */
+    long currentTimeMillis();
+
+    /**
+     * This method puts the current thread to sleep for the given time.
+     *
+     * @param nanoTime specifies the sleep time in nano seconds.
+     * @throws InterruptedException if the thread is interrupted while sleeping.
+     */
+    void sleep(long nanoTime) throws InterruptedException;
+
+    /**
+     * This method parks the current thread for up to the given time. Like LockSupport.parkNanos, it may return
+     * early because of unpark, interrupt or spuriously, so the caller must re-check its condition.
+     *
+     * @param blocker specifies the object the thread is parking on.
+     * @param nanoTime specifies the maximum park time in nano seconds.
+     */
+    void parkNanos(Object blocker, long nanoTime);
+
+    /**
+     * This method parks the current thread until it is unparked or interrupted, or spuriously.
+     *
+     * @param blocker specifies the object the thread is parking on.
+     */
+    void park(Object blocker);
+
+    /**
+     * This method unparks the given thread if it is parked, or makes its next park return immediately.
+     *
+     * @param thread specifies the thread to unpark.
+     */
+    void unpark(Thread thread);
+
+    /**
+     * This method checks if the clock follows real time. Busy-waiting on a clock that does not is pointless.
+     *
+     * @return true if the clock follows real time, false otherwise.
+     */
+    boolean isRealTime();
+
+    /**
+     * This class implements the clock source backed by the system clock.
+     */
+    class SystemClock implements TrcClock
+    {
+        @Override
+        public long nanoTime()
+        {
+            return System.nanoTime();
+        }   //nanoTime
+
+        @Override
+        public long currentTimeMillis()
+        {
+            return System.currentTimeMillis();
+        }   //currentTimeMillis
+
+        @Override
+        public void sleep(long nanoTime) throws InterruptedException
+        {
+            Thread.sleep(nanoTime/1000000, (int) (nanoTime%1000000));
+        }   //sleep
+
+        @Override
+        public void parkNanos(Object blocker, long nanoTime)
+        {
+            LockSupport.parkNanos(blocker, nanoTime);
+        }   //parkNanos
+
+        @Override
+        public void park(Object blocker)
+        {
+            LockSupport.park(blocker);
+        }   //park
+
+        @Override
+        public void unpark(Thread thread)
+        {
+            LockSupport.unpark(thread);
+        }   //unpark
+
+        @Override
+        public boolean isRealTime()
+        {
+            return true;
+        }   //isRealTime
+
+    }   //class SystemClock
+
+    TrcClock SYSTEM = new SystemClock();
+
+}   //interface TrcClock
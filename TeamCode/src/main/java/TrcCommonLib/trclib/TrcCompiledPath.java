@@ -0,0 +1,480 @@
+
+package TrcCommonLib.trclib;
+
+import java.util.Arrays;
+
+/**
+ * This class implements a compiled, read-only form of a TrcPath for path following. The waypoint fields are stored in
+ * parallel primitive arrays instead of TrcWaypoint objects, together with the cumulative arc length and time at each
+ * waypoint. This makes walking the path cache friendly, makes the arc length and duration of the path O(1) and allows
+ * looking up the pose or waypoint at a given distance or time along the path in O(log n) with a binary search.
+ * <p>
+ * A compiled path is a snapshot: changes made to the waypoints of the TrcPath after it was compiled are not reflected.
+ * The cumulative time at waypoint i is the sum of the timeSteps of the waypoints before it. The duration of the path
+ * is the sum of the timeSteps of all waypoints like TrcPath.getPathDuration, which is the time at the last waypoint
+ * plus its own timeStep.
+ */
+public class TrcCompiledPath
+{
+    private final boolean inDegrees;
+    private final int size;
+    private final double[] x;
+    private final double[] y;
+    private final double[] heading;
+    private final double[] timeStep;
+    private final double[] encoderPosition;
+    private final double[] velocity;
+    private final double[] acceleration;
+    private final double[] jerk;
+    // Cumulative arc length and time from the first waypoint.
+    private final double[] distance;
+    private final double[] time;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param path specifies the path to compile.
+     * @throws IllegalArgumentException if the path has no waypoint.
+     */
+    public TrcCompiledPath(TrcPath path)
+    {
+        inDegrees = path.isInDegrees();
+        size = path.getSize();
+        if (size == 0)
+        {
+            throw new IllegalArgumentException("Path must have at least one waypoint.");
+        }
+        x = new double[size];
+        y = new double[size];
+        heading = new double[size];
+        timeStep = new double[size];
+        encoderPosition = new double[size];
+        velocity = new double[size];
+        acceleration = new double[size];
+        jerk = new double[size];
+        distance = new double[size];
+        time = new double[size];
+
+        for (int i = 0; i < size; i++)
+        {
+            TrcWaypoint waypoint = path.getWaypoint(i);
+
+            x[i] = waypoint.pose.x;
+            y[i] = waypoint.pose.y;
+            heading[i] = waypoint.pose.angle;
+            timeStep[i] = waypoint.timeStep;
+            encoderPosition[i] = waypoint.encoderPosition;
+            velocity[i] = waypoint.velocity;
+            acceleration[i] = waypoint.acceleration;
+            jerk[i] = waypoint.jerk;
+        }
+        accumulate();
+    }   //TrcCompiledPath
+
+    /**
+     * Constructor: Create an instance of the object from the waypoint columns, which it takes ownership of. This is
+     * used by TrcPathFile to load a path without creating any waypoint objects.
+     *
+     * @param inDegrees specifies true if the heading values are in degrees, false if they are radians.
+     * @param timeStep specifies the time steps of the waypoints.
+     * @param x specifies the x positions of the waypoints.
+     * @param y specifies the y positions of the waypoints.
+     * @param heading specifies the headings of the waypoints.
+     * @param encoderPosition specifies the encoder positions of the waypoints.
+     * @param velocity specifies the velocities of the waypoints.
+     * @param acceleration specifies the accelerations of the waypoints.
+     * @param jerk specifies the jerks of the waypoints.
+     * @throws IllegalArgumentException if the path has no waypoint.
+     */
+    TrcCompiledPath(
+        boolean inDegrees, double[] timeStep, double[] x, double[] y, double[] heading, double[] encoderPosition,
+        double[] velocity, double[] acceleration, double[] jerk)
+    {
+        this.inDegrees = inDegrees;
+        this.size = timeStep.length;
+        if (size == 0)
+        {
+            throw new IllegalArgumentException("Path must have at least one waypoint.");
+        }
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        this.timeStep = timeStep;
+        this.encoderPosition = encoderPosition;
+        this.velocity = velocity;
+        this.acceleration = acceleration;
+        this.jerk = jerk;
+        this.distance = new double[size];
+        this.time = new double[size];
+        accumulate();
+    }   //TrcCompiledPath
+
+    /**
+     * This method returns the compiled path info in string form.
+     *
+     * @return compiled path info in string form.
+     */
+    @Override
+    public String toString()
+    {
+        return "TrcCompiledPath(degrees=" + inDegrees + ", size=" + size + ", arcLength=" + getArcLength() +
+               ", duration=" + getDuration() + ")";
+    }   //toString
+
+    /**
+     * This method creates a TrcPath with the waypoints of the compiled path, for the path followers that take a
+     * TrcPath.
+     *
+     * @return path with the waypoints.
+     */
+    public TrcPath toPath()
+    {
+        TrcWaypoint[] waypoints = new TrcWaypoint[size];
+
+        for (int i = 0; i < size; i++)
+        {
+            waypoints[i] = new TrcWaypoint(
+                timeStep[i], x[i], y[i], heading[i], encoderPosition[i], velocity[i], acceleration[i], jerk[i]);
+        }
+
+        return new TrcPath(inDegrees, waypoints);
+    }   //toPath
+
+    /**
+     * Check if this path defines heading using degrees.
+     *
+     * @return True if degrees are used, false if radians.
+     */
+    public boolean isInDegrees()
+    {
+        return inDegrees;
+    }   //isInDegrees
+
+    /**
+     * This method returns the number of waypoints in this path.
+     *
+     * @return the number of waypoints in this path.
+     */
+    public int getSize()
+    {
+        return size;
+    }   //getSize
+
+    /**
+     * This method returns the x position of the waypoint at the given index.
+     *
+     * @param index specifies the waypoint index.
+     * @return x position of the waypoint.
+     */
+    public double getX(int index)
+    {
+        return x[index];
+    }   //getX
+
+    /**
+     * This method returns the y position of the waypoint at the given index.
+     *
+     * @param index specifies the waypoint index.
+     * @return y position of the waypoint.
+     */
+    public double getY(int index)
+    {
+        return y[index];
+    }   //getY
+
+    /**
+     * This method returns the heading of the waypoint at the given index.
+     *
+     * @param index specifies the waypoint index.
+     * @return heading of the waypoint.
+     */
+    public double getHeading(int index)
+    {
+        return heading[index];
+    }   //getHeading
+
+    /**
+     * This method returns the time step of the waypoint at the given index.
+     *
+     * @param index specifies the waypoint index.
+     * @return time step of the waypoint.
+     */
+    public double getTimeStep(int index)
+    {
+        return timeStep[index];
+    }   //getTimeStep
+
+    /**
+     * This method returns the encoder position of the waypoint at the given index.
+     *
+     * @param index specifies the waypoint index.
+     * @return encoder position of the waypoint.
+     */
+    public double getEncoderPosition(int index)
+    {
+        return encoderPosition[index];
+    }   //getEncoderPosition
+
+    /**
+     * This method returns the velocity of the waypoint at the given index.
+     *
+     * @param index specifies the waypoint index.
+     * @return velocity of the waypoint.
+     */
+    public double getVelocity(int index)
+    {
+        return velocity[index];
+    }   //getVelocity
+
+    /**
+     * This method returns the acceleration of the waypoint at the given index.
+     *
+     * @param index specifies the waypoint index.
+     * @return acceleration of the waypoint.
+     */
+    public double getAcceleration(int index)
+    {
+        return acceleration[index];
+    }   //getAcceleration
+
+    /**
+     * This method returns the jerk of the waypoint at the given index.
+     *
+     * @param index specifies the waypoint index.
+     * @return jerk of the waypoint.
+     */
+    public double getJerk(int index)
+    {
+        return jerk[index];
+    }   //getJerk
+
+    /**
+     * This method returns the arc length from the first waypoint to the waypoint at the given index.
+     *
+     * @param index specifies the waypoint index.
+     * @return arc length to the waypoint.
+     */
+    public double getDistance(int index)
+    {
+        return distance[index];
+    }   //getDistance
+
+    /**
+     * This method returns the time from the first waypoint to the waypoint at the given index.
+     *
+     * @param index specifies the waypoint index.
+     * @return time to the waypoint.
+     */
+    public double getTime(int index)
+    {
+        return time[index];
+    }   //getTime
+
+    /**
+     * Get the curved length of the entire path.
+     *
+     * @return The curved length of the entire path, in the same units as <code>x</code> and <code>y</code>.
+     */
+    public double getArcLength()
+    {
+        return distance[size - 1];
+    }   //getArcLength
+
+    /**
+     * Get the estimated time duration of the entire path. It is the sum of the timeSteps of all waypoints, the same as
+     * TrcPath.getPathDuration.
+     *
+     * @return The estimated time duration, in the same units as <code>timeStep</code>.
+     */
+    public double getDuration()
+    {
+        return time[size - 1] + timeStep[size - 1];
+    }   //getDuration
+
+    /**
+     * This method returns the index of the start waypoint of the segment containing the given arc length. The
+     * arc length is clipped to the path.
+     *
+     * @param dist specifies the arc length from the first waypoint.
+     * @return index of the segment start waypoint, in the range [0, size - 2].
+     */
+    public int getSegmentIndexAtDistance(double dist)
+    {
+        return getSegmentIndex(distance, dist);
+    }   //getSegmentIndexAtDistance
+
+    /**
+     * This method returns the index of the start waypoint of the segment containing the given time. The time is
+     * clipped to the path.
+     *
+     * @param t specifies the time from the first waypoint.
+     * @return index of the segment start waypoint, in the range [0, size - 2].
+     */
+    public int getSegmentIndexAtTime(double t)
+    {
+        return getSegmentIndex(time, t);
+    }   //getSegmentIndexAtTime
+
+    /**
+     * This method returns the pose at the given arc length along the path, interpolated between the waypoints of
+     * the segment containing it.
+     *
+     * @param dist specifies the arc length from the first waypoint, clipped to the path.
+     * @param out specifies the pose to receive the result.
+     * @return out, the pose at the given arc length.
+     */
+    public TrcPose2D getPoseAtDistance(double dist, TrcPose2D out)
+    {
+        int index = getSegmentIndex(distance, dist);
+        return getPose(index, getWeight(distance, index, dist), out);
+    }   //getPoseAtDistance
+
+    /**
+     * This method returns the pose at the given time along the path, interpolated between the waypoints of the
+     * segment containing it.
+     *
+     * @param t specifies the time from the first waypoint, clipped to the path.
+     * @param out specifies the pose to receive the result.
+     * @return out, the pose at the given time.
+     */
+    public TrcPose2D getPoseAtTime(double t, TrcPose2D out)
+    {
+        int index = getSegmentIndex(time, t);
+        return getPose(index, getWeight(time, index, t), out);
+    }   //getPoseAtTime
+
+    /**
+     * This method returns the waypoint at the given arc length along the path, interpolated between the waypoints
+     * of the segment containing it.
+     *
+     * @param dist specifies the arc length from the first waypoint, clipped to the path.
+     * @param out specifies the waypoint to receive the result.
+     * @return out, the waypoint at the given arc length.
+     */
+    public TrcWaypoint getWaypointAtDistance(double dist, TrcWaypoint out)
+    {
+        int index = getSegmentIndex(distance, dist);
+        return getWaypoint(index, Math.min(index + 1, size - 1), getWeight(distance, index, dist), out);
+    }   //getWaypointAtDistance
+
+    /**
+     * This method returns the waypoint at the given time along the path, interpolated between the waypoints of the
+     * segment containing it.
+     *
+     * @param t specifies the time from the first waypoint, clipped to the path.
+     * @param out specifies the waypoint to receive the result.
+     * @return out, the waypoint at the given time.
+     */
+    public TrcWaypoint getWaypointAtTime(double t, TrcWaypoint out)
+    {
+        int index = getSegmentIndex(time, t);
+        return getWaypoint(index, Math.min(index + 1, size - 1), getWeight(time, index, t), out);
+    }   //getWaypointAtTime
+
+    /**
+     * This method interpolates a waypoint between two waypoints of the path with linear weight. Heading is
+     * interpolated the short way around.
+     *
+     * @param index1 specifies the index of the first waypoint.
+     * @param index2 specifies the index of the second waypoint.
+     * @param weight specifies the weight between the two waypoints in the range [0, 1].
+     * @param out specifies the waypoint to receive the result.
+     * @return out, the interpolated waypoint.
+     */
+    public TrcWaypoint getWaypoint(int index1, int index2, double weight, TrcWaypoint out)
+    {
+        out.timeStep = interpolate(timeStep[index1], timeStep[index2], weight);
+        out.pose.set(
+            interpolate(x[index1], x[index2], weight), interpolate(y[index1], y[index2], weight),
+            interpolate(heading[index1], getOptimizedHeading(index2, index1), weight));
+        out.encoderPosition = interpolate(encoderPosition[index1], encoderPosition[index2], weight);
+        out.velocity = interpolate(velocity[index1], velocity[index2], weight);
+        out.acceleration = interpolate(acceleration[index1], acceleration[index2], weight);
+        out.jerk = interpolate(jerk[index1], jerk[index2], weight);
+        return out;
+    }   //getWaypoint
+
+    /**
+     * This method calculates the cumulative arc length and time at each waypoint.
+     */
+    private void accumulate()
+    {
+        for (int i = 1; i < size; i++)
+        {
+            distance[i] = distance[i - 1] + TrcUtil.magnitude(x[i] - x[i - 1], y[i] - y[i - 1]);
+            time[i] = time[i - 1] + timeStep[i - 1];
+        }
+    }   //accumulate
+
+    /**
+     * This method returns the pose interpolated along the segment starting at the given waypoint.
+     *
+     * @param index specifies the index of the segment start waypoint.
+     * @param weight specifies the weight along the segment in the range [0, 1].
+     * @param out specifies the pose to receive the result.
+     * @return out, the interpolated pose.
+     */
+    private TrcPose2D getPose(int index, double weight, TrcPose2D out)
+    {
+        int next = Math.min(index + 1, size - 1);
+
+        return out.set(
+            interpolate(x[index], x[next], weight), interpolate(y[index], y[next], weight),
+            interpolate(heading[index], getOptimizedHeading(next, index), weight));
+    }   //getPose
+
+    /**
+     * This method returns the heading of a waypoint optimized to be the shortest turn from another waypoint.
+     *
+     * @param index specifies the index of the waypoint.
+     * @param refIndex specifies the index of the reference waypoint.
+     * @return optimized heading.
+     */
+    private double getOptimizedHeading(int index, int refIndex)
+    {
+        return TrcWarpSpace.getOptimizedTarget(heading[index], heading[refIndex], inDegrees? 360.0: 2*Math.PI);
+    }   //getOptimizedHeading
+
+    /**
+     * This method finds the segment of a cumulative array that contains the given value.
+     *
+     * @param cumulative specifies the cumulative distance or time array.
+     * @param value specifies the value to look up.
+     * @return index of the segment start waypoint, in the range [0, size - 2] or 0 for a single waypoint path.
+     */
+    private int getSegmentIndex(double[] cumulative, double value)
+    {
+        int index = Arrays.binarySearch(cumulative, value);
+        // Not found returns (-(insertion point) - 1), the segment starts one before the insertion point.
+        index = index >= 0? index: -index - 2;
+        return Math.max(0, Math.min(index, size - 2));
+    }   //getSegmentIndex
+
+    /**
+     * This method returns the weight of a value within a segment of a cumulative array.
+     *
+     * @param cumulative specifies the cumulative distance or time array.
+     * @param index specifies the index of the segment start waypoint.
+     * @param value specifies the value within the segment.
+     * @return weight in the range [0, 1].
+     */
+    private double getWeight(double[] cumulative, int index, double value)
+    {
+        double segmentLength = index + 1 < size? cumulative[index + 1] - cumulative[index]: 0.0;
+        return segmentLength > 0.0? TrcUtil.clipRange((value - cumulative[index])/segmentLength, 0.0, 1.0): 0.0;
+    }   //getWeight
+
+    /**
+     * This method returns an interpolated value between the two specified values with the specified weight.
+     *
+     * @param start specifies the first value.
+     * @param end specifies the second value.
+     * @param weight specifies the weighted distance between the two values.
+     * @return interpolated value.
+     */
+    private static double interpolate(double start, double end, double weight)
+    {
+        return (1.0 - weight) * start + weight * end;
+    }   //interpolate
+
+}   //class TrcCompiledPath
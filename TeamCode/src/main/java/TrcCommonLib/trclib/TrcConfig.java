@@ -0,0 +1,656 @@
+
+package TrcCommonLib.trclib;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+
+/**
+ * This class implements a frozen, typed configuration store. Unlike TrcHashMap, which boxes every value and casts it
+ * on every read, the set of parameters is fixed when the configuration is built: each parameter is assigned an
+ * integer slot in a primitive array of its type. Callers resolve a parameter name to a typed key once at init and
+ * then read the value with the key, which is an array access that never boxes.
+ * <p>
+ * A configuration can be backed by a file of "name = value" lines so parameters can be tuned without rebuilding the
+ * app. The file only needs to list the parameters that differ from their defaults: every load starts from the
+ * builder defaults, so a parameter removed from the file, or all of them if the file is deleted, reverts to its
+ * default. The file is loaded when the configuration is built and, since the app process outlives the OpModes, it is
+ * reloaded by FtcOpMode before every OpMode's robotInit if it was modified in the meantime. A reload parses the whole
+ * file first and then swaps in all the new values at once, so a reader never sees a partially applied file and a
+ * file with an error changes nothing. Only one configuration is registered per file, building another one for the
+ * same file replaces it, and close unregisters it.
+ * </p>
+ * Building a file backed configuration throws if the file has an error, so build it in robotInit rather than in a
+ * static initializer, where the error would surface as an ExceptionInInitializerError.
+ *
+ * <pre>
+ * Example:
+ *   private static TrcConfig config = null;
+ *   private static TrcConfig.DoubleKey kP;
+ *   ...
+ *   // In robotInit:
+ *   if (config == null)
+ *   {
+ *       config = new TrcConfig.Builder("driveConfig")
+ *           .addDouble("kP", 0.011).addBoolean("useVision", true).build("/sdcard/FIRST/drive.cfg");
+ *       kP = config.getDoubleKey("kP");
+ *   }
+ *   ...
+ *   double p = config.getDouble(kP);
+ * </pre>
+ */
+public class TrcConfig
+{
+    private static final String moduleName = TrcConfig.class.getSimpleName();
+    private static final HashMap<String, TrcConfig> fileBackedConfigs = new HashMap<>();
+
+    /**
+     * This class is the base of the typed keys. A key holds the slot of the parameter in the primitive array of
+     * its type and is only valid for the configuration that created it.
+     */
+    public static abstract class Key
+    {
+        final TrcConfig config;
+        private final String name;
+        final int slot;
+
+        private Key(TrcConfig config, String name, int slot)
+        {
+            this.config = config;
+            this.name = name;
+            this.slot = slot;
+        }   //Key
+
+        @Override
+        public String toString()
+        {
+            return config.instanceName + "." + name;
+        }   //toString
+
+    }   //class Key
+
+    public static final class IntegerKey extends Key
+    {
+        private IntegerKey(TrcConfig config, String name, int slot)
+        {
+            super(config, name, slot);
+        }   //IntegerKey
+    }   //class IntegerKey
+
+    public static final class DoubleKey extends Key
+    {
+        private DoubleKey(TrcConfig config, String name, int slot)
+        {
+            super(config, name, slot);
+        }   //DoubleKey
+    }   //class DoubleKey
+
+    public static final class BooleanKey extends Key
+    {
+        private BooleanKey(TrcConfig config, String name, int slot)
+        {
+            super(config, name, slot);
+        }   //BooleanKey
+    }   //class BooleanKey
+
+    public static final class StringKey extends Key
+    {
+        private StringKey(TrcConfig config, String name, int slot)
+        {
+            super(config, name, slot);
+        }   //StringKey
+    }   //class StringKey
+
+    /**
+     * This class holds the parameter values. It is never modified once published, a reload publishes a new copy of
+     * the defaults with the file values applied.
+     */
+    private static class Values
+    {
+        final int[] integers;
+        final double[] doubles;
+        final boolean[] booleans;
+        final String[] strings;
+
+        Values(int[] integers, double[] doubles, boolean[] booleans, String[] strings)
+        {
+            this.integers = integers;
+            this.doubles = doubles;
+            this.booleans = booleans;
+            this.strings = strings;
+        }   //Values
+
+        Values copy()
+        {
+            return new Values(integers.clone(), doubles.clone(), booleans.clone(), strings.clone());
+        }   //copy
+
+    }   //class Values
+
+    /**
+     * This class implements the builder of a configuration. It collects the parameters with their default values
+     * and freezes them into a configuration.
+     */
+    public static class Builder
+    {
+        private final String instanceName;
+        private final ArrayList<String> integerNames = new ArrayList<>();
+        private final ArrayList<Integer> integerValues = new ArrayList<>();
+        private final ArrayList<String> doubleNames = new ArrayList<>();
+        private final ArrayList<Double> doubleValues = new ArrayList<>();
+        private final ArrayList<String> booleanNames = new ArrayList<>();
+        private final ArrayList<Boolean> booleanValues = new ArrayList<>();
+        private final ArrayList<String> stringNames = new ArrayList<>();
+        private final ArrayList<String> stringValues = new ArrayList<>();
+        private final HashMap<String, Class<?>> paramTypes = new HashMap<>();
+
+        /**
+         * Constructor: Create an instance of the object.
+         *
+         * @param instanceName specifies the instance name of the configuration.
+         */
+        public Builder(String instanceName)
+        {
+            this.instanceName = instanceName;
+        }   //Builder
+
+        /**
+         * This method adds an integer parameter.
+         *
+         * @param name specifies the parameter name.
+         * @param defValue specifies the default value.
+         * @return this builder instance.
+         */
+        public Builder addInteger(String name, int defValue)
+        {
+            addName(name, IntegerKey.class);
+            integerNames.add(name);
+            integerValues.add(defValue);
+            return this;
+        }   //addInteger
+
+        /**
+         * This method adds a double parameter.
+         *
+         * @param name specifies the parameter name.
+         * @param defValue specifies the default value.
+         * @return this builder instance.
+         */
+        public Builder addDouble(String name, double defValue)
+        {
+            addName(name, DoubleKey.class);
+            doubleNames.add(name);
+            doubleValues.add(defValue);
+            return this;
+        }   //addDouble
+
+        /**
+         * This method adds a boolean parameter.
+         *
+         * @param name specifies the parameter name.
+         * @param defValue specifies the default value.
+         * @return this builder instance.
+         */
+        public Builder addBoolean(String name, boolean defValue)
+        {
+            addName(name, BooleanKey.class);
+            booleanNames.add(name);
+            booleanValues.add(defValue);
+            return this;
+        }   //addBoolean
+
+        /**
+         * This method adds a string parameter.
+         *
+         * @param name specifies the parameter name.
+         * @param defValue specifies the default value.
+         * @return this builder instance.
+         */
+        public Builder addString(String name, String defValue)
+        {
+            addName(name, StringKey.class);
+            stringNames.add(name);
+            stringValues.add(defValue);
+            return this;
+        }   //addString
+
+        /**
+         * This method freezes the parameters into a configuration that is not backed by a file.
+         *
+         * @return configuration with the default values.
+         */
+        public TrcConfig build()
+        {
+            return new TrcConfig(this, null);
+        }   //build
+
+        /**
+         * This method freezes the parameters into a configuration backed by the given file. The file is loaded now if
+         * it exists and reloaded before every OpMode if it is modified. The configuration replaces any configuration
+         * previously built for the same file in the reload list.
+         *
+         * @param fileName specifies the configuration file.
+         * @return configuration with the values from the file.
+         * @throws IllegalArgumentException if the file has an error.
+         */
+        public TrcConfig build(String fileName)
+        {
+            TrcConfig config = new TrcConfig(this, fileName);
+
+            config.reloadIfModified();
+            synchronized (fileBackedConfigs)
+            {
+                fileBackedConfigs.put(fileName, config);
+            }
+
+            return config;
+        }   //build
+
+        /**
+         * This method checks that a parameter name is unique.
+         *
+         * @param name specifies the parameter name.
+         * @param keyType specifies the key type of the parameter.
+         * @throws IllegalArgumentException if the name was already added.
+         */
+        private void addName(String name, Class<?> keyType)
+        {
+            if (paramTypes.put(name, keyType) != null)
+            {
+                throw new IllegalArgumentException("\"" + name + "\" already added.");
+            }
+        }   //addName
+
+    }   //class Builder
+
+    private final String instanceName;
+    private final String fileName;
+    private final HashMap<String, Key> keys = new HashMap<>();
+    private final Values defaults;
+    private volatile Values values;
+    private long fileModifiedTime = 0;
+    private long fileLength = -1;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param builder specifies the builder with the parameters.
+     * @param fileName specifies the configuration file, null if none.
+     */
+    private TrcConfig(Builder builder, String fileName)
+    {
+        this.instanceName = builder.instanceName;
+        this.fileName = fileName;
+
+        int[] integers = new int[builder.integerNames.size()];
+        for (int i = 0; i < integers.length; i++)
+        {
+            keys.put(builder.integerNames.get(i), new IntegerKey(this, builder.integerNames.get(i), i));
+            integers[i] = builder.integerValues.get(i);
+        }
+
+        double[] doubles = new double[builder.doubleNames.size()];
+        for (int i = 0; i < doubles.length; i++)
+        {
+            keys.put(builder.doubleNames.get(i), new DoubleKey(this, builder.doubleNames.get(i), i));
+            doubles[i] = builder.doubleValues.get(i);
+        }
+
+        boolean[] booleans = new boolean[builder.booleanNames.size()];
+        for (int i = 0; i < booleans.length; i++)
+        {
+            keys.put(builder.booleanNames.get(i), new BooleanKey(this, builder.booleanNames.get(i), i));
+            booleans[i] = builder.booleanValues.get(i);
+        }
+
+        String[] strings = builder.stringValues.toArray(new String[0]);
+        for (int i = 0; i < strings.length; i++)
+        {
+            keys.put(builder.stringNames.get(i), new StringKey(this, builder.stringNames.get(i), i));
+        }
+
+        defaults = new Values(integers, doubles, booleans, strings);
+        values = defaults;
+    }   //TrcConfig
+
+    /**
+     * This method returns the instance name and all the parameter values.
+     *
+     * @return instance name and parameter values.
+     */
+    @Override
+    public String toString()
+    {
+        Values currValues = values;
+        StringBuilder sb = new StringBuilder(instanceName).append("={");
+        String[] names = keys.keySet().toArray(new String[0]);
+
+        Arrays.sort(names);
+        for (int i = 0; i < names.length; i++)
+        {
+            Key key = keys.get(names[i]);
+            sb.append(i > 0? ", ": "").append(names[i]).append('=');
+            if (key instanceof IntegerKey) sb.append(currValues.integers[key.slot]);
+            else if (key instanceof DoubleKey) sb.append(currValues.doubles[key.slot]);
+            else if (key instanceof BooleanKey) sb.append(currValues.booleans[key.slot]);
+            else sb.append(currValues.strings[key.slot]);
+        }
+
+        return sb.append('}').toString();
+    }   //toString
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String getInstanceName()
+    {
+        return instanceName;
+    }   //getInstanceName
+
+    /**
+     * This method returns the key of an integer parameter. It should be called once at init and the key kept.
+     *
+     * @param name specifies the parameter name.
+     * @return key of the parameter.
+     * @throws NoSuchElementException if there is no such parameter.
+     * @throws ClassCastException if the parameter is not an integer.
+     */
+    public IntegerKey getIntegerKey(String name)
+    {
+        return (IntegerKey) getKey(name);
+    }   //getIntegerKey
+
+    /**
+     * This method returns the key of a double parameter. It should be called once at init and the key kept.
+     *
+     * @param name specifies the parameter name.
+     * @return key of the parameter.
+     * @throws NoSuchElementException if there is no such parameter.
+     * @throws ClassCastException if the parameter is not a double.
+     */
+    public DoubleKey getDoubleKey(String name)
+    {
+        return (DoubleKey) getKey(name);
+    }   //getDoubleKey
+
+    /**
+     * This method returns the key of a boolean parameter. It should be called once at init and the key kept.
+     *
+     * @param name specifies the parameter name.
+     * @return key of the parameter.
+     * @throws NoSuchElementException if there is no such parameter.
+     * @throws ClassCastException if the parameter is not a boolean.
+     */
+    public BooleanKey getBooleanKey(String name)
+    {
+        return (BooleanKey) getKey(name);
+    }   //getBooleanKey
+
+    /**
+     * This method returns the key of a string parameter. It should be called once at init and the key kept.
+     *
+     * @param name specifies the parameter name.
+     * @return key of the parameter.
+     * @throws NoSuchElementException if there is no such parameter.
+     * @throws ClassCastException if the parameter is not a string.
+     */
+    public StringKey getStringKey(String name)
+    {
+        return (StringKey) getKey(name);
+    }   //getStringKey
+
+    /**
+     * This method returns the value of an integer parameter.
+     *
+     * @param key specifies the key of the parameter.
+     * @return parameter value.
+     */
+    public int getInteger(IntegerKey key)
+    {
+        return values.integers[checkKey(key).slot];
+    }   //getInteger
+
+    /**
+     * This method returns the value of a double parameter.
+     *
+     * @param key specifies the key of the parameter.
+     * @return parameter value.
+     */
+    public double getDouble(DoubleKey key)
+    {
+        return values.doubles[checkKey(key).slot];
+    }   //getDouble
+
+    /**
+     * This method returns the value of a boolean parameter.
+     *
+     * @param key specifies the key of the parameter.
+     * @return parameter value.
+     */
+    public boolean getBoolean(BooleanKey key)
+    {
+        return values.booleans[checkKey(key).slot];
+    }   //getBoolean
+
+    /**
+     * This method returns the value of a string parameter.
+     *
+     * @param key specifies the key of the parameter.
+     * @return parameter value.
+     */
+    public String getString(StringKey key)
+    {
+        return values.strings[checkKey(key).slot];
+    }   //getString
+
+    /**
+     * This method unregisters a file backed configuration so it is no longer reloaded before every OpMode. The
+     * configuration keeps its current values.
+     */
+    public void close()
+    {
+        if (fileName != null)
+        {
+            synchronized (fileBackedConfigs)
+            {
+                if (fileBackedConfigs.get(fileName) == this)
+                {
+                    fileBackedConfigs.remove(fileName);
+                }
+            }
+        }
+    }   //close
+
+    /**
+     * This method reloads the configuration file if it was modified, created or deleted since it was last loaded.
+     * Parameters not in the file get their default values, so if the file was deleted all parameters revert to
+     * their defaults.
+     *
+     * @return true if the values were reloaded, false if there is no file or it did not change.
+     * @throws IllegalArgumentException if the file has an error, in which case no parameter is changed.
+     */
+    public synchronized boolean reloadIfModified()
+    {
+        boolean reloaded = false;
+
+        if (fileName != null)
+        {
+            File file = new File(fileName);
+
+            if (file.isFile())
+            {
+                long modifiedTime = file.lastModified();
+                long length = file.length();
+
+                if (modifiedTime != fileModifiedTime || length != fileLength)
+                {
+                    values = loadFile(file);
+                    fileModifiedTime = modifiedTime;
+                    fileLength = length;
+                    reloaded = true;
+                }
+            }
+            else if (fileLength != -1)
+            {
+                // The file was deleted since it was loaded.
+                values = defaults;
+                fileModifiedTime = 0;
+                fileLength = -1;
+                reloaded = true;
+            }
+        }
+
+        return reloaded;
+    }   //reloadIfModified
+
+    /**
+     * This method reloads the modified files of all file backed configurations. It is called by FtcOpMode before
+     * robotInit so that parameters edited between OpModes take effect without restarting the app. A file with an
+     * error is reported and leaves its configuration unchanged.
+     */
+    public static void reloadAllModified()
+    {
+        TrcConfig[] configs;
+
+        synchronized (fileBackedConfigs)
+        {
+            configs = fileBackedConfigs.values().toArray(new TrcConfig[0]);
+        }
+
+        for (TrcConfig config : configs)
+        {
+            try
+            {
+                if (config.reloadIfModified())
+                {
+                    TrcDbgTrace.globalTraceInfo(moduleName, "Reloaded %s from %s.", config.instanceName, config.fileName);
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                TrcDbgTrace.globalTraceWarn(moduleName, "Failed to reload %s: %s", config.instanceName, e.getMessage());
+            }
+        }
+    }   //reloadAllModified
+
+    /**
+     * This method parses a configuration file into a copy of the default values.
+     *
+     * @param file specifies the configuration file.
+     * @return new values.
+     * @throws IllegalArgumentException if the file has an error.
+     */
+    private Values loadFile(File file)
+    {
+        Values newValues = defaults.copy();
+
+        try (BufferedReader in = new BufferedReader(new FileReader(file)))
+        {
+            String line;
+            int lineNum = 0;
+
+            while ((line = in.readLine()) != null)
+            {
+                lineNum++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                {
+                    continue;
+                }
+
+                int separator = line.indexOf('=');
+                if (separator < 0)
+                {
+                    throw new IllegalArgumentException(file + ":" + lineNum + ": expected name = value.");
+                }
+
+                String name = line.substring(0, separator).trim();
+                String value = line.substring(separator + 1).trim();
+                Key key = keys.get(name);
+                if (key == null)
+                {
+                    throw new IllegalArgumentException(file + ":" + lineNum + ": unknown parameter \"" + name + "\".");
+                }
+
+                try
+                {
+                    if (key instanceof IntegerKey)
+                    {
+                        newValues.integers[key.slot] = Integer.parseInt(value);
+                    }
+                    else if (key instanceof DoubleKey)
+                    {
+                        newValues.doubles[key.slot] = Double.parseDouble(value);
+                    }
+                    else if (key instanceof BooleanKey)
+                    {
+                        if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false"))
+                        {
+                            throw new NumberFormatException("not a boolean");
+                        }
+                        newValues.booleans[key.slot] = Boolean.parseBoolean(value);
+                    }
+                    else
+                    {
+                        newValues.strings[key.slot] = value;
+                    }
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new IllegalArgumentException(
+                        file + ":" + lineNum + ": invalid value \"" + value + "\" for " + name + ".");
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("Failed to read " + file + ": " + e.getMessage());
+        }
+
+        return newValues;
+    }   //loadFile
+
+    /**
+     * This method looks up the key of a parameter.
+     *
+     * @param name specifies the parameter name.
+     * @return key of the parameter.
+     * @throws NoSuchElementException if there is no such parameter.
+     */
+    private Key getKey(String name)
+    {
+        Key key = keys.get(name);
+
+        if (key == null)
+        {
+            throw new NoSuchElementException("\"" + name + "\"" + " not found.");
+        }
+
+        return key;
+    }   //getKey
+
+    /**
+     * This method checks that a key was created by this configuration.
+     *
+     * @param key specifies the key to check.
+     * @return the key.
+     * @throws IllegalArgumentException if the key belongs to a different configuration.
+     */
+    private <T extends Key> T checkKey(T key)
+    {
+        if (key.config != this)
+        {
+            throw new IllegalArgumentException(key + " does not belong to " + instanceName + ".");
+        }
+
+        return key;
+    }   //checkKey
+
+}   //class TrcConfig
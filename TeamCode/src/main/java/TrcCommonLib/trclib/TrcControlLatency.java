@@ -0,0 +1,115 @@
+
+package TrcCommonLib.trclib;
+
+import java.util.Locale;
+
+/**
+ * This class records the latency of a closed loop control chain from the time the feedback sensor was sampled to the
+ * time the output calculated from that sample was written to the actuator. The chain is split at the time the PID
+ * output was calculated so one can tell whether the sample was already stale when the PID used it (e.g. limited by
+ * the odometry or IO thread interval) or whether the output took long to reach the actuator (e.g. limited by the
+ * loop the control task runs on or by the bus write). The latencies are recorded into histograms of the TrcMetrics
+ * registry named "instanceName.latency.sampleToOutput", ".outputToActuation" and ".sampleToActuation", so they can
+ * be queried at runtime and are dumped together with all other metrics.
+ */
+public class TrcControlLatency
+{
+    private final String instanceName;
+    private final TrcMetrics.Histogram sampleToOutput;
+    private final TrcMetrics.Histogram outputToActuation;
+    private final TrcMetrics.Histogram sampleToActuation;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name, typically the name of the actuator.
+     */
+    public TrcControlLatency(String instanceName)
+    {
+        this.instanceName = instanceName;
+        this.sampleToOutput = TrcMetrics.getHistogram(instanceName + ".latency.sampleToOutput");
+        this.outputToActuation = TrcMetrics.getHistogram(instanceName + ".latency.outputToActuation");
+        this.sampleToActuation = TrcMetrics.getHistogram(instanceName + ".latency.sampleToActuation");
+        reset();
+    }   //TrcControlLatency
+
+    /**
+     * This method returns the latency summary in string form with all times in msec.
+     *
+     * @return latency summary in string form.
+     */
+    @Override
+    public String toString()
+    {
+        return String.format(
+            Locale.US, "%s: sampleToOutput={%s}, outputToActuation={%s}, sampleToActuation={%s}",
+            instanceName, sampleToOutput, outputToActuation, sampleToActuation);
+    }   //toString
+
+    /**
+     * This method clears all recorded latencies.
+     */
+    public void reset()
+    {
+        sampleToOutput.reset();
+        outputToActuation.reset();
+        sampleToActuation.reset();
+    }   //reset
+
+    /**
+     * This method records one pass through the control chain. All timestamps must come from
+     * TrcTimer.getCurrentTime.
+     *
+     * @param sampleTime specifies the time the feedback sensor was sampled.
+     * @param outputTime specifies the time the control output was calculated from the sample.
+     * @param actuationTime specifies the time the output was written to the actuator.
+     */
+    public void record(double sampleTime, double outputTime, double actuationTime)
+    {
+        sampleToOutput.record((long) ((outputTime - sampleTime)*1000000000L));
+        outputToActuation.record((long) ((actuationTime - outputTime)*1000000000L));
+        sampleToActuation.record((long) ((actuationTime - sampleTime)*1000000000L));
+    }   //record
+
+    /**
+     * This method returns the histogram of the time from sampling the sensor to calculating the output.
+     *
+     * @return sample to output latency histogram.
+     */
+    public TrcMetrics.Histogram getSampleToOutputHistogram()
+    {
+        return sampleToOutput;
+    }   //getSampleToOutputHistogram
+
+    /**
+     * This method returns the histogram of the time from calculating the output to writing it to the actuator.
+     *
+     * @return output to actuation latency histogram.
+     */
+    public TrcMetrics.Histogram getOutputToActuationHistogram()
+    {
+        return outputToActuation;
+    }   //getOutputToActuationHistogram
+
+    /**
+     * This method returns the histogram of the end-to-end time from sampling the sensor to writing the output
+     * calculated from that sample to the actuator.
+     *
+     * @return sample to actuation latency histogram.
+     */
+    public TrcMetrics.Histogram getSampleToActuationHistogram()
+    {
+        return sampleToActuation;
+    }   //getSampleToActuationHistogram
+
+    /**
+     * This method prints the latency summary using the given tracer.
+     *
+     * @param tracer specifies the tracer to be used to print the info.
+     */
+    public void printLatency(TrcDbgTrace tracer)
+    {
+        tracer.traceInfo(instanceName, "Control latency (msec): " + this);
+    }   //printLatency
+
+}   //class TrcControlLatency
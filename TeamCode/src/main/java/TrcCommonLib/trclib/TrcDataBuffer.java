@@ -1,18 +1,39 @@
 
 package TrcCommonLib.trclib;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 
 /**
  * This class implements a thread-safe data buffer for recording double values. It provides methods to access data
  * in the buffer. It also provides methods to return minimum, maximum and average of the data in the buffer.
+ * <p>
+ * The data is kept in a primitive ring buffer, so adding a value to a full buffer overwrites the oldest value
+ * without shifting or allocating anything. The average comes from a running sum, and the minimum and maximum come
+ * from monotonic deques of the values that can still become the minimum or maximum, so all of them are O(1).
  */
 public class TrcDataBuffer
 {
+    private static final int DEF_CAPACITY = 16;
+
     private final String instanceName;
     private final int bufferSize;
-    private final ArrayList<Double> bufferedData = new ArrayList<>();
+    // Ring buffer of the data, head is the index of the oldest value.
+    private double[] data;
+    private int head = 0;
+    private int count = 0;
+    // Sequence number of the oldest value, the value at data[head].
+    private long headSeq = 0;
+    private double sum = 0.0;
+    // Number of values evicted since the sum was last recalculated from scratch.
+    private int evictCount = 0;
+    // Monotonic deques of sequence numbers: values are increasing from the front of minDeque and decreasing from
+    // the front of maxDeque, so the front is always the minimum or maximum.
+    private long[] minDeque;
+    private int minHead = 0;
+    private int minCount = 0;
+    private long[] maxDeque;
+    private int maxHead = 0;
+    private int maxCount = 0;
 
     /**
      * Constructor: Create an instance of the object.
@@ -22,8 +43,13 @@ public class TrcDataBuffer
      */
     public TrcDataBuffer(String instanceName, int bufferSize)
     {
+        int capacity = bufferSize > 0? bufferSize: DEF_CAPACITY;
+
         this.instanceName = instanceName;
         this.bufferSize = bufferSize;
+        this.data = new double[capacity];
+        this.minDeque = new long[capacity];
+        this.maxDeque = new long[capacity];
     }   //TrcDataBuffer
 
     /**
@@ -36,9 +62,11 @@ public class TrcDataBuffer
     {
         String str;
 
-        synchronized (bufferedData)
+        synchronized (this)
         {
-            str = instanceName + "[" + bufferSize + "]=" + Arrays.toString(bufferedData.toArray());
+            double[] values = new double[count];
+            getBufferedData(values);
+            str = instanceName + "[" + bufferSize + "]=" + Arrays.toString(values);
         }
 
         return str;
@@ -47,30 +75,65 @@ public class TrcDataBuffer
     /**
      * This method clears the buffer.
      */
-    public void clear()
+    public synchronized void clear()
     {
-        synchronized (bufferedData)
-        {
-            bufferedData.clear();
-        }
+        head = 0;
+        count = 0;
+        headSeq = 0;
+        sum = 0.0;
+        evictCount = 0;
+        minHead = minCount = 0;
+        maxHead = maxCount = 0;
     }   //clear
 
+    /**
+     * This method returns the number of values in the buffer.
+     *
+     * @return number of values in the buffer.
+     */
+    public synchronized int getSize()
+    {
+        return count;
+    }   //getSize
+
     /**
      * This method adds a value to the end of the buffer.
      *
      * @param value specifies the value to be added to the buffer.
      */
-    public void addValue(double value)
+    public synchronized void addValue(double value)
     {
-        synchronized(bufferedData)
+        if (count == data.length)
         {
-            bufferedData.add(value);
-            if (bufferSize > 0 && bufferedData.size() > bufferSize)
+            if (bufferSize > 0)
             {
                 // We have a limit on buffer size and we are exceeding it, remove the data at the beginning.
-                bufferedData.remove(0);
+                removeOldestValue();
+            }
+            else
+            {
+                grow();
             }
         }
+
+        long seq = headSeq + count;
+        data[wrap(head + count, data.length)] = value;
+        count++;
+        sum += value;
+
+        while (minCount > 0 && getValueBySeq(minDeque[wrap(minHead + minCount - 1, minDeque.length)]) >= value)
+        {
+            minCount--;
+        }
+        minDeque[wrap(minHead + minCount, minDeque.length)] = seq;
+        minCount++;
+
+        while (maxCount > 0 && getValueBySeq(maxDeque[wrap(maxHead + maxCount - 1, maxDeque.length)]) <= value)
+        {
+            maxCount--;
+        }
+        maxDeque[wrap(maxHead + maxCount, maxDeque.length)] = seq;
+        maxCount++;
     }   //addValue
 
     /**
@@ -80,19 +143,9 @@ public class TrcDataBuffer
      *
      * @return indexed value.
      */
-    public Double getValue(int index)
+    public synchronized Double getValue(int index)
     {
-        Double value = null;
-
-        synchronized (bufferedData)
-        {
-            if (index < bufferedData.size())
-            {
-                value = bufferedData.get(index);
-            }
-        }
-
-        return value;
+        return index >= 0 && index < count? data[wrap(head + index, data.length)]: null;
     }   //getValue
 
     /**
@@ -100,19 +153,20 @@ public class TrcDataBuffer
      *
      * @return last value in the buffer, null if the buffer is empty.
      */
-    public Double getLastValue()
+    public synchronized Double getLastValue()
     {
-        Double value = null;
-
-        synchronized (bufferedData)
-        {
-            if (!bufferedData.isEmpty())
-            {
-                value = bufferedData.get(bufferedData.size() - 1);
-            }
-        }
+        return count > 0? getLastValue(0.0): null;
+    }   //getLastValue
 
-        return value;
+    /**
+     * This method gets the last value in the buffer without boxing it.
+     *
+     * @param defValue specifies the value to return if the buffer is empty.
+     * @return last value in the buffer, defValue if the buffer is empty.
+     */
+    public synchronized double getLastValue(double defValue)
+    {
+        return count > 0? data[wrap(head + count - 1, data.length)]: defValue;
     }   //getLastValue
 
     /**
@@ -124,45 +178,58 @@ public class TrcDataBuffer
     {
         Double[] data = null;
 
-        synchronized (bufferedData)
+        synchronized (this)
         {
-            int arraySize = bufferedData.size();
-
-            if (arraySize > 0)
+            if (count > 0)
             {
-                data = new Double[arraySize];
-                bufferedData.toArray(data);
+                data = new Double[count];
+                for (int i = 0; i < count; i++)
+                {
+                    data[i] = this.data[wrap(head + i, this.data.length)];
+                }
             }
         }
 
         return data;
     }   //getBufferedData
 
+    /**
+     * This method copies the buffered values, oldest first, into the given array. If the array is shorter than the
+     * buffer, only the oldest values that fit are copied.
+     *
+     * @param buffer specifies the array to copy the values into.
+     * @return number of values copied.
+     */
+    public synchronized int getBufferedData(double[] buffer)
+    {
+        int numValues = Math.min(count, buffer.length);
+        int firstPart = Math.min(numValues, data.length - head);
+
+        System.arraycopy(data, head, buffer, 0, firstPart);
+        System.arraycopy(data, 0, buffer, firstPart, numValues - firstPart);
+
+        return numValues;
+    }   //getBufferedData
+
     /**
      * This method returns the minimum value in the buffer.
      *
      * @return minimum value in the buffer, null if buffer is empty.
      */
-    public Double getMinimumValue()
+    public synchronized Double getMinimumValue()
     {
-        Double minValue = null;
-
-        synchronized (bufferedData)
-        {
-            for (double value : bufferedData)
-            {
-                if (minValue == null)
-                {
-                    minValue = value;
-                }
-                else if (value < minValue)
-                {
-                    minValue = value;
-                }
-            }
-        }
+        return count > 0? getMinimumValue(0.0): null;
+    }   //getMinimumValue
 
-        return minValue;
+    /**
+     * This method returns the minimum value in the buffer without boxing it.
+     *
+     * @param defValue specifies the value to return if the buffer is empty.
+     * @return minimum value in the buffer, defValue if buffer is empty.
+     */
+    public synchronized double getMinimumValue(double defValue)
+    {
+        return count > 0? getValueBySeq(minDeque[minHead]): defValue;
     }   //getMinimumValue
 
     /**
@@ -170,26 +237,20 @@ public class TrcDataBuffer
      *
      * @return maximum value in the buffer, null if buffer is empty.
      */
-    public Double getMaximumValue()
+    public synchronized Double getMaximumValue()
     {
-        Double maxValue = null;
-
-        synchronized (bufferedData)
-        {
-            for (double value : bufferedData)
-            {
-                if (maxValue == null)
-                {
-                    maxValue = value;
-                }
-                else if (value > maxValue)
-                {
-                    maxValue = value;
-                }
-            }
-        }
+        return count > 0? getMaximumValue(0.0): null;
+    }   //getMaximumValue
 
-        return maxValue;
+    /**
+     * This method returns the maximum value in the buffer without boxing it.
+     *
+     * @param defValue specifies the value to return if the buffer is empty.
+     * @return maximum value in the buffer, defValue if buffer is empty.
+     */
+    public synchronized double getMaximumValue(double defValue)
+    {
+        return count > 0? getValueBySeq(maxDeque[maxHead]): defValue;
     }   //getMaximumValue
 
     /**
@@ -197,21 +258,98 @@ public class TrcDataBuffer
      *
      * @return average value calculated.
      */
-    public double getAverageValue()
+    public synchronized double getAverageValue()
     {
-        int numValues = 0;
-        double sum = 0.0;
+        return count == 0? 0.0: sum/count;
+    }   //getAverageValue
+
+    /**
+     * This method removes the oldest value from the full buffer and drops it from the running sum and the deques.
+     */
+    private void removeOldestValue()
+    {
+        sum -= data[head];
+        if (minDeque[minHead] == headSeq)
+        {
+            minHead = wrap(minHead + 1, minDeque.length);
+            minCount--;
+        }
+
+        if (maxDeque[maxHead] == headSeq)
+        {
+            maxHead = wrap(maxHead + 1, maxDeque.length);
+            maxCount--;
+        }
 
-        synchronized (bufferedData)
+        head = wrap(head + 1, data.length);
+        headSeq++;
+        count--;
+
+        if (++evictCount >= data.length)
         {
-            for (int i = 0; i < bufferedData.size(); i++)
+            // Subtracting evicted values accumulates rounding error, recalculate the sum once per buffer turnover
+            // so it stays O(1) on average.
+            sum = 0.0;
+            for (int i = 0; i < count; i++)
             {
-                sum += bufferedData.get(i);
-                numValues++;
+                sum += data[wrap(head + i, data.length)];
             }
+            evictCount = 0;
         }
+    }   //removeOldestValue
 
-        return numValues == 0? 0.0: sum/numValues;
-    }   //getAverageValue
+    /**
+     * This method doubles the capacity of an unlimited buffer, moving the oldest value to the start of the arrays.
+     */
+    private void grow()
+    {
+        int capacity = data.length*2;
+        double[] newData = new double[capacity];
+        long[] newMinDeque = new long[capacity];
+        long[] newMaxDeque = new long[capacity];
+
+        for (int i = 0; i < count; i++)
+        {
+            newData[i] = data[wrap(head + i, data.length)];
+        }
+
+        for (int i = 0; i < minCount; i++)
+        {
+            newMinDeque[i] = minDeque[wrap(minHead + i, minDeque.length)];
+        }
+
+        for (int i = 0; i < maxCount; i++)
+        {
+            newMaxDeque[i] = maxDeque[wrap(maxHead + i, maxDeque.length)];
+        }
+
+        data = newData;
+        minDeque = newMinDeque;
+        maxDeque = newMaxDeque;
+        head = minHead = maxHead = 0;
+    }   //grow
+
+    /**
+     * This method returns the value with the given sequence number, which must still be in the buffer.
+     *
+     * @param seq specifies the sequence number of the value.
+     * @return value with the sequence number.
+     */
+    private double getValueBySeq(long seq)
+    {
+        return data[wrap(head + (int) (seq - headSeq), data.length)];
+    }   //getValueBySeq
+
+    /**
+     * This method wraps an index that is at most one capacity past the end of a ring buffer.
+     *
+     * @param index specifies the index to wrap.
+     * @param capacity specifies the capacity of the ring buffer.
+     * @return wrapped index.
+     */
+    private static int wrap(int index, int capacity)
+    {
+        return index >= capacity? index - capacity: index;
+    }   //wrap
 
 }   //class TrcDataBuffer
@@ -99,6 +99,17 @@ public class TrcDataIntegrator<D>
         }
     }   //setEnabled
 
+    /**
+     * This method returns the task object of the integrator task so that consumers of the integrated data can
+     * declare that they run after it.
+     *
+     * @return integrator task object.
+     */
+    TrcTaskMgr.TaskObject getTaskObject()
+    {
+        return integratorTaskObj;
+    }   //getTaskObject
+
     /**
      * This method resets the indexed integratedData and doubleIntegratedData.
      *
@@ -2,7 +2,15 @@
 package TrcCommonLib.trclib;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class implements the Debug Tracer.
@@ -52,257 +60,1894 @@ public class TrcDbgTrace
 
     }   //interface DbgLog
 
+    /**
+     * This interface is implemented by the caller to build a message lazily. It is only called if the message level
+     * is enabled. A lambda that does not capture any variables is a singleton, so passing one together with its
+     * argument costs no allocation at all when the level is disabled. The caller passes its method name along with
+     * the formatter, so formatter messages never walk the call stack. The formatter class cannot identify the call
+     * site since R8 may merge the classes of lambdas with the same signature.
+     *
+     * @param <T> specifies the type of the message argument.
+     */
+    public interface MsgFormatter<T>
+    {
+        /**
+         * This method is called to build the message text.
+         *
+         * @param arg specifies the message argument.
+         * @return message text.
+         */
+        String format(T arg);
+
+    }   //interface MsgFormatter
+
+    /**
+     * This class implements a 1-in-N message sampler.
+     */
+    private static class Sampler
+    {
+        private final int rate;
+        private final AtomicLong count = new AtomicLong();
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param rate specifies the sampling rate, keeping one message out of every rate messages.
+         */
+        Sampler(int rate)
+        {
+            this.rate = rate;
+        }   //Sampler
+
+        /**
+         * This method decides if the next message is kept. Messages that are not kept are counted as sampled out.
+         *
+         * @return true if the message is kept, false if it is sampled out.
+         */
+        boolean sample()
+        {
+            boolean keep = count.getAndIncrement() % rate == 0;
+
+            if (!keep)
+            {
+                sampledOutCount.incrementAndGet();
+            }
+
+            return keep;
+        }   //sample
+
+    }   //class Sampler
+
+    /**
+     * This class specifies a rate limit: the maximum number of messages per second and whether identical consecutive
+     * messages are collapsed.
+     */
+    private static class RateLimit
+    {
+        final int maxMsgsPerSecond;
+        final boolean collapseRepeats;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param maxMsgsPerSecond specifies the maximum number of messages per second, 0 for no limit.
+         * @param collapseRepeats specifies true to collapse identical consecutive messages.
+         */
+        RateLimit(int maxMsgsPerSecond, boolean collapseRepeats)
+        {
+            this.maxMsgsPerSecond = maxMsgsPerSecond;
+            this.collapseRepeats = collapseRepeats;
+        }   //RateLimit
+
+    }   //class RateLimit
+
+    /**
+     * This class implements the rate limiter of one call site. It admits at most maxMsgsPerSecond messages in every
+     * one second window and, if collapseRepeats is set, drops messages identical to the last admitted one. Dropped
+     * messages are summarized with a "Last message repeated k times" or "Suppressed n messages" message when the
+     * call site traces a different message or when the next window starts. The summary messages are queued under
+     * the lock and written after it is released, so a slow trace log does not block other threads of the call site.
+     */
+    private static class RateLimiter
+    {
+        private static final long WINDOW_NANOS = 1000000000L;
+
+        private final RateLimit rateLimit;
+        private final String callerInstance;
+        private final String methodName;
+        private final MsgLevel level;
+        private final ArrayList<String> pendingSummaries = new ArrayList<>();
+        private long windowStart = 0;
+        private int windowCount = 0;
+        private long suppressedCount = 0;
+        private long repeatCount = 0;
+        private Object lastKey = null;
+        private int lastArgCount = -1;
+        private double lastArg0, lastArg1, lastArg2, lastArg3, lastArg4, lastArg5;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param rateLimit specifies the rate limit.
+         * @param callerInstance specifies the name to identify the caller.
+         * @param methodName specifies the caller method name, null if none.
+         * @param level specifies the message level.
+         */
+        RateLimiter(RateLimit rateLimit, String callerInstance, String methodName, MsgLevel level)
+        {
+            this.rateLimit = rateLimit;
+            this.callerInstance = callerInstance;
+            this.methodName = methodName;
+            this.level = level;
+        }   //RateLimiter
+
+        /**
+         * This method checks if the rate limiter collapses repeats, in which case admit needs the message identity.
+         *
+         * @return true if identical consecutive messages are collapsed, false otherwise.
+         */
+        boolean collapsesRepeats()
+        {
+            return rateLimit.collapseRepeats;
+        }   //collapsesRepeats
+
+        /**
+         * This method decides if a message is traced.
+         *
+         * @param key specifies the message identity used to detect repeats (the text, or the immutable arguments of
+         *        a format message), null if the rate limiter does not collapse repeats.
+         * @return true if the message is traced, false if it is dropped.
+         */
+        boolean admit(Object key)
+        {
+            boolean admitted;
+            boolean summarize;
+
+            synchronized (this)
+            {
+                boolean repeat = rateLimit.collapseRepeats && key.equals(lastKey);
+
+                admitted = admitWorker(repeat);
+                if (!repeat)
+                {
+                    lastKey = admitted? key: null;
+                }
+                summarize = !pendingSummaries.isEmpty();
+            }
+
+            if (summarize)
+            {
+                writeSummaries();
+            }
+
+            return admitted;
+        }   //admit
+
+        /**
+         * This method decides if a call site message is traced.
+         *
+         * @param argCount specifies the number of valid arguments.
+         * @param arg0 specifies argument 0.
+         * @param arg1 specifies argument 1.
+         * @param arg2 specifies argument 2.
+         * @param arg3 specifies argument 3.
+         * @param arg4 specifies argument 4.
+         * @param arg5 specifies argument 5.
+         * @return true if the message is traced, false if it is dropped.
+         */
+        boolean admit(int argCount, double arg0, double arg1, double arg2, double arg3, double arg4, double arg5)
+        {
+            boolean admitted;
+            boolean summarize;
+
+            synchronized (this)
+            {
+                boolean repeat =
+                    rateLimit.collapseRepeats && argCount == lastArgCount && arg0 == lastArg0 && arg1 == lastArg1 &&
+                    arg2 == lastArg2 && arg3 == lastArg3 && arg4 == lastArg4 && arg5 == lastArg5;
+
+                admitted = admitWorker(repeat);
+                if (admitted)
+                {
+                    lastArgCount = argCount;
+                    lastArg0 = arg0;
+                    lastArg1 = arg1;
+                    lastArg2 = arg2;
+                    lastArg3 = arg3;
+                    lastArg4 = arg4;
+                    lastArg5 = arg5;
+                }
+                else if (!repeat)
+                {
+                    lastArgCount = -1;
+                }
+                summarize = !pendingSummaries.isEmpty();
+            }
+
+            if (summarize)
+            {
+                writeSummaries();
+            }
+
+            return admitted;
+        }   //admit
+
+        /**
+         * This method writes the pending summary messages. It is called when the trace log is closed so the counts
+         * of the last window are not lost.
+         */
+        void flush()
+        {
+            synchronized (this)
+            {
+                queueSummaries();
+            }
+            writeSummaries();
+        }   //flush
+
+        /**
+         * This method applies the rate limit to a message. The caller must hold the lock.
+         *
+         * @param repeat specifies true if the message is identical to the last traced message.
+         * @return true if the message is traced, false if it is dropped.
+         */
+        private boolean admitWorker(boolean repeat)
+        {
+            long currNanoTime = TrcTimer.getNanoTime();
+            boolean admitted = false;
+
+            if (currNanoTime - windowStart >= WINDOW_NANOS)
+            {
+                queueSummaries();
+                windowStart = currNanoTime;
+                windowCount = 0;
+            }
+
+            if (repeat)
+            {
+                repeatCount++;
+            }
+            else
+            {
+                if (repeatCount > 0)
+                {
+                    queueRepeatSummary();
+                }
+
+                if (rateLimit.maxMsgsPerSecond > 0 && windowCount >= rateLimit.maxMsgsPerSecond)
+                {
+                    suppressedCount++;
+                }
+                else
+                {
+                    windowCount++;
+                    admitted = true;
+                }
+            }
+
+            return admitted;
+        }   //admitWorker
+
+        /**
+         * This method queues the repeat and suppressed message summaries if there are any. The caller must hold the
+         * lock.
+         */
+        private void queueSummaries()
+        {
+            if (repeatCount > 0)
+            {
+                queueRepeatSummary();
+            }
+
+            if (suppressedCount > 0)
+            {
+                pendingSummaries.add(
+                    "Suppressed " + suppressedCount + " messages (limit=" + rateLimit.maxMsgsPerSecond + "/sec).");
+                suppressedCount = 0;
+            }
+        }   //queueSummaries
+
+        /**
+         * This method queues the repeat summary. The caller must hold the lock.
+         */
+        private void queueRepeatSummary()
+        {
+            pendingSummaries.add("Last message repeated " + repeatCount + " times.");
+            repeatCount = 0;
+        }   //queueRepeatSummary
+
+        /**
+         * This method writes the queued summary messages. The caller must not hold the lock.
+         */
+        private void writeSummaries()
+        {
+            String[] summaries;
+
+            synchronized (this)
+            {
+                summaries = pendingSummaries.toArray(new String[0]);
+                pendingSummaries.clear();
+            }
+
+            for (String summary: summaries)
+            {
+                emitMsg(callerInstance, methodName, level, summary);
+            }
+        }   //writeSummaries
+
+    }   //class RateLimiter
+
+    /**
+     * This class identifies the rate limiter of a call site by the caller instance, the message level and either
+     * the caller method name or, for format messages, the XML name and the format string. Format messages are
+     * keyed by their format string so that their rate limit is checked without walking the call stack.
+     */
+    private static final class SiteKey
+    {
+        private final String callerInstance;
+        private final MsgLevel level;
+        private final String name;
+        private final String format;
+        private final int hashCode;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param callerInstance specifies the name to identify the caller.
+         * @param level specifies the message level.
+         * @param name specifies the caller method name, or the XML name of a format message, can be null.
+         * @param format specifies the format string of a format message, null otherwise.
+         */
+        SiteKey(String callerInstance, MsgLevel level, String name, String format)
+        {
+            int hash = callerInstance.hashCode()*31 + level.hashCode();
+
+            hash = hash*31 + (name != null? name.hashCode(): 0);
+            hash = hash*31 + (format != null? format.hashCode(): 0);
+            this.callerInstance = callerInstance;
+            this.level = level;
+            this.name = name;
+            this.format = format;
+            this.hashCode = hash;
+        }   //SiteKey
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            else if (!(obj instanceof SiteKey))
+            {
+                return false;
+            }
+            else
+            {
+                SiteKey key = (SiteKey) obj;
+                return hashCode == key.hashCode && level == key.level &&
+                       callerInstance.equals(key.callerInstance) && Objects.equals(name, key.name) &&
+                       Objects.equals(format, key.format);
+            }
+        }   //equals
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }   //hashCode
+
+    }   //class SiteKey
+
+    /**
+     * This class describes an interned trace call site: the caller, the message level and the format string of a
+     * message whose arguments are all numeric. Tracing through a call site with a binary trace log open only copies
+     * the raw arguments into the log, the message is formatted offline by the TrcBinaryTraceLog decoder. Integer
+     * conversions (%d, %o, %x) take integer values, %b takes 0 or 1, %c takes a character code and all other
+     * conversions take the value as a double.
+     */
+    public static class CallSite
+    {
+        private final int id;
+        private final String callerInstance;
+        private final String methodName;
+        private final MsgLevel level;
+        private final String eventName;
+        private final String format;
+        private final char[] conversions;
+        private volatile Sampler sampler = null;
+        private volatile RateLimiter rateLimiter = null;
+        private RateLimit rateLimit = null;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param id specifies the call site ID.
+         * @param callerInstance specifies the name to identify the caller.
+         * @param methodName specifies the caller method name.
+         * @param level specifies the message level.
+         * @param eventName specifies the event name if the call site logs an XML event, null otherwise.
+         * @param format specifies the format string of the message.
+         */
+        private CallSite(
+            int id, String callerInstance, String methodName, MsgLevel level, String eventName, String format)
+        {
+            this.id = id;
+            this.callerInstance = callerInstance;
+            this.methodName = methodName;
+            this.level = level;
+            this.eventName = eventName;
+            this.format = format;
+            this.conversions = parseConversions(format);
+        }   //CallSite
+
+        /**
+         * This method returns the call site ID.
+         *
+         * @return call site ID.
+         */
+        public int getId()
+        {
+            return id;
+        }   //getId
+
+        /**
+         * This method returns the message level of the call site.
+         *
+         * @return message level.
+         */
+        public MsgLevel getLevel()
+        {
+            return level;
+        }   //getLevel
+
+        /**
+         * This method sets the sampling rate of the call site so that only one out of every rate messages is traced.
+         *
+         * @param rate specifies the sampling rate, 1 or less to trace every message.
+         * @return this call site for chaining.
+         */
+        public CallSite setSamplingRate(int rate)
+        {
+            sampler = rate > 1? new Sampler(rate): null;
+            return this;
+        }   //setSamplingRate
+
+        /**
+         * This method sets the rate limit of the call site, overriding the rate limit set by setRateLimit.
+         *
+         * @param maxMsgsPerSecond specifies the maximum number of messages per second, 0 for no limit.
+         * @param collapseRepeats specifies true to collapse identical consecutive messages into a summary message.
+         * @return this call site for chaining.
+         */
+        public synchronized CallSite setRateLimit(int maxMsgsPerSecond, boolean collapseRepeats)
+        {
+            rateLimit = new RateLimit(maxMsgsPerSecond, collapseRepeats);
+            rateLimiter = maxMsgsPerSecond > 0 || collapseRepeats?
+                new RateLimiter(rateLimit, callerInstance, methodName, level): null;
+            return this;
+        }   //setRateLimit
+
+        /**
+         * This method returns the rate limiter of the call site, creating it the first time if the call site is
+         * covered by a rate limit set by setRateLimit.
+         *
+         * @return rate limiter, null if the call site is not rate limited.
+         */
+        private RateLimiter getRateLimiter()
+        {
+            RateLimiter limiter = rateLimiter;
+
+            if (limiter == null && rateLimitingEnabled)
+            {
+                synchronized (this)
+                {
+                    if (rateLimit == null && rateLimiter == null)
+                    {
+                        RateLimit limit = getRateLimit(callerInstance, methodName);
+
+                        if (limit != null)
+                        {
+                            rateLimiter = new RateLimiter(limit, callerInstance, methodName, level);
+                        }
+                    }
+                    limiter = rateLimiter;
+                }
+            }
+
+            return limiter;
+        }   //getRateLimiter
+
+        /**
+         * This method discards the rate limiter created from a rate limit set by setRateLimit so that it is created
+         * again with the new rate limit.
+         */
+        private synchronized void resetRateLimiter()
+        {
+            if (rateLimit == null)
+            {
+                rateLimiter = null;
+            }
+        }   //resetRateLimiter
+
+        /**
+         * This method returns the call site in string form.
+         *
+         * @return call site in string form.
+         */
+        @Override
+        public String toString()
+        {
+            return id + ":" + callerInstance + "." + methodName + "_" + level;
+        }   //toString
+
+        /**
+         * This method formats a message of this call site in the same format as the other trace messages.
+         *
+         * @param timestamp specifies the mode elapsed time of the message.
+         * @param argCount specifies the number of valid arguments.
+         * @param args specifies the raw arguments.
+         * @return formatted message.
+         */
+        public String formatMessage(double timestamp, int argCount, double[] args)
+        {
+            Object[] values = new Object[Math.min(argCount, args.length)];
+
+            for (int i = 0; i < values.length; i++)
+            {
+                char conversion = i < conversions.length? conversions[i]: 'f';
+
+                switch (conversion)
+                {
+                    case 'd': case 'o': case 'x': case 'X':
+                        values[i] = (long) args[i];
+                        break;
+
+                    case 'c': case 'C':
+                        values[i] = (char) args[i];
+                        break;
+
+                    case 'b': case 'B':
+                        values[i] = args[i] != 0.0;
+                        break;
+
+                    default:
+                        values[i] = args[i];
+                        break;
+                }
+            }
+
+            String text = String.format(format, values);
+            if (eventName != null)
+            {
+                text = "<Event name=\"" + eventName + "\" time=\"" + timestamp + "\" " + text + " />";
+            }
+
+            return callerInstance + "." + methodName + "_" + level + " [" + timestamp + "] " + text;
+        }   //formatMessage
+
+        /**
+         * This method returns the definition of the call site that is written to the binary trace log.
+         *
+         * @return call site definition.
+         */
+        String getDefinition()
+        {
+            return level + "\n" + callerInstance + "\n" + methodName + "\n" + (eventName != null? eventName: "") +
+                   "\n" + format;
+        }   //getDefinition
+
+        /**
+         * This method creates a call site from its definition read back from a binary trace log.
+         *
+         * @param id specifies the call site ID.
+         * @param definition specifies the call site definition.
+         * @return call site.
+         */
+        static CallSite fromDefinition(int id, String definition)
+        {
+            String[] fields = definition.split("\n", 5);
+
+            if (fields.length != 5)
+            {
+                throw new IllegalArgumentException("Invalid call site definition: " + definition);
+            }
+
+            return new CallSite(
+                id, fields[1], fields[2], MsgLevel.valueOf(fields[0]), fields[3].isEmpty()? null: fields[3],
+                fields[4]);
+        }   //fromDefinition
+
+        /**
+         * This method parses the argument conversion characters out of a format string.
+         *
+         * @param format specifies the format string.
+         * @return array of the conversion characters of the arguments in order.
+         */
+        private static char[] parseConversions(String format)
+        {
+            StringBuilder sb = new StringBuilder();
+
+            for (int i = 0; i < format.length(); i++)
+            {
+                if (format.charAt(i) == '%')
+                {
+                    // Skip the argument index, flags, width and precision.
+                    i++;
+                    while (i < format.length() && "0123456789$-#+ ,(.<".indexOf(format.charAt(i)) >= 0)
+                    {
+                        i++;
+                    }
+
+                    if (i < format.length() && format.charAt(i) != '%' && format.charAt(i) != 'n')
+                    {
+                        sb.append(format.charAt(i));
+                    }
+                }
+            }
+
+            if (sb.length() > TrcBinaryTraceLog.MAX_ARGS)
+            {
+                throw new IllegalArgumentException(
+                    "Call site format has more than " + TrcBinaryTraceLog.MAX_ARGS + " arguments: " + format);
+            }
+
+            return sb.toString().toCharArray();
+        }   //parseConversions
+
+    }   //class CallSite
+
+    /**
+     * This class holds a trace message whose formatting is deferred to the trace logger thread. It keeps either the
+     * format string with its immutable arguments, the raw primitive arguments of a call site, or an already composed
+     * message.
+     */
+    static final class DeferredMsg
+    {
+        private final MsgLevel level;
+        private final String callerInstance;
+        private final String methodName;
+        private final double timestamp;
+        private final String xmlTag;
+        private final String xmlName;
+        private final String format;
+        private final Object[] args;
+        private final CallSite site;
+        private final int argCount;
+        private final double arg0, arg1, arg2, arg3, arg4, arg5;
+
+        /**
+         * Constructor: Creates an instance of a deferred format message.
+         *
+         * @param level specifies the message level.
+         * @param callerInstance specifies the name to identify the caller.
+         * @param methodName specifies the caller method name, null if none.
+         * @param timestamp specifies the mode elapsed time of the message.
+         * @param xmlTag specifies the XML tag ("Info" or "Event") if the message is an XML entry, null otherwise.
+         * @param xmlName specifies the name attribute of the XML entry, null if not an XML entry.
+         * @param format specifies the format string of the message.
+         * @param args specifies the message arguments, null if format is the plain message text.
+         */
+        DeferredMsg(
+            MsgLevel level, String callerInstance, String methodName, double timestamp, String xmlTag,
+            String xmlName, String format, Object[] args)
+        {
+            this.level = level;
+            this.callerInstance = callerInstance;
+            this.methodName = methodName;
+            this.timestamp = timestamp;
+            this.xmlTag = xmlTag;
+            this.xmlName = xmlName;
+            this.format = format;
+            this.args = args;
+            this.site = null;
+            this.argCount = 0;
+            this.arg0 = this.arg1 = this.arg2 = this.arg3 = this.arg4 = this.arg5 = 0.0;
+        }   //DeferredMsg
+
+        /**
+         * Constructor: Creates an instance of a deferred call site message.
+         *
+         * @param site specifies the call site.
+         * @param timestamp specifies the mode elapsed time of the message.
+         * @param argCount specifies the number of valid arguments.
+         * @param arg0 specifies argument 0.
+         * @param arg1 specifies argument 1.
+         * @param arg2 specifies argument 2.
+         * @param arg3 specifies argument 3.
+         * @param arg4 specifies argument 4.
+         * @param arg5 specifies argument 5.
+         */
+        DeferredMsg(
+            CallSite site, double timestamp, int argCount, double arg0, double arg1, double arg2, double arg3,
+            double arg4, double arg5)
+        {
+            this.level = site.level;
+            this.callerInstance = null;
+            this.methodName = null;
+            this.timestamp = timestamp;
+            this.xmlTag = null;
+            this.xmlName = null;
+            this.format = null;
+            this.args = null;
+            this.site = site;
+            this.argCount = argCount;
+            this.arg0 = arg0;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+            this.arg3 = arg3;
+            this.arg4 = arg4;
+            this.arg5 = arg5;
+        }   //DeferredMsg
+
+        /**
+         * Constructor: Creates an instance of an already composed message.
+         *
+         * @param level specifies the message level.
+         * @param msg specifies the composed message.
+         */
+        DeferredMsg(MsgLevel level, String msg)
+        {
+            this(level, null, null, 0.0, null, null, msg, null);
+        }   //DeferredMsg
+
+        /**
+         * This method returns the message level.
+         *
+         * @return message level.
+         */
+        MsgLevel getLevel()
+        {
+            return level;
+        }   //getLevel
+
+        /**
+         * This method formats and composes the message.
+         *
+         * @return composed message.
+         */
+        String compose()
+        {
+            String msg;
+
+            if (site != null)
+            {
+                msg = site.formatMessage(timestamp, argCount, new double[] {arg0, arg1, arg2, arg3, arg4, arg5});
+            }
+            else if (callerInstance == null)
+            {
+                msg = format;
+            }
+            else
+            {
+                String text = args != null? String.format(format, args): format;
+
+                if ("Event".equals(xmlTag))
+                {
+                    text = "<Event name=\"" + xmlName + "\" time=\"" + timestamp + "\" " + text + " />";
+                }
+                else if (xmlTag != null)
+                {
+                    text = "<" + xmlTag + " name=\"" + xmlName + "\" " + text + " />";
+                }
+                msg = composeMsg(callerInstance, methodName, level, timestamp, text);
+            }
+
+            return msg;
+        }   //compose
+
+        /**
+         * This method is called on the trace logger thread to compose the message and print it to the debug log.
+         *
+         * @return composed message to be written to the trace log.
+         */
+        String emit()
+        {
+            String msg = compose();
+            dbgLog.msg(level, msg + "\n");
+            return msg;
+        }   //emit
+
+    }   //class DeferredMsg
+
+    private static final ArrayList<CallSite> callSites = new ArrayList<>();
+    private static final HashMap<String, CallSite> callSiteMap = new HashMap<>();
+    private static final ConcurrentHashMap<String, Sampler> callSiteSamplers = new ConcurrentHashMap<>();
+    private static final AtomicLong sampledOutCount = new AtomicLong();
+    private static volatile Sampler[] levelSamplers = new Sampler[MsgLevel.values().length + 1];
+    private static final ConcurrentHashMap<String, RateLimit> callSiteRateLimits = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<SiteKey, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    private static final RateLimiter noRateLimiter = new RateLimiter(new RateLimit(0, false), null, null, null);
+    private static volatile RateLimit defaultRateLimit = null;
+    private static volatile boolean rateLimitingEnabled = false;
+    private static volatile boolean unqualifiedRateLimits = false;
+    private static volatile HashSet<String> rateLimitedCallers = new HashSet<>();
+    private static volatile boolean methodNameEnabled = true;
+    private static volatile boolean deferredFormatting = false;
+    private static volatile TrcTelemetryRecorder telemetryRecorder = null;
     private static DbgLog dbgLog = null;
     private static TrcDbgTrace globalTracer = null;
     private static TrcTraceLogger traceLogger = null;
 
-    private final String instanceName;
-    private MsgLevel msgLevel = MsgLevel.INFO;
+    private final String instanceName;
+    private MsgLevel msgLevel = MsgLevel.INFO;
+
+    /**
+     * Constructor: Create an instance of the object. This constructor is intended for internal use for creating
+     * the global tracer. For creating other tracers, use the constructor with just instanceName.
+     *
+     * @param callerName specifies the module name of the caller.
+     * @param instanceName specifies the instance name.
+     * @param dbgLog specifies the dbgLog object to be set.
+     */
+    public TrcDbgTrace(String callerName, String instanceName, DbgLog dbgLog)
+    {
+        this.instanceName = instanceName;
+
+        if (callerName != null && dbgLog != null)
+        {
+            if (TrcDbgTrace.dbgLog == null && callerName.equals("FrcRobotBase") || callerName.equals("FtcOpMode"))
+            {
+                TrcDbgTrace.dbgLog = dbgLog;
+                TrcDbgTrace.globalTracer = this;
+            }
+            else
+            {
+                throw new IllegalStateException(
+                    "This constructor can only be called internally to create the global Tracer.");
+            }
+        }
+        else if (callerName != null ^ dbgLog != null)
+        {
+            throw new IllegalStateException(
+                "This constructor can only be called internally to create the global Tracer.");
+        }
+    }   //TrcDbgTrace
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     */
+    public TrcDbgTrace(String instanceName)
+    {
+        this(null, instanceName, null);
+    }   //TrcDbgTrace
+
+    /**
+     * This method sets the message level for this tracer.
+     *
+     * @param msgLevel specifies the message level.
+     */
+    public void setTraceLevel(MsgLevel msgLevel)
+    {
+        this.msgLevel = msgLevel;
+    }   //setTraceLevel
+
+    /**
+     * This method returns the trace message level.
+     *
+     * @return trace message level.
+     */
+    public MsgLevel getTraceLevel()
+    {
+        return msgLevel;
+    }   //getTraceLevel
+
+    /**
+     * This method checks if messages of the given level are enabled. Hot code paths should use it to guard tracing
+     * code that would otherwise do work (e.g. box arguments or build strings) even when the level is disabled.
+     *
+     * @param level specifies the message level.
+     * @return true if messages of the given level are enabled, false otherwise.
+     */
+    public boolean isTraceEnabled(MsgLevel level)
+    {
+        return msgLevel.value >= level.value;
+    }   //isTraceEnabled
+
+    /**
+     * This method checks if messages of the given level are enabled on the global tracer.
+     *
+     * @param level specifies the message level.
+     * @return true if messages of the given level are enabled, false otherwise.
+     */
+    public static boolean isGlobalTraceEnabled(MsgLevel level)
+    {
+        return globalTracer != null && globalTracer.msgLevel.value >= level.value;
+    }   //isGlobalTraceEnabled
+
+    /**
+     * This method enables/disables the caller method name in trace messages. Resolving the method name of a text or
+     * format message walks the call stack for every message, so it can be disabled when tracing heavily (e.g. in
+     * competition). Messages traced with a MsgFormatter always include the method name since the caller passes it.
+     *
+     * @param enabled specifies true to include the caller method name, false to omit it.
+     */
+    public static void setMethodNameEnabled(boolean enabled)
+    {
+        methodNameEnabled = enabled;
+    }   //setMethodNameEnabled
+
+    /**
+     * This method sets the sampling rate of a message level so that only one out of every rate messages of that
+     * level is traced. Sampled out messages are counted and the count is reported in the trace log.
+     *
+     * @param level specifies the message level.
+     * @param rate specifies the sampling rate, 1 or less to trace every message.
+     */
+    public static synchronized void setSamplingRate(MsgLevel level, int rate)
+    {
+        Sampler[] samplers = levelSamplers.clone();
+
+        samplers[level.value] = rate > 1? new Sampler(rate): null;
+        levelSamplers = samplers;
+    }   //setSamplingRate
+
+    /**
+     * This method sets the sampling rate of the messages traced from a call site so that only one out of every rate
+     * messages is traced. The call site is identified by the caller method name (e.g. "odometryTask"), optionally
+     * qualified with the caller instance name (e.g. "DriveBase.odometryTask"). Call sites without a method name
+     * (see setMethodNameEnabled) cannot be sampled this way.
+     *
+     * @param callSiteName specifies the method name, optionally qualified with the caller instance name.
+     * @param rate specifies the sampling rate, 1 or less to trace every message.
+     */
+    public static void setSamplingRate(String callSiteName, int rate)
+    {
+        if (rate > 1)
+        {
+            callSiteSamplers.put(callSiteName, new Sampler(rate));
+        }
+        else
+        {
+            callSiteSamplers.remove(callSiteName);
+        }
+    }   //setSamplingRate
+
+    /**
+     * This method returns the number of messages that were not traced because of sampling.
+     *
+     * @return number of sampled out messages.
+     */
+    public static long getSampledOutCount()
+    {
+        return sampledOutCount.get();
+    }   //getSampledOutCount
+
+    /**
+     * This method checks the sampling rates of the message level and of the call site to decide if a message is
+     * traced.
+     *
+     * @param level specifies the message level.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, null if none.
+     * @return true if the message is traced, false if it is sampled out.
+     */
+    private static boolean isSampled(MsgLevel level, String callerInstance, String methodName)
+    {
+        Sampler sampler = levelSamplers[level.value];
+
+        if (sampler == null && methodName != null && !callSiteSamplers.isEmpty())
+        {
+            sampler = callSiteSamplers.get(callerInstance + "." + methodName);
+            if (sampler == null)
+            {
+                sampler = callSiteSamplers.get(methodName);
+            }
+        }
+
+        return sampler == null || sampler.sample();
+    }   //isSampled
+
+    /**
+     * This method sets the default rate limit of all call sites. Each call site (caller instance, message level and
+     * either the caller method of a text message or the format string of a format message) traces at most
+     * maxMsgsPerSecond messages per second and, if collapseRepeats is set, drops messages identical to the last one
+     * it traced. Dropped messages are summarized in the trace by a "Last message repeated k times" or "Suppressed n
+     * messages" message of the same call site. The rate limit is checked before sampling and, for format messages,
+     * before the call stack is walked for the method name, so dropped format messages cost only a map lookup. Text
+     * messages of a rate limited caller still walk the call stack since their call site is the caller method.
+     *
+     * @param maxMsgsPerSecond specifies the maximum number of messages per second per call site, 0 for no limit.
+     * @param collapseRepeats specifies true to collapse identical consecutive messages into a summary message.
+     */
+    public static void setRateLimit(int maxMsgsPerSecond, boolean collapseRepeats)
+    {
+        defaultRateLimit =
+            maxMsgsPerSecond > 0 || collapseRepeats? new RateLimit(maxMsgsPerSecond, collapseRepeats): null;
+        resetRateLimiters();
+    }   //setRateLimit
+
+    /**
+     * This method sets the rate limit of the call sites of a caller method, overriding the default rate limit. The
+     * call sites are identified the same way as in setSamplingRate, by the caller method name optionally qualified
+     * with the caller instance name (e.g. "DriveBase.odometryTask").
+     *
+     * @param callSiteName specifies the method name, optionally qualified with the caller instance name.
+     * @param maxMsgsPerSecond specifies the maximum number of messages per second per call site, 0 for no limit.
+     * @param collapseRepeats specifies true to collapse identical consecutive messages into a summary message.
+     */
+    public static void setRateLimit(String callSiteName, int maxMsgsPerSecond, boolean collapseRepeats)
+    {
+        callSiteRateLimits.put(callSiteName, new RateLimit(maxMsgsPerSecond, collapseRepeats));
+        resetRateLimiters();
+    }   //setRateLimit
+
+    /**
+     * This method removes the rate limit of the call sites of a caller method so they use the default rate limit.
+     *
+     * @param callSiteName specifies the method name, optionally qualified with the caller instance name.
+     */
+    public static void clearRateLimit(String callSiteName)
+    {
+        callSiteRateLimits.remove(callSiteName);
+        resetRateLimiters();
+    }   //clearRateLimit
+
+    /**
+     * This method discards all rate limiters after a rate limit change, writing their pending summary messages.
+     */
+    private static void resetRateLimiters()
+    {
+        HashSet<String> callers = new HashSet<>();
+        boolean unqualified = false;
+
+        for (String callSiteName: callSiteRateLimits.keySet())
+        {
+            int index = callSiteName.lastIndexOf('.');
+
+            if (index < 0)
+            {
+                unqualified = true;
+            }
+            else
+            {
+                callers.add(callSiteName.substring(0, index));
+            }
+        }
+        rateLimitedCallers = callers;
+        unqualifiedRateLimits = unqualified;
+        rateLimitingEnabled = defaultRateLimit != null || !callSiteRateLimits.isEmpty();
+        flushRateLimiters();
+        rateLimiters.clear();
+        synchronized (callSites)
+        {
+            for (CallSite site: callSites)
+            {
+                site.resetRateLimiter();
+            }
+        }
+    }   //resetRateLimiters
+
+    /**
+     * This method writes the pending summary messages of all rate limiters.
+     */
+    private static void flushRateLimiters()
+    {
+        for (RateLimiter limiter: rateLimiters.values())
+        {
+            limiter.flush();
+        }
+
+        synchronized (callSites)
+        {
+            for (CallSite site: callSites)
+            {
+                RateLimiter limiter = site.rateLimiter;
+
+                if (limiter != null)
+                {
+                    limiter.flush();
+                }
+            }
+        }
+    }   //flushRateLimiters
+
+    /**
+     * This method returns the rate limit that applies to a caller method.
+     *
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, null if none.
+     * @return rate limit, null if none.
+     */
+    private static RateLimit getRateLimit(String callerInstance, String methodName)
+    {
+        RateLimit limit = null;
+
+        if (methodName != null && !callSiteRateLimits.isEmpty())
+        {
+            limit = callSiteRateLimits.get(callerInstance + "." + methodName);
+            if (limit == null)
+            {
+                limit = callSiteRateLimits.get(methodName);
+            }
+        }
+
+        return limit != null? limit: defaultRateLimit;
+    }   //getRateLimit
+
+    /**
+     * This method checks if a rate limit may apply to the text messages of a caller. Only then is the call stack
+     * walked for the caller method name that identifies the rate limit.
+     *
+     * @param callerInstance specifies the name to identify the caller.
+     * @return true if a rate limit may apply to the caller, false otherwise.
+     */
+    private static boolean isRateLimitedCaller(String callerInstance)
+    {
+        return rateLimitingEnabled &&
+               (defaultRateLimit != null || unqualifiedRateLimits || rateLimitedCallers.contains(callerInstance));
+    }   //isRateLimitedCaller
+
+    /**
+     * This method returns the rate limiter of a call site, creating it the first time the call site traces a
+     * message.
+     *
+     * @param siteKey specifies the call site.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, null if none.
+     * @param level specifies the message level.
+     * @return rate limiter, noRateLimiter if the call site is not rate limited.
+     */
+    private static RateLimiter createRateLimiter(
+        SiteKey siteKey, String callerInstance, String methodName, MsgLevel level)
+    {
+        RateLimit limit = getRateLimit(callerInstance, methodName);
+        RateLimiter limiter =
+            limit != null && (limit.maxMsgsPerSecond > 0 || limit.collapseRepeats)?
+                new RateLimiter(limit, callerInstance, methodNameEnabled? methodName: null, level): noRateLimiter;
+        RateLimiter prevLimiter = rateLimiters.putIfAbsent(siteKey, limiter);
+
+        return prevLimiter != null? prevLimiter: limiter;
+    }   //createRateLimiter
+
+    /**
+     * This method checks the rate limit of the call site of a text message to decide if it is traced.
+     *
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name.
+     * @param level specifies the message level.
+     * @param text specifies the message text.
+     * @return true if the message is traced, false if it is dropped.
+     */
+    private static boolean isAdmitted(String callerInstance, String methodName, MsgLevel level, String text)
+    {
+        SiteKey siteKey = new SiteKey(callerInstance, level, methodName, null);
+        RateLimiter limiter = rateLimiters.get(siteKey);
+
+        if (limiter == null)
+        {
+            limiter = createRateLimiter(siteKey, callerInstance, methodName, level);
+        }
+
+        return limiter == noRateLimiter || limiter.admit(text);
+    }   //isAdmitted
+
+    /**
+     * This method enables/disables deferred formatting. When enabled and a text trace log is open, trace messages
+     * whose arguments are immutable (boxed primitives, strings, enums) are queued with their format string and
+     * arguments, and are formatted and printed by the trace logger thread instead of the calling thread. Call site
+     * messages (see CallSite) queue their raw primitive arguments without boxing. Messages with mutable arguments
+     * are still formatted by the caller since their arguments may change before the logger thread gets to them.
+     *
+     * @param enabled specifies true to enable deferred formatting, false to disable.
+     */
+    public static void setDeferredFormatting(boolean enabled)
+    {
+        deferredFormatting = enabled;
+    }   //setDeferredFormatting
+
+    /**
+     * This method checks if deferred formatting is enabled.
+     *
+     * @return true if deferred formatting is enabled, false otherwise.
+     */
+    public static boolean isDeferredFormattingEnabled()
+    {
+        return deferredFormatting;
+    }   //isDeferredFormattingEnabled
+
+    /**
+     * This method returns a global debug trace object for tracing OpMode code. If it doesn't exist yet, one is
+     * created. This is an easy way to quickly get some debug output without a whole lot of setup overhead as the
+     * full module-based debug tracing.
+     *
+     * @return global opMode trace object.
+     */
+    public static TrcDbgTrace getGlobalTracer()
+    {
+        return globalTracer;
+    }   //getGlobalTracer
+
+    /**
+     * This method opens a log file for writing all the trace messages to it.
+     *
+     * @param traceLogName specifies the full trace log file path name.
+     * @return true if log file is successfully opened, false if it failed.
+     */
+    public static boolean openTraceLog(String traceLogName)
+    {
+        return openTraceLog(traceLogName, false);
+    }   //openTraceLog
+
+    /**
+     * This method opens a log file for writing all the trace messages to it.
+     *
+     * @param traceLogName specifies the full trace log file path name.
+     * @param binaryFormat specifies true to write a binary trace log (see TrcBinaryTraceLog), false for text.
+     * @return true if log file is successfully opened, false if it failed.
+     */
+    public static boolean openTraceLog(String traceLogName, boolean binaryFormat)
+    {
+        return openTraceLog(traceLogName, binaryFormat, null);
+    }   //openTraceLog
+
+    /**
+     * This method opens a log file for writing all the trace messages to it, rotating it into compressed segments
+     * according to the rotation parameters (see TrcLogRotator).
+     *
+     * @param traceLogName specifies the trace log file name.
+     * @param binaryFormat specifies true to write a binary trace log, false for a text log.
+     * @param rotation specifies the log rotation parameters, null to write a single log file.
+     * @return true if log file is successfully opened, false if it failed.
+     */
+    public static boolean openTraceLog(String traceLogName, boolean binaryFormat, TrcLogRotator.Parameters rotation)
+    {
+        boolean success = false;
+
+        if (traceLogger == null)
+        {
+            traceLogger =
+                new TrcTraceLogger(traceLogName, binaryFormat, TrcTraceLogger.DEF_QUEUE_CAPACITY, rotation);
+            success = true;
+        }
+
+        return success;
+    }   //openTraceLog
+
+    /**
+     * This method opens a log file for writing all the trace messages to it. The log file is written to the specified
+     * folder. The file name will be formed by concatenating the date-time stamp with the specified file name.
+     *
+     * @param folderPath specifies the folder path.
+     * @param fileName specifies the file name, null if none provided.
+     * @return true if log file is successfully opened, false if it failed.
+     */
+    public static boolean openTraceLog(String folderPath, String fileName)
+    {
+        return openTraceLog(folderPath, fileName, false);
+    }   //openTraceLog
+
+    /**
+     * This method opens a log file for writing all the trace messages to it. The log file is written to the specified
+     * folder. The file name will be formed by concatenating the date-time stamp with the specified file name.
+     *
+     * @param folderPath specifies the folder path.
+     * @param fileName specifies the file name, null if none provided.
+     * @param binaryFormat specifies true to write a binary trace log (.trcb), false for a text log (.log).
+     * @return true if log file is successfully opened, false if it failed.
+     */
+    public static boolean openTraceLog(String folderPath, String fileName, boolean binaryFormat)
+    {
+        return openTraceLog(folderPath, fileName, binaryFormat, null);
+    }   //openTraceLog
+
+    /**
+     * This method opens a log file for writing all the trace messages to it. The log file is written to the specified
+     * folder. The file name will be formed by concatenating the date-time stamp with the specified file name. If
+     * rotation parameters are given, the log is written in segments that are compressed in the background, and the
+     * retention policy is applied to all trace logs in the folder (see TrcLogRotator).
+     *
+     * @param folderPath specifies the folder path.
+     * @param fileName specifies the file name, null if none provided.
+     * @param binaryFormat specifies true to write a binary trace log (.trcb), false for a text log (.log).
+     * @param rotation specifies the log rotation parameters, null to write a single log file.
+     * @return true if log file is successfully opened, false if it failed.
+     */
+    public static boolean openTraceLog(
+        String folderPath, String fileName, boolean binaryFormat, TrcLogRotator.Parameters rotation)
+    {
+        //
+        // Create the folder if it doesn't exist.
+        //
+        File folder = new File(folderPath);
+        if (!folder.exists())
+        {
+            folder.mkdirs();
+        }
+        //
+        // Create full log file path.
+        //
+        String logFileName = folderPath + File.separator + TrcTimer.getCurrentTimeString();
+
+        if (fileName != null)
+        {
+            logFileName += "!" + fileName;
+        }
+        logFileName += binaryFormat? ".trcb": ".log";
+
+        return openTraceLog(logFileName, binaryFormat, rotation);
+    }   //openTraceLog
 
     /**
-     * Constructor: Create an instance of the object. This constructor is intended for internal use for creating
-     * the global tracer. For creating other tracers, use the constructor with just instanceName.
+     * This method closes the trace log file.
+     */
+    public static void closeTraceLog()
+    {
+        if (traceLogger != null)
+        {
+            flushRateLimiters();
+            traceLogger.setEnabled(false);
+            traceLogger = null;
+        }
+    }   //closeTraceLog
+
+    /**
+     * This method returns the trace logger of the open trace log, for example to configure its overflow policy.
      *
-     * @param callerName specifies the module name of the caller.
-     * @param instanceName specifies the instance name.
-     * @param dbgLog specifies the dbgLog object to be set.
+     * @return trace logger, null if no trace log is open.
      */
-    public TrcDbgTrace(String callerName, String instanceName, DbgLog dbgLog)
+    public static TrcTraceLogger getTraceLogger()
     {
-        this.instanceName = instanceName;
+        return traceLogger;
+    }   //getTraceLogger
 
-        if (callerName != null && dbgLog != null)
+    /**
+     * This method checks if the trace log is opened.
+     *
+     * @return true if trace log is opened, false otherwise.
+     */
+    public static boolean isTraceLogOpened()
+    {
+        return traceLogger != null;
+    }   //isTraceLogOpened
+
+    /**
+     * This method returns the trace log file name if one is active.
+     *
+     * @return trace log file name if one is active, null if none.
+     */
+    public static String getTraceLogName()
+    {
+        return traceLogger != null? traceLogger.toString(): null;
+    }   //getTraceLogName
+
+    /**
+     * This method enables/disables the trace log.
+     *
+     * @param enabled specifies true to enable trace log, false otherwise.
+     */
+    public static void setTraceLogEnabled(boolean enabled)
+    {
+        if (traceLogger != null)
         {
-            if (TrcDbgTrace.dbgLog == null && callerName.equals("FrcRobotBase") || callerName.equals("FtcOpMode"))
+            traceLogger.setEnabled(enabled);
+        }
+    }   //setTraceLogEnabled
+
+    /**
+     * This method checks if the trace log is enabled.
+     *
+     * @return true if trace log is enabled, false if disabled.
+     */
+    public static boolean isTraceLogEnabled()
+    {
+        return (traceLogger != null && traceLogger.isEnabled());
+    }   //isTraceLogEnabled
+
+    /**
+     * This method prints the exception stack to the global tracer.
+     *
+     * @param e specifies the exception.
+     */
+    public static void printExceptionStack(Exception e)
+    {
+        StackTraceElement[] stackTraceElements = e.getStackTrace();
+        StringBuilder sb = new StringBuilder("Stack Trace (depth=").append(stackTraceElements.length).append("):");
+
+        for (StackTraceElement ste : stackTraceElements)
+        {
+            sb.append("\n").append(ste);
+        }
+        globalTracer.traceMsgWorker(moduleName, 2, MsgLevel.ERR, sb.toString());
+    }   //printExceptionStack
+
+    /**
+     * This method prints the stack of the given thread to the trace log.
+     *
+     * @param thread specifies the thread to print its stack.
+     */
+    public static void printThreadStack(Thread thread)
+    {
+        StringBuilder sb = new StringBuilder("Thread stack: ");
+
+        for (StackTraceElement ste : thread.getStackTrace())
+        {
+            sb.append("\n").append(ste);
+        }
+
+        globalTracer.traceMsgWorker(moduleName, 2, MsgLevel.INFO, sb.toString());
+    }   //printThreadStack
+
+    /**
+     * This method prints the stack of the current thread to the trace log.
+     */
+    public static void printThreadStack()
+    {
+        printThreadStack(Thread.currentThread());
+    }   //printThreadStack
+
+    /**
+     * This method is the common worker for all the trace message methods.
+     *
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodIndex specifies the index to the thread stack to obtain the method name.
+     * @param level specifies the message level.
+     * @param text specifies the message text.
+     */
+    private void traceMsgWorker(String callerInstance, int methodIndex, MsgLevel level, String text)
+    {
+        if (level.getValue() <= msgLevel.getValue())
+        {
+            boolean rateLimited = isRateLimitedCaller(callerInstance);
+            String methodName =
+                methodNameEnabled || rateLimited?
+                    new Throwable().getStackTrace()[methodIndex].getMethodName(): null;
+
+            if ((!rateLimited || isAdmitted(callerInstance, methodName, level, text)) &&
+                isSampled(level, callerInstance, methodName))
             {
-                TrcDbgTrace.dbgLog = dbgLog;
-                TrcDbgTrace.globalTracer = this;
+                emitMsg(callerInstance, methodNameEnabled? methodName: null, level, text);
             }
-            else
+        }
+    }   //traceMsgWorker
+
+    /**
+     * This method is the common worker for all the format trace message methods. The rate limit is checked by the
+     * format string before the call stack is walked for the method name, which is only done once per call site if
+     * the message is dropped. If deferred formatting is enabled and all arguments are immutable, the message is
+     * queued to the trace logger thread unformatted.
+     *
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodIndex specifies the index to the thread stack to obtain the method name.
+     * @param level specifies the message level.
+     * @param xmlTag specifies the XML tag ("Info" or "Event") if the message is an XML entry, null otherwise.
+     * @param xmlName specifies the name attribute of the XML entry, null if not an XML entry.
+     * @param format specifies the format string of the message.
+     * @param args specifies the message arguments.
+     */
+    private void traceMsgWorker(
+        String callerInstance, int methodIndex, MsgLevel level, String xmlTag, String xmlName, String format,
+        Object[] args)
+    {
+        if (level.getValue() <= msgLevel.getValue())
+        {
+            String methodName = null;
+            boolean admitted = true;
+
+            if (rateLimitingEnabled)
             {
-                throw new IllegalStateException(
-                    "This constructor can only be called internally to create the global Tracer.");
+                SiteKey siteKey = new SiteKey(callerInstance, level, xmlName, format);
+                RateLimiter limiter = rateLimiters.get(siteKey);
+
+                if (limiter == null)
+                {
+                    // The rate limit is configured by method name, so resolve it the first time the call site
+                    // traces a message.
+                    methodName = new Throwable().getStackTrace()[methodIndex].getMethodName();
+                    limiter = createRateLimiter(siteKey, callerInstance, methodName, level);
+                }
+
+                if (limiter != noRateLimiter)
+                {
+                    admitted = limiter.admit(limiter.collapsesRepeats()? getMsgKey(format, args): null);
+                }
+            }
+
+            if (admitted)
+            {
+                if (methodNameEnabled && methodName == null)
+                {
+                    methodName = new Throwable().getStackTrace()[methodIndex].getMethodName();
+                }
+
+                if (isSampled(level, callerInstance, methodName))
+                {
+                    DeferredMsg msg = new DeferredMsg(
+                        level, callerInstance, methodNameEnabled? methodName: null, TrcTimer.getModeElapsedTime(),
+                        xmlTag, xmlName, format, args);
+
+                    if (!deferredFormatting || !isImmutable(args) || !deferMsg(msg))
+                    {
+                        writeMsg(level, msg.compose());
+                    }
+                }
             }
         }
-        else if (callerName != null ^ dbgLog != null)
+    }   //traceMsgWorker
+
+    /**
+     * This method is the common worker for all the MsgFormatter trace methods. The caller passes its method name
+     * explicitly, so the call stack is never walked. The rate limit is checked before the message is formatted
+     * unless the call site collapses repeats, which needs the message text.
+     *
+     * @param <T> specifies the type of the message argument.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name.
+     * @param level specifies the message level.
+     * @param arg specifies the message argument.
+     * @param formatter specifies the formatter that builds the message text.
+     */
+    private <T> void traceFormatterWorker(
+        String callerInstance, String methodName, MsgLevel level, T arg, MsgFormatter<T> formatter)
+    {
+        RateLimiter limiter = noRateLimiter;
+
+        if (rateLimitingEnabled)
         {
-            throw new IllegalStateException(
-                "This constructor can only be called internally to create the global Tracer.");
+            SiteKey siteKey = new SiteKey(callerInstance, level, methodName, null);
+
+            limiter = rateLimiters.get(siteKey);
+            if (limiter == null)
+            {
+                limiter = createRateLimiter(siteKey, callerInstance, methodName, level);
+            }
         }
-    }   //TrcDbgTrace
+
+        if ((limiter == noRateLimiter || limiter.collapsesRepeats() || limiter.admit(null)) &&
+            isSampled(level, callerInstance, methodName))
+        {
+            String text = formatter.format(arg);
+
+            if (limiter == noRateLimiter || !limiter.collapsesRepeats() || limiter.admit(text))
+            {
+                emitMsg(callerInstance, methodName, level, text);
+            }
+        }
+    }   //traceFormatterWorker
 
     /**
-     * Constructor: Create an instance of the object.
+     * This method composes the trace message and writes it to the debug log and the trace log.
      *
-     * @param instanceName specifies the instance name.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, null if none.
+     * @param level specifies the message level.
+     * @param text specifies the message text.
      */
-    public TrcDbgTrace(String instanceName)
+    private static void emitMsg(String callerInstance, String methodName, MsgLevel level, String text)
     {
-        this(null, instanceName, null);
-    }   //TrcDbgTrace
+        writeMsg(level, composeMsg(callerInstance, methodName, level, TrcTimer.getModeElapsedTime(), text));
+    }   //emitMsg
 
     /**
-     * This method sets the message level for this tracer.
+     * This method composes a trace message.
      *
-     * @param msgLevel specifies the message level.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, null if none.
+     * @param level specifies the message level.
+     * @param timestamp specifies the mode elapsed time of the message.
+     * @param text specifies the message text.
+     * @return composed message.
      */
-    public void setTraceLevel(MsgLevel msgLevel)
+    private static String composeMsg(
+        String callerInstance, String methodName, MsgLevel level, double timestamp, String text)
     {
-        this.msgLevel = msgLevel;
-    }   //setTraceLevel
+        return callerInstance + (methodName != null? "." + methodName: "") + "_" + level + " [" + timestamp + "] " +
+               text;
+    }   //composeMsg
 
     /**
-     * This method returns the trace message level.
+     * This method writes a composed trace message to the debug log and the trace log.
      *
-     * @return trace message level.
+     * @param level specifies the message level.
+     * @param msg specifies the composed message.
      */
-    public MsgLevel getTraceLevel()
+    private static void writeMsg(MsgLevel level, String msg)
     {
-        return msgLevel;
-    }   //getTraceLevel
+        // With deferred formatting, even preformatted messages go through the logger thread to keep them in order.
+        if (!deferredFormatting || !deferMsg(new DeferredMsg(level, msg)))
+        {
+            TrcTraceLogger logger = traceLogger;
+
+            dbgLog.msg(level, msg + "\n");
+            if (logger != null)
+            {
+                logger.logMessage(level, msg);
+            }
+        }
+    }   //writeMsg
 
     /**
-     * This method returns a global debug trace object for tracing OpMode code. If it doesn't exist yet, one is
-     * created. This is an easy way to quickly get some debug output without a whole lot of setup overhead as the
-     * full module-based debug tracing.
+     * This method queues a message to be formatted and printed by the trace logger thread.
      *
-     * @return global opMode trace object.
+     * @param msg specifies the deferred message.
+     * @return true if the trace logger took the message (queued, or dropped and counted by its overflow policy),
+     *         false if there is no text trace log to defer it to.
      */
-    public static TrcDbgTrace getGlobalTracer()
+    private static boolean deferMsg(DeferredMsg msg)
     {
-        return globalTracer;
-    }   //getGlobalTracer
+        TrcTraceLogger logger = traceLogger;
+        return logger != null && logger.logDeferred(msg);
+    }   //deferMsg
+
+    /**
+     * This method returns the identity of a format message used by the rate limiter to detect repeats. Since the
+     * rate limiter of a format message is keyed by its format string, only the arguments are compared. If all
+     * arguments are immutable, they are compared as they are so the message is not formatted twice.
+     *
+     * @param format specifies the format string of the message.
+     * @param args specifies the message arguments.
+     * @return message identity.
+     */
+    private static Object getMsgKey(String format, Object[] args)
+    {
+        return args == null? Collections.emptyList():
+               isImmutable(args)? Arrays.asList(args): String.format(format, args);
+    }   //getMsgKey
+
+    /**
+     * This method checks if all the message arguments are immutable so that they can be formatted later.
+     *
+     * @param args specifies the message arguments.
+     * @return true if all arguments are immutable, false otherwise.
+     */
+    private static boolean isImmutable(Object[] args)
+    {
+        if (args != null)
+        {
+            for (Object arg: args)
+            {
+                if (arg != null && !(arg instanceof String || arg instanceof Double || arg instanceof Integer ||
+                                     arg instanceof Long || arg instanceof Boolean || arg instanceof Float ||
+                                     arg instanceof Character || arg instanceof Short || arg instanceof Byte ||
+                                     arg instanceof Enum))
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }   //isImmutable
+
+    /**
+     * This method registers a trace call site. Registering the same call site again returns the same interned
+     * object, so it is fine to register call sites in constructors.
+     *
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name.
+     * @param level specifies the message level.
+     * @param format specifies the format string of the message, up to TrcBinaryTraceLog.MAX_ARGS numeric arguments.
+     * @return interned call site.
+     */
+    public static CallSite registerCallSite(String callerInstance, String methodName, MsgLevel level, String format)
+    {
+        return registerCallSite(callerInstance, methodName, level, null, format);
+    }   //registerCallSite
 
     /**
-     * This method opens a log file for writing all the trace messages to it.
+     * This method registers a trace call site that logs a MsgLevel.INFO XML event like logEvent does.
      *
-     * @param traceLogName specifies the full trace log file path name.
-     * @return true if log file is successfully opened, false if it failed.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name.
+     * @param eventName specifies the name to identify the event.
+     * @param format specifies the format string of the event attributes, up to TrcBinaryTraceLog.MAX_ARGS numeric
+     *        arguments.
+     * @return interned call site.
      */
-    public static boolean openTraceLog(String traceLogName)
+    public static CallSite registerEventCallSite(
+        String callerInstance, String methodName, String eventName, String format)
     {
-        boolean success = false;
-
-        if (traceLogger == null)
-        {
-            traceLogger = new TrcTraceLogger(traceLogName);
-            success = true;
-        }
-
-        return success;
-    }   //openTraceLog
+        return registerCallSite(callerInstance, methodName, MsgLevel.INFO, eventName, format);
+    }   //registerEventCallSite
 
     /**
-     * This method opens a log file for writing all the trace messages to it. The log file is written to the specified
-     * folder. The file name will be formed by concatenating the date-time stamp with the specified file name.
+     * This method registers and interns a trace call site.
      *
-     * @param folderPath specifies the folder path.
-     * @param fileName specifies the file name, null if none provided.
-     * @return true if log file is successfully opened, false if it failed.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name.
+     * @param level specifies the message level.
+     * @param eventName specifies the event name if the call site logs an XML event, null otherwise.
+     * @param format specifies the format string of the message.
+     * @return interned call site.
      */
-    public static boolean openTraceLog(String folderPath, String fileName)
+    private static CallSite registerCallSite(
+        String callerInstance, String methodName, MsgLevel level, String eventName, String format)
     {
-        //
-        // Create the folder if it doesn't exist.
-        //
-        File folder = new File(folderPath);
-        if (!folder.exists())
+        CallSite newSite;
+        CallSite site;
+
+        synchronized (callSites)
         {
-            folder.mkdirs();
+            newSite = new CallSite(callSites.size(), callerInstance, methodName, level, eventName, format);
+            String definition = newSite.getDefinition();
+
+            site = callSiteMap.get(definition);
+            if (site == null)
+            {
+                site = newSite;
+                callSites.add(site);
+                callSiteMap.put(definition, site);
+            }
         }
-        //
-        // Create full log file path.
-        //
-        String logFileName = folderPath + File.separator + TrcTimer.getCurrentTimeString();
 
-        if (fileName != null)
+        TrcTraceLogger logger = traceLogger;
+        if (site == newSite && logger != null)
         {
-            logFileName += "!" + fileName;
+            // A newly registered call site must be defined in the open trace log before any of its messages.
+            logger.logCallSite(site);
         }
-        logFileName += ".log";
 
-        return openTraceLog(logFileName);
-    }   //openTraceLog
+        return site;
+    }   //registerCallSite
 
     /**
-     * This method closes the trace log file.
+     * This method returns all registered call sites.
+     *
+     * @return array of registered call sites ordered by ID.
      */
-    public static void closeTraceLog()
+    static CallSite[] getRegisteredCallSites()
     {
-        if (traceLogger != null)
+        synchronized (callSites)
         {
-            traceLogger.setEnabled(false);
-            traceLogger = null;
+            return callSites.toArray(new CallSite[0]);
         }
-    }   //closeTraceLog
+    }   //getRegisteredCallSites
 
     /**
-     * This method checks if the trace log is opened.
+     * This method is the common worker for the call site trace methods. With a binary trace log open, it only
+     * copies the raw arguments into the log without formatting them or printing them to the debug console.
+     * Otherwise, the message is formatted and written like any other trace message.
      *
-     * @return true if trace log is opened, false otherwise.
+     * @param site specifies the call site.
+     * @param argCount specifies the number of valid arguments.
+     * @param arg0 specifies argument 0.
+     * @param arg1 specifies argument 1.
+     * @param arg2 specifies argument 2.
+     * @param arg3 specifies argument 3.
+     * @param arg4 specifies argument 4.
+     * @param arg5 specifies argument 5.
      */
-    public static boolean isTraceLogOpened()
+    private void traceCallSiteWorker(
+        CallSite site, int argCount, double arg0, double arg1, double arg2, double arg3, double arg4, double arg5)
     {
-        return traceLogger != null;
-    }   //isTraceLogOpened
+        Sampler sampler = site.sampler;
+        RateLimiter limiter;
+
+        if ((sampler == null || sampler.sample()) && isSampled(site.level, site.callerInstance, site.methodName) &&
+            ((limiter = site.getRateLimiter()) == null || limiter.admit(argCount, arg0, arg1, arg2, arg3, arg4, arg5)))
+        {
+            TrcTraceLogger logger = traceLogger;
+            double timestamp = TrcTimer.getModeElapsedTime();
+
+            if (logger != null && logger.isBinaryFormat())
+            {
+                logger.logEvent(site, timestamp, argCount, arg0, arg1, arg2, arg3, arg4, arg5);
+            }
+            else
+            {
+                DeferredMsg msg = new DeferredMsg(site, timestamp, argCount, arg0, arg1, arg2, arg3, arg4, arg5);
+
+                if (!deferredFormatting || !deferMsg(msg))
+                {
+                    writeMsg(site.level, msg.compose());
+                }
+            }
+        }
+    }   //traceCallSiteWorker
 
     /**
-     * This method returns the trace log file name if one is active.
+     * This method is called to trace a message through a call site with no argument.
      *
-     * @return trace log file name if one is active, null if none.
+     * @param site specifies the call site.
      */
-    public static String getTraceLogName()
+    public void trace(CallSite site)
     {
-        return traceLogger != null? traceLogger.toString(): null;
-    }   //getTraceLogName
+        if (msgLevel.value >= site.level.value)
+        {
+            traceCallSiteWorker(site, 0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
+        }
+    }   //trace
 
     /**
-     * This method enables/disables the trace log.
+     * This method is called to trace a message through a call site.
      *
-     * @param enabled specifies true to enable trace log, false otherwise.
+     * @param site specifies the call site.
+     * @param arg0 specifies argument 0.
      */
-    public static void setTraceLogEnabled(boolean enabled)
+    public void trace(CallSite site, double arg0)
     {
-        if (traceLogger != null)
+        if (msgLevel.value >= site.level.value)
         {
-            traceLogger.setEnabled(enabled);
+            traceCallSiteWorker(site, 1, arg0, 0.0, 0.0, 0.0, 0.0, 0.0);
         }
-    }   //setTraceLogEnabled
+    }   //trace
 
     /**
-     * This method checks if the trace log is enabled.
+     * This method is called to trace a message through a call site.
      *
-     * @return true if trace log is enabled, false if disabled.
+     * @param site specifies the call site.
+     * @param arg0 specifies argument 0.
+     * @param arg1 specifies argument 1.
      */
-    public static boolean isTraceLogEnabled()
+    public void trace(CallSite site, double arg0, double arg1)
     {
-        return (traceLogger != null && traceLogger.isEnabled());
-    }   //isTraceLogEnabled
+        if (msgLevel.value >= site.level.value)
+        {
+            traceCallSiteWorker(site, 2, arg0, arg1, 0.0, 0.0, 0.0, 0.0);
+        }
+    }   //trace
 
     /**
-     * This method prints the exception stack to the global tracer.
+     * This method is called to trace a message through a call site.
      *
-     * @param e specifies the exception.
+     * @param site specifies the call site.
+     * @param arg0 specifies argument 0.
+     * @param arg1 specifies argument 1.
+     * @param arg2 specifies argument 2.
      */
-    public static void printExceptionStack(Exception e)
+    public void trace(CallSite site, double arg0, double arg1, double arg2)
     {
-        StackTraceElement[] stackTraceElements = e.getStackTrace();
-        StringBuilder sb = new StringBuilder("Stack Trace (depth=").append(stackTraceElements.length).append("):");
-
-        for (StackTraceElement ste : stackTraceElements)
+        if (msgLevel.value >= site.level.value)
         {
-            sb.append("\n").append(ste);
+            traceCallSiteWorker(site, 3, arg0, arg1, arg2, 0.0, 0.0, 0.0);
         }
-        globalTracer.traceMsgWorker(moduleName, 2, MsgLevel.ERR, sb.toString());
-    }   //printExceptionStack
+    }   //trace
 
     /**
-     * This method prints the stack of the given thread to the trace log.
+     * This method is called to trace a message through a call site.
      *
-     * @param thread specifies the thread to print its stack.
+     * @param site specifies the call site.
+     * @param arg0 specifies argument 0.
+     * @param arg1 specifies argument 1.
+     * @param arg2 specifies argument 2.
+     * @param arg3 specifies argument 3.
      */
-    public static void printThreadStack(Thread thread)
+    public void trace(CallSite site, double arg0, double arg1, double arg2, double arg3)
     {
-        StringBuilder sb = new StringBuilder("Thread stack: ");
-
-        for (StackTraceElement ste : thread.getStackTrace())
+        if (msgLevel.value >= site.level.value)
         {
-            sb.append("\n").append(ste);
+            traceCallSiteWorker(site, 4, arg0, arg1, arg2, arg3, 0.0, 0.0);
         }
-
-        globalTracer.traceMsgWorker(moduleName, 2, MsgLevel.INFO, sb.toString());
-    }   //printThreadStack
+    }   //trace
 
     /**
-     * This method prints the stack of the current thread to the trace log.
+     * This method is called to trace a message through a call site.
+     *
+     * @param site specifies the call site.
+     * @param arg0 specifies argument 0.
+     * @param arg1 specifies argument 1.
+     * @param arg2 specifies argument 2.
+     * @param arg3 specifies argument 3.
+     * @param arg4 specifies argument 4.
      */
-    public static void printThreadStack()
+    public void trace(CallSite site, double arg0, double arg1, double arg2, double arg3, double arg4)
     {
-        printThreadStack(Thread.currentThread());
-    }   //printThreadStack
+        if (msgLevel.value >= site.level.value)
+        {
+            traceCallSiteWorker(site, 5, arg0, arg1, arg2, arg3, arg4, 0.0);
+        }
+    }   //trace
 
     /**
-     * This method is the common worker for all the trace message methods.
+     * This method is called to trace a message through a call site.
      *
-     * @param callerInstance specifies the name to identify the caller.
-     * @param methodIndex specifies the index to the thread stack to obtain the method name.
-     * @param level specifies the message level.
-     * @param text specifies the message text.
+     * @param site specifies the call site.
+     * @param arg0 specifies argument 0.
+     * @param arg1 specifies argument 1.
+     * @param arg2 specifies argument 2.
+     * @param arg3 specifies argument 3.
+     * @param arg4 specifies argument 4.
+     * @param arg5 specifies argument 5.
      */
-    private void traceMsgWorker(String callerInstance, int methodIndex, MsgLevel level, String text)
+    public void trace(CallSite site, double arg0, double arg1, double arg2, double arg3, double arg4, double arg5)
     {
-        if (level.getValue() <= msgLevel.getValue())
+        if (msgLevel.value >= site.level.value)
         {
-            String msg =
-                callerInstance + "." + new Throwable().getStackTrace()[methodIndex].getMethodName() + "_" + level +
-                " [" + TrcTimer.getModeElapsedTime() + "] " + text;
-            dbgLog.msg(level, msg + "\n");
-            if (traceLogger != null)
-            {
-                traceLogger.logMessage(msg);
-            }
+            traceCallSiteWorker(site, 6, arg0, arg1, arg2, arg3, arg4, arg5);
         }
-    }   //traceMsgWorker
+    }   //trace
 
     /**
      * This method is called to print a fatal message.
@@ -329,7 +1974,24 @@ public class TrcDbgTrace
     {
         if (msgLevel.value >= MsgLevel.FATAL.value)
         {
-            traceMsgWorker(callerInstance, 2, MsgLevel.FATAL, String.format(format, args));
+            traceMsgWorker(callerInstance, 2, MsgLevel.FATAL, null, null, format, args);
+        }
+    }   //traceFatal
+
+    /**
+     * This method is called to print a fatal message built lazily by the given formatter.
+     *
+     * @param <T> specifies the type of the message argument.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, which identifies the call site.
+     * @param arg specifies the message argument passed to the formatter.
+     * @param formatter specifies the formatter that builds the message text, only called if the level is enabled.
+     */
+    public <T> void traceFatal(String callerInstance, String methodName, T arg, MsgFormatter<T> formatter)
+    {
+        if (msgLevel.value >= MsgLevel.FATAL.value)
+        {
+            traceFormatterWorker(callerInstance, methodName, MsgLevel.FATAL, arg, formatter);
         }
     }   //traceFatal
 
@@ -358,7 +2020,24 @@ public class TrcDbgTrace
     {
         if (msgLevel.value >= MsgLevel.ERR.value)
         {
-            traceMsgWorker(callerInstance, 2, MsgLevel.ERR, String.format(format, args));
+            traceMsgWorker(callerInstance, 2, MsgLevel.ERR, null, null, format, args);
+        }
+    }   //traceErr
+
+    /**
+     * This method is called to print an error message built lazily by the given formatter.
+     *
+     * @param <T> specifies the type of the message argument.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, which identifies the call site.
+     * @param arg specifies the message argument passed to the formatter.
+     * @param formatter specifies the formatter that builds the message text, only called if the level is enabled.
+     */
+    public <T> void traceErr(String callerInstance, String methodName, T arg, MsgFormatter<T> formatter)
+    {
+        if (msgLevel.value >= MsgLevel.ERR.value)
+        {
+            traceFormatterWorker(callerInstance, methodName, MsgLevel.ERR, arg, formatter);
         }
     }   //traceErr
 
@@ -387,7 +2066,24 @@ public class TrcDbgTrace
     {
         if (msgLevel.value >= MsgLevel.WARN.value)
         {
-            traceMsgWorker(callerInstance, 2, MsgLevel.WARN, String.format(format, args));
+            traceMsgWorker(callerInstance, 2, MsgLevel.WARN, null, null, format, args);
+        }
+    }   //traceWarn
+
+    /**
+     * This method is called to print a warning message built lazily by the given formatter.
+     *
+     * @param <T> specifies the type of the message argument.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, which identifies the call site.
+     * @param arg specifies the message argument passed to the formatter.
+     * @param formatter specifies the formatter that builds the message text, only called if the level is enabled.
+     */
+    public <T> void traceWarn(String callerInstance, String methodName, T arg, MsgFormatter<T> formatter)
+    {
+        if (msgLevel.value >= MsgLevel.WARN.value)
+        {
+            traceFormatterWorker(callerInstance, methodName, MsgLevel.WARN, arg, formatter);
         }
     }   //traceWarn
 
@@ -416,7 +2112,24 @@ public class TrcDbgTrace
     {
         if (msgLevel.value >= MsgLevel.INFO.value)
         {
-            traceMsgWorker(callerInstance, 2, MsgLevel.INFO, String.format(format, args));
+            traceMsgWorker(callerInstance, 2, MsgLevel.INFO, null, null, format, args);
+        }
+    }   //traceInfo
+
+    /**
+     * This method is called to print an info message built lazily by the given formatter.
+     *
+     * @param <T> specifies the type of the message argument.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, which identifies the call site.
+     * @param arg specifies the message argument passed to the formatter.
+     * @param formatter specifies the formatter that builds the message text, only called if the level is enabled.
+     */
+    public <T> void traceInfo(String callerInstance, String methodName, T arg, MsgFormatter<T> formatter)
+    {
+        if (msgLevel.value >= MsgLevel.INFO.value)
+        {
+            traceFormatterWorker(callerInstance, methodName, MsgLevel.INFO, arg, formatter);
         }
     }   //traceInfo
 
@@ -445,7 +2158,24 @@ public class TrcDbgTrace
     {
         if (msgLevel.value >= MsgLevel.DEBUG.value)
         {
-            traceMsgWorker(callerInstance, 2, MsgLevel.DEBUG, String.format(format, args));
+            traceMsgWorker(callerInstance, 2, MsgLevel.DEBUG, null, null, format, args);
+        }
+    }   //traceDebug
+
+    /**
+     * This method is called to print a debug message built lazily by the given formatter.
+     *
+     * @param <T> specifies the type of the message argument.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, which identifies the call site.
+     * @param arg specifies the message argument passed to the formatter.
+     * @param formatter specifies the formatter that builds the message text, only called if the level is enabled.
+     */
+    public <T> void traceDebug(String callerInstance, String methodName, T arg, MsgFormatter<T> formatter)
+    {
+        if (msgLevel.value >= MsgLevel.DEBUG.value)
+        {
+            traceFormatterWorker(callerInstance, methodName, MsgLevel.DEBUG, arg, formatter);
         }
     }   //traceDebug
 
@@ -474,7 +2204,24 @@ public class TrcDbgTrace
     {
         if (msgLevel.value >= MsgLevel.VERBOSE.value)
         {
-            traceMsgWorker(callerInstance, 2, MsgLevel.VERBOSE, String.format(format, args));
+            traceMsgWorker(callerInstance, 2, MsgLevel.VERBOSE, null, null, format, args);
+        }
+    }   //traceVerbose
+
+    /**
+     * This method is called to print a verbose message built lazily by the given formatter.
+     *
+     * @param <T> specifies the type of the message argument.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, which identifies the call site.
+     * @param arg specifies the message argument passed to the formatter.
+     * @param formatter specifies the formatter that builds the message text, only called if the level is enabled.
+     */
+    public <T> void traceVerbose(String callerInstance, String methodName, T arg, MsgFormatter<T> formatter)
+    {
+        if (msgLevel.value >= MsgLevel.VERBOSE.value)
+        {
+            traceFormatterWorker(callerInstance, methodName, MsgLevel.VERBOSE, arg, formatter);
         }
     }   //traceVerbose
 
@@ -503,7 +2250,25 @@ public class TrcDbgTrace
     {
         if (globalTracer.msgLevel.value >= MsgLevel.FATAL.value)
         {
-            globalTracer.traceMsgWorker(callerInstance, 2, MsgLevel.FATAL, String.format(format, args));
+            globalTracer.traceMsgWorker(callerInstance, 2, MsgLevel.FATAL, null, null, format, args);
+        }
+    }   //globalTraceFatal
+
+    /**
+     * This method is called to print a fatal message built lazily by the given formatter using the global tracer.
+     *
+     * @param <T> specifies the type of the message argument.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, which identifies the call site.
+     * @param arg specifies the message argument passed to the formatter.
+     * @param formatter specifies the formatter that builds the message text, only called if the level is enabled.
+     */
+    public static <T> void globalTraceFatal(
+        String callerInstance, String methodName, T arg, MsgFormatter<T> formatter)
+    {
+        if (globalTracer.msgLevel.value >= MsgLevel.FATAL.value)
+        {
+            globalTracer.traceFormatterWorker(callerInstance, methodName, MsgLevel.FATAL, arg, formatter);
         }
     }   //globalTraceFatal
 
@@ -532,7 +2297,25 @@ public class TrcDbgTrace
     {
         if (globalTracer.msgLevel.value >= MsgLevel.ERR.value)
         {
-            globalTracer.traceMsgWorker(callerInstance, 2, MsgLevel.ERR, String.format(format, args));
+            globalTracer.traceMsgWorker(callerInstance, 2, MsgLevel.ERR, null, null, format, args);
+        }
+    }   //globalTraceErr
+
+    /**
+     * This method is called to print an error message built lazily by the given formatter using the global tracer.
+     *
+     * @param <T> specifies the type of the message argument.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, which identifies the call site.
+     * @param arg specifies the message argument passed to the formatter.
+     * @param formatter specifies the formatter that builds the message text, only called if the level is enabled.
+     */
+    public static <T> void globalTraceErr(
+        String callerInstance, String methodName, T arg, MsgFormatter<T> formatter)
+    {
+        if (globalTracer.msgLevel.value >= MsgLevel.ERR.value)
+        {
+            globalTracer.traceFormatterWorker(callerInstance, methodName, MsgLevel.ERR, arg, formatter);
         }
     }   //globalTraceErr
 
@@ -561,7 +2344,25 @@ public class TrcDbgTrace
     {
         if (globalTracer.msgLevel.value >= MsgLevel.WARN.value)
         {
-            globalTracer.traceMsgWorker(callerInstance, 2, MsgLevel.WARN, String.format(format, args));
+            globalTracer.traceMsgWorker(callerInstance, 2, MsgLevel.WARN, null, null, format, args);
+        }
+    }   //globalTraceWarn
+
+    /**
+     * This method is called to print a warning message built lazily by the given formatter using the global tracer.
+     *
+     * @param <T> specifies the type of the message argument.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, which identifies the call site.
+     * @param arg specifies the message argument passed to the formatter.
+     * @param formatter specifies the formatter that builds the message text, only called if the level is enabled.
+     */
+    public static <T> void globalTraceWarn(
+        String callerInstance, String methodName, T arg, MsgFormatter<T> formatter)
+    {
+        if (globalTracer.msgLevel.value >= MsgLevel.WARN.value)
+        {
+            globalTracer.traceFormatterWorker(callerInstance, methodName, MsgLevel.WARN, arg, formatter);
         }
     }   //globalTraceWarn
 
@@ -590,7 +2391,25 @@ public class TrcDbgTrace
     {
         if (globalTracer.msgLevel.value >= MsgLevel.INFO.value)
         {
-            globalTracer.traceMsgWorker(callerInstance, 2, MsgLevel.INFO, String.format(format, args));
+            globalTracer.traceMsgWorker(callerInstance, 2, MsgLevel.INFO, null, null, format, args);
+        }
+    }   //globalTraceInfo
+
+    /**
+     * This method is called to print an info message built lazily by the given formatter using the global tracer.
+     *
+     * @param <T> specifies the type of the message argument.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, which identifies the call site.
+     * @param arg specifies the message argument passed to the formatter.
+     * @param formatter specifies the formatter that builds the message text, only called if the level is enabled.
+     */
+    public static <T> void globalTraceInfo(
+        String callerInstance, String methodName, T arg, MsgFormatter<T> formatter)
+    {
+        if (globalTracer.msgLevel.value >= MsgLevel.INFO.value)
+        {
+            globalTracer.traceFormatterWorker(callerInstance, methodName, MsgLevel.INFO, arg, formatter);
         }
     }   //globalTraceInfo
 
@@ -619,7 +2438,25 @@ public class TrcDbgTrace
     {
         if (globalTracer.msgLevel.value >= MsgLevel.DEBUG.value)
         {
-            globalTracer.traceMsgWorker(callerInstance, 2, MsgLevel.DEBUG, String.format(format, args));
+            globalTracer.traceMsgWorker(callerInstance, 2, MsgLevel.DEBUG, null, null, format, args);
+        }
+    }   //globalTraceDebug
+
+    /**
+     * This method is called to print a debug message built lazily by the given formatter using the global tracer.
+     *
+     * @param <T> specifies the type of the message argument.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, which identifies the call site.
+     * @param arg specifies the message argument passed to the formatter.
+     * @param formatter specifies the formatter that builds the message text, only called if the level is enabled.
+     */
+    public static <T> void globalTraceDebug(
+        String callerInstance, String methodName, T arg, MsgFormatter<T> formatter)
+    {
+        if (globalTracer.msgLevel.value >= MsgLevel.DEBUG.value)
+        {
+            globalTracer.traceFormatterWorker(callerInstance, methodName, MsgLevel.DEBUG, arg, formatter);
         }
     }   //globalTraceDebug
 
@@ -648,7 +2485,25 @@ public class TrcDbgTrace
     {
         if (globalTracer.msgLevel.value >= MsgLevel.VERBOSE.value)
         {
-            globalTracer.traceMsgWorker(callerInstance, 2, MsgLevel.VERBOSE, String.format(format, args));
+            globalTracer.traceMsgWorker(callerInstance, 2, MsgLevel.VERBOSE, null, null, format, args);
+        }
+    }   //globalTraceVerbose
+
+    /**
+     * This method is called to print a verbose message built lazily by the given formatter using the global tracer.
+     *
+     * @param <T> specifies the type of the message argument.
+     * @param callerInstance specifies the name to identify the caller.
+     * @param methodName specifies the caller method name, which identifies the call site.
+     * @param arg specifies the message argument passed to the formatter.
+     * @param formatter specifies the formatter that builds the message text, only called if the level is enabled.
+     */
+    public static <T> void globalTraceVerbose(
+        String callerInstance, String methodName, T arg, MsgFormatter<T> formatter)
+    {
+        if (globalTracer.msgLevel.value >= MsgLevel.VERBOSE.value)
+        {
+            globalTracer.traceFormatterWorker(callerInstance, methodName, MsgLevel.VERBOSE, arg, formatter);
         }
     }   //globalTraceVerbose
 
@@ -681,9 +2536,7 @@ public class TrcDbgTrace
     {
         if (msgLevel.value >= MsgLevel.INFO.value)
         {
-            traceMsgWorker(
-                callerInstance, 2, MsgLevel.INFO,
-                "<Info name=\"" + infoName + "\" " + String.format(format, args) + " />");
+            traceMsgWorker(callerInstance, 2, MsgLevel.INFO, "Info", infoName, format, args);
         }
     }   //logInfo
 
@@ -718,10 +2571,7 @@ public class TrcDbgTrace
     {
         if (msgLevel.value >= MsgLevel.INFO.value)
         {
-            traceMsgWorker(
-                callerInstance, 2, MsgLevel.INFO,
-                "<Event name=\"" + eventName + "\" time=\"" + TrcTimer.getModeElapsedTime() + "\" " +
-                String.format(format, args) + " />");
+            traceMsgWorker(callerInstance, 2, MsgLevel.INFO, "Event", eventName, format, args);
         }
     }   //logEvent
 
@@ -741,6 +2591,17 @@ public class TrcDbgTrace
             "<Event name=\"" + eventName + "\" time=\"" + TrcTimer.getModeElapsedTime() + "\" " + text + " />");
     }   //logEventInternal
 
+    /**
+     * This method sets the telemetry recorder that records state info. While it is recording, traceStateInfo writes
+     * the state info of enum states as typed channels into the recorder instead of logging StateInfo XML events.
+     *
+     * @param recorder specifies the telemetry recorder, null to log StateInfo events.
+     */
+    public static void setTelemetryRecorder(TrcTelemetryRecorder recorder)
+    {
+        telemetryRecorder = recorder;
+    }   //setTelemetryRecorder
+
     /**
      * This method logs a state info event using the global tracer. The state info event can be used to debug an
      * autonomous state machine. If the state involves PID controlled driving, it also logs the robot's movement.
@@ -756,7 +2617,13 @@ public class TrcDbgTrace
         String name, Object state, TrcDriveBase driveBase, TrcPidDrive pidDrive, TrcPurePursuitDrive ppDrive,
         TrcRobotBattery battery)
     {
-        if (state != null)
+        TrcTelemetryRecorder recorder = telemetryRecorder;
+
+        if (recorder != null && recorder.isEnabled() && state instanceof Enum)
+        {
+            recorder.recordStateInfo(name, (Enum<?>) state, driveBase, pidDrive, ppDrive, battery);
+        }
+        else if (state != null)
         {
             StringBuilder msg = new StringBuilder("tag=\"^^^^^\" " + name + ".state=\"" + state + "\"");
 
@@ -197,11 +197,28 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
     }   //interface MotorPowerMapper
 
     private static final double DEF_SENSITIVITY = 0.5;
+    // Odometry only combines the cached motor and gyro data, so it should take a small fraction of the IO loop.
+    private static final double ODOMETRY_TASK_TIME_BUDGET = 0.002;  //in seconds
+    // Odometry traces every robot loop when debug tracing is on, keep it to a readable rate.
+    private static final int ODOMETRY_TRACE_RATE_LIMIT = 10;         //in messages per second
 
     protected final TrcDbgTrace tracer;
     private final TrcMotor[] motors;
     private final TrcGyro gyro;
     protected final Odometry odometry;
+    // Published copy of the odometry so readers don't contend with the odometry task.
+    private final TrcStateSnapshot.Channel<Odometry> odometrySnapshot;
+    // Per-loop odometry trace, logged as raw numbers to a binary trace log.
+    private final TrcDbgTrace.CallSite odometryTraceSite;
+    // Per-thread scratch pose for the getters that only return one component of a pose, such as getXPosition.
+    private final ThreadLocal<TrcPose2D> scratchPose = new ThreadLocal<TrcPose2D>()
+    {
+        @Override
+        protected TrcPose2D initialValue()
+        {
+            return new TrcPose2D();
+        }   //initialValue
+    };
     private final MotorsState motorsState;
     private final TrcTimer driveTimer;
     private TrcEvent driveTimerEvent = null;
@@ -226,7 +243,9 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
     private TrcPidController xTippingPidCtrl = null;
     private TrcPidController yTippingPidCtrl = null;
     private boolean antiTippingEnabled = false;
-    private Odometry referenceOdometry = null;
+    // Written under the odometry lock, but published through a volatile so the relative getters read it lock-free.
+    // A reference odometry is a clone that is never modified once set.
+    private volatile Odometry referenceOdometry = null;
     private boolean synchronizeOdometries = false;
     // Change of basis matrices to convert between coordinate systems
     private final RealMatrix enuToNwuChangeOfBasis = MatrixUtils
@@ -246,6 +265,11 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
         this.gyro = gyro;
 
         odometry = new Odometry();
+        odometrySnapshot = TrcStateSnapshot.createChannel(moduleName + ".odometry");
+        odometrySnapshot.publish(odometry.clone());
+        odometryTraceSite = TrcDbgTrace.registerCallSite(
+            moduleName, "odometryTask", TrcDbgTrace.MsgLevel.DEBUG,
+            "Odometry: x=%.3f, y=%.3f, angle=%.3f, xVel=%.3f, yVel=%.3f, turnRate=%.3f");
         motorsState = new MotorsState();
         motorsState.prevMotorOdometries = new TrcOdometrySensor.Odometry[motors.length];
         motorsState.currMotorOdometries = new TrcOdometrySensor.Odometry[motors.length];
@@ -258,6 +282,13 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
         driveTimer = new TrcTimer(moduleName + ".driveTimer");
 
         odometryTaskObj = TrcTaskMgr.createTask(moduleName + ".odometryTask", this::odometryTask);
+        odometryTaskObj.setTimeBudget(ODOMETRY_TASK_TIME_BUDGET, TrcTaskMgr.Criticality.CRITICAL);
+        TrcDbgTrace.setRateLimit(moduleName + ".odometryTask", ODOMETRY_TRACE_RATE_LIMIT, false);
+        if (gyro != null)
+        {
+            // Odometry reads the gyro heading, so it must run after the gyro tasks in the same INPUT_TASK loop.
+            gyro.addHeadingConsumer(odometryTaskObj);
+        }
         TrcTaskMgr.TaskObject stopTaskObj = TrcTaskMgr.createTask(moduleName + ".stopTask", this::stopTask);
         stopTaskObj.registerTask(TrcTaskMgr.TaskType.STOP_TASK);
 
@@ -455,10 +486,19 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      */
     public TrcPose2D getFieldPosition()
     {
-        synchronized (odometry)
-        {
-            return odometry.position.clone();
-        }
+        return getFieldPosition(new TrcPose2D());
+    }   //getFieldPosition
+
+    /**
+     * This method copies the robot position in reference to the field origin to the given pose.
+     *
+     * @param out specifies the pose to receive the robot position.
+     * @return out, the robot position relative to the field origin.
+     */
+    public TrcPose2D getFieldPosition(TrcPose2D out)
+    {
+        out.setAs(odometrySnapshot.get().position);
+        return out;
     }   //getFieldPosition
 
     /**
@@ -469,10 +509,19 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      */
     public TrcPose2D getFieldVelocity()
     {
-        synchronized (odometry)
-        {
-            return odometry.velocity.clone();
-        }
+        return getFieldVelocity(new TrcPose2D());
+    }   //getFieldVelocity
+
+    /**
+     * This method copies the robot velocity in reference to the field origin to the given pose.
+     *
+     * @param out specifies the pose to receive the robot velocity.
+     * @return out, the robot velocity relative to the field origin.
+     */
+    public TrcPose2D getFieldVelocity(TrcPose2D out)
+    {
+        out.setAs(odometrySnapshot.get().velocity);
+        return out;
     }   //getFieldVelocity
 
     /**
@@ -493,6 +542,7 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
             }
             resetOdometry();
             odometry.setPositionAs(pose);
+            odometrySnapshot.override(odometry.clone());
         }
     }   //setFieldPosition
 
@@ -516,10 +566,20 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      */
     public TrcPose2D getPositionRelativeTo(TrcPose2D posPose, boolean transformAngle)
     {
-        synchronized (odometry)
-        {
-            return odometry.position.relativeTo(posPose, transformAngle);
-        }
+        return getPositionRelativeTo(posPose, transformAngle, new TrcPose2D());
+    }   //getPositionRelativeTo
+
+    /**
+     * This method writes the robot position relative to <code>pose</code> to the given pose.
+     *
+     * @param posPose specifies the position to be referenced to.
+     * @param transformAngle specifies true to also transform angle, false to leave it alone.
+     * @param out specifies the pose to receive the result.
+     * @return out, the position transformed into the new reference pose.
+     */
+    public TrcPose2D getPositionRelativeTo(TrcPose2D posPose, boolean transformAngle, TrcPose2D out)
+    {
+        return odometrySnapshot.get().position.relativeTo(posPose, transformAngle, out);
     }   //getPositionRelativeTo
 
     /**
@@ -542,17 +602,28 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      */
     public TrcPose2D getVelocityRelativeTo(TrcPose2D velPose, double refAngle)
     {
-        synchronized (odometry)
-        {
-            //
-            // relativeTo will transform the odometry velocity vector to be relative to the angle of pose but the
-            // angle of velPose is really the angular velocity not an angle, so we must duplicate velPose to a new
-            // pose and change the angle member to be the refAngle and let the caller provide that angle.
-            //
-            TrcPose2D pose = velPose.clone();
-            pose.angle = refAngle;
-            return odometry.velocity.relativeTo(pose, false);
-        }
+        //
+        // relativeTo will transform the odometry velocity vector to be relative to the angle of pose but the
+        // angle of velPose is really the angular velocity not an angle, so we must duplicate velPose to a new
+        // pose and change the angle member to be the refAngle and let the caller provide that angle.
+        //
+        return getVelocityRelativeTo(velPose, refAngle, new TrcPose2D());
+    }   //getVelocityRelativeTo
+
+    /**
+     * This method writes the robot velocity relative to <code>pose</code> to the given pose.
+     *
+     * @param velPose specifies the velocity to be referenced to.
+     * @param refAngle specifies the reference angle to be relative to.
+     * @param out specifies the pose to receive the result.
+     * @return out, the velocity transformed into the new reference pose.
+     */
+    public TrcPose2D getVelocityRelativeTo(TrcPose2D velPose, double refAngle, TrcPose2D out)
+    {
+        // The angle of velPose is the angular velocity, so build the reference pose in out with refAngle instead.
+        // relativeTo reads all its inputs before writing the result, so out can be both reference and result.
+        out.set(velPose.x, velPose.y, refAngle);
+        return odometrySnapshot.get().velocity.relativeTo(out, false, out);
     }   //getVelocityRelativeTo
 
     /**
@@ -564,11 +635,24 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      */
     public TrcPose2D getRelativePosition()
     {
-        synchronized (odometry)
-        {
-            return referenceOdometry == null ?
-                    getFieldPosition() : getPositionRelativeTo(referenceOdometry.position, true);
-        }
+        Odometry refOdometry = referenceOdometry;
+
+        return refOdometry == null ? getFieldPosition() : getPositionRelativeTo(refOdometry.position, true);
+    }   //getRelativePosition
+
+    /**
+     * This method writes the robot position relative to the reference position, or the robot field position if
+     * there is no reference odometry set, to the given pose.
+     *
+     * @param out specifies the pose to receive the result.
+     * @return out, the robot position relative to the reference position, or robot field position if no reference
+     *         odometry set.
+     */
+    public TrcPose2D getRelativePosition(TrcPose2D out)
+    {
+        Odometry refOdometry = referenceOdometry;
+
+        return refOdometry == null ? getFieldPosition(out) : getPositionRelativeTo(refOdometry.position, true, out);
     }   //getRelativePosition
 
     /**
@@ -580,12 +664,27 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      */
     public TrcPose2D getRelativeVelocity()
     {
-        synchronized (odometry)
-        {
-            return referenceOdometry == null ?
-                    getFieldVelocity() :
-                    getVelocityRelativeTo(referenceOdometry.velocity, referenceOdometry.position.angle);
-        }
+        Odometry refOdometry = referenceOdometry;
+
+        return refOdometry == null ?
+                getFieldVelocity() : getVelocityRelativeTo(refOdometry.velocity, refOdometry.position.angle);
+    }   //getRelativeVelocity
+
+    /**
+     * This method writes the robot velocity relative to the reference velocity, or the robot field velocity if
+     * there is no reference odometry set, to the given pose.
+     *
+     * @param out specifies the pose to receive the result.
+     * @return out, the robot velocity relative to the reference velocity, or robot field velocity if no reference
+     *         odometry set.
+     */
+    public TrcPose2D getRelativeVelocity(TrcPose2D out)
+    {
+        Odometry refOdometry = referenceOdometry;
+
+        return refOdometry == null ?
+                getFieldVelocity(out) :
+                getVelocityRelativeTo(refOdometry.velocity, refOdometry.position.angle, out);
     }   //getRelativeVelocity
 
     /**
@@ -595,21 +694,19 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      */
     public Odometry getReferenceOdometry()
     {
-        synchronized (odometry)
-        {
-            return referenceOdometry;
-        }
+        return referenceOdometry;
     }   //getReferenceOdometry
 
     /**
      * This method sets the current robot position and velocity as the reference odometry. All relative positions
-     * and velocities will be relative to this reference odometry.
+     * and velocities will be relative to this reference odometry. The reference is taken from the same latched
+     * odometry frame the relative getters read, so a relative reading in the same robot loop starts at zero.
      */
     public void setReferenceOdometry()
     {
         synchronized (odometry)
         {
-            referenceOdometry = odometry.clone();
+            referenceOdometry = odometrySnapshot.get().clone();
         }
     }   //setReferenceOdometry
 
@@ -720,7 +817,7 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      */
     public double getXPosition()
     {
-        return getRelativePosition().x;
+        return getRelativePosition(scratchPose.get()).x;
     }   //getXPosition
 
     /**
@@ -730,7 +827,7 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      */
     public double getYPosition()
     {
-        return getRelativePosition().y;
+        return getRelativePosition(scratchPose.get()).y;
     }   //getYPosition
 
     /**
@@ -741,10 +838,7 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      */
     public double getHeading()
     {
-        synchronized (odometry)
-        {
-            return odometry.position.angle;
-        }
+        return odometrySnapshot.get().position.angle;
     }   //getHeading
 
     /**
@@ -754,7 +848,7 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      */
     public double getXVelocity()
     {
-        return getRelativeVelocity().x;
+        return getRelativeVelocity(scratchPose.get()).x;
     }   //getXVelocity
 
     /**
@@ -764,7 +858,7 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      */
     public double getYVelocity()
     {
-        return getRelativeVelocity().y;
+        return getRelativeVelocity(scratchPose.get()).y;
     }   //getYVelocity
 
     /**
@@ -774,10 +868,7 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      */
     public double getTurnRate()
     {
-        synchronized (odometry)
-        {
-            return odometry.velocity.angle;
-        }
+        return odometrySnapshot.get().velocity.angle;
     }   //getGyroTurnRate
 
     /**
@@ -832,6 +923,8 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
 
             odometry.position.x = odometry.position.y = 0.0;
             odometry.velocity.x = odometry.velocity.y = 0.0;
+            // Make the reset visible immediately, even to the rest of the current robot loop.
+            odometrySnapshot.override(odometry.clone());
         }
     }   //resetOdometry
 
@@ -1239,9 +1332,12 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
         double leftOutput;
         double rightOutput;
 
-        tracer.traceDebug(
-            moduleName, "owner=%s,mag=%f,curve=%f,inverted=%s,driveTime=%.1f,event=%s",
-            owner, magnitude, curve, inverted, driveTime, event);
+        if (tracer.isTraceEnabled(TrcDbgTrace.MsgLevel.DEBUG))
+        {
+            tracer.traceDebug(
+                moduleName, "owner=%s,mag=%f,curve=%f,inverted=%s,driveTime=%.1f,event=%s",
+                owner, magnitude, curve, inverted, driveTime, event);
+        }
         if (validateOwnership(owner))
         {
             if (curve < 0.0)
@@ -1358,9 +1454,12 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
         double leftPower;
         double rightPower;
 
-        tracer.traceDebug(
-            moduleName, "owner=%s,drivePower=%f,turnPower=%f,inverted=%s,driveTime=%.1f,event=%s",
-            owner, drivePower, turnPower, inverted, driveTime, event);
+        if (tracer.isTraceEnabled(TrcDbgTrace.MsgLevel.DEBUG))
+        {
+            tracer.traceDebug(
+                moduleName, "owner=%s,drivePower=%f,turnPower=%f,inverted=%s,driveTime=%.1f,event=%s",
+                owner, drivePower, turnPower, inverted, driveTime, event);
+        }
         if (validateOwnership(owner))
         {
             drivePower = TrcUtil.clipRange(drivePower);
@@ -1876,12 +1975,11 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
                 }
 
                 updateOdometry(odometryDelta, odometry.position.angle);
-                tracer.traceDebug(
-                    moduleName,
-                    "motorsState=" + motorsState +
-                    ", delta=" + odometryDelta +
-                    ", odometry=" + odometry);
+                tracer.trace(
+                    odometryTraceSite, odometry.position.x, odometry.position.y, odometry.position.angle,
+                    odometry.velocity.x, odometry.velocity.y, odometry.velocity.angle);
             }
+            odometrySnapshot.publish(odometry.clone());
         }
     }   //odometryTask
 
@@ -1911,22 +2009,35 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
     {
         int lastIndex = odometries.length - 1;
         double refTimestamp = odometries[lastIndex].currTimestamp;
+        boolean traceEnabled = tracer.isTraceEnabled(TrcDbgTrace.MsgLevel.DEBUG);
 
         for (int i = 0; i < lastIndex; i++)
         {
-            tracer.traceDebug(
-                moduleName, "[%d] Before: name=%s, timestamp=%.3f, pos=%.1f, vel=%.1f",
-                i, odometries[i].sensor, odometries[i].currTimestamp, odometries[i].currPos, odometries[i].velocity);
+            if (traceEnabled)
+            {
+                tracer.traceDebug(
+                    moduleName, "[%d] Before: name=%s, timestamp=%.3f, pos=%.1f, vel=%.1f",
+                    i, odometries[i].sensor, odometries[i].currTimestamp, odometries[i].currPos,
+                    odometries[i].velocity);
+            }
             odometries[i].currPos -= odometries[i].velocity * (odometries[i].currTimestamp - refTimestamp);
             odometries[i].currTimestamp = refTimestamp;
+            if (traceEnabled)
+            {
+                tracer.traceDebug(
+                    moduleName, "[%d] After: name=%s, timestamp=%.3f, pos=%.1f, vel=%.1f",
+                    i, odometries[i].sensor, odometries[i].currTimestamp, odometries[i].currPos,
+                    odometries[i].velocity);
+            }
+        }
+
+        if (traceEnabled)
+        {
             tracer.traceDebug(
-                moduleName, "[%d] After: name=%s, timestamp=%.3f, pos=%.1f, vel=%.1f",
-                i, odometries[i].sensor, odometries[i].currTimestamp, odometries[i].currPos, odometries[i].velocity);
+                moduleName, "[%d] Reference: name=%s, timestamp=%.3f, pos=%.1f, vel=%.1f",
+                lastIndex, odometries[lastIndex].sensor, odometries[lastIndex].currTimestamp,
+                odometries[lastIndex].currPos, odometries[lastIndex].velocity);
         }
-        tracer.traceDebug(
-            moduleName, "[%d] Reference: name=%s, timestamp=%.3f, pos=%.1f, vel=%.1f",
-            lastIndex, odometries[lastIndex].sensor, odometries[lastIndex].currTimestamp,
-            odometries[lastIndex].currPos, odometries[lastIndex].velocity);
     }   //synchronizeOdometries
 
     /**
@@ -1,29 +1,50 @@
 
 package TrcCommonLib.trclib;
 
-import java.util.LinkedList;
 import java.util.Locale;
-import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class implements an elapsed timer to record elapsed time. It is a performance monitoring tool. It is especially
  * important for PID controlled loops that the loops are executed at a high enough frequency or they will oscillate
- * wildly. This class records the elapsed time of some operations in an averaging window queue. To calculate the
- * average elapsed time, all elapsed time values recorded in the averaging window queue are averaged. It also records
- * the min and max elapsed time values it has seen since the last reset.
+ * wildly. This class records the elapsed time of some operations in an averaging window. The window is divided into
+ * time slices that are recycled as time passes, so the average elapsed time covers the recent window without keeping
+ * every sample. It also records the min and max elapsed time values it has seen since the last reset. All elapsed
+ * times are also recorded into a histogram of the TrcMetrics registry. Recording is lock-free and the start time is
+ * kept per thread, so one timer can be shared by operations running on different threads.
  */
 public class TrcElapsedTimer
 {
+    private static final int NUM_SLICES = 8;
+
+    /**
+     * This class holds the elapsed times recorded within one time slice of the averaging window.
+     */
+    private static class Slice
+    {
+        final AtomicLong sliceNumber = new AtomicLong(-1);
+        final AtomicLong totalElapsedTime = new AtomicLong();
+        final AtomicLong count = new AtomicLong();
+    }   //class Slice
+
     private final String instanceName;
-    private final long averageWindow;
-    private final Queue<Long> elapsedTimeQueue;
-    private Long minElapsedTime = null;
-    private Long maxElapsedTime = null;
-    private long totalElapsedTime = 0L;
-    private long startTime = 0L;
+    private final long sliceNanoTime;
+    private final Slice[] slices = new Slice[NUM_SLICES];
+    private final TrcMetrics.Histogram elapsedTimeHistogram;
+    private final ThreadLocal<long[]> startTime = new ThreadLocal<long[]>()
+    {
+        @Override
+        protected long[] initialValue()
+        {
+            return new long[1];
+        }
+    };
+    private volatile long resetTime = 0L;
+    private volatile long lastElapsedTime = 0L;
 
     /**
-     * Constructor: Creates an instance of the object.
+     * Constructor: Creates an instance of the object. The elapsed times are recorded into the "instanceName"
+     * histogram of the metrics registry.
      *
      * @param instanceName specifies the name to identify this instance of the timer.
      * @param averageWindow specifies the time window in seconds for averaging elapsed time.
@@ -31,8 +52,12 @@ public class TrcElapsedTimer
     public TrcElapsedTimer(String instanceName, double averageWindow)
     {
         this.instanceName = instanceName;
-        this.averageWindow = (long)(averageWindow * 1000000000);
-        elapsedTimeQueue = new LinkedList<>();
+        this.sliceNanoTime = Math.max(1L, (long)(averageWindow * 1000000000) / NUM_SLICES);
+        for (int i = 0; i < NUM_SLICES; i++)
+        {
+            slices[i] = new Slice();
+        }
+        this.elapsedTimeHistogram = TrcMetrics.getHistogram(instanceName);
         reset();
     }   //TrcElapsedTimer
 
@@ -50,87 +75,91 @@ public class TrcElapsedTimer
     }   //toString
 
     /**
-     * This method resets the performance data.
+     * This method resets the performance data. Start times recorded before the reset are discarded.
      */
-    public synchronized void reset()
+    public void reset()
     {
-        elapsedTimeQueue.clear();
-        minElapsedTime = null;
-        maxElapsedTime = null;
-        totalElapsedTime = 0L;
-        startTime = 0L;
+        for (Slice slice: slices)
+        {
+            slice.sliceNumber.set(-1);
+            slice.totalElapsedTime.set(0L);
+            slice.count.set(0L);
+        }
+        elapsedTimeHistogram.reset();
+        lastElapsedTime = 0L;
+        resetTime = TrcTimer.getNanoTime();
     }   //reset
 
     /**
-     * This method is called to record the start time.
+     * This method is called to record the start time of the calling thread.
      */
-    public synchronized void recordStartTime()
+    public void recordStartTime()
     {
-        startTime = TrcTimer.getNanoTime();
+        startTime.get()[0] = TrcTimer.getNanoTime();
     }   //recordStartTime
 
     /**
-     * This method is called to record the elapsed time since the last start time into the elapsed time queue. It also
-     * checks if the elapsed time is the minimum or maximum it has seen since last reset.
+     * This method is called to record the elapsed time since the last start time of the calling thread into the
+     * averaging window and the histogram.
      */
-    public synchronized void recordEndTime()
+    public void recordEndTime()
     {
+        long threadStartTime = startTime.get()[0];
         //
         // ElapsedTimer could have been enabled after the recordStartTime call, so it will miss recording startTime.
         // In this case, skip recordEndTime since we don't have a valid startTime.
         //
-        if (startTime > 0L)
+        if (threadStartTime > resetTime)
         {
-            long elapsedTime = TrcTimer.getNanoTime() - startTime;
+            long currNanoTime = TrcTimer.getNanoTime();
+            long elapsedTime = currNanoTime - threadStartTime;
+            long sliceNumber = currNanoTime / sliceNanoTime;
+            Slice slice = slices[(int) (sliceNumber % NUM_SLICES)];
+            long prevSliceNumber = slice.sliceNumber.get();
 
-            if (minElapsedTime == null || elapsedTime < minElapsedTime)
+            if (prevSliceNumber != sliceNumber && slice.sliceNumber.compareAndSet(prevSliceNumber, sliceNumber))
             {
-                minElapsedTime = elapsedTime;
+                // The slice is being recycled. A sample racing with the recycle may be dropped from the average,
+                // which is acceptable for a monitoring tool.
+                slice.totalElapsedTime.set(0L);
+                slice.count.set(0L);
             }
+            slice.totalElapsedTime.addAndGet(elapsedTime);
+            slice.count.incrementAndGet();
 
-            if (maxElapsedTime == null || elapsedTime > maxElapsedTime)
-            {
-                maxElapsedTime = elapsedTime;
-            }
-
-            elapsedTimeQueue.add(elapsedTime);
-            totalElapsedTime += elapsedTime;
-
-            while (totalElapsedTime > averageWindow)
-            {
-                totalElapsedTime -= elapsedTimeQueue.remove();
-            }
+            elapsedTimeHistogram.record(elapsedTime);
+            lastElapsedTime = elapsedTime;
         }
     }   //recordEndTime
 
     /**
-     * This method is called in a loop to have its period time measured. It records a number of loop periods in a
-     * queue for a given time window.
+     * This method is called in a loop to have its period time measured. It records the loop periods of the calling
+     * thread in the averaging window.
      */
-    public synchronized void recordPeriodTime()
+    public void recordPeriodTime()
     {
-        if (startTime > 0L)
-        {
-            recordEndTime();
-        }
+        recordEndTime();
         recordStartTime();
     }   //recordPeriodTime
 
+    /**
+     * This method returns the histogram of the elapsed times.
+     *
+     * @return elapsed time histogram.
+     */
+    public TrcMetrics.Histogram getElapsedTimeHistogram()
+    {
+        return elapsedTimeHistogram;
+    }   //getElapsedTimeHistogram
+
     /**
      * This method returns the last recorded elapsed time in seconds.
      *
      * @return last recorded elapsed time in seconds.
      */
-    public synchronized double getLastElapsedTime()
+    public double getLastElapsedTime()
     {
-        double elapsedTime = 0.0;
-
-        if (!elapsedTimeQueue.isEmpty())
-        {
-            elapsedTime = (long)((LinkedList<Long>)elapsedTimeQueue).getLast() / 1000000000.0;
-        }
-
-        return elapsedTime;
+        return lastElapsedTime / 1000000000.0;
     }   //getLastElapsedTime
 
     /**
@@ -138,9 +167,22 @@ public class TrcElapsedTimer
      *
      * @return average elapsed time in seconds.
      */
-    public synchronized double getAverageElapsedTime()
+    public double getAverageElapsedTime()
     {
-        return elapsedTimeQueue.isEmpty()? 0.0: (double)totalElapsedTime/elapsedTimeQueue.size()/1000000000.0;
+        long currSliceNumber = TrcTimer.getNanoTime() / sliceNanoTime;
+        long totalElapsedTime = 0L;
+        long count = 0L;
+
+        for (Slice slice: slices)
+        {
+            if (currSliceNumber - slice.sliceNumber.get() < NUM_SLICES)
+            {
+                totalElapsedTime += slice.totalElapsedTime.get();
+                count += slice.count.get();
+            }
+        }
+
+        return count == 0? 0.0: (double)totalElapsedTime/count/1000000000.0;
     }   //getAverageElapsedTime
 
     /**
@@ -148,9 +190,9 @@ public class TrcElapsedTimer
      *
      * @return minimum elapsed time in seconds.
      */
-    public synchronized double getMinElapsedTime()
+    public double getMinElapsedTime()
     {
-        return minElapsedTime != null? minElapsedTime/1000000000.0: 0.0;
+        return elapsedTimeHistogram.getMin();
     }   //getMinElapsedTime
 
     /**
@@ -158,9 +200,9 @@ public class TrcElapsedTimer
      *
      * @return maximum elapsed time in seconds.
      */
-    public synchronized double getMaxElapsedTime()
+    public double getMaxElapsedTime()
     {
-        return maxElapsedTime != null? maxElapsedTime/1000000000.0: 0.0;
+        return elapsedTimeHistogram.getMax();
     }   //getMaxElapsedTime
 
     /**
@@ -168,7 +210,7 @@ public class TrcElapsedTimer
      *
      * @param tracer specifies the tracer to be used to print the info.
      */
-    public synchronized void printElapsedTime(TrcDbgTrace tracer)
+    public void printElapsedTime(TrcDbgTrace tracer)
     {
         tracer.traceInfo(instanceName, this.toString());
     }   //printElapsedTime
@@ -1,8 +1,8 @@
 
 package TrcCommonLib.trclib;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -79,7 +79,14 @@ public class TrcEvent
      */
     public void signal()
     {
-        eventState.compareAndSet(EventState.CLEARED, EventState.SIGNALED);
+        if (eventState.compareAndSet(EventState.CLEARED, EventState.SIGNALED))
+        {
+            CallbackEventList list = callbackEventList;
+            if (list != null)
+            {
+                list.enqueue(this);
+            }
+        }
     }   //signal
 
     /**
@@ -126,15 +133,73 @@ public class TrcEvent
         void notify(Object context);
     }   //interface Callback
 
+    /**
+     * This class implements the per-thread queue of signaled events waiting for their callbacks. It is a lock-free
+     * multi-producer single-consumer queue: any thread signaling an event pushes it onto the queue, and only the
+     * owner thread drains it in performEventCallback. The queue is intrusive, events are linked through their own
+     * nextPending field, so neither pushing nor draining allocates memory.
+     */
     private static class CallbackEventList
     {
-        final ArrayList<TrcEvent> eventList = new ArrayList<>();
-        final Object listLock = new Object();
+        final Thread thread;
+        final AtomicReference<TrcEvent> pendingHead = new AtomicReference<>();
+
+        CallbackEventList(Thread thread)
+        {
+            this.thread = thread;
+        }   //CallbackEventList
+
+        /**
+         * This method pushes a signaled event onto the queue. An event can only be in one queue at a time, so it is
+         * not pushed again if it is already queued.
+         *
+         * @param event specifies the signaled event.
+         */
+        void enqueue(TrcEvent event)
+        {
+            if (event.queued.compareAndSet(false, true))
+            {
+                TrcEvent head;
+                do
+                {
+                    head = pendingHead.get();
+                    event.nextPending = head;
+                } while (!pendingHead.compareAndSet(head, event));
+            }
+        }   //enqueue
+
+        /**
+         * This method takes all queued events off the queue in one atomic operation and returns them in the order
+         * they were signaled.
+         *
+         * @return first event of the drained list linked by nextPending, null if the queue was empty.
+         */
+        TrcEvent drain()
+        {
+            TrcEvent event = pendingHead.getAndSet(null);
+            TrcEvent reversed = null;
+            // The queue is a LIFO stack, reverse it in place so callbacks are done in signaling order.
+            while (event != null)
+            {
+                TrcEvent next = event.nextPending;
+                event.nextPending = reversed;
+                reversed = event;
+                event = next;
+            }
+
+            return reversed;
+        }   //drain
+
     }   //class CallbackEventList
 
-    private static final HashMap<Thread, CallbackEventList> callbackEventListMap = new HashMap<>();
-    private Callback callback;
-    private Object callbackContext;
+    private static final ConcurrentHashMap<Thread, CallbackEventList> callbackEventListMap =
+        new ConcurrentHashMap<>();
+    private static final ThreadLocal<CallbackEventList> threadCallbackEventList = new ThreadLocal<>();
+    private volatile Callback callback;
+    private volatile Object callbackContext;
+    private volatile CallbackEventList callbackEventList;
+    private final AtomicBoolean queued = new AtomicBoolean(false);
+    private TrcEvent nextPending;
 
     /**
      * This method sets a callback handler so that when the event is signaled, the callback handler is called on
@@ -150,48 +215,34 @@ public class TrcEvent
      */
     public void setCallback(Thread thread, Callback callback, Object callbackContext)
     {
-        CallbackEventList callbackEventList;
-
-        if (callback != null)
+        if (callback == null)
         {
-            // We are setting a callback for the event, let's initialized the event state to clear.
-            clear();
+            // Unhook the event. If it is still queued, the owner thread will discard it when draining. This does not
+            // need the thread to be registered.
+            this.callbackEventList = null;
+            this.callback = null;
+            this.callbackContext = null;
         }
-
-        synchronized (callbackEventListMap)
+        else
         {
-            callbackEventList = callbackEventListMap.get(thread);
-        }
+            CallbackEventList list =
+                thread == Thread.currentThread()? threadCallbackEventList.get(): callbackEventListMap.get(thread);
 
-        if (callbackEventList != null)
-        {
-            synchronized (callbackEventList.listLock)
+            if (list != null)
             {
-                boolean inList = callbackEventList.eventList.contains(this);
-
                 this.callback = callback;
                 this.callbackContext = callbackContext;
-                if (callback != null && !inList)
-                {
-                    // Callback handler is not already in the callback list, add it.
-                    callbackEventList.eventList.add(this);
-                    tracer.traceDebug(
-                        instanceName, "Adding event to the callback list for thread " + thread.getName() + ".");
-                }
-                else if (callback == null && inList)
-                {
-                    // Remove the callback from the list.
-                    callbackEventList.eventList.remove(this);
-                    this.callbackContext = null;
-                    tracer.traceDebug(
-                        instanceName, "Removing event from the callback list for thread " + thread.getName() + ".");
-                }
+                this.callbackEventList = list;
+                // We are setting a callback for the event, let's initialized the event state to clear. This must be
+                // done after the event is hooked up to the list so that a signal from now on will queue the event.
+                clear();
+                tracer.traceDebug(instanceName, "Setting event callback for thread %s.", thread.getName());
+            }
+            else
+            {
+                tracer.traceWarn(instanceName, "Thread " + thread.getName() + " is not registered.");
+                TrcDbgTrace.printThreadStack();
             }
-        }
-        else
-        {
-            tracer.traceWarn(instanceName, "Thread " + thread.getName() + " is not registered.");
-            TrcDbgTrace.printThreadStack();
         }
     }   //setCallback
 
@@ -234,23 +285,18 @@ public class TrcEvent
     public static boolean registerEventCallback()
     {
         final Thread thread = Thread.currentThread();
-        boolean alreadyRegistered;
+        CallbackEventList list = new CallbackEventList(thread);
+        boolean alreadyRegistered = callbackEventListMap.putIfAbsent(thread, list) != null;
 
-        synchronized (callbackEventListMap)
+        if (!alreadyRegistered)
         {
-            alreadyRegistered = callbackEventListMap.containsKey(thread);
-
-            if (!alreadyRegistered)
-            {
-                callbackEventListMap.put(thread, new CallbackEventList());
-                staticTracer.traceDebug(
-                    moduleName, "Registering thread " + thread.getName() + " for event callback.");
-            }
-            else
-            {
-                staticTracer.traceWarn(moduleName, "Thread " + thread.getName() + " is already registered.");
-                TrcDbgTrace.printThreadStack();
-            }
+            threadCallbackEventList.set(list);
+            staticTracer.traceDebug(moduleName, "Registering thread " + thread.getName() + " for event callback.");
+        }
+        else
+        {
+            staticTracer.traceWarn(moduleName, "Thread " + thread.getName() + " is already registered.");
+            TrcDbgTrace.printThreadStack();
         }
 
         return !alreadyRegistered;
@@ -258,87 +304,90 @@ public class TrcEvent
 
     /**
      * This method is called by a periodic thread when the thread has exited its thread loop and before it is
-     * terminated to unregister its thread from event callback.
+     * terminated to unregister its thread from event callback. Any signaled events still waiting for their
+     * callbacks are discarded.
      *
      * @return true if unregister is successful, false if the thread was never registered.
      */
     public static boolean unregisterEventCallback()
     {
         final Thread thread = Thread.currentThread();
-        CallbackEventList callbackEventList;
-
-        synchronized (callbackEventListMap)
-        {
-            callbackEventList = callbackEventListMap.remove(thread);
-        }
+        CallbackEventList list = callbackEventListMap.remove(thread);
 
-        if (callbackEventList == null)
+        threadCallbackEventList.remove();
+        if (list == null)
         {
             staticTracer.traceWarn(moduleName, "Thread " + thread.getName() + " was never registered.");
             TrcDbgTrace.printThreadStack();
         }
         else
         {
-            staticTracer.traceDebug(
-                moduleName, "Unregistering thread " + thread.getName() + " for event callback.");
+            for (TrcEvent event = list.drain(); event != null; )
+            {
+                TrcEvent next = event.nextPending;
+                event.nextPending = null;
+                event.queued.set(false);
+                event = next;
+            }
+            staticTracer.traceDebug(moduleName, "Unregistering thread " + thread.getName() + " for event callback.");
         }
 
-        return callbackEventList != null;
+        return list != null;
     }   //unregisterEventCallback
 
     /**
-     * This method is called by a periodic thread in its thread loop to check if any events in the list are signaled
-     * or canceled. When that happens, it performs the event callback on the periodic thread.
+     * This method is called by a periodic thread in its thread loop to perform the callbacks of all events that
+     * have been signaled since the last call. It only drains the signaled events queued for this thread, so it
+     * never scans events that are still pending and never allocates memory.
      */
     public static void performEventCallback()
     {
-        final Thread thread = Thread.currentThread();
-        CallbackEventList callbackEventList;
+        final CallbackEventList list = threadCallbackEventList.get();
 
-        synchronized (callbackEventListMap)
+        if (list != null)
         {
-            callbackEventList = callbackEventListMap.get(thread);
-        }
-
-        if (callbackEventList != null)
-        {
-            ArrayList<TrcEvent> callbackList = new ArrayList<>();
+            TrcEvent event = list.drain();
 
-            synchronized (callbackEventList.listLock)
+            while (event != null)
             {
-//                // Use a list Iterator because it is fail-fast and allows removing entries while iterating the list.
-//                Iterator<TrcEvent> listIterator = callbackEventList.iterator();
-//                while (listIterator.hasNext())
-                // Iterating the list backward so that removing an event will not affect iteration.
-                for (int i = callbackEventList.eventList.size() - 1; i >= 0; i--)
+                TrcEvent next = event.nextPending;
+
+                event.nextPending = null;
+                // Allow the event to be queued again before checking its state so a signal racing with us is either
+                // seen here or queues the event again.
+                event.queued.set(false);
+                if (event.callbackEventList == list)
                 {
-//                    TrcEvent event = listIterator.next();
-                    TrcEvent event = callbackEventList.eventList.get(i);
-                    if (event.isSignaled() || event.isCanceled())
+                    Callback callback = event.callback;
+                    Object context = event.callbackContext;
+
+                    if (callback != null && event.isSignaled())
                     {
-                        callbackList.add(event);
-//                        listIterator.remove();
-                        callbackEventList.eventList.remove(i);
+                        staticTracer.traceDebug(
+                            moduleName, "Doing event callback for %s on thread %s.", event, list.thread.getName());
+                        // Clear the callback stuff before doing the callback since the callback may reuse and chain
+                        // to another callback.
+                        event.callbackEventList = null;
+                        event.callback = null;
+                        event.callbackContext = null;
+                        callback.notify(context);
                     }
                 }
-            }
-
-            for (TrcEvent event: callbackList)
-            {
-                staticTracer.traceDebug(
-                    moduleName, "Doing event callback for " + event + " on thread " + thread.getName() + ".");
-                Callback callback = event.callback;
-                Object context = event.callbackContext;
-                // Clear the callback stuff before doing the callback since the callback may reuse and chain to
-                // another callback.
-                event.callback = null;
-                event.callbackContext = null;
-                callback.notify(context);
+                else
+                {
+                    // The callback was moved to another thread after the event was queued here, hand it over.
+                    CallbackEventList otherList = event.callbackEventList;
+                    if (otherList != null && event.isSignaled())
+                    {
+                        otherList.enqueue(event);
+                    }
+                }
+                event = next;
             }
         }
         else
         {
-            staticTracer.traceWarn(moduleName, thread.getName() + " was never registered.");
+            staticTracer.traceWarn(moduleName, Thread.currentThread().getName() + " was never registered.");
             TrcDbgTrace.printThreadStack();
         }
     }   //performEventCallback
@@ -284,6 +284,45 @@ public abstract class TrcGyro extends TrcSensor<TrcGyro.DataType> implements Trc
         }
     }   //setEnabled
 
+    /**
+     * This method returns the task object of the task that reads and caches the gyro data. It is null by default,
+     * platform dependent gyros that read their data in a task override it.
+     *
+     * @return gyro task object, null if the gyro data is read on demand.
+     */
+    public TrcTaskMgr.TaskObject getGyroTaskObject()
+    {
+        return null;
+    }   //getGyroTaskObject
+
+    /**
+     * This method declares that the given task consumes the gyro heading, so it runs after the gyro task, the
+     * integrator and the CardinalConverter have updated the heading when they are registered for the same task type.
+     *
+     * @param taskObj specifies the task object of the heading consumer (e.g. the drive base odometry task).
+     */
+    public void addHeadingConsumer(TrcTaskMgr.TaskObject taskObj)
+    {
+        TrcTaskMgr.TaskObject gyroTaskObj = getGyroTaskObject();
+        TrcTaskMgr.TaskObject integratorTaskObj = integrator != null? integrator.getTaskObject(): null;
+        TrcTaskMgr.TaskObject converterTaskObj = cardinalConverter != null? cardinalConverter.getTaskObject(): null;
+
+        if (gyroTaskObj != null)
+        {
+            // The integrator and the CardinalConverter process the raw data cached by the gyro task.
+            if (integratorTaskObj != null)
+            {
+                integratorTaskObj.runsAfter(gyroTaskObj);
+            }
+
+            if (converterTaskObj != null)
+            {
+                converterTaskObj.runsAfter(gyroTaskObj);
+            }
+        }
+        taskObj.runsAfter(gyroTaskObj, integratorTaskObj, converterTaskObj);
+    }   //addHeadingConsumer
+
     /**
      * This method enables/disables the elapsed timers for performance monitoring.
      *
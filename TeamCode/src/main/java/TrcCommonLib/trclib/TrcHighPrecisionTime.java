@@ -6,7 +6,8 @@ import java.util.Locale;
 /**
  * This class provides high precision time with nanosecond precision but not necessarily nanosecond resolution
  * (that is, how frequently the value changes). There is no guarantee except that the resolution is at least as
- * good as that of System.currentTimeMillis().
+ * good as that of System.currentTimeMillis(). Time is read from the TrcTimer clock source, so it follows a simulated
+ * clock if one is installed.
  */
 public class TrcHighPrecisionTime
 {
@@ -43,8 +44,8 @@ public class TrcHighPrecisionTime
      */
     public synchronized void recordTimestamp()
     {
-        timestampNano = System.nanoTime();
-        timestampEpoch = System.currentTimeMillis() / 1000.0;
+        timestampNano = TrcTimer.getNanoTime();
+        timestampEpoch = TrcTimer.getCurrentTimeMillis() / 1000.0;
     }   //recordTimestamp
 
     /**
@@ -54,7 +55,7 @@ public class TrcHighPrecisionTime
      */
     public synchronized double getElapsedTime()
     {
-        return (System.nanoTime() - timestampNano) / 1000000000.0;
+        return (TrcTimer.getNanoTime() - timestampNano) / 1000000000.0;
     }   //getElapsedTime
 
     /**
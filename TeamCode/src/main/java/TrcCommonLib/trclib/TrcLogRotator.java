@@ -0,0 +1,581 @@
+
+package TrcCommonLib.trclib;
+
+import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class implements rotation, compression and retention of trace log files. Instead of growing a single file,
+ * the trace log is written in numbered segments (e.g. "20241012@153000!Auto.001.log"). The logger thread starts a new
+ * segment when the current one exceeds its size or age limit. Closed segments are handed to a low priority
+ * background thread that compresses them with gzip, adds them to the index file and applies the retention policy to
+ * the log folder, so the logger thread never waits for any of it.
+ * <p>
+ * The index file (e.g. "20241012@153000!Auto.idx") has one line per closed segment with the segment file name, the
+ * first and last mode elapsed time it covers, the matching wall clock times in msec and the uncompressed size. Tools
+ * can use findSegment to look up the segment covering a given match time without decompressing any segment.
+ * </p>
+ * The retention policy applies to every trace log file in the log folder, including logs of earlier runs, and
+ * deletes the oldest ones first. The segment being written is never deleted.
+ */
+public class TrcLogRotator
+{
+    private static final String moduleName = TrcLogRotator.class.getSimpleName();
+
+    public static final String INDEX_EXTENSION = ".idx";
+    public static final String GZIP_EXTENSION = ".gz";
+    public static final String INDEX_HEADER = "#segment,startTime,endTime,startEpochMillis,endEpochMillis,bytes";
+
+    private static final String[] LOG_EXTENSIONS = {".log", ".trcb"};
+    private static final int COPY_BUFFER_SIZE = 64*1024;
+    private static final Runnable STOP_JOB = () -> {};
+
+    /**
+     * This class contains all the parameters of log rotation, compression and retention. A limit of zero means no
+     * limit.
+     */
+    public static class Parameters
+    {
+        public long maxSegmentBytes = 4*1024*1024;
+        public double maxSegmentSeconds = 0.0;
+        public boolean compress = true;
+        public long maxTotalBytes = 64*1024*1024;
+        public int maxFiles = 0;
+        public double maxAgeSeconds = 0.0;
+
+        /**
+         * This method returns the string form of all the parameters.
+         *
+         * @return string form of all the parameters.
+         */
+        @Override
+        public String toString()
+        {
+            return "maxSegmentBytes=" + maxSegmentBytes +
+                   ", maxSegmentSeconds=" + maxSegmentSeconds +
+                   ", compress=" + compress +
+                   ", maxTotalBytes=" + maxTotalBytes +
+                   ", maxFiles=" + maxFiles +
+                   ", maxAgeSeconds=" + maxAgeSeconds;
+        }   //toString
+
+        /**
+         * This method sets the limits at which the logger thread starts a new segment.
+         *
+         * @param maxBytes specifies the maximum segment size in bytes, 0 for no limit.
+         * @param maxSeconds specifies the maximum time span of a segment in seconds, 0 for no limit.
+         * @return this parameter object.
+         */
+        public Parameters setSegmentLimits(long maxBytes, double maxSeconds)
+        {
+            this.maxSegmentBytes = maxBytes;
+            this.maxSegmentSeconds = maxSeconds;
+            return this;
+        }   //setSegmentLimits
+
+        /**
+         * This method enables/disables gzip compression of closed segments.
+         *
+         * @param compress specifies true to compress closed segments, false otherwise.
+         * @return this parameter object.
+         */
+        public Parameters setCompression(boolean compress)
+        {
+            this.compress = compress;
+            return this;
+        }   //setCompression
+
+        /**
+         * This method sets the retention limits of the trace log files in the log folder.
+         *
+         * @param maxTotalBytes specifies the maximum total size of all trace log files in bytes, 0 for no limit.
+         * @param maxFiles specifies the maximum number of trace log files, 0 for no limit.
+         * @param maxAgeSeconds specifies the maximum age of a trace log file in seconds, 0 for no limit.
+         * @return this parameter object.
+         */
+        public Parameters setRetention(long maxTotalBytes, int maxFiles, double maxAgeSeconds)
+        {
+            this.maxTotalBytes = maxTotalBytes;
+            this.maxFiles = maxFiles;
+            this.maxAgeSeconds = maxAgeSeconds;
+            return this;
+        }   //setRetention
+
+    }   //class Parameters
+
+    /**
+     * This class describes a closed segment.
+     */
+    private static class Segment
+    {
+        final String fileName;
+        final double startTime;
+        final double endTime;
+        final long startEpochMillis;
+        final long endEpochMillis;
+        final long bytes;
+
+        Segment(
+            String fileName, double startTime, double endTime, long startEpochMillis, long endEpochMillis, long bytes)
+        {
+            this.fileName = fileName;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.startEpochMillis = startEpochMillis;
+            this.endEpochMillis = endEpochMillis;
+            this.bytes = bytes;
+        }   //Segment
+
+        /**
+         * This method returns the index file entry of the segment.
+         *
+         * @param indexedName specifies the segment file name recorded in the index.
+         * @return index file entry.
+         */
+        String toIndexEntry(String indexedName)
+        {
+            return String.format(
+                Locale.US, "%s,%.6f,%.6f,%d,%d,%d",
+                indexedName, startTime, endTime, startEpochMillis, endEpochMillis, bytes);
+        }   //toIndexEntry
+
+    }   //class Segment
+
+    private final Parameters params;
+    private final File folder;
+    private final String baseName;
+    private final String extension;
+    private final File indexFile;
+    private final LinkedBlockingQueue<Runnable> jobQueue = new LinkedBlockingQueue<>();
+    // Only accessed by the background thread.
+    private final ArrayList<String> indexEntries = new ArrayList<>();
+    private Thread backgroundThread = null;
+    private int segmentNumber = 0;
+    private String activeSegment = null;
+    private long segmentStartNanoTime = 0;
+    private double segmentStartTime = 0.0;
+    private long segmentStartEpochMillis = 0;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param logFileName specifies the trace log file name the segment names are derived from.
+     * @param params specifies the rotation, compression and retention parameters.
+     */
+    public TrcLogRotator(String logFileName, Parameters params)
+    {
+        File logFile = new File(logFileName);
+        String name = logFile.getName();
+        int extIndex = name.lastIndexOf('.');
+
+        this.params = params;
+        this.folder = logFile.getAbsoluteFile().getParentFile();
+        this.baseName = extIndex > 0? name.substring(0, extIndex): name;
+        this.extension = extIndex > 0? name.substring(extIndex): "";
+        this.indexFile = new File(folder, baseName + INDEX_EXTENSION);
+    }   //TrcLogRotator
+
+    /**
+     * This method returns the rotator info in string form.
+     *
+     * @return rotator info in string form.
+     */
+    @Override
+    public String toString()
+    {
+        return baseName + "(segment=" + segmentNumber + "," + params + ")";
+    }   //toString
+
+    /**
+     * This method returns the index file of the trace log.
+     *
+     * @return index file path.
+     */
+    public String getIndexFileName()
+    {
+        return indexFile.getPath();
+    }   //getIndexFileName
+
+    /**
+     * This method starts a new segment and returns its file name. The first call also starts the background thread
+     * and applies the retention policy to the files left over by earlier runs. It is called by the logger thread.
+     *
+     * @return file name of the new segment.
+     */
+    public synchronized String openSegment()
+    {
+        if (backgroundThread == null)
+        {
+            backgroundThread = new Thread(this::backgroundTask, baseName + "." + moduleName);
+            backgroundThread.setPriority(Thread.MIN_PRIORITY);
+            backgroundThread.setDaemon(true);
+            backgroundThread.start();
+            jobQueue.add(this::applyRetention);
+        }
+
+        segmentNumber++;
+        segmentStartNanoTime = TrcTimer.getNanoTime();
+        segmentStartTime = TrcTimer.getModeElapsedTime();
+        segmentStartEpochMillis = TrcTimer.getCurrentTimeMillis();
+        activeSegment = new File(
+            folder, String.format(Locale.US, "%s.%03d%s", baseName, segmentNumber, extension)).getPath();
+
+        return activeSegment;
+    }   //openSegment
+
+    /**
+     * This method checks if the current segment has reached its size or age limit.
+     *
+     * @param segmentBytes specifies the number of bytes written to the current segment.
+     * @return true if a new segment should be started, false otherwise.
+     */
+    public boolean isRotationDue(long segmentBytes)
+    {
+        return params.maxSegmentBytes > 0 && segmentBytes >= params.maxSegmentBytes ||
+               params.maxSegmentSeconds > 0.0 &&
+               TrcTimer.getNanoTime() - segmentStartNanoTime >= params.maxSegmentSeconds*1000000000.0;
+    }   //isRotationDue
+
+    /**
+     * This method closes the current segment and starts a new one. The closed segment is compressed and indexed by
+     * the background thread. The caller must have closed the segment file.
+     *
+     * @param segmentBytes specifies the number of bytes written to the closed segment.
+     * @return file name of the new segment.
+     */
+    public synchronized String rotate(long segmentBytes)
+    {
+        closeSegment(segmentBytes);
+        return openSegment();
+    }   //rotate
+
+    /**
+     * This method closes the last segment. The background thread exits once it has compressed and indexed it.
+     * The caller must have closed the segment file.
+     *
+     * @param segmentBytes specifies the number of bytes written to the closed segment.
+     */
+    public synchronized void close(long segmentBytes)
+    {
+        if (activeSegment != null)
+        {
+            closeSegment(segmentBytes);
+            activeSegment = null;
+            jobQueue.add(STOP_JOB);
+        }
+    }   //close
+
+    /**
+     * This method queues the current segment to the background thread.
+     *
+     * @param segmentBytes specifies the number of bytes written to the segment.
+     */
+    private void closeSegment(long segmentBytes)
+    {
+        Segment segment = new Segment(
+            activeSegment, segmentStartTime, TrcTimer.getModeElapsedTime(), segmentStartEpochMillis,
+            TrcTimer.getCurrentTimeMillis(), segmentBytes);
+
+        jobQueue.add(() -> finishSegment(segment));
+    }   //closeSegment
+
+    /**
+     * This method runs the background thread. It processes the queued jobs until the rotator is closed.
+     */
+    private void backgroundTask()
+    {
+        while (true)
+        {
+            try
+            {
+                Runnable job = jobQueue.take();
+
+                if (job == STOP_JOB)
+                {
+                    break;
+                }
+                job.run();
+            }
+            catch (InterruptedException e)
+            {
+                break;
+            }
+        }
+    }   //backgroundTask
+
+    /**
+     * This method compresses a closed segment if compression is enabled, adds it to the index file and applies the
+     * retention policy. It is called on the background thread.
+     *
+     * @param segment specifies the closed segment.
+     */
+    private void finishSegment(Segment segment)
+    {
+        File file = new File(segment.fileName);
+
+        if (file.exists())
+        {
+            if (params.compress)
+            {
+                File gzipFile = new File(segment.fileName + GZIP_EXTENSION);
+
+                try
+                {
+                    compressFile(file, gzipFile);
+                    if (!file.delete())
+                    {
+                        TrcDbgTrace.globalTraceWarn(moduleName, "Failed to delete " + file + ".");
+                    }
+                    file = gzipFile;
+                }
+                catch (IOException e)
+                {
+                    TrcDbgTrace.globalTraceErr(moduleName, "Failed to compress " + file + ": " + e);
+                    gzipFile.delete();
+                }
+            }
+
+            indexEntries.add(segment.toIndexEntry(file.getName()));
+            writeIndex();
+            applyRetention();
+        }
+    }   //finishSegment
+
+    /**
+     * This method compresses a file with gzip.
+     *
+     * @param file specifies the file to compress.
+     * @param gzipFile specifies the compressed file.
+     * @throws IOException if the compression failed.
+     */
+    private static void compressFile(File file, File gzipFile) throws IOException
+    {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+
+        try (InputStream in = new FileInputStream(file);
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(gzipFile), COPY_BUFFER_SIZE))
+        {
+            int len;
+
+            while ((len = in.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, len);
+            }
+        }
+    }   //compressFile
+
+    /**
+     * This method rewrites the index file. The new content is written to a temporary file first so a reader never
+     * sees a partial index.
+     */
+    private void writeIndex()
+    {
+        File tmpFile = new File(folder, indexFile.getName() + ".tmp");
+        boolean written = false;
+
+        try (PrintWriter writer = new PrintWriter(tmpFile))
+        {
+            writer.println(INDEX_HEADER);
+            for (String entry: indexEntries)
+            {
+                writer.println(entry);
+            }
+            written = true;
+        }
+        catch (IOException e)
+        {
+            TrcDbgTrace.globalTraceErr(moduleName, "Failed to write " + tmpFile + ": " + e);
+        }
+
+        if (written && !tmpFile.renameTo(indexFile) && !(indexFile.delete() && tmpFile.renameTo(indexFile)))
+        {
+            TrcDbgTrace.globalTraceErr(moduleName, "Failed to update " + indexFile + ".");
+        }
+    }   //writeIndex
+
+    /**
+     * This method applies the retention policy to the trace log files in the log folder, deleting the oldest files
+     * first. Segments of this log are only deleted after they are indexed, so the active segment and the segments
+     * waiting to be compressed are kept. Index files left without any segment are deleted too. It is called on the
+     * background thread.
+     */
+    private void applyRetention()
+    {
+        File[] files = folder.listFiles();
+
+        if (files != null)
+        {
+            ArrayList<File> logFiles = new ArrayList<>();
+            String segmentPrefix = baseName + ".";
+            long totalBytes = 0;
+
+            for (File file: files)
+            {
+                String name = file.getName();
+
+                // Segments still being written or compressed are counted once they are indexed.
+                if (isLogFile(name) && (!name.startsWith(segmentPrefix) || isIndexed(name)))
+                {
+                    logFiles.add(file);
+                    totalBytes += file.length();
+                }
+            }
+            logFiles.sort(Comparator.comparingLong(File::lastModified));
+
+            long now = TrcTimer.getCurrentTimeMillis();
+            boolean indexChanged = false;
+            for (Iterator<File> iter = logFiles.iterator(); iter.hasNext();)
+            {
+                File file = iter.next();
+
+                if (!(params.maxFiles > 0 && logFiles.size() > params.maxFiles ||
+                      params.maxTotalBytes > 0 && totalBytes > params.maxTotalBytes ||
+                      params.maxAgeSeconds > 0.0 && now - file.lastModified() > params.maxAgeSeconds*1000.0))
+                {
+                    break;
+                }
+
+                long length = file.length();
+                if (file.delete())
+                {
+                    iter.remove();
+                    totalBytes -= length;
+                    indexChanged |= indexEntries.removeIf(entry -> entry.startsWith(file.getName() + ","));
+                }
+            }
+
+            if (indexChanged)
+            {
+                writeIndex();
+            }
+            deleteOrphanIndexFiles(files);
+        }
+    }   //applyRetention
+
+    /**
+     * This method checks if a segment of this log is in the index.
+     *
+     * @param fileName specifies the segment file name.
+     * @return true if the segment is indexed, false otherwise.
+     */
+    private boolean isIndexed(String fileName)
+    {
+        for (String entry: indexEntries)
+        {
+            if (entry.startsWith(fileName + ","))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }   //isIndexed
+
+    /**
+     * This method deletes the index files of earlier runs whose segments have all been deleted.
+     *
+     * @param files specifies the files in the log folder before retention was applied.
+     */
+    private void deleteOrphanIndexFiles(File[] files)
+    {
+        for (File file: files)
+        {
+            String name = file.getName();
+
+            if (name.endsWith(INDEX_EXTENSION) && !file.equals(indexFile))
+            {
+                String prefix = name.substring(0, name.length() - INDEX_EXTENSION.length()) + ".";
+                String[] segments = folder.list((dir, fileName) -> fileName.startsWith(prefix) && isLogFile(fileName));
+
+                if (segments != null && segments.length == 0)
+                {
+                    file.delete();
+                }
+            }
+        }
+    }   //deleteOrphanIndexFiles
+
+    /**
+     * This method checks if a file is a trace log file or segment, compressed or not.
+     *
+     * @param fileName specifies the file name.
+     * @return true if it is a trace log file, false otherwise.
+     */
+    private static boolean isLogFile(String fileName)
+    {
+        String name = fileName.endsWith(GZIP_EXTENSION)?
+            fileName.substring(0, fileName.length() - GZIP_EXTENSION.length()): fileName;
+
+        for (String extension: LOG_EXTENSIONS)
+        {
+            if (name.endsWith(extension))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }   //isLogFile
+
+    /**
+     * This method looks up the segment covering the given mode elapsed time in an index file.
+     *
+     * @param indexFileName specifies the index file.
+     * @param time specifies the mode elapsed time in seconds.
+     * @return path of the segment covering the time, null if no segment covers it.
+     * @throws IOException if the index file could not be read.
+     */
+    public static String findSegment(String indexFileName, double time) throws IOException
+    {
+        File indexFile = new File(indexFileName);
+        String segment = null;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(indexFile)))
+        {
+            String line;
+
+            while (segment == null && (line = reader.readLine()) != null)
+            {
+                String[] fields = line.split(",");
+
+                if (!line.startsWith("#") && fields.length >= 3 &&
+                    time >= Double.parseDouble(fields[1]) && time <= Double.parseDouble(fields[2]))
+                {
+                    segment = new File(indexFile.getAbsoluteFile().getParentFile(), fields[0]).getPath();
+                }
+            }
+        }
+
+        return segment;
+    }   //findSegment
+
+    /**
+     * This method opens a trace log segment for reading, decompressing it on the fly if it is compressed.
+     *
+     * @param fileName specifies the segment file.
+     * @return input stream of the uncompressed segment content.
+     * @throws IOException if the file could not be opened.
+     */
+    public static InputStream openLogStream(String fileName) throws IOException
+    {
+        InputStream in = new BufferedInputStream(new FileInputStream(fileName), COPY_BUFFER_SIZE);
+
+        return fileName.endsWith(GZIP_EXTENSION)? new GZIPInputStream(in, COPY_BUFFER_SIZE): in;
+    }   //openLogStream
+
+}   //class TrcLogRotator
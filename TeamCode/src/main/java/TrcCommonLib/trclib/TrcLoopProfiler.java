@@ -0,0 +1,371 @@
+
+package TrcCommonLib.trclib;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class implements a loop profiler for a periodic robot loop. The loop is divided into named phases, each
+ * phase time is recorded into its own histogram and, when registered with TrcTaskMgr.setTaskProfiler, the time of
+ * every individual task run by TrcTaskMgr is recorded too. Loops that exceed the loop time budget are kept in a
+ * small history together with their phase times and the tasks that took the most time in that loop, so one can
+ * tell which subsystem blew the budget. A snapshot of everything can be dumped to a file at any time from any
+ * thread, even in the middle of a match.
+ */
+public class TrcLoopProfiler
+{
+    private static final int NUM_TOP_TASKS = 3;
+    private static final int MAX_SLOW_LOOPS = 32;
+
+    /**
+     * This class records a loop that exceeded the loop time budget.
+     */
+    private static class SlowLoop
+    {
+        final long loopNumber;
+        final double timestamp;
+        final long loopNanoTime;
+        final long[] phaseNanoTimes;
+        final String[] topTasks;
+
+        SlowLoop(long loopNumber, double timestamp, long loopNanoTime, long[] phaseNanoTimes, String[] topTasks)
+        {
+            this.loopNumber = loopNumber;
+            this.timestamp = timestamp;
+            this.loopNanoTime = loopNanoTime;
+            this.phaseNanoTimes = phaseNanoTimes;
+            this.topTasks = topTasks;
+        }   //SlowLoop
+
+    }   //class SlowLoop
+
+    private final TrcDbgTrace tracer;
+    private final String instanceName;
+    private final String[] phaseNames;
+    private final TrcMetrics.Histogram[] phaseHistograms;
+    private final TrcMetrics.Histogram loopHistogram = new TrcMetrics.Histogram();
+    private final Map<TrcTaskMgr.TaskObject, TrcMetrics.Histogram[]> taskHistograms = new ConcurrentHashMap<>();
+    private final long[] currPhaseNanoTimes;
+    private final ArrayList<SlowLoop> slowLoops = new ArrayList<>();
+    private volatile long loopBudgetNanos;
+    private long loopNumber = 0;
+    private long slowLoopCount = 0;
+    // Top tasks of the current loop, guarded by topTasks. topTaskThreshold is the smallest time in the list once it
+    // is full so most tasks can skip the lock.
+    private final TrcTaskMgr.TaskObject[] topTasks = new TrcTaskMgr.TaskObject[NUM_TOP_TASKS];
+    private final TrcTaskMgr.TaskType[] topTaskTypes = new TrcTaskMgr.TaskType[NUM_TOP_TASKS];
+    private final long[] topTaskNanoTimes = new long[NUM_TOP_TASKS];
+    private volatile long topTaskThreshold = 0;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param loopBudget specifies the loop time budget in seconds, loops that take longer are recorded as slow loops.
+     * @param phaseNames specifies the names of the loop phases.
+     */
+    public TrcLoopProfiler(String instanceName, double loopBudget, String... phaseNames)
+    {
+        this.tracer = new TrcDbgTrace(instanceName);
+        this.instanceName = instanceName;
+        this.phaseNames = phaseNames;
+        this.phaseHistograms = new TrcMetrics.Histogram[phaseNames.length];
+        for (int i = 0; i < phaseNames.length; i++)
+        {
+            phaseHistograms[i] = new TrcMetrics.Histogram();
+        }
+        this.currPhaseNanoTimes = new long[phaseNames.length];
+        this.loopBudgetNanos = (long) (loopBudget*1000000000L);
+    }   //TrcLoopProfiler
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    @Override
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method sets the loop time budget.
+     *
+     * @param loopBudget specifies the loop time budget in seconds.
+     */
+    public void setLoopBudget(double loopBudget)
+    {
+        loopBudgetNanos = (long) (loopBudget*1000000000L);
+    }   //setLoopBudget
+
+    /**
+     * This method is called by the loop thread at the start of each loop.
+     */
+    public void startLoop()
+    {
+        loopNumber++;
+        for (int i = 0; i < currPhaseNanoTimes.length; i++)
+        {
+            currPhaseNanoTimes[i] = 0;
+        }
+
+        synchronized (topTasks)
+        {
+            for (int i = 0; i < NUM_TOP_TASKS; i++)
+            {
+                topTasks[i] = null;
+                topTaskTypes[i] = null;
+                topTaskNanoTimes[i] = 0;
+            }
+            topTaskThreshold = 0;
+        }
+    }   //startLoop
+
+    /**
+     * This method is called by the loop thread to record the time of a loop phase.
+     *
+     * @param phase specifies the phase index in the order of the phase names given to the constructor.
+     * @param nanoTime specifies the phase time in nanoseconds.
+     */
+    public void recordPhase(int phase, long nanoTime)
+    {
+        phaseHistograms[phase].record(nanoTime);
+        currPhaseNanoTimes[phase] += nanoTime;
+    }   //recordPhase
+
+    /**
+     * This method is called by the loop thread at the end of each loop. If the loop took longer than the loop
+     * budget, it is recorded as a slow loop with its phase times and top tasks.
+     *
+     * @param loopNanoTime specifies the loop time in nanoseconds.
+     */
+    public void endLoop(long loopNanoTime)
+    {
+        loopHistogram.record(loopNanoTime);
+        if (loopBudgetNanos > 0 && loopNanoTime > loopBudgetNanos)
+        {
+            String[] tasks;
+
+            synchronized (topTasks)
+            {
+                int numTasks = 0;
+                while (numTasks < NUM_TOP_TASKS && topTasks[numTasks] != null)
+                {
+                    numTasks++;
+                }
+
+                tasks = new String[numTasks];
+                for (int i = 0; i < numTasks; i++)
+                {
+                    tasks[i] = String.format(
+                        Locale.US, "%s.%s=%.3f", topTasks[i], topTaskTypes[i], topTaskNanoTimes[i]/1000000.0);
+                }
+            }
+
+            SlowLoop slowLoop = new SlowLoop(
+                loopNumber, TrcTimer.getModeElapsedTime(), loopNanoTime, currPhaseNanoTimes.clone(), tasks);
+            synchronized (slowLoops)
+            {
+                if (slowLoops.size() >= MAX_SLOW_LOOPS)
+                {
+                    slowLoops.remove(0);
+                }
+                slowLoops.add(slowLoop);
+                slowLoopCount++;
+            }
+        }
+    }   //endLoop
+
+    /**
+     * This method is called by TrcTaskMgr to record the time of a task run. It may be called from any thread.
+     *
+     * @param taskObj specifies the task.
+     * @param taskType specifies the task type that was run.
+     * @param nanoTime specifies the task elapsed time in nanoseconds.
+     */
+    public void recordTask(TrcTaskMgr.TaskObject taskObj, TrcTaskMgr.TaskType taskType, long nanoTime)
+    {
+        TrcMetrics.Histogram[] histograms = taskHistograms.computeIfAbsent(
+            taskObj, k -> new TrcMetrics.Histogram[TrcTaskMgr.TaskType.values().length]);
+        TrcMetrics.Histogram histogram = histograms[taskType.ordinal()];
+
+        if (histogram == null)
+        {
+            synchronized (histograms)
+            {
+                histogram = histograms[taskType.ordinal()];
+                if (histogram == null)
+                {
+                    histogram = new TrcMetrics.Histogram();
+                    histograms[taskType.ordinal()] = histogram;
+                }
+            }
+        }
+        histogram.record(nanoTime);
+
+        // Only tasks running as part of the robot loop count toward the loop's top tasks.
+        if ((taskType == TrcTaskMgr.TaskType.PRE_PERIODIC_TASK || taskType == TrcTaskMgr.TaskType.POST_PERIODIC_TASK) &&
+            nanoTime > topTaskThreshold)
+        {
+            synchronized (topTasks)
+            {
+                int i = NUM_TOP_TASKS - 1;
+
+                if (nanoTime > topTaskNanoTimes[i])
+                {
+                    // Insertion sort into the descending list, dropping the last entry.
+                    for (; i > 0 && nanoTime > topTaskNanoTimes[i - 1]; i--)
+                    {
+                        topTasks[i] = topTasks[i - 1];
+                        topTaskTypes[i] = topTaskTypes[i - 1];
+                        topTaskNanoTimes[i] = topTaskNanoTimes[i - 1];
+                    }
+                    topTasks[i] = taskObj;
+                    topTaskTypes[i] = taskType;
+                    topTaskNanoTimes[i] = nanoTime;
+                    topTaskThreshold = topTaskNanoTimes[NUM_TOP_TASKS - 1];
+                }
+            }
+        }
+    }   //recordTask
+
+    /**
+     * This method clears all recorded data.
+     */
+    public void reset()
+    {
+        loopHistogram.reset();
+        for (TrcMetrics.Histogram histogram: phaseHistograms)
+        {
+            histogram.reset();
+        }
+        taskHistograms.clear();
+        synchronized (slowLoops)
+        {
+            slowLoops.clear();
+            slowLoopCount = 0;
+        }
+    }   //reset
+
+    /**
+     * This method returns the histogram of the loop times.
+     *
+     * @return loop time histogram.
+     */
+    public TrcMetrics.Histogram getLoopHistogram()
+    {
+        return loopHistogram;
+    }   //getLoopHistogram
+
+    /**
+     * This method returns the histogram of the given phase.
+     *
+     * @param phase specifies the phase index.
+     * @return phase time histogram.
+     */
+    public TrcMetrics.Histogram getPhaseHistogram(int phase)
+    {
+        return phaseHistograms[phase];
+    }   //getPhaseHistogram
+
+    /**
+     * This method returns the histogram of the given task type of a task.
+     *
+     * @param taskObj specifies the task.
+     * @param taskType specifies the task type.
+     * @return task time histogram, null if the task has never been recorded with that type.
+     */
+    public TrcMetrics.Histogram getTaskHistogram(TrcTaskMgr.TaskObject taskObj, TrcTaskMgr.TaskType taskType)
+    {
+        TrcMetrics.Histogram[] histograms = taskHistograms.get(taskObj);
+        return histograms != null? histograms[taskType.ordinal()]: null;
+    }   //getTaskHistogram
+
+    /**
+     * This method writes a snapshot of the profile to the given writer. All times are in msec.
+     *
+     * @param writer specifies the writer to write to.
+     */
+    public void dump(PrintWriter writer)
+    {
+        writer.printf(
+            Locale.US, "[%.3f] %s: loops=%d, budget=%.3f\n",
+            TrcTimer.getModeElapsedTime(), instanceName, loopNumber, loopBudgetNanos/1000000.0);
+        writer.printf(Locale.US, "%24s: %s\n", "loop", loopHistogram);
+        for (int i = 0; i < phaseNames.length; i++)
+        {
+            writer.printf(Locale.US, "%24s: %s\n", phaseNames[i], phaseHistograms[i]);
+        }
+
+        writer.println("Tasks:");
+        for (Map.Entry<TrcTaskMgr.TaskObject, TrcMetrics.Histogram[]> entry: taskHistograms.entrySet())
+        {
+            TrcMetrics.Histogram[] histograms = entry.getValue();
+            for (TrcTaskMgr.TaskType taskType: TrcTaskMgr.TaskType.values())
+            {
+                TrcMetrics.Histogram histogram = histograms[taskType.ordinal()];
+                if (histogram != null)
+                {
+                    writer.printf(Locale.US, "%24s: %s\n", entry.getKey() + "." + taskType, histogram);
+                }
+            }
+        }
+
+        synchronized (slowLoops)
+        {
+            writer.printf(Locale.US, "Slow loops (total=%d, last %d):\n", slowLoopCount, slowLoops.size());
+            for (SlowLoop slowLoop: slowLoops)
+            {
+                StringBuilder sb = new StringBuilder();
+                sb.append(String.format(
+                    Locale.US, "  [%.3f] loop %d=%.3f:",
+                    slowLoop.timestamp, slowLoop.loopNumber, slowLoop.loopNanoTime/1000000.0));
+                for (int i = 0; i < phaseNames.length; i++)
+                {
+                    sb.append(String.format(
+                        Locale.US, " %s=%.3f", phaseNames[i], slowLoop.phaseNanoTimes[i]/1000000.0));
+                }
+                sb.append(" top={");
+                for (int i = 0; i < slowLoop.topTasks.length; i++)
+                {
+                    sb.append(i > 0? ", ": "").append(slowLoop.topTasks[i]);
+                }
+                sb.append("}");
+                writer.println(sb);
+            }
+        }
+        writer.flush();
+    }   //dump
+
+    /**
+     * This method appends a snapshot of the profile to the given file.
+     *
+     * @param filePath specifies the file path.
+     * @return true if successful, false otherwise.
+     */
+    public boolean dumpToFile(String filePath)
+    {
+        boolean success = false;
+
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(filePath, true))))
+        {
+            dump(writer);
+            success = true;
+        }
+        catch (IOException e)
+        {
+            tracer.traceWarn(
+                instanceName, "Failed to dump %s to %s (%s).", instanceName, filePath, e.getMessage());
+        }
+
+        return success;
+    }   //dumpToFile
+
+}   //class TrcLoopProfiler
@@ -0,0 +1,824 @@
+
+package TrcCommonLib.trclib;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * This class implements a process wide metrics registry. It provides counters, gauges and latency histograms that
+ * can be recorded from any thread without taking a lock. Counters and histograms are striped so that threads
+ * recording the same metric mostly update different cells and do not contend on the same cache line. Metrics are
+ * looked up by name once, typically at construction time, and the returned object is kept for recording. All
+ * subsystems share the registry so one call to printMetrics or dump reports everything that has been recorded.
+ */
+public class TrcMetrics
+{
+    private static final String moduleName = TrcMetrics.class.getSimpleName();
+    private static final ConcurrentHashMap<String, Metric> registry = new ConcurrentHashMap<>();
+
+    /**
+     * This class is the base class of all metrics.
+     */
+    public static abstract class Metric
+    {
+        private final String name;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param name specifies the metric name, can be null if the metric is not registered.
+         */
+        protected Metric(String name)
+        {
+            this.name = name;
+        }   //Metric
+
+        /**
+         * This method returns the metric name.
+         *
+         * @return metric name.
+         */
+        public String getName()
+        {
+            return name;
+        }   //getName
+
+        /**
+         * This method clears the recorded data of the metric.
+         */
+        public abstract void reset();
+
+        /**
+         * This method checks if the metric has recorded anything since the last reset.
+         *
+         * @return true if the metric has data, false otherwise.
+         */
+        public abstract boolean hasData();
+
+    }   //class Metric
+
+    /**
+     * This class implements a striped counter. Incrementing it from multiple threads does not contend.
+     */
+    public static class Counter extends Metric
+    {
+        private final LongAdder adder = new LongAdder();
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param name specifies the metric name, can be null if the metric is not registered.
+         */
+        public Counter(String name)
+        {
+            super(name);
+        }   //Counter
+
+        /**
+         * This method returns the counter value in string form.
+         *
+         * @return counter value in string form.
+         */
+        @Override
+        public String toString()
+        {
+            return "count=" + adder.sum();
+        }   //toString
+
+        /**
+         * This method increments the counter by one.
+         */
+        public void increment()
+        {
+            adder.increment();
+        }   //increment
+
+        /**
+         * This method adds the given value to the counter.
+         *
+         * @param value specifies the value to add.
+         */
+        public void add(long value)
+        {
+            adder.add(value);
+        }   //add
+
+        /**
+         * This method returns the counter value.
+         *
+         * @return counter value.
+         */
+        public long get()
+        {
+            return adder.sum();
+        }   //get
+
+        @Override
+        public void reset()
+        {
+            adder.reset();
+        }   //reset
+
+        @Override
+        public boolean hasData()
+        {
+            return adder.sum() != 0;
+        }   //hasData
+
+    }   //class Counter
+
+    /**
+     * This class implements a gauge. A gauge holds the latest value set by its owner, or it can be backed by a
+     * supplier that is only called when the gauge is read.
+     */
+    public static class Gauge extends Metric
+    {
+        private final AtomicLong valueBits = new AtomicLong(Double.doubleToRawLongBits(0.0));
+        private volatile DoubleSupplier supplier = null;
+        private volatile boolean valueSet = false;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param name specifies the metric name, can be null if the metric is not registered.
+         */
+        public Gauge(String name)
+        {
+            super(name);
+        }   //Gauge
+
+        /**
+         * This method returns the gauge value in string form.
+         *
+         * @return gauge value in string form.
+         */
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.US, "value=%.6f", get());
+        }   //toString
+
+        /**
+         * This method sets the gauge value.
+         *
+         * @param value specifies the value.
+         */
+        public void set(double value)
+        {
+            valueBits.lazySet(Double.doubleToRawLongBits(value));
+            if (!valueSet)
+            {
+                valueSet = true;
+            }
+        }   //set
+
+        /**
+         * This method sets the supplier that provides the gauge value when it is read. The supplier is called on
+         * the reading thread so it must be thread safe.
+         *
+         * @param supplier specifies the value supplier, null to use the value set by the set method.
+         */
+        public void setSupplier(DoubleSupplier supplier)
+        {
+            this.supplier = supplier;
+        }   //setSupplier
+
+        /**
+         * This method returns the gauge value.
+         *
+         * @return gauge value.
+         */
+        public double get()
+        {
+            DoubleSupplier supplier = this.supplier;
+            return supplier != null? supplier.getAsDouble(): Double.longBitsToDouble(valueBits.get());
+        }   //get
+
+        @Override
+        public void reset()
+        {
+            valueBits.set(Double.doubleToRawLongBits(0.0));
+            valueSet = false;
+        }   //reset
+
+        @Override
+        public boolean hasData()
+        {
+            return valueSet || supplier != null;
+        }   //hasData
+
+    }   //class Gauge
+
+    /**
+     * This class implements a lock-free log-linear histogram of nanosecond values in the style of HdrHistogram.
+     * Values are grouped by powers of two, each subdivided into 16 linear sub-buckets, so the recorded values have
+     * a relative error of at most 1/16 over a range of 1 nanosecond to about 68 seconds. Larger values are clamped.
+     * The histogram is striped by thread id: a recording thread only updates its own stripe, which is allocated on
+     * first use, so threads contend only if their ids map to the same stripe. Readers merge the stripes into a
+     * Snapshot.
+     */
+    public static class Histogram extends Metric
+    {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+        private static final int MAX_VALUE_BITS = 36;
+        private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+        private static final int NUM_BUCKETS = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1)*SUB_BUCKET_COUNT;
+        private static final int NUM_STRIPES = getStripeCount();
+        private static final int STRIPE_MASK = NUM_STRIPES - 1;
+
+        /**
+         * This class holds the data recorded by the threads that map to the same stripe.
+         */
+        private static class Stripe
+        {
+            final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+            final AtomicLong totalCount = new AtomicLong();
+            final AtomicLong totalValue = new AtomicLong();
+            final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+            final AtomicLong maxValue = new AtomicLong();
+        }   //class Stripe
+
+        private final AtomicReferenceArray<Stripe> stripes = new AtomicReferenceArray<>(NUM_STRIPES);
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param name specifies the metric name, can be null if the metric is not registered.
+         */
+        public Histogram(String name)
+        {
+            super(name);
+        }   //Histogram
+
+        /**
+         * Constructor: Creates an unregistered instance of the object.
+         */
+        public Histogram()
+        {
+            this(null);
+        }   //Histogram
+
+        /**
+         * This method returns the histogram summary in string form with all times in msec.
+         *
+         * @return histogram summary in string form.
+         */
+        @Override
+        public String toString()
+        {
+            return getSnapshot().toString();
+        }   //toString
+
+        /**
+         * This method records a value into the histogram.
+         *
+         * @param nanoTime specifies the value in nanoseconds.
+         */
+        public void record(long nanoTime)
+        {
+            long value = Math.max(0, Math.min(nanoTime, MAX_VALUE));
+            Stripe stripe = getStripe();
+            long min, max;
+
+            stripe.counts.incrementAndGet(getBucketIndex(value));
+            stripe.totalCount.incrementAndGet();
+            stripe.totalValue.addAndGet(value);
+            while (value < (min = stripe.minValue.get()) && !stripe.minValue.compareAndSet(min, value))
+            {
+                // Another thread sharing the stripe updated the min, retry.
+            }
+            while (value > (max = stripe.maxValue.get()) && !stripe.maxValue.compareAndSet(max, value))
+            {
+                // Another thread sharing the stripe updated the max, retry.
+            }
+        }   //record
+
+        @Override
+        public void reset()
+        {
+            for (int i = 0; i < NUM_STRIPES; i++)
+            {
+                Stripe stripe = stripes.get(i);
+
+                if (stripe != null)
+                {
+                    for (int j = 0; j < NUM_BUCKETS; j++)
+                    {
+                        stripe.counts.set(j, 0);
+                    }
+                    stripe.totalCount.set(0);
+                    stripe.totalValue.set(0);
+                    stripe.minValue.set(Long.MAX_VALUE);
+                    stripe.maxValue.set(0);
+                }
+            }
+        }   //reset
+
+        @Override
+        public boolean hasData()
+        {
+            return getCount() > 0;
+        }   //hasData
+
+        /**
+         * This method returns the number of recorded values.
+         *
+         * @return number of recorded values.
+         */
+        public long getCount()
+        {
+            long count = 0;
+
+            for (int i = 0; i < NUM_STRIPES; i++)
+            {
+                Stripe stripe = stripes.get(i);
+                if (stripe != null)
+                {
+                    count += stripe.totalCount.get();
+                }
+            }
+
+            return count;
+        }   //getCount
+
+        /**
+         * This method returns the average of the recorded values.
+         *
+         * @return average value in seconds.
+         */
+        public double getAverage()
+        {
+            long count = 0;
+            long total = 0;
+
+            for (int i = 0; i < NUM_STRIPES; i++)
+            {
+                Stripe stripe = stripes.get(i);
+                if (stripe != null)
+                {
+                    count += stripe.totalCount.get();
+                    total += stripe.totalValue.get();
+                }
+            }
+
+            return count > 0? total/1000000000.0/count: 0.0;
+        }   //getAverage
+
+        /**
+         * This method returns the minimum recorded value.
+         *
+         * @return minimum value in seconds, 0 if nothing was recorded.
+         */
+        public double getMin()
+        {
+            long min = Long.MAX_VALUE;
+
+            for (int i = 0; i < NUM_STRIPES; i++)
+            {
+                Stripe stripe = stripes.get(i);
+                if (stripe != null)
+                {
+                    min = Math.min(min, stripe.minValue.get());
+                }
+            }
+
+            return min == Long.MAX_VALUE? 0.0: min/1000000000.0;
+        }   //getMin
+
+        /**
+         * This method returns the maximum recorded value.
+         *
+         * @return maximum value in seconds.
+         */
+        public double getMax()
+        {
+            long max = 0;
+
+            for (int i = 0; i < NUM_STRIPES; i++)
+            {
+                Stripe stripe = stripes.get(i);
+                if (stripe != null)
+                {
+                    max = Math.max(max, stripe.maxValue.get());
+                }
+            }
+
+            return max/1000000000.0;
+        }   //getMax
+
+        /**
+         * This method returns the value at the given percentile.
+         *
+         * @param percentile specifies the percentile between 0 and 100.
+         * @return value at the percentile in seconds.
+         */
+        public double getPercentile(double percentile)
+        {
+            return getSnapshot().getPercentile(percentile);
+        }   //getPercentile
+
+        /**
+         * This method merges all stripes into a snapshot. The snapshot is consistent with itself, e.g. its
+         * percentiles are computed against its own count, even if other threads keep recording.
+         *
+         * @return snapshot of the histogram.
+         */
+        public Snapshot getSnapshot()
+        {
+            long[] counts = new long[NUM_BUCKETS];
+            long count = 0;
+            long total = 0;
+            long min = Long.MAX_VALUE;
+            long max = 0;
+
+            for (int i = 0; i < NUM_STRIPES; i++)
+            {
+                Stripe stripe = stripes.get(i);
+
+                if (stripe != null)
+                {
+                    for (int j = 0; j < NUM_BUCKETS; j++)
+                    {
+                        long bucketCount = stripe.counts.get(j);
+                        counts[j] += bucketCount;
+                        count += bucketCount;
+                    }
+                    total += stripe.totalValue.get();
+                    min = Math.min(min, stripe.minValue.get());
+                    max = Math.max(max, stripe.maxValue.get());
+                }
+            }
+
+            return new Snapshot(counts, count, total, min == Long.MAX_VALUE? 0: min, max);
+        }   //getSnapshot
+
+        /**
+         * This method returns the stripe of the calling thread, allocating it on first use.
+         *
+         * @return stripe of the calling thread.
+         */
+        private Stripe getStripe()
+        {
+            int index = (int) Thread.currentThread().getId() & STRIPE_MASK;
+            Stripe stripe = stripes.get(index);
+
+            if (stripe == null)
+            {
+                stripes.compareAndSet(index, null, new Stripe());
+                stripe = stripes.get(index);
+            }
+
+            return stripe;
+        }   //getStripe
+
+        /**
+         * This method returns the number of stripes, which is the number of processors rounded up to a power of
+         * two so the stripe index can be computed with a mask.
+         *
+         * @return number of stripes.
+         */
+        private static int getStripeCount()
+        {
+            int processors = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+            int count = 1;
+
+            while (count < processors)
+            {
+                count <<= 1;
+            }
+
+            return count;
+        }   //getStripeCount
+
+        /**
+         * This method returns the bucket index of the given value.
+         *
+         * @param value specifies the value, must be between 0 and MAX_VALUE.
+         * @return bucket index.
+         */
+        private static int getBucketIndex(long value)
+        {
+            int index;
+
+            if (value < SUB_BUCKET_COUNT)
+            {
+                index = (int) value;
+            }
+            else
+            {
+                int exponent = 63 - Long.numberOfLeadingZeros(value);
+                int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+                index = (exponent - SUB_BUCKET_BITS + 1)*SUB_BUCKET_COUNT + subBucket;
+            }
+
+            return index;
+        }   //getBucketIndex
+
+        /**
+         * This method returns the representative value of the given bucket, i.e. the middle of its range.
+         *
+         * @param index specifies the bucket index.
+         * @return representative value of the bucket.
+         */
+        private static long getBucketValue(int index)
+        {
+            long value;
+
+            if (index < SUB_BUCKET_COUNT)
+            {
+                value = index;
+            }
+            else
+            {
+                int shift = index/SUB_BUCKET_COUNT - 1;
+                long lowerBound = (long) (SUB_BUCKET_COUNT + index%SUB_BUCKET_COUNT) << shift;
+                value = lowerBound + ((1L << shift) >> 1);
+            }
+
+            return value;
+        }   //getBucketValue
+
+    }   //class Histogram
+
+    /**
+     * This class contains a point in time copy of a histogram.
+     */
+    public static class Snapshot
+    {
+        private final long[] counts;
+        private final long count;
+        private final long totalValue;
+        private final long minValue;
+        private final long maxValue;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param counts specifies the merged bucket counts.
+         * @param count specifies the number of recorded values.
+         * @param totalValue specifies the sum of the recorded values in nanoseconds.
+         * @param minValue specifies the minimum recorded value in nanoseconds.
+         * @param maxValue specifies the maximum recorded value in nanoseconds.
+         */
+        private Snapshot(long[] counts, long count, long totalValue, long minValue, long maxValue)
+        {
+            this.counts = counts;
+            this.count = count;
+            this.totalValue = totalValue;
+            this.minValue = minValue;
+            this.maxValue = maxValue;
+        }   //Snapshot
+
+        /**
+         * This method returns the snapshot summary in string form with all times in msec.
+         *
+         * @return snapshot summary in string form.
+         */
+        @Override
+        public String toString()
+        {
+            return String.format(
+                Locale.US, "n=%d, avg=%.3f, min=%.3f, p50=%.3f, p90=%.3f, p99=%.3f, max=%.3f",
+                count, getAverage()*1000.0, getMin()*1000.0, getPercentile(50.0)*1000.0,
+                getPercentile(90.0)*1000.0, getPercentile(99.0)*1000.0, getMax()*1000.0);
+        }   //toString
+
+        /**
+         * This method returns the number of recorded values.
+         *
+         * @return number of recorded values.
+         */
+        public long getCount()
+        {
+            return count;
+        }   //getCount
+
+        /**
+         * This method returns the average of the recorded values.
+         *
+         * @return average value in seconds.
+         */
+        public double getAverage()
+        {
+            return count > 0? totalValue/1000000000.0/count: 0.0;
+        }   //getAverage
+
+        /**
+         * This method returns the minimum recorded value.
+         *
+         * @return minimum value in seconds.
+         */
+        public double getMin()
+        {
+            return minValue/1000000000.0;
+        }   //getMin
+
+        /**
+         * This method returns the maximum recorded value.
+         *
+         * @return maximum value in seconds.
+         */
+        public double getMax()
+        {
+            return maxValue/1000000000.0;
+        }   //getMax
+
+        /**
+         * This method returns the value at the given percentile.
+         *
+         * @param percentile specifies the percentile between 0 and 100.
+         * @return value at the percentile in seconds.
+         */
+        public double getPercentile(double percentile)
+        {
+            long target = Math.max(1, (long) Math.ceil(percentile*count/100.0));
+            long cumulative = 0;
+            long value = 0;
+
+            if (count > 0)
+            {
+                for (int i = 0; i < counts.length; i++)
+                {
+                    cumulative += counts[i];
+                    if (cumulative >= target)
+                    {
+                        value = Math.max(Math.min(Histogram.getBucketValue(i), maxValue), minValue);
+                        break;
+                    }
+                }
+            }
+
+            return value/1000000000.0;
+        }   //getPercentile
+
+    }   //class Snapshot
+
+    /**
+     * This interface is used to create a metric of the requested type when it is not yet registered.
+     */
+    private interface MetricFactory<T extends Metric>
+    {
+        T create(String name);
+    }   //interface MetricFactory
+
+    /**
+     * This method returns the registered metric with the given name, creating and registering it if it does not
+     * exist.
+     *
+     * @param name specifies the metric name.
+     * @param type specifies the metric class.
+     * @param factory specifies the factory to create the metric.
+     * @return registered metric.
+     * @throws IllegalArgumentException if a metric of a different type is registered with the same name.
+     */
+    private static <T extends Metric> T getMetric(String name, Class<T> type, MetricFactory<T> factory)
+    {
+        Metric metric = registry.get(name);
+
+        if (metric == null)
+        {
+            metric = registry.computeIfAbsent(name, factory::create);
+        }
+
+        if (!type.isInstance(metric))
+        {
+            throw new IllegalArgumentException(
+                "Metric " + name + " is already registered as " + metric.getClass().getSimpleName() + ".");
+        }
+
+        return type.cast(metric);
+    }   //getMetric
+
+    /**
+     * This method returns the counter with the given name, creating it if necessary.
+     *
+     * @param name specifies the metric name.
+     * @return counter.
+     */
+    public static Counter getCounter(String name)
+    {
+        return getMetric(name, Counter.class, Counter::new);
+    }   //getCounter
+
+    /**
+     * This method returns the gauge with the given name, creating it if necessary.
+     *
+     * @param name specifies the metric name.
+     * @return gauge.
+     */
+    public static Gauge getGauge(String name)
+    {
+        return getMetric(name, Gauge.class, Gauge::new);
+    }   //getGauge
+
+    /**
+     * This method returns the histogram with the given name, creating it if necessary.
+     *
+     * @param name specifies the metric name.
+     * @return histogram.
+     */
+    public static Histogram getHistogram(String name)
+    {
+        return getMetric(name, Histogram.class, Histogram::new);
+    }   //getHistogram
+
+    /**
+     * This method removes the metric with the given name from the registry.
+     *
+     * @param name specifies the metric name.
+     * @return removed metric, null if there was no metric with the name.
+     */
+    public static Metric removeMetric(String name)
+    {
+        return registry.remove(name);
+    }   //removeMetric
+
+    /**
+     * This method returns all registered metrics sorted by name.
+     *
+     * @return sorted list of metrics.
+     */
+    public static List<Metric> getMetrics()
+    {
+        List<Metric> metrics = new ArrayList<>(registry.values());
+
+        Collections.sort(metrics, new Comparator<Metric>()
+        {
+            @Override
+            public int compare(Metric m1, Metric m2)
+            {
+                return m1.getName().compareTo(m2.getName());
+            }
+        });
+
+        return metrics;
+    }   //getMetrics
+
+    /**
+     * This method removes all metrics from the registry. The app outlives the OpMode, so this is called when an OpMode
+     * starts to drop the metrics of the tasks, motors and timers of the previous OpMode, which would otherwise be
+     * reported again by printMetrics and keep their owners (e.g. gauge suppliers) reachable. Metric objects still held
+     * by their owners keep working, they are just no longer reported.
+     */
+    public static void removeAll()
+    {
+        registry.clear();
+    }   //removeAll
+
+    /**
+     * This method clears the recorded data of all registered metrics.
+     */
+    public static void resetAll()
+    {
+        for (Metric metric: registry.values())
+        {
+            metric.reset();
+        }
+    }   //resetAll
+
+    /**
+     * This method prints all registered metrics that have data using the given tracer. Histogram times are in msec.
+     *
+     * @param tracer specifies the tracer to be used to print the metrics.
+     */
+    public static void printMetrics(TrcDbgTrace tracer)
+    {
+        for (Metric metric: getMetrics())
+        {
+            if (metric.hasData())
+            {
+                tracer.traceInfo(moduleName, "%s: %s", metric.getName(), metric);
+            }
+        }
+    }   //printMetrics
+
+    /**
+     * This method writes all registered metrics that have data to the given writer. Histogram times are in msec.
+     *
+     * @param writer specifies the writer to write to.
+     */
+    public static void dump(PrintWriter writer)
+    {
+        writer.printf(Locale.US, "[%.3f] %s:\n", TrcTimer.getModeElapsedTime(), moduleName);
+        for (Metric metric: getMetrics())
+        {
+            if (metric.hasData())
+            {
+                writer.printf(Locale.US, "%32s: %s\n", metric.getName(), metric);
+            }
+        }
+        writer.flush();
+    }   //dump
+
+}   //class TrcMetrics
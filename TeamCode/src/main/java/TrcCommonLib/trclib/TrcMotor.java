@@ -97,6 +97,8 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
     private static final double DEF_BEEP_LOW_FREQUENCY = 440.0;     //in Hz
     private static final double DEF_BEEP_HIGH_FREQUENCY = 880.0;    //in Hz
     private static final double DEF_BEEP_DURATION = 0.2;            //in seconds
+    // PID control computes one output and writes it to the motor, which is at most one hardware write per loop.
+    private static final double PID_CTRL_TASK_TIME_BUDGET = 0.004;  //in seconds
 
     private static final ArrayList<TrcMotor> odometryMotors = new ArrayList<>();
     private static TrcTaskMgr.TaskObject odometryTaskObj;
@@ -115,8 +117,16 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
     private final TrcDigitalInput upperLimitSwitch; // for software simulation
     private final TrcEncoder encoder;               // for software simulation
     private final TrcOdometrySensor.Odometry odometry;
+    // Published copy of the odometry so readers don't contend with the odometry task.
+    private final TrcStateSnapshot.Channel<TrcOdometrySensor.Odometry> odometrySnapshot;
+    // Per-loop odometry trace, logged as raw numbers to a binary trace log.
+    private final TrcDbgTrace.CallSite odometryTraceSite;
     private final TrcTimer timer;
     private TrcPerformanceTimer pidCtrlTaskPerformanceTimer = null;
+    // Control latency tracing: PID input sample time and motor write time of the current pass of the PID task.
+    private volatile TrcControlLatency controlLatency = null;
+    private volatile double pidInputSampleTime = 0.0;
+    private volatile double actuationTime = 0.0;
     private boolean odometryEnabled = false;
     // Configurations for software simulation of motor controller features.
     private boolean softwarePidEnabled = false;
@@ -181,8 +191,14 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
         this.upperLimitSwitch = upperLimitSwitch;
         this.encoder = encoder;
         odometry = new TrcOdometrySensor.Odometry(this);
+        odometrySnapshot = TrcStateSnapshot.createChannel(instanceName + ".odometry");
+        odometrySnapshot.publish(odometry.clone());
+        odometryTraceSite = TrcDbgTrace.registerCallSite(
+            instanceName, "odometryTask", TrcDbgTrace.MsgLevel.DEBUG,
+            "Odometry: timestamp=%.6f, pos=%.0f, vel=%.0f, accel=%.0f");
         timer = new TrcTimer(instanceName);
         TrcTaskMgr.TaskObject pidCtrlTaskObj = TrcTaskMgr.createTask(instanceName + ".pidCtrlTask", this::pidCtrlTask);
+        pidCtrlTaskObj.setTimeBudget(PID_CTRL_TASK_TIME_BUDGET, TrcTaskMgr.Criticality.CRITICAL);
         pidCtrlTaskObj.registerTask(TaskType.OUTPUT_TASK);
 
         if (odometryTaskObj == null)
@@ -223,10 +239,39 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
         }
         else if (pidCtrlTaskPerformanceTimer == null)
         {
-            pidCtrlTaskPerformanceTimer = new TrcPerformanceTimer("pidCtrlTask");
+            pidCtrlTaskPerformanceTimer = new TrcPerformanceTimer(instanceName + ".pidCtrlTask");
         }
     }   //setPerformanceMonitorEnabled
 
+    /**
+     * This method enables/disables tracing of the software PID control latency. When enabled, every pass of the PID
+     * control task records how old the sensor sample was when the PID output was calculated and how long it took
+     * for that output to be written to the motor. Note that latency is only traced for software PID control.
+     *
+     * @param enabled specifies true to enable, false to disable.
+     */
+    public void setControlLatencyTracingEnabled(boolean enabled)
+    {
+        if (!enabled)
+        {
+            controlLatency = null;
+        }
+        else if (controlLatency == null)
+        {
+            controlLatency = new TrcControlLatency(instanceName);
+        }
+    }   //setControlLatencyTracingEnabled
+
+    /**
+     * This method returns the control latency recorder.
+     *
+     * @return control latency recorder, null if control latency tracing is not enabled.
+     */
+    public TrcControlLatency getControlLatency()
+    {
+        return controlLatency;
+    }   //getControlLatency
+
     /**
      * This method sets the message trace level for the tracer.
      *
@@ -900,6 +945,7 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
             if (motorSetPowerElapsedTimer != null) motorSetPowerElapsedTimer.recordStartTime();
             setMotorPower(currMotorPower);
             if (motorSetPowerElapsedTimer != null) motorSetPowerElapsedTimer.recordEndTime();
+            if (controlLatency != null) actuationTime = TrcTimer.getCurrentTime();
             // Take care of motor followers.
             synchronized (followingMotorsList)
             {
@@ -1470,11 +1516,8 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
 
         if (odometryEnabled)
         {
-            synchronized (odometry)
-            {
-                // Don't read from motor hardware directly, get it from odometry instead.
-                currVel = odometry.velocity;
-            }
+            // Don't read from motor hardware directly, get it from the odometry snapshot instead.
+            currVel = odometrySnapshot.get().velocity;
         }
         else
         {
@@ -1484,6 +1527,32 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
         return currVel;
     }   //getVelocity
 
+    /**
+     * This method is called by the velocity PID controller to get the motor velocity. It is the same as getVelocity
+     * but also remembers when the velocity was sampled for control latency tracing.
+     *
+     * @return motor velocity in scaled units/sec.
+     */
+    private double getVelocityPidInput()
+    {
+        final double currVel;
+
+        if (odometryEnabled)
+        {
+            // Read the snapshot once so the sample time matches the velocity.
+            TrcOdometrySensor.Odometry odometry = odometrySnapshot.get();
+            currVel = odometry.velocity;
+            pidInputSampleTime = odometry.currTimestamp;
+        }
+        else
+        {
+            pidInputSampleTime = TrcTimer.getCurrentTime();
+            currVel = getMotorVelocity()/sensorScale;
+        }
+
+        return currVel;
+    }   //getVelocityPidInput
+
     /**
      * This method is called when set motor position delay timer has expired. It will set the specified motor position.
      *
@@ -1675,12 +1744,9 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
 
         if (odometryEnabled)
         {
-            synchronized (odometry)
-            {
-                // Don't read from motor hardware directly, get it from odometry instead.
-                // Odometry already took care of zeroPosition adjustment.
-                currPos = odometry.currPos;
-            }
+            // Don't read from motor hardware directly, get it from the odometry snapshot instead.
+            // Odometry already took care of zeroPosition adjustment.
+            currPos = odometrySnapshot.get().currPos;
         }
         else
         {
@@ -1690,6 +1756,32 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
         return currPos;
     }   //getPosition
 
+    /**
+     * This method is called by the position PID controller to get the motor position. It is the same as getPosition
+     * but also remembers when the position was sampled for control latency tracing.
+     *
+     * @return current motor position in scaled units.
+     */
+    private double getPositionPidInput()
+    {
+        double currPos;
+
+        if (odometryEnabled)
+        {
+            // Read the snapshot once so the sample time matches the position.
+            TrcOdometrySensor.Odometry odometry = odometrySnapshot.get();
+            currPos = odometry.currPos;
+            pidInputSampleTime = odometry.currTimestamp;
+        }
+        else
+        {
+            pidInputSampleTime = TrcTimer.getCurrentTime();
+            currPos = getControllerPosition(true);
+        }
+
+        return currPos;
+    }   //getPositionPidInput
+
     /**
      * This method sets the motor power with PID control. This is basically the same as setPosition but with
      * dynamically changing powerLimit. The motor will be under position PID control and the power specifies the
@@ -1863,6 +1955,18 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
         return getMotorCurrent();
     }   //getCurrent
 
+    /**
+     * This method is called by the current PID controller to get the motor current. It is the same as getCurrent
+     * but also remembers when the current was sampled for control latency tracing.
+     *
+     * @return current motor current in amperes.
+     */
+    private double getCurrentPidInput()
+    {
+        pidInputSampleTime = TrcTimer.getCurrentTime();
+        return getMotorCurrent();
+    }   //getCurrentPidInput
+
     /**
      * This method sets the PID coefficients of the motor's velocity PID controller. Note that PID coefficients are
      * different for software PID and controller built-in PID. If you enable/disable software PID, you need to set
@@ -1880,7 +1984,8 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
             }
             else
             {
-                velPidCtrl = new TrcPidController(instanceName + ".velPidCtrl", pidCoeff, 1.0, this::getVelocity);
+                velPidCtrl = new TrcPidController(
+                    instanceName + ".velPidCtrl", pidCoeff, 1.0, this::getVelocityPidInput);
                 // Set to absolute setpoint because velocity PID control is generally absolute.
                 velPidCtrl.setAbsoluteSetPoint(true);
             }
@@ -2064,7 +2169,7 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
             else
             {
                 posPidCtrl = new TrcPidController(
-                    instanceName + ".posPidCtrl", pidCoeff, 1.0, this::getPosition);
+                    instanceName + ".posPidCtrl", pidCoeff, 1.0, this::getPositionPidInput);
                 // Set to absolute setpoint because position PID control is generally absolute.
                 posPidCtrl.setAbsoluteSetPoint(true);
             }
@@ -2248,7 +2353,7 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
             else
             {
                 currentPidCtrl = new TrcPidController(
-                    instanceName + ".currentPidCtrl", pidCoeff, 1.0, this::getCurrent);
+                    instanceName + ".currentPidCtrl", pidCoeff, 1.0, this::getCurrentPidInput);
                 // Set to absolute setpoint because current PID control is generally absolute.
                 currentPidCtrl.setAbsoluteSetPoint(true);
             }
@@ -2695,6 +2800,13 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
                             // overwrite it.
                             setControllerMotorPower(power, false);
 
+                            TrcControlLatency latency = controlLatency;
+                            if (latency != null)
+                            {
+                                latency.record(
+                                    pidInputSampleTime, taskParams.pidCtrl.getOutputTimestamp(), actuationTime);
+                            }
+
                             tracer.traceDebug(
                                 instanceName, "onTarget=%s(%f/%f), expired=%s, stalled=%s, powerLimit=%s, power=%f",
                                 onTarget, getPosition(), taskParams.pidCtrl.getTarget(), expired, stalled,
@@ -3410,12 +3522,15 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
             odometry.prevTimestamp = odometry.currTimestamp = TrcTimer.getCurrentTime();
             odometry.prevPos = odometry.currPos = 0.0;
             odometry.velocity = 0.0;
+            // Make the reset visible immediately, even to the rest of the current robot loop.
+            odometrySnapshot.override(odometry.clone());
         }
     }   //resetOdometry
 
     /**
      * This method returns a copy of the odometry data of the specified axis. It must be a copy so it won't change while
-     * the caller is accessing the data fields.
+     * the caller is accessing the data fields. The data comes from the published odometry snapshot, so it doesn't
+     * contend with the odometry task and is consistent within a robot loop.
      *
      * @param axisIndex specifies the axis index if it is a multi-axes sensor, 0 if it is a single axis sensor (not used).
      * @return a copy of the odometry data of the specified axis.
@@ -3423,20 +3538,13 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
     @Override
     public Odometry getOdometry(int axisIndex)
     {
-        Odometry odom;
-
-        synchronized (odometry)
+        if (!odometryEnabled)
         {
-            if (!odometryEnabled)
-            {
-                // Odometry is disabled, returned the last update.
-                tracer.traceErr(instanceName, "Motor odometry is not enabled.");
-            }
-
-            odom = odometry.clone();
+            // Odometry is disabled, returned the last update.
+            tracer.traceErr(instanceName, "Motor odometry is not enabled.");
         }
 
-        return odom;
+        return odometrySnapshot.get().clone();
     }   //getOdometry
 
     /**
@@ -3505,7 +3613,10 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
                         motor.odometry.velocity =
                             timeDelta == 0.0 ? 0.0 : (motor.odometry.currPos - motor.odometry.prevPos) / timeDelta;
                     }
-                    TrcDbgTrace.globalTraceDebug(motor.instanceName, "Odometry=" + motor.odometry);
+                    TrcDbgTrace.getGlobalTracer().trace(
+                        motor.odometryTraceSite, TrcTimer.getModeElapsedTime(motor.odometry.currTimestamp),
+                        motor.odometry.currPos, motor.odometry.velocity, motor.odometry.acceleration);
+                    motor.odometrySnapshot.publish(motor.odometry.clone());
                 }
             }
         }
@@ -3616,6 +3727,18 @@ public abstract class TrcMotor implements TrcMotorController, TrcExclusiveSubsys
         }
     }   //printPidControlTaskPerformance
 
+    /**
+     * This method prints the control latency info.
+     */
+    public void printControlLatency()
+    {
+        TrcControlLatency latency = controlLatency;
+        if (latency != null)
+        {
+            latency.printLatency(tracer);
+        }
+    }   //printControlLatency
+
 //    /**
 //     * Transforms the desired percentage of motor stall torque to the motor duty cycle (aka power)
 //     * that would give us that amount of torque at the current motor speed.
@@ -7,7 +7,7 @@ import java.util.Arrays;
  * This class implements a path. A path is consists of an array of waypoints, and can be used for path following,
  * such as motion profiling, pure pursuit, etc. Since heading could be in degrees or radians, each path object specifies
  * the units of its heading value, and can be converted. If the timesteps are not specified, velocity and position data
- * can be used to infer approximate timesteps. Paths can be read from CSV files.
+ * can be used to infer approximate timesteps. Paths can be read from CSV files or binary path files.
  */
 public class TrcPath
 {
@@ -24,6 +24,18 @@ public class TrcPath
         return new TrcPath(inDegrees, TrcWaypoint.loadPointsFromCsv(path, loadFromResources));
     }   //loadPathFromCsv
 
+    /**
+     * This method loads waypoints from a binary path file created by TrcPathFile and create a path with them.
+     *
+     * @param path              specifies the file path or the resource name where we load the waypoints.
+     * @param loadFromResources specifies true if waypoints are loaded from resources, false if from file path.
+     * @return created path with the loaded waypoints.
+     */
+    public static TrcPath loadPathFromBinary(String path, boolean loadFromResources)
+    {
+        return TrcPathFile.loadPath(path, loadFromResources);
+    }   //loadPathFromBinary
+
     private final TrcWaypoint[] waypoints;
     private boolean inDegrees;
 
@@ -456,6 +468,17 @@ public class TrcPath
         return length;
     }   //getArcLength
 
+    /**
+     * This method compiles the path into parallel arrays with cumulative arc length and time for following. The
+     * compiled path is a snapshot of the waypoints, so it must be compiled again if the waypoints are modified.
+     *
+     * @return compiled path.
+     */
+    public TrcCompiledPath compile()
+    {
+        return new TrcCompiledPath(this);
+    }   //compile
+
     /**
      * This method calculates the acceleration of each waypoint in the path.
      */
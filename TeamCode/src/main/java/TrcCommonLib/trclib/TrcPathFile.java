@@ -0,0 +1,260 @@
+
+package TrcCommonLib.trclib;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Objects;
+
+/**
+ * This class implements a compact binary path file. Parsing a CSV path costs a String.split and eight
+ * Double.parseDouble calls per waypoint, which adds up when several long paths are loaded at OpMode init. A binary
+ * path file stores the waypoint columns as raw doubles, so loading it is a few bulk copies out of the memory mapped
+ * file straight into the arrays of a TrcCompiledPath without parsing anything per waypoint.
+ * <p>
+ * Binary path files are created offline from CSV path files with the converter in main, e.g.
+ * <code>java TrcCommonLib.trclib.TrcPathFile path.csv path.trcpath</code>.
+ * </p>
+ *
+ * <pre>
+ * File format (little endian, the native byte order of the robot controller):
+ *   Header:  magic, version, flags (bit 0 set if heading is in degrees), number of waypoints.
+ *   Columns: timeStep[n], x[n], y[n], heading[n], encoderPosition[n], velocity[n], acceleration[n], jerk[n] as
+ *            doubles, in the column order of the CSV path file.
+ * </pre>
+ */
+public class TrcPathFile
+{
+    public static final int MAGIC = 0x50435254;        // "TRCP" in little endian
+    public static final int VERSION = 1;
+    public static final String FILE_EXTENSION = ".trcpath";
+
+    private static final int HEADER_SIZE = 4*Integer.BYTES;
+    private static final int NUM_COLUMNS = 8;
+    private static final int FLAG_IN_DEGREES = 0x1;
+
+    /**
+     * This method loads a binary path file either on the external file system or attached resources into a compiled
+     * path. A file on the file system is memory mapped, a resource is read in one go.
+     *
+     * @param path specifies the file system path or resource name.
+     * @param loadFromResources specifies true if the data is from attached resources, false if from file system.
+     * @return compiled path with the loaded waypoints.
+     */
+    public static TrcCompiledPath loadCompiledPath(String path, boolean loadFromResources)
+    {
+        if (!path.endsWith(FILE_EXTENSION))
+        {
+            throw new IllegalArgumentException(path + " is not a " + FILE_EXTENSION + " file!");
+        }
+
+        try
+        {
+            return loadFromResources? loadFromResource(path): loadFromFile(path);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }   //loadCompiledPath
+
+    /**
+     * This method loads a binary path file either on the external file system or attached resources into a path.
+     *
+     * @param path specifies the file system path or resource name.
+     * @param loadFromResources specifies true if the data is from attached resources, false if from file system.
+     * @return path with the loaded waypoints.
+     */
+    public static TrcPath loadPath(String path, boolean loadFromResources)
+    {
+        return loadCompiledPath(path, loadFromResources).toPath();
+    }   //loadPath
+
+    /**
+     * This method writes a path to a binary path file.
+     *
+     * @param path specifies the path to write.
+     * @param fileName specifies the binary path file to create.
+     * @throws IOException if the file could not be written.
+     */
+    public static void writePath(TrcPath path, String fileName) throws IOException
+    {
+        int numWaypoints = path.getSize();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + NUM_COLUMNS*numWaypoints*Double.BYTES)
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(path.isInDegrees()? FLAG_IN_DEGREES: 0).putInt(numWaypoints);
+        for (int column = 0; column < NUM_COLUMNS; column++)
+        {
+            for (int i = 0; i < numWaypoints; i++)
+            {
+                buffer.putDouble(getColumnValue(path.getWaypoint(i), column));
+            }
+        }
+        buffer.flip();
+
+        try (FileChannel channel = new FileOutputStream(fileName).getChannel())
+        {
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+        }
+    }   //writePath
+
+    /**
+     * This method converts a CSV path file to a binary path file.
+     *
+     * @param csvFile specifies the CSV path file to convert.
+     * @param binaryFile specifies the binary path file to create.
+     * @param inDegrees specifies true if the heading values are in degrees, false if they are radians.
+     * @throws IOException if the binary file could not be written.
+     */
+    public static void convertCsv(String csvFile, String binaryFile, boolean inDegrees) throws IOException
+    {
+        writePath(TrcPath.loadPathFromCsv(inDegrees, csvFile, false), binaryFile);
+    }   //convertCsv
+
+    /**
+     * This method memory maps a binary path file on the file system and loads it.
+     *
+     * @param fileName specifies the binary path file.
+     * @return compiled path with the loaded waypoints.
+     * @throws IOException if the file could not be read.
+     */
+    private static TrcCompiledPath loadFromFile(String fileName) throws IOException
+    {
+        try (FileChannel channel = new FileInputStream(fileName).getChannel())
+        {
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), fileName);
+        }
+    }   //loadFromFile
+
+    /**
+     * This method reads a binary path file from attached resources and loads it.
+     *
+     * @param resourceName specifies the resource name of the binary path file.
+     * @return compiled path with the loaded waypoints.
+     * @throws IOException if the resource could not be read.
+     */
+    private static TrcCompiledPath loadFromResource(String resourceName) throws IOException
+    {
+        try (InputStream in = Objects.requireNonNull(
+                TrcPathFile.class.getClassLoader()).getResourceAsStream(resourceName))
+        {
+            if (in == null)
+            {
+                throw new IOException(resourceName + " not found!");
+            }
+
+            DataInputStream dataIn = new DataInputStream(in);
+            byte[] header = new byte[HEADER_SIZE];
+            dataIn.readFully(header);
+            int numWaypoints = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt(3*Integer.BYTES);
+            if (numWaypoints < 2 || numWaypoints > (Integer.MAX_VALUE - HEADER_SIZE)/(NUM_COLUMNS*Double.BYTES))
+            {
+                throw new IOException(resourceName + " has an invalid number of waypoints " + numWaypoints + "!");
+            }
+
+            byte[] data = new byte[HEADER_SIZE + NUM_COLUMNS*numWaypoints*Double.BYTES];
+            System.arraycopy(header, 0, data, 0, HEADER_SIZE);
+            dataIn.readFully(data, HEADER_SIZE, data.length - HEADER_SIZE);
+
+            return decode(ByteBuffer.wrap(data), resourceName);
+        }
+    }   //loadFromResource
+
+    /**
+     * This method validates the header of a binary path file and bulk copies the columns into a compiled path.
+     *
+     * @param buffer specifies the content of the binary path file.
+     * @param name specifies the file or resource name for error messages.
+     * @return compiled path with the loaded waypoints.
+     * @throws IOException if the content is not a valid binary path file.
+     */
+    private static TrcCompiledPath decode(ByteBuffer buffer, String name) throws IOException
+    {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC)
+        {
+            throw new IOException(name + " is not a binary path file!");
+        }
+
+        int version = buffer.getInt();
+        if (version != VERSION)
+        {
+            throw new IOException(name + " has unsupported version " + version + "!");
+        }
+
+        boolean inDegrees = (buffer.getInt() & FLAG_IN_DEGREES) != 0;
+        int numWaypoints = buffer.getInt();
+        if (numWaypoints < 2 || (long) numWaypoints*NUM_COLUMNS*Double.BYTES != buffer.remaining())
+        {
+            throw new IOException(name + " has an invalid number of waypoints " + numWaypoints + "!");
+        }
+
+        DoubleBuffer columns = buffer.asDoubleBuffer();
+        double[][] data = new double[NUM_COLUMNS][numWaypoints];
+        for (double[] column : data)
+        {
+            columns.get(column);
+        }
+
+        return new TrcCompiledPath(
+            inDegrees, data[0], data[1], data[2], data[3], data[4], data[5], data[6], data[7]);
+    }   //decode
+
+    /**
+     * This method returns the value of a waypoint in the given column of the CSV path file.
+     *
+     * @param waypoint specifies the waypoint.
+     * @param column specifies the column index.
+     * @return value in the column.
+     */
+    private static double getColumnValue(TrcWaypoint waypoint, int column)
+    {
+        switch (column)
+        {
+            case 0: return waypoint.timeStep;
+            case 1: return waypoint.pose.x;
+            case 2: return waypoint.pose.y;
+            case 3: return waypoint.pose.angle;
+            case 4: return waypoint.encoderPosition;
+            case 5: return waypoint.velocity;
+            case 6: return waypoint.acceleration;
+            default: return waypoint.jerk;
+        }
+    }   //getColumnValue
+
+    /**
+     * This method converts a CSV path file to a binary path file.
+     *
+     * @param args specifies optionally -radians if the heading values are in radians, the CSV path file and
+     *        optionally the binary path file, the CSV path file with the binary extension if none.
+     * @throws IOException if the conversion failed.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        boolean inDegrees = args.length > 0 && !args[0].equals("-radians");
+        int argIndex = inDegrees? 0: 1;
+
+        if (args.length <= argIndex)
+        {
+            System.err.println("Usage: TrcPathFile [-radians] <csvPathFile> [<binaryPathFile>]");
+            return;
+        }
+
+        String csvFile = args[argIndex];
+        String binaryFile = args.length > argIndex + 1?
+            args[argIndex + 1]: csvFile.replaceFirst("\\.csv$", "") + FILE_EXTENSION;
+        convertCsv(csvFile, binaryFile, inDegrees);
+        System.out.println("Converted " + csvFile + " to " + binaryFile + ".");
+    }   //main
+
+}   //class TrcPathFile
@@ -2,34 +2,32 @@
 package TrcCommonLib.trclib;
 
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class implements a performance timer to record elapsed time and interval time of a periodic task. It is a
  * performance monitoring tool. It is especially important for PID controlled loops that the loops are executed at
  * a high enough frequency or they will oscillate wildly. It also records the min and max elapsed/interval time values
- * it has seen since the last reset.
+ * it has seen since the last reset. The times are recorded lock-free into histograms of the TrcMetrics registry.
  */
 public class TrcPerformanceTimer
 {
     private final String instanceName;
-    private long startTime;
-    private long totalElapsedTime;
-    private long minElapsedTime;
-    private long maxElapsedTime;
-    private int elapsedCount;
-    private long totalIntervalTime;
-    private long minIntervalTime;
-    private long maxIntervalTime;
-    private int intervalCount;
+    private final TrcMetrics.Histogram elapsedTimeHistogram;
+    private final TrcMetrics.Histogram intervalTimeHistogram;
+    private final AtomicLong startTime = new AtomicLong();
 
     /**
-     * Constructor: Creates an instance of the object.
+     * Constructor: Creates an instance of the object. The elapsed and interval times are recorded into the
+     * "instanceName.elapsed" and "instanceName.interval" histograms of the metrics registry.
      *
      * @param instanceName specifies the name to identify this instance of the performance timer.
      */
     public TrcPerformanceTimer(String instanceName)
     {
         this.instanceName = instanceName;
+        this.elapsedTimeHistogram = TrcMetrics.getHistogram(instanceName + ".elapsed");
+        this.intervalTimeHistogram = TrcMetrics.getHistogram(instanceName + ".interval");
         reset();
     }   //TrcPerformanceTimer
 
@@ -43,7 +41,7 @@ public class TrcPerformanceTimer
     {
         return String.format(
             Locale.US,
-            "%s: avgElapsed=.6f, minElapsed=%.6f, maxElapsed=%.6f, avgInterval=%.6f, minInterval=%.6f, " +
+            "%s: avgElapsed=%.6f, minElapsed=%.6f, maxElapsed=%.6f, avgInterval=%.6f, minInterval=%.6f, " +
             "maxInterval=%.6f",
             instanceName, getAverageElapsedTime(), getMinElapsedTime(), getMaxElapsedTime(), getAverageIntervalTime(),
             getMinIntervalTime(), getMaxIntervalTime());
@@ -52,79 +50,71 @@ public class TrcPerformanceTimer
     /**
      * This method resets the performance data.
      */
-    public synchronized void reset()
+    public void reset()
     {
-        startTime = 0L;
-        totalElapsedTime = totalIntervalTime = 0L;
-        minElapsedTime = minIntervalTime = Long.MAX_VALUE;
-        maxElapsedTime = maxIntervalTime = 0L;
-        elapsedCount = intervalCount = 0;
+        startTime.set(0L);
+        elapsedTimeHistogram.reset();
+        intervalTimeHistogram.reset();
     }   //reset
 
     /**
      * This method is called to record the start time. It also records the interval time since the last call to
-     * recordStartTime. It also checks if the interval time is the minimum or maximum it has seen since last reset.
+     * recordStartTime.
      */
-    public synchronized void recordStartTime()
+    public void recordStartTime()
     {
         long currNanoTime = TrcTimer.getNanoTime();
+        long prevStartTime = startTime.getAndSet(currNanoTime);
 
-        if (startTime > 0L)
+        if (prevStartTime > 0L)
         {
-            long intervalTime = currNanoTime - startTime;
-
-            totalIntervalTime += intervalTime;
-            intervalCount++;
-
-            if (intervalTime < minIntervalTime)
-            {
-                minIntervalTime = intervalTime;
-            }
-
-            if (intervalTime > maxIntervalTime)
-            {
-                maxIntervalTime = intervalTime;
-            }
+            intervalTimeHistogram.record(currNanoTime - prevStartTime);
         }
-
-        startTime = currNanoTime;
     }   //recordStartTime
 
     /**
-     * This method is called to record the elapsed time since the last start time. It also checks if the elapsed time
-     * is the minimum or maximum it has seen since last reset.
+     * This method is called to record the elapsed time since the last start time.
      */
-    public synchronized void recordEndTime()
+    public void recordEndTime()
     {
+        long prevStartTime = startTime.get();
+
         // PerformanceTimer could have been enabled after the recordStartTime call, so it will miss recording startTime.
         // In this case, skip recordEndTime since we don't have a valid startTime.
-        if (startTime > 0L)
+        if (prevStartTime > 0L)
         {
-            long elapsedTime = TrcTimer.getNanoTime() - startTime;
-
-            totalElapsedTime += elapsedTime;
-            elapsedCount++;
-
-            if (elapsedTime < minElapsedTime)
-            {
-                minElapsedTime = elapsedTime;
-            }
-
-            if (elapsedTime > maxElapsedTime)
-            {
-                maxElapsedTime = elapsedTime;
-            }
+            elapsedTimeHistogram.record(TrcTimer.getNanoTime() - prevStartTime);
         }
     }   //recordEndTime
 
+    /**
+     * This method returns the histogram of the elapsed times.
+     *
+     * @return elapsed time histogram.
+     */
+    public TrcMetrics.Histogram getElapsedTimeHistogram()
+    {
+        return elapsedTimeHistogram;
+    }   //getElapsedTimeHistogram
+
+    /**
+     * This method returns the histogram of the interval times.
+     *
+     * @return interval time histogram.
+     */
+    public TrcMetrics.Histogram getIntervalTimeHistogram()
+    {
+        return intervalTimeHistogram;
+    }   //getIntervalTimeHistogram
+
     /**
      * This method calculates the average elapsed time so far.
      *
      * @return average elapsed time in seconds.
      */
-    public synchronized double getAverageElapsedTime()
+    public double getAverageElapsedTime()
     {
-        return (totalElapsedTime / 1000000000.0) / elapsedCount;
+        return elapsedTimeHistogram.getAverage();
     }   //getAverageElapsedTime
 
     /**
@@ -132,9 +122,9 @@ public class TrcPerformanceTimer
      *
      * @return minimum elapsed time in seconds.
      */
-    public synchronized double getMinElapsedTime()
+    public double getMinElapsedTime()
     {
-        return minElapsedTime / 1000000000.0;
+        return elapsedTimeHistogram.getMin();
     }   //getMinElapsedTime
 
     /**
@@ -142,9 +132,9 @@ public class TrcPerformanceTimer
      *
      * @return maximum elapsed time in seconds.
      */
-    public synchronized double getMaxElapsedTime()
+    public double getMaxElapsedTime()
     {
-        return maxElapsedTime / 1000000000.0;
+        return elapsedTimeHistogram.getMax();
     }   //getMaxElapsedTime
 
     /**
@@ -152,9 +142,9 @@ public class TrcPerformanceTimer
      *
      * @return average interval time in seconds.
      */
-    public synchronized double getAverageIntervalTime()
+    public double getAverageIntervalTime()
     {
-        return (totalIntervalTime / 1000000000.0) / intervalCount;
+        return intervalTimeHistogram.getAverage();
     }   //getAverageIntervalTime
 
     /**
@@ -162,9 +152,9 @@ public class TrcPerformanceTimer
      *
      * @return minimum interval time in seconds.
      */
-    public synchronized double getMinIntervalTime()
+    public double getMinIntervalTime()
     {
-        return minIntervalTime / 1000000000.0;
+        return intervalTimeHistogram.getMin();
     }   //getMinIntervalTime
 
     /**
@@ -172,9 +162,9 @@ public class TrcPerformanceTimer
      *
      * @return maximum interval time in seconds.
      */
-    public synchronized double getMaxIntervalTime()
+    public double getMaxIntervalTime()
     {
-        return maxIntervalTime / 1000000000.0;
+        return intervalTimeHistogram.getMax();
     }   //getMaxIntervalTime
 
 }   //class TrcPerformanceTimer
@@ -2,7 +2,10 @@
 
 package TrcCommonLib.trclib;
 
+import java.util.Locale;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * This class implements a platform independent periodic task by using a separate thread. When enabled, the thread
@@ -13,6 +16,14 @@ import java.util.concurrent.atomic.AtomicInteger;
  * data but arguably, one could just call TrcTaskMgr to create a STANDALONE_TASK instead. In other words, this
  * class is mainly used by TrcTaskMgr, there is really no reason for others to use this class. One should always
  * use TrcTaskMgr to create a STANDALONE_TASK.
+ * <p>
+ * By default, the thread sleeps for whatever is left of the processing interval after each loop. In fixed-rate mode,
+ * loops are scheduled on absolute nanosecond deadlines that are multiples of the processing interval, so the period
+ * does not drift. The thread parks until shortly before the deadline and can optionally spin for the final stretch
+ * to reduce wake-up jitter. A loop that starts late within one period is run immediately to catch up; if a loop
+ * overruns by more than a whole period, the missed periods are skipped and counted so that the thread stays in
+ * phase. Loop start jitter and overruns are kept in a histogram that can be read at runtime.
+ * </p>
  *
  * @param <T> specifies the data type that the periodic task will be acquiring/processing.
  */
@@ -142,13 +153,181 @@ public class TrcPeriodicThread<T>
 
     }   //class TaskState
 
+    /**
+     * This class keeps the loop timing statistics of the periodic thread. Jitter is the time between when a loop
+     * was supposed to start and when it actually started. It is recorded in a histogram with power of two buckets
+     * in microseconds: bucket 0 counts jitter below 1 usec and bucket i counts jitter in [2^(i-1), 2^i) usec, the
+     * last bucket counts everything larger. The statistics are written by the periodic thread only and can be read
+     * by any thread at any time.
+     */
+    public static class LoopTimingStats
+    {
+        public static final int NUM_JITTER_BUCKETS = 18;
+
+        private final AtomicLongArray jitterBuckets = new AtomicLongArray(NUM_JITTER_BUCKETS);
+        private final AtomicLong loopCount = new AtomicLong(0);
+        private final AtomicLong overrunCount = new AtomicLong(0);
+        private final AtomicLong missedPeriodCount = new AtomicLong(0);
+        private final AtomicLong maxJitterNanos = new AtomicLong(0);
+        private final AtomicLong totalJitterNanos = new AtomicLong(0);
+
+        /**
+         * This method records the start jitter of a loop.
+         *
+         * @param jitterNanos specifies the jitter in nanoseconds.
+         */
+        void recordJitter(long jitterNanos)
+        {
+            long jitterMicros = jitterNanos/1000;
+            int bucket = jitterMicros <= 0? 0: 64 - Long.numberOfLeadingZeros(jitterMicros);
+
+            if (bucket >= NUM_JITTER_BUCKETS)
+            {
+                bucket = NUM_JITTER_BUCKETS - 1;
+            }
+            // Only the periodic thread writes, so lazySet is enough and avoids a full memory barrier.
+            jitterBuckets.lazySet(bucket, jitterBuckets.get(bucket) + 1);
+            loopCount.lazySet(loopCount.get() + 1);
+            totalJitterNanos.lazySet(totalJitterNanos.get() + jitterNanos);
+            if (jitterNanos > maxJitterNanos.get())
+            {
+                maxJitterNanos.lazySet(jitterNanos);
+            }
+        }   //recordJitter
+
+        /**
+         * This method records a loop that did not finish before the next deadline.
+         *
+         * @param missedPeriods specifies the number of whole periods that were skipped.
+         */
+        void recordOverrun(long missedPeriods)
+        {
+            overrunCount.lazySet(overrunCount.get() + 1);
+            missedPeriodCount.lazySet(missedPeriodCount.get() + missedPeriods);
+        }   //recordOverrun
+
+        /**
+         * This method clears all statistics.
+         */
+        public void reset()
+        {
+            for (int i = 0; i < NUM_JITTER_BUCKETS; i++)
+            {
+                jitterBuckets.set(i, 0);
+            }
+            loopCount.set(0);
+            overrunCount.set(0);
+            missedPeriodCount.set(0);
+            maxJitterNanos.set(0);
+            totalJitterNanos.set(0);
+        }   //reset
+
+        /**
+         * This method returns a copy of the jitter histogram.
+         *
+         * @return jitter histogram buckets.
+         */
+        public long[] getJitterHistogram()
+        {
+            long[] histogram = new long[NUM_JITTER_BUCKETS];
+
+            for (int i = 0; i < NUM_JITTER_BUCKETS; i++)
+            {
+                histogram[i] = jitterBuckets.get(i);
+            }
+
+            return histogram;
+        }   //getJitterHistogram
+
+        /**
+         * This method returns the number of loops recorded.
+         *
+         * @return number of loops.
+         */
+        public long getLoopCount()
+        {
+            return loopCount.get();
+        }   //getLoopCount
+
+        /**
+         * This method returns the number of loops that overran into the next period.
+         *
+         * @return number of overruns.
+         */
+        public long getOverrunCount()
+        {
+            return overrunCount.get();
+        }   //getOverrunCount
+
+        /**
+         * This method returns the number of whole periods skipped because of overruns.
+         *
+         * @return number of missed periods.
+         */
+        public long getMissedPeriodCount()
+        {
+            return missedPeriodCount.get();
+        }   //getMissedPeriodCount
+
+        /**
+         * This method returns the maximum start jitter.
+         *
+         * @return maximum jitter in seconds.
+         */
+        public double getMaxJitter()
+        {
+            return maxJitterNanos.get()/1000000000.0;
+        }   //getMaxJitter
+
+        /**
+         * This method returns the average start jitter.
+         *
+         * @return average jitter in seconds.
+         */
+        public double getAverageJitter()
+        {
+            long count = loopCount.get();
+            return count == 0? 0.0: totalJitterNanos.get()/1000000000.0/count;
+        }   //getAverageJitter
+
+        /**
+         * This method returns the statistics in string form.
+         *
+         * @return statistics string.
+         */
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder();
+
+            sb.append(String.format(
+                Locale.US, "loops=%d, overruns=%d, missed=%d, avgJitter=%.6f, maxJitter=%.6f, histogram(us)=[",
+                getLoopCount(), getOverrunCount(), getMissedPeriodCount(), getAverageJitter(), getMaxJitter()));
+            for (int i = 0; i < NUM_JITTER_BUCKETS; i++)
+            {
+                long count = jitterBuckets.get(i);
+                if (count > 0)
+                {
+                    sb.append(" <").append(1L << i).append(':').append(count);
+                }
+            }
+            sb.append(" ]");
+
+            return sb.toString();
+        }   //toString
+
+    }   //class LoopTimingStats
+
     private static final AtomicInteger numActiveThreads = new AtomicInteger(0);
     private final TrcDbgTrace tracer;
     private final String instanceName;
     private final PeriodicTask task;
     private final Object context;
     private final TaskState taskState;
+    private final LoopTimingStats loopTimingStats = new LoopTimingStats();
     private volatile long processingInterval = 0;   // in msec
+    private volatile boolean fixedRate = false;
+    private volatile long spinWaitNanos = 0;
 
     /**
      * Constructor: Create an instance of the object.
@@ -272,6 +451,48 @@ public class TrcPeriodicThread<T>
         return processingInterval;
     }   //getProcessingInterval
 
+    /**
+     * This method enables/disables fixed-rate scheduling. In fixed-rate mode, loops start on absolute deadlines that
+     * are multiples of the processing interval instead of sleeping for the time left after each loop.
+     *
+     * @param enabled specifies true to enable fixed-rate scheduling, false to disable.
+     */
+    public void setFixedRate(boolean enabled)
+    {
+        fixedRate = enabled;
+    }   //setFixedRate
+
+    /**
+     * This method checks if fixed-rate scheduling is enabled.
+     *
+     * @return true if fixed-rate scheduling is enabled, false otherwise.
+     */
+    public boolean isFixedRate()
+    {
+        return fixedRate;
+    }   //isFixedRate
+
+    /**
+     * This method sets the time to busy-wait before each fixed-rate deadline instead of parking. Spinning reduces
+     * wake-up jitter at the cost of burning CPU, so keep it to a few hundred microseconds at most.
+     *
+     * @param spinWaitTime specifies the spin-wait time in seconds, 0 to disable spinning.
+     */
+    public void setSpinWaitTime(double spinWaitTime)
+    {
+        spinWaitNanos = (long) (spinWaitTime*1000000000L);
+    }   //setSpinWaitTime
+
+    /**
+     * This method returns the loop timing statistics of this thread.
+     *
+     * @return loop timing statistics.
+     */
+    public LoopTimingStats getLoopTimingStats()
+    {
+        return loopTimingStats;
+    }   //getLoopTimingStats
+
     /**
      * This method is called to set new data after new data have been acquired/processed.
      *
@@ -317,19 +538,30 @@ public class TrcPeriodicThread<T>
         TrcWatchdogMgr.Watchdog threadWatchdog =
             instanceName.equals(TrcWatchdogMgr.moduleName)? null: TrcWatchdogMgr.registerWatchdog(instanceName);
         TrcEvent.registerEventCallback();
+        // Deadline of the current loop, used by fixed-rate mode and for measuring jitter.
+        long deadlineNanoTime = TrcTimer.getNanoTime();
         while (!Thread.interrupted())
         {
             long startNanoTime = TrcTimer.getNanoTime();
             long elapsedNanoTime;
 
+            if (processingInterval > 0)
+            {
+                loopTimingStats.recordJitter(startNanoTime - deadlineNanoTime);
+            }
+
             if (taskState.isTaskEnabled())
             {
                 task.runPeriodic(context);
                 elapsedNanoTime = TrcTimer.getNanoTime() - startNanoTime;
                 totalThreadNanoTime += elapsedNanoTime;
                 loopCount++;
-                tracer.traceVerbose(
-                    instanceName, "start=%.6f, elapsed=%.6f", startNanoTime/1000000000.0, elapsedNanoTime/1000000000.0);
+                if (tracer.isTraceEnabled(TrcDbgTrace.MsgLevel.VERBOSE))
+                {
+                    tracer.traceVerbose(
+                        instanceName, "start=%.6f, elapsed=%.6f",
+                        startNanoTime/1000000000.0, elapsedNanoTime/1000000000.0);
+                }
             }
 
             TrcEvent.performEventCallback();
@@ -338,24 +570,53 @@ public class TrcPeriodicThread<T>
                 threadWatchdog.sendHeartBeat();
             }
 
-            if (processingInterval > 0)
+            long intervalNanos = processingInterval*1000000;
+            if (intervalNanos > 0 && fixedRate)
+            {
+                long currNanoTime = TrcTimer.getNanoTime();
+
+                deadlineNanoTime += intervalNanos;
+                if (currNanoTime - deadlineNanoTime >= intervalNanos)
+                {
+                    // We overran by more than a whole period, skip the missed periods and stay in phase.
+                    long missedPeriods = (currNanoTime - deadlineNanoTime)/intervalNanos;
+                    deadlineNanoTime += missedPeriods*intervalNanos;
+                    loopTimingStats.recordOverrun(missedPeriods);
+                }
+                else if (currNanoTime - deadlineNanoTime > 0)
+                {
+                    // We are late but still within one period, run the next loop immediately to catch up.
+                    loopTimingStats.recordOverrun(0);
+                }
+
+                if (!waitUntil(deadlineNanoTime))
+                {
+                    break;
+                }
+            }
+            else if (intervalNanos > 0)
             {
                 long sleepTime = processingInterval - (TrcTimer.getNanoTime() - startNanoTime)/1000000;
                 //
                 // If the processing time does not use up the processingInterval time, make the thread sleep the
                 // remaining time left.
                 //
+                deadlineNanoTime = startNanoTime + intervalNanos;
                 if (sleepTime > 0)
                 {
                     try
                     {
-                        Thread.sleep(sleepTime);
+                        TrcTimer.getClock().sleep(sleepTime*1000000);
                     }
                     catch (InterruptedException e)
                     {
                         break;
                     }
                 }
+                else
+                {
+                    loopTimingStats.recordOverrun(0);
+                }
             }
             else
             {
@@ -364,6 +625,7 @@ public class TrcPeriodicThread<T>
                 // a tight loop possibly doing nothing.
                 //
                 Thread.yield();
+                deadlineNanoTime = TrcTimer.getNanoTime();
             }
         }
 
@@ -375,8 +637,39 @@ public class TrcPeriodicThread<T>
 
         numThreads = numActiveThreads.decrementAndGet();
         tracer.traceDebug(
-            instanceName, "Exiting thread: numThreads=%d, AvgLoopTime=%.6f",
-            numThreads, totalThreadNanoTime/1000000000.0/loopCount);
+            instanceName, "Exiting thread: numThreads=%d, AvgLoopTime=%.6f, LoopTiming={%s}",
+            numThreads, totalThreadNanoTime/1000000000.0/loopCount, loopTimingStats);
     }   //run
 
+    /**
+     * This method waits until the given deadline. It parks the thread until the spin-wait time before the deadline
+     * and then busy-waits for the rest if spin-wait is enabled.
+     *
+     * @param deadlineNanoTime specifies the deadline in nanoseconds.
+     * @return true if the deadline was reached, false if the thread was interrupted.
+     */
+    private boolean waitUntil(long deadlineNanoTime)
+    {
+        TrcClock clock = TrcTimer.getClock();
+        // Spinning on a simulated clock would never see time advance.
+        long spinNanos = clock.isRealTime()? spinWaitNanos: 0;
+        long remainingNanos;
+
+        while ((remainingNanos = deadlineNanoTime - TrcTimer.getNanoTime()) > spinNanos)
+        {
+            clock.parkNanos(this, remainingNanos - spinNanos);
+            if (Thread.currentThread().isInterrupted())
+            {
+                return false;
+            }
+        }
+
+        while (remainingNanos > 0)
+        {
+            remainingNanos = deadlineNanoTime - TrcTimer.getNanoTime();
+        }
+
+        return true;
+    }   //waitUntil
+
 }   //class TrcPeriodicThread
@@ -15,6 +15,8 @@ public class TrcPidController
     private static final double DEF_STALL_DETECTION_DELAY = 0.5;
     private static final double DEF_STALL_DETECTION_TIMEOUT = 0.2;
     private static final double DEF_STALL_ERR_RATE_THRESHOLD = 1.0;
+    // printPidInfo is typically called every robot loop, a settled controller prints the same line over and over.
+    private static final int PID_INFO_TRACE_RATE_LIMIT = 20;        //in messages per second
 
     /**
      * This class encapsulates all the PID coefficients into a single object and makes it more efficient to pass them
@@ -327,6 +329,9 @@ public class TrcPidController
     private final TrcDbgTrace tracer;
     private final String instanceName;
     private final PidParameters pidParams;
+    // Per-loop on target traces, logged as raw numbers to a binary trace log.
+    private final TrcDbgTrace.CallSite inProgressTraceSite;
+    private final TrcDbgTrace.CallSite onTargetTraceSite;
 
     private boolean inverted = false;
     private boolean absSetPoint = false;
@@ -349,6 +354,11 @@ public class TrcPidController
         this.tracer = new TrcDbgTrace(instanceName);
         this.instanceName = instanceName;
         this.pidParams = pidParams;
+        inProgressTraceSite = TrcDbgTrace.registerCallSite(
+            instanceName, "isOnTarget", TrcDbgTrace.MsgLevel.DEBUG, "InProgress: err=%f, errRate=%f, tolerance=%f");
+        onTargetTraceSite = TrcDbgTrace.registerCallSite(
+            instanceName, "isOnTarget", TrcDbgTrace.MsgLevel.DEBUG, "OnTarget: err=%f, errRate=%f, tolerance=%f");
+        TrcDbgTrace.setRateLimit(instanceName + ".printPidInfo", PID_INFO_TRACE_RATE_LIMIT, true);
     }   //TrcPidController
 
     /**
@@ -937,15 +947,11 @@ public class TrcPidController
             else if (absErr > pidParams.tolerance)
             {
                 pidCtrlState.settlingStartTime = TrcTimer.getCurrentTime();
-                tracer.traceDebug(
-                    instanceName, "InProgress: err=%f, errRate=%f, tolerance=%f",
-                    pidCtrlState.currError, pidCtrlState.errorRate, pidParams.tolerance);
+                tracer.trace(inProgressTraceSite, pidCtrlState.currError, pidCtrlState.errorRate, pidParams.tolerance);
             }
             else if (currTime >= pidCtrlState.settlingStartTime + pidParams.settlingTime)
             {
-                tracer.traceDebug(
-                    instanceName, "OnTarget: err=%f, errRate=%f, tolerance=%f",
-                    pidCtrlState.currError, pidCtrlState.errorRate, pidParams.tolerance);
+                tracer.trace(onTargetTraceSite, pidCtrlState.currError, pidCtrlState.errorRate, pidParams.tolerance);
                 onTarget = true;
             }
         }
@@ -1046,6 +1052,20 @@ public class TrcPidController
         }
     }   //getOutput
 
+    /**
+     * This method returns the time the last PID output was calculated by getOutput. This is used for tracing the
+     * latency of the control chain.
+     *
+     * @return timestamp of the last PID output in seconds.
+     */
+    public double getOutputTimestamp()
+    {
+        synchronized (pidCtrlState)
+        {
+            return pidCtrlState.currTime;
+        }
+    }   //getOutputTimestamp
+
     /**
      * This method displays the PID information on the dashboard for debugging and tuning purpose. Note that the
      * PID info occupies two dashboard lines.
@@ -1075,65 +1095,79 @@ public class TrcPidController
      */
     public void printPidInfo(TrcDbgTrace msgTracer, boolean verbose, TrcRobotBattery battery)
     {
-        StringBuilder sb = new StringBuilder();
-
         if (msgTracer == null)
         {
             msgTracer = tracer;
         }
 
+        if (msgTracer.isTraceEnabled(TrcDbgTrace.MsgLevel.INFO))
+        {
+            msgTracer.traceInfo(
+                instanceName, "printPidInfo", battery, verbose? this::formatVerbosePidInfo: this::formatPidInfo);
+        }
+    }   //printPidInfo
+
+    /**
+     * This method formats the summary PID information.
+     *
+     * @param battery specifies the battery object to get battery info, can be null if not provided.
+     * @return summary PID information.
+     */
+    private String formatPidInfo(TrcRobotBattery battery)
+    {
         synchronized (pidCtrlState)
         {
-            if (verbose)
+            if (battery != null)
             {
-                if (battery != null)
-                {
-                    msgTracer.traceInfo(
-                        instanceName,
-                        "Target=%6.1f, Input=%6.1f, dT=%.6f, CurrErr=%6.1f, ErrRate=%6.1f, " +
-                        "Output=%6.3f(%6.3f/%6.3f), PIDFTerms=%6.3f/%6.3f/%6.3f/%6.3f, Volt=%.1f(%.1f)",
-                        pidCtrlState.setPoint, pidCtrlState.input, pidCtrlState.deltaTime, pidCtrlState.currError,
-                        pidCtrlState.errorRate, pidCtrlState.output, minOutput, maxOutput,
-                        pidCtrlState.pTerm, pidCtrlState.iTerm, pidCtrlState.dTerm, pidCtrlState.fTerm,
-                        battery.getVoltage(), battery.getLowestVoltage());
-                }
-                else
-                {
-                    tracer.traceInfo(
-                        instanceName,
-                        "Target=%6.1f, Input=%6.1f, dT=%.6f, CurrErr=%6.1f, ErrRate=%6.1f, " +
-                        "Output=%6.3f(%6.3f/%6.3f), PIDFTerms=%6.3f/%6.3f/%6.3f/%6.3f",
-                        pidCtrlState.setPoint, pidCtrlState.input, pidCtrlState.deltaTime, pidCtrlState.currError,
-                        pidCtrlState.errorRate, pidCtrlState.output, minOutput, maxOutput,
-                        pidCtrlState.pTerm, pidCtrlState.iTerm, pidCtrlState.dTerm, pidCtrlState.fTerm);
-                }
+                return String.format(
+                    "Target=%6.1f, Input=%6.1f, dT=%.6f, CurrErr=%6.1f, ErrRate=%6.1f, " +
+                    "Output=%6.3f(%6.3f/%6.3f), Volt=%.1f(%.1f)",
+                    pidCtrlState.setPoint, pidCtrlState.input, pidCtrlState.deltaTime, pidCtrlState.currError,
+                    pidCtrlState.errorRate, pidCtrlState.output, minOutput, maxOutput,
+                    battery.getVoltage(), battery.getLowestVoltage());
             }
             else
             {
-                if (battery != null)
-                {
-                    tracer.traceInfo(
-                        instanceName,
-                        "Target=%6.1f, Input=%6.1f, dT=%.6f, CurrErr=%6.1f, ErrRate=%6.1f, " +
-                        "Output=%6.3f(%6.3f/%6.3f), Volt=%.1f(%.1f)",
-                        pidCtrlState.setPoint, pidCtrlState.input, pidCtrlState.deltaTime, pidCtrlState.currError,
-                        pidCtrlState.errorRate, pidCtrlState.output, minOutput, maxOutput,
-                        battery.getVoltage(), battery.getLowestVoltage());
-                }
-                else
-                {
-                    tracer.traceInfo(
-                        instanceName,
-                        "Target=%6.1f, Input=%6.1f, dT=%.6f, CurrErr=%6.1f, ErrRate=%6.1f, " +
-                        "Output=%6.3f(%6.3f/%6.3f)",
-                        pidCtrlState.setPoint, pidCtrlState.input, pidCtrlState.deltaTime, pidCtrlState.currError,
-                        pidCtrlState.errorRate, pidCtrlState.output, minOutput, maxOutput);
-                }
+                return String.format(
+                    "Target=%6.1f, Input=%6.1f, dT=%.6f, CurrErr=%6.1f, ErrRate=%6.1f, " +
+                    "Output=%6.3f(%6.3f/%6.3f)",
+                    pidCtrlState.setPoint, pidCtrlState.input, pidCtrlState.deltaTime, pidCtrlState.currError,
+                    pidCtrlState.errorRate, pidCtrlState.output, minOutput, maxOutput);
             }
         }
+    }   //formatPidInfo
 
-        msgTracer.traceInfo(instanceName, sb.toString());
-    }   //printPidInfo
+    /**
+     * This method formats the verbose PID information.
+     *
+     * @param battery specifies the battery object to get battery info, can be null if not provided.
+     * @return verbose PID information.
+     */
+    private String formatVerbosePidInfo(TrcRobotBattery battery)
+    {
+        synchronized (pidCtrlState)
+        {
+            if (battery != null)
+            {
+                return String.format(
+                    "Target=%6.1f, Input=%6.1f, dT=%.6f, CurrErr=%6.1f, ErrRate=%6.1f, " +
+                    "Output=%6.3f(%6.3f/%6.3f), PIDFTerms=%6.3f/%6.3f/%6.3f/%6.3f, Volt=%.1f(%.1f)",
+                    pidCtrlState.setPoint, pidCtrlState.input, pidCtrlState.deltaTime, pidCtrlState.currError,
+                    pidCtrlState.errorRate, pidCtrlState.output, minOutput, maxOutput,
+                    pidCtrlState.pTerm, pidCtrlState.iTerm, pidCtrlState.dTerm, pidCtrlState.fTerm,
+                    battery.getVoltage(), battery.getLowestVoltage());
+            }
+            else
+            {
+                return String.format(
+                    "Target=%6.1f, Input=%6.1f, dT=%.6f, CurrErr=%6.1f, ErrRate=%6.1f, " +
+                    "Output=%6.3f(%6.3f/%6.3f), PIDFTerms=%6.3f/%6.3f/%6.3f/%6.3f",
+                    pidCtrlState.setPoint, pidCtrlState.input, pidCtrlState.deltaTime, pidCtrlState.currError,
+                    pidCtrlState.errorRate, pidCtrlState.output, minOutput, maxOutput,
+                    pidCtrlState.pTerm, pidCtrlState.iTerm, pidCtrlState.dTerm, pidCtrlState.fTerm);
+            }
+        }
+    }   //formatVerbosePidInfo
 
     /**
      * This method prints the PID information to the tracer console. If no tracer is provided, it will attempt to
@@ -1,7 +1,6 @@
 
 package TrcCommonLib.trclib;
 
-import org.apache.commons.math3.linear.MatrixUtils;
 import org.apache.commons.math3.linear.RealVector;
 
 import java.io.BufferedReader;
@@ -15,6 +14,10 @@ import java.util.Objects;
 
 /**
  * This class implements a 2D pose object that represents the positional state of an object.
+ * <p>
+ * The transform methods come in two forms: one returns a new pose and the other writes the result into a destination
+ * pose supplied by the caller and returns it. Code that runs every loop should use the destination form with its own
+ * scratch poses so it doesn't allocate. The destination may be this pose or the argument pose.
  */
 public class TrcPose2D
 {
@@ -191,9 +194,28 @@ public class TrcPose2D
      */
     public double distanceTo(TrcPose2D pose)
     {
-        return toPosVector().getDistance(pose.toPosVector());
+        double deltaX = x - pose.x;
+        double deltaY = y - pose.y;
+
+        return Math.sqrt(deltaX*deltaX + deltaY*deltaY);
     }   //distanceTo
 
+    /**
+     * This method sets this pose to the given values.
+     *
+     * @param x     specifies the x component of the position.
+     * @param y     specifies the y component of the position.
+     * @param angle specifies the angle.
+     * @return this pose.
+     */
+    public TrcPose2D set(double x, double y, double angle)
+    {
+        this.x = x;
+        this.y = y;
+        this.angle = angle;
+        return this;
+    }   //set
+
     /**
      * This method sets this pose to be the same as the given pose.
      *
@@ -214,19 +236,29 @@ public class TrcPose2D
      * @return pose relative to the given pose.
      */
     public TrcPose2D relativeTo(TrcPose2D pose, boolean transformAngle)
+    {
+        return relativeTo(pose, transformAngle, new TrcPose2D());
+    }   //relativeTo
+
+    /**
+     * This method transforms this pose to be relative to the given pose and writes the result to the destination.
+     *
+     * @param pose           specifies the reference pose.
+     * @param transformAngle specifies true to also transform angle, false to leave it alone.
+     * @param out            specifies the pose to receive the result.
+     * @return out, the pose relative to the given pose.
+     */
+    public TrcPose2D relativeTo(TrcPose2D pose, boolean transformAngle, TrcPose2D out)
     {
         double deltaX = x - pose.x;
         double deltaY = y - pose.y;
-        double newAngle = angle;
-
-        RealVector newPos =
-            TrcUtil.rotateCCW(MatrixUtils.createRealVector(new double[]{deltaX, deltaY}), pose.angle);
-        if (transformAngle)
-        {
-            newAngle -= pose.angle;
-        }
-
-        return new TrcPose2D(newPos.getEntry(0), newPos.getEntry(1), newAngle);
+        double angleRadians = Math.toRadians(pose.angle);
+        double cosAngle = Math.cos(angleRadians);
+        double sinAngle = Math.sin(angleRadians);
+        // Rotate the delta counter-clockwise by the angle of the reference pose.
+        return out.set(
+            cosAngle*deltaX - sinAngle*deltaY, sinAngle*deltaX + cosAngle*deltaY,
+            transformAngle? angle - pose.angle: angle);
     }   //relativeTo
 
     /**
@@ -240,6 +272,18 @@ public class TrcPose2D
         return relativeTo(pose, true);
     }   //relativeTo
 
+    /**
+     * This method transforms this pose to be relative to the given pose and writes the result to the destination.
+     *
+     * @param pose specifies the reference pose.
+     * @param out  specifies the pose to receive the result.
+     * @return out, the pose relative to the given pose.
+     */
+    public TrcPose2D relativeTo(TrcPose2D pose, TrcPose2D out)
+    {
+        return relativeTo(pose, true, out);
+    }   //relativeTo
+
     /**
      * This method translates this pose with the x and y offset in reference to the angle of the pose.
      *
@@ -249,15 +293,26 @@ public class TrcPose2D
      */
     public TrcPose2D translatePose(double xOffset, double yOffset)
     {
-        TrcPose2D newPose = clone();
-        double angleRadians = Math.toRadians(newPose.angle);
+        return translatePose(xOffset, yOffset, new TrcPose2D());
+    }   //translatePose
+
+    /**
+     * This method translates this pose with the x and y offset in reference to the angle of the pose and writes the
+     * result to the destination.
+     *
+     * @param xOffset specifies the x offset in reference to the angle of the pose.
+     * @param yOffset specifies the y offset in reference to the angle of the pose.
+     * @param out     specifies the pose to receive the result.
+     * @return out, the translated pose.
+     */
+    public TrcPose2D translatePose(double xOffset, double yOffset, TrcPose2D out)
+    {
+        double angleRadians = Math.toRadians(angle);
         double cosAngle = Math.cos(angleRadians);
         double sinAngle = Math.sin(angleRadians);
 
-        newPose.x += xOffset * cosAngle + yOffset * sinAngle;
-        newPose.y += -xOffset * sinAngle + yOffset * cosAngle;
-
-        return newPose;
+        return out.set(
+            x + (xOffset * cosAngle + yOffset * sinAngle), y + (-xOffset * sinAngle + yOffset * cosAngle), angle);
     }   //translatePose
 
     /**
@@ -269,9 +324,27 @@ public class TrcPose2D
      */
     public TrcPose2D addRelativePose(TrcPose2D relativePose)
     {
-        RealVector vec =
-            TrcUtil.createVector(this.x, this.y).add(TrcUtil.rotateCW(relativePose.toPosVector(), this.angle));
-        return new TrcPose2D(vec.getEntry(0), vec.getEntry(1), this.angle + relativePose.angle);
+        return addRelativePose(relativePose, new TrcPose2D());
+    }   //addRelativePose
+
+    /**
+     * This method adds a relative pose to this pose and writes the resulting pose to the destination. The relative
+     * pose has a relative vector and relative angle from this pose.
+     *
+     * @param relativePose specifies the pose relative to the previous pose.
+     * @param out          specifies the pose to receive the result.
+     * @return out, the resulting pose.
+     */
+    public TrcPose2D addRelativePose(TrcPose2D relativePose, TrcPose2D out)
+    {
+        double angleRadians = Math.toRadians(angle);
+        double cosAngle = Math.cos(angleRadians);
+        double sinAngle = Math.sin(angleRadians);
+        // Rotate the relative vector clockwise by the angle of this pose.
+        return out.set(
+            x + (cosAngle*relativePose.x + sinAngle*relativePose.y),
+            y + (-sinAngle*relativePose.x + cosAngle*relativePose.y),
+            angle + relativePose.angle);
     }   //addRelativePose
 
     /**
@@ -284,9 +357,27 @@ public class TrcPose2D
      */
     public TrcPose2D subtractRelativePose(TrcPose2D relativePose)
     {
-        RealVector vec =
-            TrcUtil.createVector(this.x, this.y).subtract(TrcUtil.rotateCW(relativePose.toPosVector(), this.angle));
-        return new TrcPose2D(vec.getEntry(0), vec.getEntry(1), this.angle - relativePose.angle);
+        return subtractRelativePose(relativePose, new TrcPose2D());
+    }   //subtractRelativePose
+
+    /**
+     * This method subtracts a relative pose from this pose and writes the resulting pose to the destination. The
+     * relative pose has a relative vector and relative angle from the resulting pose to this pose.
+     *
+     * @param relativePose specifies the relative pose from the resulting pose.
+     * @param out          specifies the pose to receive the result.
+     * @return out, the resulting pose.
+     */
+    public TrcPose2D subtractRelativePose(TrcPose2D relativePose, TrcPose2D out)
+    {
+        double angleRadians = Math.toRadians(angle);
+        double cosAngle = Math.cos(angleRadians);
+        double sinAngle = Math.sin(angleRadians);
+        // Rotate the relative vector clockwise by the angle of this pose.
+        return out.set(
+            x - (cosAngle*relativePose.x + sinAngle*relativePose.y),
+            y - (-sinAngle*relativePose.x + cosAngle*relativePose.y),
+            angle - relativePose.angle);
     }   //subtractRelativePose
 
 }   //class TrcPose2D
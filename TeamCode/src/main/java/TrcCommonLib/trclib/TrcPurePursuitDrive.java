@@ -1,8 +1,6 @@
 
 package TrcCommonLib.trclib;
 
-import org.apache.commons.math3.linear.RealVector;
-
 /**
  * This class implements a platform independent Pure Pursuit drive for holonomic or non-holonomic robots.
  * Essentially, a pure pursuit drive navigates the robot to chase a point along the path. The point to chase is
@@ -30,6 +28,8 @@ import org.apache.commons.math3.linear.RealVector;
 public class TrcPurePursuitDrive
 {
     private static final boolean INVERTED_TARGET = false;
+    // The drive task and the following point search trace every robot loop, keep them to a readable rate.
+    private static final int DRIVE_TRACE_RATE_LIMIT = 10;   //in messages per second
 
     public interface WaypointEventHandler
     {
@@ -90,11 +90,17 @@ public class TrcPurePursuitDrive
 
     private String owner = null;
     private TrcPath path;
+    // Compiled form of the path the drive task follows, so it walks primitive arrays instead of waypoint objects.
+    private TrcCompiledPath compiledPath;
     private TrcEvent onFinishedEvent;
     private double timedOutTime;
     private int pathIndex;
     private TrcPose2D referencePose;
-    private TrcPose2D relativeTargetPose;
+    // Scratch objects the drive task updates in place every loop so that following a path doesn't allocate.
+    private final TrcPose2D relativeTargetPose = new TrcPose2D();
+    private final TrcPose2D currRobotPose = new TrcPose2D();
+    private final TrcPose2D endpointPose = new TrcPose2D();
+    private final TrcWaypoint interpolatedPoint = new TrcWaypoint(0.0, new TrcPose2D(), 0.0, 0.0, 0.0, 0.0);
     private boolean fastModeEnabled = false;
     private boolean resetError = false;
 
@@ -118,6 +124,9 @@ public class TrcPurePursuitDrive
     {
         tracer = new TrcDbgTrace(instanceName);
         this.instanceName = instanceName;
+        TrcDbgTrace.setRateLimit(instanceName + ".driveTask", DRIVE_TRACE_RATE_LIMIT, false);
+        TrcDbgTrace.setRateLimit(instanceName + ".getFollowingPoint", DRIVE_TRACE_RATE_LIMIT, false);
+        TrcDbgTrace.setRateLimit(instanceName + ".getFollowingPointOnSegment", DRIVE_TRACE_RATE_LIMIT, false);
 
         if (xPosPidCoeff == null || driveBase.supportsHolonomicDrive())
         {
@@ -576,6 +585,7 @@ public class TrcPurePursuitDrive
                                                                       endPoint.pose.y - startPoint.pose.y));
                 }
             }
+            compiledPath = this.path.compile();
             yPosPidCtrl.reset();
             yPosPidCtrl.startStallDetection();
             turnPidCtrl.reset();
@@ -910,6 +920,7 @@ public class TrcPurePursuitDrive
         driveTaskObj.unregisterTask();
         driveBase.stop(owner);
         path = null;
+        compiledPath = null;
         owner = null;
     }   //stop
 
@@ -929,7 +940,7 @@ public class TrcPurePursuitDrive
      */
     private synchronized double getXPosition()
     {
-        return relativeTargetPose != null? relativeTargetPose.x: 0.0;
+        return relativeTargetPose.x;
     }   //getXPosition
 
     /**
@@ -938,7 +949,7 @@ public class TrcPurePursuitDrive
      */
     private synchronized double getYPosition()
     {
-        return relativeTargetPose != null? relativeTargetPose.y: 0.0;
+        return relativeTargetPose.y;
     }   //getYPosition
 
     /**
@@ -964,10 +975,10 @@ public class TrcPurePursuitDrive
     private synchronized void driveTask(
         TrcTaskMgr.TaskType taskType, TrcRobot.RunMode runMode, boolean slowPeriodicLoop)
     {
-        TrcPose2D robotPose = driveBase.getPositionRelativeTo(referencePose, true);
+        TrcPose2D robotPose = driveBase.getPositionRelativeTo(referencePose, true, currRobotPose);
         TrcWaypoint targetPoint = getFollowingPoint(robotPose);
-        relativeTargetPose = targetPoint.pose.relativeTo(robotPose, true);
-        boolean lastSegment = pathIndex == path.getSize() - 1;
+        targetPoint.pose.relativeTo(robotPose, true, relativeTargetPose);
+        boolean lastSegment = pathIndex == compiledPath.getSize() - 1;
 
         if (!INVERTED_TARGET)
         {
@@ -1003,19 +1014,20 @@ public class TrcPurePursuitDrive
         yPosPower = TrcUtil.clipRange(yPosPower + velPower * Math.cos(theta), -moveOutputLimit, moveOutputLimit);
         turnPower = TrcUtil.clipRange(turnPower, -rotOutputLimit, rotOutputLimit);
 
-        tracer.traceDebug(
-            instanceName,
-            "[" + pathIndex +
-            "] RobotPose=" + robotPose +
-            ",TargetPose=" + targetPoint.pose +
-            ",relPose=" + relativeTargetPose);
-        tracer.traceDebug(
-            instanceName,
-            "RobotVel=%.1f,TargetVel=%.1f,xError=%.1f,yError=%.1f,turnError=%.1f,velError=%.1f,theta=%.1f," +
-            "xPower=%.1f,yPower=%.1f,turnPower=%.1f,velPower=%.1f",
-            getVelocityInput(), targetPoint.velocity, xPosPidCtrl != null? xPosPidCtrl.getError(): 0.0,
-            yPosPidCtrl.getError(), turnPidCtrl.getError(), velPidCtrl.getError(), Math.toDegrees(theta),
-            xPosPower, yPosPower, turnPower, velPower);
+        if (tracer.isTraceEnabled(TrcDbgTrace.MsgLevel.DEBUG))
+        {
+            tracer.traceDebug(
+                instanceName, "driveTask", robotPose,
+                pose -> "[" + pathIndex + "] RobotPose=" + pose + ",TargetPose=" + targetPoint.pose +
+                        ",relPose=" + relativeTargetPose);
+            tracer.traceDebug(
+                instanceName,
+                "RobotVel=%.1f,TargetVel=%.1f,xError=%.1f,yError=%.1f,turnError=%.1f,velError=%.1f,theta=%.1f," +
+                "xPower=%.1f,yPower=%.1f,turnPower=%.1f,velPower=%.1f",
+                getVelocityInput(), targetPoint.velocity, xPosPidCtrl != null? xPosPidCtrl.getError(): 0.0,
+                yPosPidCtrl.getError(), turnPidCtrl.getError(), velPidCtrl.getError(), Math.toDegrees(theta),
+                xPosPower, yPosPower, turnPower, velPower);
+        }
 
         // If we have timed out or finished, stop the operation.
         double currTime = TrcTimer.getCurrentTime();
@@ -1127,27 +1139,33 @@ public class TrcPurePursuitDrive
     }   //interpolate
 
     /**
-     * Interpolates a waypoint that's weighted between two given waypoints.
+     * Interpolates a waypoint that's weighted between two given waypoints. The returned waypoint is reused by the
+     * next call.
      *
-     * @param point1 specifies the start point of the path segment.
-     * @param point2 specifies the end point of the path segment.
+     * @param index1 specifies the index of the start point of the path segment.
+     * @param index2 specifies the index of the end point of the path segment.
      * @param weight specifies the weight between the two provided points.
      * @param robotPose specifies the robot's position, set to null for holonomic drivebase.
      * @return weighted interpolated waypoint.
      */
-    private TrcWaypoint interpolate(TrcWaypoint point1, TrcWaypoint point2, double weight, TrcPose2D robotPose)
+    private TrcWaypoint interpolate(int index1, int index2, double weight, TrcPose2D robotPose)
     {
-        double timestep = interpolate(point1.timeStep, point2.timeStep, weight);
-        double x = interpolate(point1.pose.x, point2.pose.x, weight);
-        double y = interpolate(point1.pose.y, point2.pose.y, weight);
-        double position = interpolate(point1.encoderPosition, point2.encoderPosition, weight);
-        double velocity = interpolate(point1.velocity, point2.velocity, weight);
-        double acceleration = interpolate(point1.acceleration, point2.acceleration, weight);
-        double jerk = interpolate(point1.jerk, point2.jerk, weight);
+        double x1 = compiledPath.getX(index1), y1 = compiledPath.getY(index1);
+        double x2 = compiledPath.getX(index2), y2 = compiledPath.getY(index2);
+        double heading1 = compiledPath.getHeading(index1), heading2 = compiledPath.getHeading(index2);
+        double timestep = interpolate(compiledPath.getTimeStep(index1), compiledPath.getTimeStep(index2), weight);
+        double x = interpolate(x1, x2, weight);
+        double y = interpolate(y1, y2, weight);
+        double position = interpolate(
+            compiledPath.getEncoderPosition(index1), compiledPath.getEncoderPosition(index2), weight);
+        double velocity = interpolate(compiledPath.getVelocity(index1), compiledPath.getVelocity(index2), weight);
+        double acceleration = interpolate(
+            compiledPath.getAcceleration(index1), compiledPath.getAcceleration(index2), weight);
+        double jerk = interpolate(compiledPath.getJerk(index1), compiledPath.getJerk(index2), weight);
 
         double heading;
         double turningRadius = proximityRadius + posTolerance;
-        if (robotPose == null || robotPose.distanceTo(point2.pose) <= turningRadius)
+        if (robotPose == null || TrcUtil.magnitude(robotPose.x - x2, robotPose.y - y2) <= turningRadius)
         {
             if (robotPose != null)
             {
@@ -1157,10 +1175,9 @@ public class TrcPurePursuitDrive
                 // The heading weight is the percentage distance of the robot position to the end-waypoint over
                 // proximity radius.
                 //
-                weight = 1 - point2.pose.distanceTo(point1.pose)*(1 - weight)/turningRadius;
+                weight = 1 - TrcUtil.magnitude(x2 - x1, y2 - y1)*(1 - weight)/turningRadius;
             }
-            heading = interpolate(
-                point1.pose.angle, warpSpace.getOptimizedTarget(point2.pose.angle, point1.pose.angle), weight);
+            heading = interpolate(heading1, warpSpace.getOptimizedTarget(heading2, heading1), weight);
         }
         else
         {
@@ -1168,12 +1185,18 @@ public class TrcPurePursuitDrive
             // For non-holonomic drivebase, maintain the robot heading pointing to the end-waypoint unless the
             // end-waypoint is within the robot's proximity circle.
             //
-            TrcPose2D endpointPose = point2.pose.clone();
-            endpointPose.angle = point1.pose.angle;
-            heading = point1.pose.angle + endpointPose.relativeTo(robotPose).angle;
+            endpointPose.set(x2, y2, heading1);
+            heading = heading1 + endpointPose.relativeTo(robotPose, endpointPose).angle;
         }
 
-        return new TrcWaypoint(timestep, new TrcPose2D(x, y, heading), position, velocity, acceleration, jerk);
+        interpolatedPoint.timeStep = timestep;
+        interpolatedPoint.pose.set(x, y, heading);
+        interpolatedPoint.encoderPosition = position;
+        interpolatedPoint.velocity = velocity;
+        interpolatedPoint.acceleration = acceleration;
+        interpolatedPoint.jerk = jerk;
+
+        return interpolatedPoint;
     }   //interpolate
 
     /**
@@ -1181,44 +1204,46 @@ public class TrcPurePursuitDrive
      * closest to the end point of the path segment. The algorithm is based on this article:
      * <a href="https://stackoverflow.com/questions/1073336/circle-line-segment-collision-detection-algorithm">...</a>
      *
-     * @param startWaypoint specifies the start point of the path segment.
-     * @param endWaypoint specifies the end point of the path segment.
+     * @param startIndex specifies the index of the start point of the path segment.
+     * @param endIndex specifies the index of the end point of the path segment.
      * @param robotPose specifies the robot's position.
      * @return calculated waypoint.
      */
-    private TrcWaypoint getFollowingPointOnSegment(
-        TrcWaypoint startWaypoint, TrcWaypoint endWaypoint, TrcPose2D robotPose)
+    private TrcWaypoint getFollowingPointOnSegment(int startIndex, int endIndex, TrcPose2D robotPose)
     {
-        if (fastModeEnabled && robotPose.distanceTo(endWaypoint.getPositionPose()) > proximityRadius)
+        double startX = compiledPath.getX(startIndex), startY = compiledPath.getY(startIndex);
+        double endX = compiledPath.getX(endIndex), endY = compiledPath.getY(endIndex);
+
+        if (fastModeEnabled && TrcUtil.magnitude(robotPose.x - endX, robotPose.y - endY) > proximityRadius)
         {
-            tracer.traceDebug(
-                instanceName,
-                "pathIndex=" + pathIndex +
-                ", startPose=" + startWaypoint.getPositionPose() +
-                ", endPose=" + endWaypoint.getPositionPose());
-            return interpolate(
-                startWaypoint, endWaypoint, 1.0, !incrementalTurn? robotPose: null);
+            if (tracer.isTraceEnabled(TrcDbgTrace.MsgLevel.DEBUG))
+            {
+                tracer.traceDebug(
+                    instanceName, "getFollowingPointOnSegment", path,
+                    p -> "pathIndex=" + pathIndex + ", startPose=" + p.getWaypoint(startIndex).getPositionPose() +
+                         ", endPose=" + p.getWaypoint(endIndex).getPositionPose());
+            }
+            return interpolate(startIndex, endIndex, 1.0, !incrementalTurn? robotPose: null);
         }
         else
         {
             // Find intersection of path segment with the proximity circle of the robot.
-            RealVector startVector = startWaypoint.getPositionPose().toPosVector();
-            RealVector endVector = endWaypoint.getPositionPose().toPosVector();
-            RealVector robotVector = robotPose.toPosVector();
-
-            RealVector startToEnd = endVector.subtract(startVector);
-            RealVector robotToStart = startVector.subtract(robotVector);
+            double startToEndX = endX - startX;
+            double startToEndY = endY - startY;
+            double robotToStartX = startX - robotPose.x;
+            double robotToStartY = startY - robotPose.y;
             // Solve quadratic formula
-            double a = startToEnd.dotProduct(startToEnd);
-            double b = 2 * robotToStart.dotProduct(startToEnd);
-            double c = robotToStart.dotProduct(robotToStart) - proximityRadius * proximityRadius;
+            double a = startToEndX * startToEndX + startToEndY * startToEndY;
+            double b = 2 * (robotToStartX * startToEndX + robotToStartY * startToEndY);
+            double c = robotToStartX * robotToStartX + robotToStartY * robotToStartY -
+                       proximityRadius * proximityRadius;
 
             double discriminant = b * b - 4 * a * c;
             if (discriminant < 0 || a == 0.0)
             {
                 // No valid intersection or end waypoint has the same location as the start waypoint.
                 // (i.e. same x and y but could have different angles).
-                tracer.traceDebug(instanceName, "No valid intersection.");
+                tracer.traceDebug(instanceName, "getFollowingPointOnSegment", null, arg -> "No valid intersection.");
                 return null;
             }
 //            else if (a == 0.0)
@@ -1249,20 +1274,28 @@ public class TrcPurePursuitDrive
                     //
                     // The furthest intersection point is not on the line segment, so skip this segment.
                     //
-                    tracer.traceDebug(
-                        instanceName, "Intersection not on line segment t1=%f, t2=%f, t=%f, stalled=%s",
-                        t1, t2, t, stalled);
+                    if (tracer.isTraceEnabled(TrcDbgTrace.MsgLevel.DEBUG))
+                    {
+                        tracer.traceDebug(
+                            instanceName, "getFollowingPointOnSegment", t,
+                            arg -> String.format(
+                                "Intersection not on line segment t1=%f, t2=%f, t=%f, stalled=%s",
+                                t1, t2, arg, stalled));
+                    }
                     return null;
                 }
 
                 TrcWaypoint interpolated =
-                    interpolate(startWaypoint, endWaypoint, t, xPosPidCtrl == null? robotPose: null);
+                    interpolate(startIndex, endIndex, t, xPosPidCtrl == null? robotPose: null);
 
-                tracer.traceDebug(
-                    instanceName,
-                    "startPoint=" + startWaypoint.getPositionPose() +
-                    ", endPoint=" + endWaypoint.getPositionPose() +
-                    ", interpolatedPoint=" + interpolated.getPositionPose());
+                if (tracer.isTraceEnabled(TrcDbgTrace.MsgLevel.DEBUG))
+                {
+                    tracer.traceDebug(
+                        instanceName, "getFollowingPointOnSegment", interpolated,
+                        point -> "startPoint=" + path.getWaypoint(startIndex).getPositionPose() +
+                                 ", endPoint=" + path.getWaypoint(endIndex).getPositionPose() +
+                                 ", interpolatedPoint=" + point.getPositionPose());
+                }
 
                 return interpolated;
             }
@@ -1277,20 +1310,39 @@ public class TrcPurePursuitDrive
      */
     private TrcWaypoint getFollowingPoint(TrcPose2D robotPose)
     {
+        int startIndex = Math.max(pathIndex, 1);
+        //
+        // A segment that ends inside the proximity circle has no intersection towards its end point. The straight
+        // line distance from the robot to a waypoint is at most the robot's distance to the current segment end plus
+        // the arc length between them, so if the current segment ends inside the circle, every waypoint within the
+        // remaining radius of arc length is inside the circle too. Look up the first segment that may end outside
+        // the circle with a binary search on the arc length instead of testing all the tiny segments of a densely
+        // sampled path one by one.
+        //
+        if (startIndex < compiledPath.getSize())
+        {
+            double insideLength = proximityRadius - TrcUtil.magnitude(
+                robotPose.x - compiledPath.getX(startIndex), robotPose.y - compiledPath.getY(startIndex));
+            if (insideLength > 0.0)
+            {
+                startIndex = Math.max(
+                    startIndex,
+                    compiledPath.getSegmentIndexAtDistance(compiledPath.getDistance(startIndex) + insideLength));
+            }
+        }
         //
         // Find the next segment that intersects with the proximity circle of the robot.
         // If there are tiny segments that are completely within the proximity circle, we will skip them all.
         //
-        for (int i = Math.max(pathIndex, 1); i < path.getSize(); i++)
+        for (int i = startIndex; i < compiledPath.getSize(); i++)
         {
-            TrcWaypoint segmentStart = path.getWaypoint(i - 1);
-            TrcWaypoint segmentEnd = path.getWaypoint(i);
             // If there is a valid intersection, return it.
-            TrcWaypoint interpolated = getFollowingPointOnSegment(segmentStart, segmentEnd, robotPose);
+            TrcWaypoint interpolated = getFollowingPointOnSegment(i - 1, i, robotPose);
             if (interpolated != null)
             {
                 if (pathIndex != i)
                 {
+                    TrcWaypoint segmentStart = path.getWaypoint(i - 1);
                     //
                     // We are moving to the next waypoint.
                     //
@@ -1299,14 +1351,14 @@ public class TrcPurePursuitDrive
                         waypointEventHandler.waypointEvent(i - 1, segmentStart);
                     }
 
-                    tracer.traceDebug(
-                        instanceName,
-                        "Segment[" + (i - 1) +
-                        ":" + segmentStart +
-                        "->" + i +
-                        ":" + segmentEnd +
-                        "] PrevIndex=" + pathIndex +
-                        ", Target=" + interpolated);
+                    if (tracer.isTraceEnabled(TrcDbgTrace.MsgLevel.DEBUG))
+                    {
+                        tracer.traceDebug(
+                            instanceName, "getFollowingPoint", i,
+                            index -> "Segment[" + (index - 1) + ":" + segmentStart + "->" + index + ":" +
+                                     path.getWaypoint(index) + "] PrevIndex=" + pathIndex +
+                                     ", Target=" + interpolated);
+                    }
                     pathIndex = i;
                 }
                 return interpolated;
@@ -1,27 +1,86 @@
 
 package TrcCommonLib.trclib;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
 /**
  * This class implements a generic request queue that runs on its own thread. It allows the caller to add requests
  * to the end of the queue. The request thread will call the client to process the request asynchronously from the
  * head of the queue. When the request is completed, an optional event will be signaled as well as an optional
  * callback if provided.
+ * <p>
+ * Requests are queued in priority lanes. The request thread always processes the highest priority lane that has
+ * pending requests, each lane in FIFO order. A request may be added with a coalesce key. If a request with the same
+ * key is still pending in the same lane, the new request supersedes it and takes over its place in the queue, so
+ * repeated writes to the same target collapse into the latest one instead of building up latency. Optionally, a
+ * batch handler can be installed so that the request thread hands up to N pending requests to the client in one
+ * call instead of signaling them one by one.
+ * </p>
  *
  * @param <R> specifies the type of the request.
  */
 public class TrcRequestQueue<R>
 {
+    /**
+     * This enum specifies the priority lanes of the request queue.
+     */
+    public enum Priority
+    {
+        HIGH,
+        NORMAL,
+        LOW
+    }   //enum Priority
+
+    /**
+     * This interface is implemented by the client to be notified when a pending request is superseded by a newer
+     * request with the same coalesce key. The superseded request will never be processed. The handler is called
+     * with the request queue locked, so it must be quick and must not call back into the request queue.
+     *
+     * @param <R> specifies the type of the request.
+     */
+    public interface SupersededHandler<R>
+    {
+        /**
+         * This method is called when a pending request is superseded.
+         *
+         * @param supersededRequest specifies the request that is dropped.
+         * @param newRequest specifies the request that replaces it.
+         */
+        void requestSuperseded(R supersededRequest, R newRequest);
+
+    }   //interface SupersededHandler
+
+    /**
+     * This interface is implemented by the client that wants to process pending requests in batches.
+     *
+     * @param <R> specifies the type of the request.
+     */
+    public interface BatchHandler<R>
+    {
+        /**
+         * This method is called on the request thread with the requests taken off the queue in processing order.
+         * The list is reused by the request queue and must not be kept after returning.
+         *
+         * @param entries specifies the request entries to be processed.
+         */
+        void processRequests(List<TrcRequestQueue<R>.RequestEntry> entries);
+
+    }   //interface BatchHandler
+
     /**
      * This class implements a request entry. Typically, an entry will be put into a FIFO request queue so that each
      * entry will be processed in the order they came in.
      */
     public class RequestEntry
     {
-        private final R request;
-        private final TrcEvent notifyEvent;
-        private final boolean repeat;
+        private final Priority priority;
+        private final Object coalesceKey;
+        private R request;
+        private TrcEvent notifyEvent;
+        private boolean repeat;
         private boolean canceled;
 
         /**
@@ -30,9 +89,13 @@ public class TrcRequestQueue<R>
          * @param request specifies the request.
          * @param event specifies the event to notify when the request is up for processing.
          * @param repeat specifies true to re-queue the request when completed.
+         * @param priority specifies the priority lane of the request.
+         * @param coalesceKey specifies the key identifying the target of the request, null if not coalescing.
          */
-        public RequestEntry(R request, TrcEvent event, boolean repeat)
+        public RequestEntry(R request, TrcEvent event, boolean repeat, Priority priority, Object coalesceKey)
         {
+            this.priority = priority;
+            this.coalesceKey = coalesceKey;
             this.request = request;
             this.notifyEvent = event;
             this.repeat = repeat;
@@ -40,15 +103,41 @@ public class TrcRequestQueue<R>
         }   //RequestEntry
 
         /**
-         * This method retrieves the request object.
+         * Constructor: Create an instance of the object.
+         *
+         * @param request specifies the request.
+         * @param event specifies the event to notify when the request is up for processing.
+         * @param repeat specifies true to re-queue the request when completed.
+         */
+        public RequestEntry(R request, TrcEvent event, boolean repeat)
+        {
+            this(request, event, repeat, Priority.NORMAL, null);
+        }   //RequestEntry
+
+        /**
+         * This method retrieves the request object. If a newer request with the same coalesce key superseded the
+         * request while it was pending, the newer request is returned.
          *
          * @return request object.
          */
         public R getRequest()
         {
-            return request;
+            synchronized (TrcRequestQueue.this)
+            {
+                return request;
+            }
         }   //getRequest
 
+        /**
+         * This method returns the priority lane of the request.
+         *
+         * @return request priority.
+         */
+        public Priority getPriority()
+        {
+            return priority;
+        }   //getPriority
+
         /**
          * This method checks if the request entry is canceled.
          *
@@ -56,7 +145,10 @@ public class TrcRequestQueue<R>
          */
         public boolean isCanceled()
         {
-            return canceled;
+            synchronized (TrcRequestQueue.this)
+            {
+                return canceled;
+            }
         }   //isCanceled
 
         /**
@@ -67,20 +159,29 @@ public class TrcRequestQueue<R>
         @Override
         public String toString()
         {
-            return "request=" + request + ", repeat=" + repeat + ", canceled=" + canceled;
+            return "request=" + request + ", priority=" + priority + ", key=" + coalesceKey +
+                   ", repeat=" + repeat + ", canceled=" + canceled;
         }   //toString
 
     }   //class RequestEntry
 
+    private static final int NUM_LANES = Priority.values().length;
+
     private final TrcDbgTrace tracer;
     private final String instanceName;
-    private final LinkedBlockingQueue<RequestEntry> requestQueue;
+    private final ArrayList<ArrayDeque<RequestEntry>> requestLanes = new ArrayList<>(NUM_LANES);
+    private final ArrayList<HashMap<Object, RequestEntry>> pendingKeys = new ArrayList<>(NUM_LANES);
+    private final ArrayList<RequestEntry> activeEntries = new ArrayList<>();
     private volatile Thread requestThread = null;
     private boolean enabled = false;
-    private RequestEntry priorityRequest = null;
+    private SupersededHandler<R> supersededHandler = null;
+    private BatchHandler<R> batchHandler = null;
+    private int maxBatchSize = 1;
     private boolean perfTracingEnabled = false;
     private double totalNanoTime = 0.0;
     private int totalRequests = 0;
+    private int totalBatches = 0;
+    private int totalSuperseded = 0;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -91,7 +192,11 @@ public class TrcRequestQueue<R>
     {
         this.tracer = new TrcDbgTrace(instanceName);
         this.instanceName = instanceName;
-        requestQueue = new LinkedBlockingQueue<>();
+        for (int i = 0; i < NUM_LANES; i++)
+        {
+            requestLanes.add(new ArrayDeque<>());
+            pendingKeys.add(new HashMap<>());
+        }
     }   //TrcRequestQueue
 
     /**
@@ -163,49 +268,123 @@ public class TrcRequestQueue<R>
     }   //setPerformanceTracingEnabled
 
     /**
-     * This method queues a request at the end of the request queue to be processed asynchronously on a thread.
+     * This method sets the handler to be notified when a pending request is superseded by a coalesced request.
+     *
+     * @param handler specifies the superseded handler, null to remove.
+     */
+    public synchronized void setSupersededHandler(SupersededHandler<R> handler)
+    {
+        supersededHandler = handler;
+    }   //setSupersededHandler
+
+    /**
+     * This method sets the batch handler. When set, the request thread takes up to maxBatchSize pending requests off
+     * the queue at a time and passes them to the handler in one call instead of signaling each request's event.
+     *
+     * @param handler specifies the batch handler, null to go back to signaling each request.
+     * @param maxBatchSize specifies the maximum number of requests in a batch.
+     */
+    public synchronized void setBatchHandler(BatchHandler<R> handler, int maxBatchSize)
+    {
+        if (maxBatchSize < 1)
+        {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1.");
+        }
+
+        this.batchHandler = handler;
+        this.maxBatchSize = handler != null? maxBatchSize: 1;
+    }   //setBatchHandler
+
+    /**
+     * This method returns the number of requests waiting to be processed.
+     *
+     * @return number of pending requests.
+     */
+    public synchronized int getPendingRequestCount()
+    {
+        int count = 0;
+
+        for (ArrayDeque<RequestEntry> lane: requestLanes)
+        {
+            count += lane.size();
+        }
+
+        return count;
+    }   //getPendingRequestCount
+
+    /**
+     * This method returns the number of pending requests that have been superseded by coalesced requests.
+     *
+     * @return number of superseded requests.
+     */
+    public synchronized int getSupersededRequestCount()
+    {
+        return totalSuperseded;
+    }   //getSupersededRequestCount
+
+    /**
+     * This method queues a request at the end of the given priority lane to be processed asynchronously on a thread.
+     * If coalesceKey is not null and a request with an equal key is still pending in the same lane, the pending
+     * request is superseded: the new request takes its place in the queue and the same request entry is returned.
      *
      * @param request specifies the request to be queued.
      * @param event specifies the event to notify when the request is up for processing.
      * @param repeat specifies true to re-queue the request when completed.
-     * @return request entry added to the end of the queue. It can be used to cancel the request if it is still in
-     *         queue.
+     * @param priority specifies the priority lane.
+     * @param coalesceKey specifies the key identifying the target of the request, null to never coalesce.
+     * @return request entry of the request. It can be used to cancel the request if it is still in queue. Null if
+     *         the request queue is not enabled.
      */
-    public RequestEntry add(R request, TrcEvent event, boolean repeat)
+    public synchronized RequestEntry add(
+        R request, TrcEvent event, boolean repeat, Priority priority, Object coalesceKey)
     {
-        tracer.traceDebug(instanceName, "request=" + request + ",repeat=" + repeat);
+        tracer.traceDebug(
+            instanceName, "request=%s, repeat=%s, priority=%s, key=%s", request, repeat, priority, coalesceKey);
         RequestEntry entry = null;
-        if (isEnabled())
+        if (enabled)
         {
-            entry = new RequestEntry(request, event, repeat);
-            requestQueue.add(entry);
+            entry = coalesceKey != null? pendingKeys.get(priority.ordinal()).get(coalesceKey): null;
+            if (entry != null)
+            {
+                supersede(entry, request, event, repeat);
+            }
+            else
+            {
+                entry = new RequestEntry(request, event, repeat, priority, coalesceKey);
+                enqueue(entry);
+            }
         }
 
         return entry;
     }   //add
 
     /**
-     * This method adds the priority request to the head of the queue. It will be processed once the current active
-     * request is done processing. If there is already an existing priority request pending, this request will not
-     * be added to the queue and null is returned.
+     * This method queues a request at the end of the normal priority lane to be processed asynchronously on a
+     * thread.
      *
-     * @param request specifies the priority request.
+     * @param request specifies the request to be queued.
      * @param event specifies the event to notify when the request is up for processing.
-     * @return request entry added to the head of the queue. It can be used to cancel the request if it is still in
-     *         queue. It may return null if the priority request failed to be added to the queue.
+     * @param repeat specifies true to re-queue the request when completed.
+     * @return request entry added to the end of the queue. It can be used to cancel the request if it is still in
+     *         queue.
      */
-    public synchronized RequestEntry addPriorityRequest(R request, TrcEvent event)
+    public RequestEntry add(R request, TrcEvent event, boolean repeat)
     {
-        RequestEntry entry = null;
-
-        tracer.traceDebug(instanceName, "request=" + request);
-        if (priorityRequest == null)
-        {
-            entry = new RequestEntry(request, event, false);
-            priorityRequest = entry;
-        }
+        return add(request, event, repeat, Priority.NORMAL, null);
+    }   //add
 
-        return entry;
+    /**
+     * This method adds the request to the high priority lane. It will be processed once the current active request
+     * is done processing, ahead of all normal and low priority requests.
+     *
+     * @param request specifies the priority request.
+     * @param event specifies the event to notify when the request is up for processing.
+     * @return request entry added to the high priority lane. It can be used to cancel the request if it is still in
+     *         queue. Null if the request queue is not enabled.
+     */
+    public RequestEntry addPriorityRequest(R request, TrcEvent event)
+    {
+        return add(request, event, false, Priority.HIGH, null);
     }   //addPriorityRequest
 
     /**
@@ -219,24 +398,82 @@ public class TrcRequestQueue<R>
         boolean foundEntry;
 
         tracer.traceDebug(instanceName, "entry=" + entry);
-        if (entry == priorityRequest)
+        foundEntry = requestLanes.get(entry.priority.ordinal()).remove(entry);
+        if (foundEntry)
         {
-            priorityRequest = null;
-            foundEntry = true;
+            if (entry.coalesceKey != null)
+            {
+                pendingKeys.get(entry.priority.ordinal()).remove(entry.coalesceKey);
+            }
+            entry.canceled = true;
         }
-        else
+
+        return foundEntry;
+    }   //cancelRequest
+
+    /**
+     * This method adds the entry to the tail of its lane and wakes up the request thread. The caller must hold the
+     * lock of this object.
+     *
+     * @param entry specifies the request entry.
+     */
+    private void enqueue(RequestEntry entry)
+    {
+        requestLanes.get(entry.priority.ordinal()).add(entry);
+        if (entry.coalesceKey != null)
         {
-            foundEntry = requestQueue.contains(entry);
-            if (foundEntry) requestQueue.remove(entry);
+            pendingKeys.get(entry.priority.ordinal()).put(entry.coalesceKey, entry);
         }
+        notifyAll();
+    }   //enqueue
 
-        if (foundEntry)
+    /**
+     * This method replaces the request of a pending entry with a newer request. The caller must hold the lock of
+     * this object.
+     *
+     * @param entry specifies the pending request entry.
+     * @param request specifies the new request.
+     * @param event specifies the event to notify when the new request is up for processing.
+     * @param repeat specifies true to re-queue the new request when completed.
+     */
+    private void supersede(RequestEntry entry, R request, TrcEvent event, boolean repeat)
+    {
+        R supersededRequest = entry.request;
+
+        entry.request = request;
+        entry.notifyEvent = event;
+        entry.repeat = repeat;
+        totalSuperseded++;
+        tracer.traceDebug(instanceName, "Request %s superseded by %s.", supersededRequest, request);
+        if (supersededHandler != null)
         {
-            entry.canceled = true;
+            supersededHandler.requestSuperseded(supersededRequest, request);
         }
+    }   //supersede
 
-        return foundEntry;
-    }   //cancelRequest
+    /**
+     * This method takes up to maxBatchSize entries off the queue in priority order. The caller must hold the lock of
+     * this object.
+     *
+     * @param entries specifies the list to hold the entries taken off the queue.
+     */
+    private void dequeue(ArrayList<RequestEntry> entries)
+    {
+        for (int i = 0; i < NUM_LANES && entries.size() < maxBatchSize; i++)
+        {
+            ArrayDeque<RequestEntry> lane = requestLanes.get(i);
+            RequestEntry entry;
+
+            while (entries.size() < maxBatchSize && (entry = lane.poll()) != null)
+            {
+                if (entry.coalesceKey != null)
+                {
+                    pendingKeys.get(i).remove(entry.coalesceKey);
+                }
+                entries.add(entry);
+            }
+        }
+    }   //dequeue
 
     /**
      * This method is called when the request queue thread is started. It processes all entries in the request queue
@@ -246,58 +483,87 @@ public class TrcRequestQueue<R>
      */
     private void requestTask()
     {
-        RequestEntry entry;
-
         tracer.traceDebug(instanceName, "RequestQueue starting...");
         while (!Thread.currentThread().isInterrupted())
         {
-            synchronized (this)
+            BatchHandler<R> handler;
+
+            try
             {
-                if (priorityRequest != null)
+                synchronized (this)
                 {
-                    entry = priorityRequest;
-                    priorityRequest = null;
-                }
-                else
-                {
-                    entry = null;
+                    while (getPendingRequestCount() == 0)
+                    {
+                        wait();
+                    }
+                    handler = batchHandler;
+                    dequeue(activeEntries);
                 }
             }
+            catch (InterruptedException e)
+            {
+                tracer.traceDebug(instanceName, "Terminating RequestQueue.");
+                break;
+            }
 
-            try
+            tracer.traceDebug(
+                instanceName, "processing %d request(s), first=%s", activeEntries.size(), activeEntries.get(0));
+            long startNanoTime = TrcTimer.getNanoTime();
+            if (handler != null)
+            {
+                handler.processRequests(activeEntries);
+            }
+            else
             {
-                if (entry == null)
+                for (RequestEntry entry: activeEntries)
                 {
-                    entry = requestQueue.take();
+                    entry.notifyEvent.signal();
                 }
-                tracer.traceDebug(instanceName, "processing request " + entry);
+            }
+            long elapsedTime = TrcTimer.getNanoTime() - startNanoTime;
 
-                long startNanoTime = TrcTimer.getNanoTime();
-                entry.notifyEvent.signal();
-                long elapsedTime = TrcTimer.getNanoTime() - startNanoTime;
-        
+            synchronized (this)
+            {
                 totalNanoTime += elapsedTime;
-                totalRequests++;
-        
+                totalRequests += activeEntries.size();
+                totalBatches++;
+
                 if (perfTracingEnabled)
                 {
                     tracer.traceInfo(
                         instanceName,
-                        "Average request process time=%.6f sec", totalNanoTime/totalRequests/1000000000.0);
+                        "Average request process time=%.6f sec, avgBatchSize=%.1f, superseded=%d",
+                        totalNanoTime/totalRequests/1000000000.0, (double) totalRequests/totalBatches,
+                        totalSuperseded);
                 }
-        
-                if (entry.repeat)
+
+                for (RequestEntry entry: activeEntries)
                 {
-                    //
-                    // This is a repeat request, add it back to the tail of the queue.
-                    //
-                    requestQueue.add(entry);
+                    if (entry.repeat && enabled)
+                    {
+                        //
+                        // This is a repeat request, add it back to the tail of its lane unless a newer request for
+                        // the same target has been queued since.
+                        //
+                        RequestEntry pendingEntry =
+                            entry.coalesceKey != null?
+                                pendingKeys.get(entry.priority.ordinal()).get(entry.coalesceKey): null;
+
+                        if (pendingEntry != null)
+                        {
+                            totalSuperseded++;
+                            if (supersededHandler != null)
+                            {
+                                supersededHandler.requestSuperseded(entry.request, pendingEntry.request);
+                            }
+                        }
+                        else
+                        {
+                            enqueue(entry);
+                        }
+                    }
                 }
-            }
-            catch (InterruptedException e)
-            {
-                tracer.traceDebug(instanceName, "Terminating RequestQueue.");
-                break;
+                activeEntries.clear();
             }
         }
         //
@@ -306,12 +572,21 @@ public class TrcRequestQueue<R>
         //
         synchronized (this)
         {
-            while ((entry = requestQueue.poll()) != null)
+            for (ArrayDeque<RequestEntry> lane: requestLanes)
             {
-                tracer.traceDebug(instanceName, "Canceling request " + entry);
-                cancelRequest(entry);
+                RequestEntry entry;
+                while ((entry = lane.poll()) != null)
+                {
+                    tracer.traceDebug(instanceName, "Canceling request " + entry);
+                    entry.canceled = true;
+                }
             }
 
+            for (HashMap<Object, RequestEntry> keys: pendingKeys)
+            {
+                keys.clear();
+            }
+            activeEntries.clear();
             requestThread = null;
         }
         tracer.traceDebug(instanceName, "RequestQueue is terminated.");
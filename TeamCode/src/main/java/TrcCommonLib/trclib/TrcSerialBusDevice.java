@@ -9,6 +9,12 @@ import java.util.Arrays;
  * to access the device. Optionally, it creates a request queue to allow both synchronous and asynchronous requests
  * to be queued for processing. The request queue is processed by a separate thread for asynchronous access. If
  * no request queue is specified, only synchronous requests are allowed.
+ * <p>
+ * If request coalescing is enabled, a pending asynchronous request is superseded by a newer asynchronous request of
+ * the same kind to the same address and length. The superseded request completes as canceled. This keeps devices
+ * that are polled or written faster than the bus can keep up from building up unbounded latency. Only enable it for
+ * register based devices where the latest write wins, not for devices that take a stream of commands.
+ * </p>
  */
 public abstract class TrcSerialBusDevice
 {
@@ -90,6 +96,7 @@ public abstract class TrcSerialBusDevice
     private final String instanceName;
     private final TrcRequestQueue<Request> requestQueue;
     private final TrcEvent processRequestEvent;
+    private volatile boolean coalescingEnabled = false;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -102,6 +109,10 @@ public abstract class TrcSerialBusDevice
         this.instanceName = instanceName;
         requestQueue = useRequestQueue ? new TrcRequestQueue<>(instanceName) : null;
         processRequestEvent = new TrcEvent(instanceName + ".processRequestEvent");
+        if (requestQueue != null)
+        {
+            requestQueue.setSupersededHandler(this::requestSuperseded);
+        }
     }   //TrcSerialBusDevice
 
     /**
@@ -138,6 +149,31 @@ public abstract class TrcSerialBusDevice
         return requestQueue == null || requestQueue.isEnabled();
     }   //isEnabled
 
+    /**
+     * This method enables/disables coalescing of asynchronous requests to the same address and length. It has no
+     * effect if the device has no request queue.
+     *
+     * @param enabled specifies true to enable request coalescing, false to disable.
+     */
+    public void setRequestCoalescingEnabled(boolean enabled)
+    {
+        coalescingEnabled = enabled;
+    }   //setRequestCoalescingEnabled
+
+    /**
+     * This method returns the coalesce key of an asynchronous request if coalescing is enabled.
+     *
+     * @param readRequest specifies true for a read request, false for a write request.
+     * @param address specifies the data address.
+     * @param length specifies the number of bytes to read or write.
+     * @return coalesce key, null if coalescing is disabled.
+     */
+    private Object getCoalesceKey(boolean readRequest, int address, int length)
+    {
+        return coalescingEnabled?
+            Long.valueOf(((long) address << 32) | ((long) (length & 0x7fffffff) << 1) | (readRequest? 1: 0)): null;
+    }   //getCoalesceKey
+
     /**
      * This method is doing a synchronous read from the device with the specified length to read.
      *
@@ -276,7 +312,9 @@ public abstract class TrcSerialBusDevice
         if (requestQueue != null)
         {
             Request request = new Request(requestId, true, address, null, length, completionEvent);
-            TrcRequestQueue<Request>.RequestEntry entry = requestQueue.add(request, processRequestEvent, repeat);
+            TrcRequestQueue<Request>.RequestEntry entry = requestQueue.add(
+                request, processRequestEvent, repeat, TrcRequestQueue.Priority.NORMAL,
+                getCoalesceKey(true, address, length));
             processRequestEvent.setCallback(this::requestHandler, entry);
         }
         else
@@ -373,7 +411,9 @@ public abstract class TrcSerialBusDevice
         if (requestQueue != null)
         {
             Request request = new Request(requestId, false, address, data, length, completionEvent);
-            TrcRequestQueue<Request>.RequestEntry entry = requestQueue.add(request, processRequestEvent, false);
+            TrcRequestQueue<Request>.RequestEntry entry = requestQueue.add(
+                request, processRequestEvent, false, TrcRequestQueue.Priority.NORMAL,
+                getCoalesceKey(false, address, length));
             processRequestEvent.setCallback(this::requestHandler, entry);
         }
         else
@@ -497,6 +537,23 @@ public abstract class TrcSerialBusDevice
         }
     }   //sendWordCommand
 
+    /**
+     * This method is called by the request queue when a pending request is superseded by a coalesced request. The
+     * superseded request completes as canceled.
+     *
+     * @param supersededRequest specifies the request that will not be processed.
+     * @param newRequest specifies the request that replaces it.
+     */
+    private void requestSuperseded(Request supersededRequest, Request newRequest)
+    {
+        supersededRequest.canceled = true;
+        if (supersededRequest.completionEvent != null)
+        {
+            supersededRequest.completionEvent.setCallbackContext(supersededRequest);
+            supersededRequest.completionEvent.signal();
+        }
+    }   //requestSuperseded
+
     /**
      * This method processes a request.
      *
@@ -34,6 +34,8 @@ public class TrcSimpleDriveBase extends TrcDriveBase
     protected final TrcMotor rbMotor;
     protected final TrcMotor lcMotor;
     protected final TrcMotor rcMotor;
+    // Odometry delta returned by getOdometryDelta, reused every odometry cycle.
+    private final Odometry odometryDelta = new Odometry();
 
     /**
      * Constructor: Create an instance of a 6-wheel drive base.
@@ -197,9 +199,12 @@ public class TrcSimpleDriveBase extends TrcDriveBase
     public void tankDrive(
         String owner, double leftPower, double rightPower, boolean inverted, double driveTime, TrcEvent event)
     {
-        tracer.traceDebug(
-            moduleName, "owner=%s,leftPower=%f,rightPower=%f,inverted=%s,driveTime=%.1f,event=%s",
-            owner, leftPower, rightPower, inverted, driveTime, event);
+        if (tracer.isTraceEnabled(TrcDbgTrace.MsgLevel.DEBUG))
+        {
+            tracer.traceDebug(
+                moduleName, "owner=%s,leftPower=%f,rightPower=%f,inverted=%s,driveTime=%.1f,event=%s",
+                owner, leftPower, rightPower, inverted, driveTime, event);
+        }
         if (validateOwnership(owner))
         {
             leftPower = TrcUtil.clipRange(leftPower);
@@ -309,13 +314,14 @@ public class TrcSimpleDriveBase extends TrcDriveBase
      *
      * @param prevOdometries specifies the previous motor odometries.
      * @param currOdometries specifies the current motor odometries.
-     * @return an Odometry object describing the odometry changes since the last update.
+     * @return an Odometry object describing the odometry changes since the last update, it is reused by the next
+     *         call.
      */
     @Override
     protected Odometry getOdometryDelta(
         TrcOdometrySensor.Odometry[] prevOdometries, TrcOdometrySensor.Odometry[] currOdometries)
     {
-        Odometry delta = new Odometry();
+        Odometry delta = odometryDelta;
 
         //
         // Calculate heading and turn rate using positional info in case we don't have a gyro.
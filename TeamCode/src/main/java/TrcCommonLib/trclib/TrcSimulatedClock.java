@@ -0,0 +1,299 @@
+
+package TrcCommonLib.trclib;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * This class implements a simulated clock that only advances deterministically, either when it is told to or, in
+ * auto-advance mode, when every participating thread is waiting on the clock. In auto-advance mode, the clock jumps
+ * straight to the earliest wake up time of the waiting threads, so periodic threads and timers run as fast as the
+ * CPU allows while still seeing consistent timestamps. This makes it possible to run an entire robot program many
+ * times faster than real time for tuning or testing.
+ * <p>
+ * A thread becomes a participant the first time it waits on the clock and stops being one when it dies. A thread
+ * that later blocks on something other than the clock must be unregistered, otherwise the clock will not advance in
+ * auto-advance mode until that thread waits on the clock again.
+ * </p>
+ * To use it, install the clock with TrcTimer.setClock before any periodic thread or timer is started.
+ */
+public class TrcSimulatedClock implements TrcClock
+{
+    private static final long START_NANO_TIME = 1000000000L;
+
+    private final long startEpochMillis;
+    private final HashSet<Thread> participants = new HashSet<>();
+    private final HashMap<Thread, Long> waitingThreads = new HashMap<>();
+    private final HashSet<Thread> unparkPermits = new HashSet<>();
+    private volatile long currNanoTime = START_NANO_TIME;
+    private boolean autoAdvance;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param startEpochMillis specifies the epoch time in msec the simulated clock starts at.
+     * @param autoAdvance specifies true to advance the clock whenever all participating threads are waiting.
+     */
+    public TrcSimulatedClock(long startEpochMillis, boolean autoAdvance)
+    {
+        this.startEpochMillis = startEpochMillis;
+        this.autoAdvance = autoAdvance;
+    }   //TrcSimulatedClock
+
+    /**
+     * Constructor: Creates an instance of the object starting at the current epoch time.
+     *
+     * @param autoAdvance specifies true to advance the clock whenever all participating threads are waiting.
+     */
+    public TrcSimulatedClock(boolean autoAdvance)
+    {
+        this(System.currentTimeMillis(), autoAdvance);
+    }   //TrcSimulatedClock
+
+    /**
+     * This method returns the simulated clock state in string form.
+     *
+     * @return simulated clock state in string form.
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return String.format(
+            Locale.US, "(time=%.6f,participants=%d,waiting=%d,autoAdvance=%s)",
+            (currNanoTime - START_NANO_TIME)/1000000000.0, participants.size(), waitingThreads.size(), autoAdvance);
+    }   //toString
+
+    /**
+     * This method enables/disables auto-advance mode.
+     *
+     * @param enabled specifies true to enable auto-advance, false to only advance time explicitly.
+     */
+    public synchronized void setAutoAdvance(boolean enabled)
+    {
+        autoAdvance = enabled;
+        notifyAll();
+    }   //setAutoAdvance
+
+    /**
+     * This method registers a thread as a participant so the clock will not auto-advance while it is running.
+     *
+     * @param thread specifies the thread to register.
+     */
+    public synchronized void registerThread(Thread thread)
+    {
+        participants.add(thread);
+    }   //registerThread
+
+    /**
+     * This method unregisters a participating thread, for example because it is about to block on something other
+     * than the clock.
+     *
+     * @param thread specifies the thread to unregister.
+     */
+    public synchronized void unregisterThread(Thread thread)
+    {
+        participants.remove(thread);
+        notifyAll();
+    }   //unregisterThread
+
+    /**
+     * This method advances the simulated time by the given amount and wakes up the threads whose wait time has
+     * expired.
+     *
+     * @param nanoTime specifies the time to advance in nano seconds.
+     */
+    public synchronized void advance(long nanoTime)
+    {
+        if (nanoTime < 0)
+        {
+            throw new IllegalArgumentException("Time cannot go backward.");
+        }
+
+        currNanoTime += nanoTime;
+        notifyAll();
+    }   //advance
+
+    /**
+     * This method advances the simulated time by the given amount and waits until all participating threads have
+     * finished their work and are waiting on the clock again. It is typically called by a simulation driver that
+     * is not itself a participant.
+     *
+     * @param nanoTime specifies the time to advance in nano seconds.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public synchronized void step(long nanoTime) throws InterruptedException
+    {
+        advance(nanoTime);
+        while (!isIdle())
+        {
+            wait();
+        }
+    }   //step
+
+    /**
+     * This method returns the simulated time elapsed since the clock was created.
+     *
+     * @return elapsed simulated time in seconds.
+     */
+    public double getElapsedTime()
+    {
+        return (currNanoTime - START_NANO_TIME)/1000000000.0;
+    }   //getElapsedTime
+
+    //
+    // Implements TrcClock interface.
+    //
+
+    @Override
+    public long nanoTime()
+    {
+        return currNanoTime;
+    }   //nanoTime
+
+    @Override
+    public long currentTimeMillis()
+    {
+        return startEpochMillis + (currNanoTime - START_NANO_TIME)/1000000;
+    }   //currentTimeMillis
+
+    @Override
+    public void sleep(long nanoTime) throws InterruptedException
+    {
+        waitUntil(currNanoTime + nanoTime, false);
+    }   //sleep
+
+    @Override
+    public void parkNanos(Object blocker, long nanoTime)
+    {
+        try
+        {
+            waitUntil(currNanoTime + nanoTime, true);
+        }
+        catch (InterruptedException e)
+        {
+            // Like LockSupport.parkNanos, return with the interrupt status set.
+            Thread.currentThread().interrupt();
+        }
+    }   //parkNanos
+
+    @Override
+    public void park(Object blocker)
+    {
+        try
+        {
+            waitUntil(Long.MAX_VALUE, true);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }   //park
+
+    @Override
+    public synchronized void unpark(Thread thread)
+    {
+        unparkPermits.add(thread);
+        notifyAll();
+    }   //unpark
+
+    @Override
+    public boolean isRealTime()
+    {
+        return false;
+    }   //isRealTime
+
+    /**
+     * This method blocks the current thread until the simulated time reaches the given deadline. In auto-advance
+     * mode, the last participating thread to start waiting advances the clock to the earliest deadline.
+     *
+     * @param deadlineNanoTime specifies the deadline in nano seconds, Long.MAX_VALUE to wait indefinitely.
+     * @param park specifies true if the wait ends early when the thread is unparked.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    private synchronized void waitUntil(long deadlineNanoTime, boolean park) throws InterruptedException
+    {
+        Thread thread = Thread.currentThread();
+
+        participants.add(thread);
+        if (park && unparkPermits.remove(thread))
+        {
+            return;
+        }
+
+        waitingThreads.put(thread, deadlineNanoTime);
+        // Let anybody waiting for the participants to become idle re-evaluate.
+        notifyAll();
+        try
+        {
+            while (currNanoTime < deadlineNanoTime && !(park && unparkPermits.remove(thread)))
+            {
+                if (autoAdvance && isIdle())
+                {
+                    long nextNanoTime = getEarliestDeadline();
+
+                    if (nextNanoTime != Long.MAX_VALUE)
+                    {
+                        currNanoTime = nextNanoTime;
+                        notifyAll();
+                        continue;
+                    }
+                }
+                wait();
+            }
+        }
+        finally
+        {
+            waitingThreads.remove(thread);
+        }
+    }   //waitUntil
+
+    /**
+     * This method checks if all participating threads are waiting on the clock with a deadline in the future. Dead
+     * threads are removed from the participants. The caller must hold the lock.
+     *
+     * @return true if all participants are idle, false otherwise.
+     */
+    private boolean isIdle()
+    {
+        for (Iterator<Thread> iter = participants.iterator(); iter.hasNext();)
+        {
+            Thread thread = iter.next();
+
+            if (!thread.isAlive())
+            {
+                iter.remove();
+            }
+            else
+            {
+                Long deadline = waitingThreads.get(thread);
+
+                if (deadline == null || deadline <= currNanoTime || unparkPermits.contains(thread))
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }   //isIdle
+
+    /**
+     * This method returns the earliest deadline of all waiting threads. The caller must hold the lock.
+     *
+     * @return earliest deadline in nano seconds, Long.MAX_VALUE if all threads are waiting indefinitely.
+     */
+    private long getEarliestDeadline()
+    {
+        long earliest = Long.MAX_VALUE;
+
+        for (long deadline: waitingThreads.values())
+        {
+            earliest = Math.min(earliest, deadline);
+        }
+
+        return earliest;
+    }   //getEarliestDeadline
+
+}   //class TrcSimulatedClock
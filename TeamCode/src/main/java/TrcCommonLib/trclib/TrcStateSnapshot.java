@@ -0,0 +1,338 @@
+
+package TrcCommonLib.trclib;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class implements a snapshot pipeline for passing robot state between the IO threads and the main robot
+ * thread without locking.
+ * <p>
+ * Input producers (e.g. odometry tasks) publish immutable state objects to their Channel with a single volatile
+ * reference swap. At the start of every robot loop, TrcTaskMgr latches a Frame containing the latest published value
+ * of every channel. For the rest of the loop, reads on the robot thread return the value from the latched frame so
+ * every consumer in that loop sees the same, consistent robot state, while reads on any other thread return the
+ * latest published value. Published objects must never be modified after they are published.
+ * </p>
+ * Outputs can be staged back the other way with an OutputChannel: the robot thread stages the latest command with an
+ * atomic swap and the OUTPUT_TASK takes it, so only the most recent command is ever applied.
+ */
+public class TrcStateSnapshot
+{
+    /**
+     * This class is an immutable, timestamped frame of the values of all channels latched at the start of a robot
+     * loop.
+     */
+    public static class Frame
+    {
+        private final int generation;
+        private final long sequence;
+        private final long nanoTime;
+        private final Thread thread;
+        private final Object[] values;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param generation specifies the channel generation the frame was latched for.
+         * @param sequence specifies the frame sequence number.
+         * @param nanoTime specifies the time the frame was latched.
+         * @param thread specifies the thread that latched the frame.
+         * @param values specifies the channel values indexed by channel slot.
+         */
+        private Frame(int generation, long sequence, long nanoTime, Thread thread, Object[] values)
+        {
+            this.generation = generation;
+            this.sequence = sequence;
+            this.nanoTime = nanoTime;
+            this.thread = thread;
+            this.values = values;
+        }   //Frame
+
+        /**
+         * This method returns the frame sequence number. It increments for every latched frame.
+         *
+         * @return frame sequence number.
+         */
+        public long getSequence()
+        {
+            return sequence;
+        }   //getSequence
+
+        /**
+         * This method returns the time the frame was latched.
+         *
+         * @return frame timestamp in seconds (same time base as TrcTimer.getNanoTime).
+         */
+        public double getTimestamp()
+        {
+            return nanoTime/1000000000.0;
+        }   //getTimestamp
+
+        /**
+         * This method returns the string representation of the frame.
+         *
+         * @return string representation of the frame.
+         */
+        @Override
+        public String toString()
+        {
+            return "(seq=" + sequence + ",time=" + getTimestamp() + ",values=" + Arrays.toString(values) + ")";
+        }   //toString
+
+    }   //class Frame
+
+    /**
+     * This class implements an input channel that carries the state published by one producer.
+     *
+     * @param <T> specifies the type of the published state, which must be treated as immutable once published.
+     */
+    public static class Channel<T>
+    {
+        private final String name;
+        private final int generation;
+        private final int slot;
+        private volatile T latest = null;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param name specifies the channel name.
+         * @param generation specifies the channel generation.
+         * @param slot specifies the slot of the channel in the frames.
+         */
+        private Channel(String name, int generation, int slot)
+        {
+            this.name = name;
+            this.generation = generation;
+            this.slot = slot;
+        }   //Channel
+
+        /**
+         * This method returns the channel name.
+         *
+         * @return channel name.
+         */
+        @Override
+        public String toString()
+        {
+            return name;
+        }   //toString
+
+        /**
+         * This method is called by the producer to publish a new state. The state object must not be modified
+         * afterwards.
+         *
+         * @param state specifies the new state.
+         */
+        public void publish(T state)
+        {
+            latest = state;
+        }   //publish
+
+        /**
+         * This method publishes a new state and also replaces it in the frame of the current robot loop. It is used
+         * when the state is changed out of band (e.g. an odometry reset) and the change must be visible immediately
+         * even on the robot thread. It is more expensive than publish and should not be used for periodic updates.
+         *
+         * @param state specifies the new state.
+         */
+        public void override(T state)
+        {
+            latest = state;
+            replaceInCurrentFrame(this, state);
+        }   //override
+
+        /**
+         * This method returns the latest published state regardless of the calling thread.
+         *
+         * @return latest published state, null if nothing was published.
+         */
+        public T getLatest()
+        {
+            return latest;
+        }   //getLatest
+
+        /**
+         * This method returns the state as seen by the calling thread. On the thread that latched the current frame
+         * (i.e. the robot thread), it is the state in that frame so all reads within a loop are consistent. On any
+         * other thread, it is the latest published state.
+         *
+         * @return state seen by the calling thread, null if nothing was published.
+         */
+        @SuppressWarnings("unchecked")
+        public T get()
+        {
+            Frame frame = currentFrame;
+            T state = null;
+
+            if (frame != null && frame.thread == Thread.currentThread() && frame.generation == generation &&
+                slot < frame.values.length)
+            {
+                state = (T) frame.values[slot];
+            }
+
+            return state != null? state: latest;
+        }   //get
+
+    }   //class Channel
+
+    /**
+     * This class implements an output channel that stages commands from the robot thread to an OUTPUT_TASK.
+     *
+     * @param <T> specifies the type of the staged command, which must be treated as immutable once staged.
+     */
+    public static class OutputChannel<T>
+    {
+        private final String name;
+        private final AtomicReference<T> staged = new AtomicReference<>();
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param name specifies the channel name.
+         */
+        public OutputChannel(String name)
+        {
+            this.name = name;
+        }   //OutputChannel
+
+        /**
+         * This method returns the channel name.
+         *
+         * @return channel name.
+         */
+        @Override
+        public String toString()
+        {
+            return name;
+        }   //toString
+
+        /**
+         * This method stages a new command, replacing any command that has not been taken yet.
+         *
+         * @param command specifies the command.
+         * @return the replaced command that was never taken, null if none.
+         */
+        public T stage(T command)
+        {
+            return staged.getAndSet(command);
+        }   //stage
+
+        /**
+         * This method takes the staged command. It is called by the output stage.
+         *
+         * @return staged command, null if no new command has been staged since the last take.
+         */
+        public T take()
+        {
+            return staged.getAndSet(null);
+        }   //take
+
+        /**
+         * This method returns the staged command without taking it.
+         *
+         * @return staged command, null if none.
+         */
+        public T peek()
+        {
+            return staged.get();
+        }   //peek
+
+    }   //class OutputChannel
+
+    private static final List<Channel<?>> channels = new CopyOnWriteArrayList<>();
+    private static final Object frameLock = new Object();
+    private static volatile Frame currentFrame = null;
+    private static int channelGeneration = 0;
+    private static long frameSequence = 0;
+
+    /**
+     * This method creates a new input channel.
+     *
+     * @param <T> specifies the type of the published state.
+     * @param name specifies the channel name.
+     * @return newly created channel.
+     */
+    public static <T> Channel<T> createChannel(String name)
+    {
+        synchronized (frameLock)
+        {
+            Channel<T> channel = new Channel<>(name, channelGeneration, channels.size());
+            channels.add(channel);
+            return channel;
+        }
+    }   //createChannel
+
+    /**
+     * This method latches a new frame with the latest published value of every channel. It is called by TrcTaskMgr
+     * on the robot thread at the start of every robot loop.
+     *
+     * @return the newly latched frame.
+     */
+    public static Frame latchFrame()
+    {
+        synchronized (frameLock)
+        {
+            Object[] values = new Object[channels.size()];
+
+            for (Channel<?> channel: channels)
+            {
+                values[channel.slot] = channel.latest;
+            }
+
+            Frame frame = new Frame(
+                channelGeneration, ++frameSequence, TrcTimer.getNanoTime(), Thread.currentThread(), values);
+            currentFrame = frame;
+            return frame;
+        }
+    }   //latchFrame
+
+    /**
+     * This method returns the frame latched at the start of the current robot loop.
+     *
+     * @return current frame, null if no frame has been latched yet.
+     */
+    public static Frame getCurrentFrame()
+    {
+        return currentFrame;
+    }   //getCurrentFrame
+
+    /**
+     * This method discards the current frame and all channels. It is called by TrcTaskMgr when the robot program
+     * shuts down. Channels created before the reset keep working but only return their latest published values.
+     */
+    public static void reset()
+    {
+        synchronized (frameLock)
+        {
+            currentFrame = null;
+            channels.clear();
+            channelGeneration++;
+        }
+    }   //reset
+
+    /**
+     * This method replaces the value of a channel in the current frame by publishing a copy of the frame.
+     *
+     * @param channel specifies the channel.
+     * @param state specifies the new state.
+     */
+    private static void replaceInCurrentFrame(Channel<?> channel, Object state)
+    {
+        synchronized (frameLock)
+        {
+            Frame frame = currentFrame;
+
+            if (frame != null && frame.generation == channel.generation && channel.slot < frame.values.length)
+            {
+                Object[] values = frame.values.clone();
+                values[channel.slot] = state;
+                currentFrame = new Frame(frame.generation, frame.sequence, frame.nanoTime, frame.thread, values);
+            }
+        }
+    }   //replaceInCurrentFrame
+
+}   //class TrcStateSnapshot
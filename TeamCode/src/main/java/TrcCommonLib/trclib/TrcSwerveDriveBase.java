@@ -289,9 +289,12 @@ public class TrcSwerveDriveBase extends TrcSimpleDriveBase
         String owner, double x, double y, double rotation, boolean inverted, double gyroAngle, double driveTime,
         TrcEvent event)
     {
-        tracer.traceDebug(
-            moduleName, "owner=%s, x=%f, y=%f, rot=%f, inverted=%s, angle=%f, driveTime=%f, event=%s",
-            owner, x, y, rotation, inverted, gyroAngle, driveTime, event);
+        if (tracer.isTraceEnabled(TrcDbgTrace.MsgLevel.DEBUG))
+        {
+            tracer.traceDebug(
+                moduleName, "owner=%s, x=%f, y=%f, rot=%f, inverted=%s, angle=%f, driveTime=%f, event=%s",
+                owner, x, y, rotation, inverted, gyroAngle, driveTime, event);
+        }
         if (validateOwnership(owner))
         {
             if (x == 0.0 && y == 0.0 && rotation == 0.0)
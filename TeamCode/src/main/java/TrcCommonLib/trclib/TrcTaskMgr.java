@@ -1,14 +1,21 @@
 
 package TrcCommonLib.trclib;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class provides methods for the callers to register/unregister cooperative multi-tasking tasks. It manages
  * these tasks and will work with the cooperative multi-tasking scheduler to run these tasks.
+ * <p>
+ * Tasks may declare dependencies on other tasks (e.g. drive base odometry must run after the gyro task). Tasks of
+ * the same task type are always executed in an order that honors the dependencies, otherwise they run in
+ * registration order.
+ * </p>
  */
 public class TrcTaskMgr
 {
@@ -72,6 +79,44 @@ public class TrcTaskMgr
 
     }   //enum TaskType
 
+    /**
+     * These are the criticality classes of a task. When the robot loop is over its time budget, NON_CRITICAL
+     * PRE_PERIODIC_TASKs and POST_PERIODIC_TASKs are demoted to run only on slow periodic loops until the loop
+     * recovers. CRITICAL tasks always run on every loop.
+     */
+    public enum Criticality
+    {
+        CRITICAL,
+        NON_CRITICAL
+    }   //enum Criticality
+
+    /**
+     * This interface can be registered with TrcTaskMgr to be notified of task overruns and load shedding changes.
+     * The methods are called on the thread that detected the condition, so they must return quickly.
+     */
+    public interface OverrunListener
+    {
+        /**
+         * This method is called when a task runs longer than its time budget.
+         *
+         * @param taskObj specifies the task that overran.
+         * @param taskType specifies the task type that was running.
+         * @param elapsedTime specifies the task elapsed time in seconds.
+         * @param timeBudget specifies the task time budget in seconds.
+         */
+        void taskOverrun(TaskObject taskObj, TaskType taskType, double elapsedTime, double timeBudget);
+
+        /**
+         * This method is called when load shedding is turned on because the robot loop is over budget, or turned
+         * off because the loop has recovered.
+         *
+         * @param shedding specifies true if non-critical tasks are being demoted, false if they are restored.
+         * @param loopTime specifies the robot loop time in seconds that triggered the change.
+         */
+        void loadSheddingChanged(boolean shedding, double loopTime);
+
+    }   //interface OverrunListener
+
     /**
      * Any class that is registering a task must implement this interface.
      */
@@ -158,14 +203,21 @@ public class TrcTaskMgr
         private final Task task;
         private final HashSet<TaskType> taskTypes;
         private final long[] taskStartTimes = new long[TaskType.values().length];
-        private final long[] taskTotalIntervals = new long[TaskType.values().length];
-        private final long[] taskTotalElapsedTimes = new long[TaskType.values().length];
-        private final int[] taskTimeSlotCounts = new int[TaskType.values().length];
+        private final TrcMetrics.Histogram[] taskElapsedTimes = new TrcMetrics.Histogram[TaskType.values().length];
+        private final TrcMetrics.Histogram[] taskIntervals = new TrcMetrics.Histogram[TaskType.values().length];
+        private final TrcMetrics.Counter[] taskOverrunCounts = new TrcMetrics.Counter[TaskType.values().length];
+        private volatile long timeBudgetNanos = 0;
+        // Budget in effect, recomputed when the budget or the STANDALONE_TASK interval changes so that checking it
+        // on every task run does not take the task object lock.
+        private volatile long effectiveTimeBudgetNanos = TASKTIME_THRESHOLD_MS*1000000L;
+        private volatile Criticality criticality = Criticality.CRITICAL;
+        private final List<TaskObject> predecessors = new CopyOnWriteArrayList<>();
         private TrcPeriodicThread<Object> taskThread = null;
 
         /**
          * Constructor: Creates an instance of the task object with the given name
-         * and the given task type.
+         * and the given task type. The task performance metrics are registered in TrcMetrics as
+         * "TrcTaskMgr.taskName.taskType.elapsed", ".interval" and ".overruns".
          *
          * @param taskName specifies the instance name of the task.
          * @param task specifies the object that implements the TrcTaskMgr.Task interface.
@@ -175,12 +227,18 @@ public class TrcTaskMgr
             this.taskName = taskName;
             this.task = task;
             taskTypes = new HashSet<>();
-            for (int i = 0; i < TaskType.values().length; i++)
+            for (TaskType taskType: TaskType.values())
             {
-                taskStartTimes[i] = 0;
-                taskTotalIntervals[i] = 0;
-                taskTotalElapsedTimes[i] = 0;
-                taskTimeSlotCounts[i] = 0;
+                String prefix = moduleName + "." + taskName + "." + taskType;
+
+                taskStartTimes[taskType.value] = 0;
+                taskElapsedTimes[taskType.value] = TrcMetrics.getHistogram(prefix + ".elapsed");
+                taskIntervals[taskType.value] = TrcMetrics.getHistogram(prefix + ".interval");
+                taskOverrunCounts[taskType.value] = TrcMetrics.getCounter(prefix + ".overruns");
+                // Metrics are looked up by name, discard what a previous task with the same name has recorded.
+                taskElapsedTimes[taskType.value].reset();
+                taskIntervals[taskType.value].reset();
+                taskOverrunCounts[taskType.value].reset();
             }
         }   //TaskObject
 
@@ -216,10 +274,12 @@ public class TrcTaskMgr
 
             if (added)
             {
+                invalidateExecutionPlans();
                 if (type == TaskType.STANDALONE_TASK)
                 {
                     taskThread = new TrcPeriodicThread<>(taskName, this::standaloneTask, null, taskPriority);
                     taskThread.setProcessingInterval(taskInterval);
+                    updateTimeBudget();
                     taskThread.setTaskEnabled(true);
                 }
                 else if (type == TaskType.INPUT_TASK || type == TaskType.OUTPUT_TASK)
@@ -232,6 +292,8 @@ public class TrcTaskMgr
                         ioThread = new TrcPeriodicThread<>(
                             moduleName + ".ioThread", TrcTaskMgr::ioTask, null, Thread.MAX_PRIORITY);
                         ioThread.setProcessingInterval(IO_INTERVAL_MS);
+                        // Velocity estimation depends on a stable IO period, so schedule it on fixed deadlines.
+                        ioThread.setFixedRate(true);
                         ioThread.setTaskEnabled(true);
                     }
                 }
@@ -277,8 +339,15 @@ public class TrcTaskMgr
                 taskThread.terminateTask();
             }
             taskThread = null;
+            updateTimeBudget();
 
-            return taskTypes.remove(type);
+            boolean removed = taskTypes.remove(type);
+            if (removed)
+            {
+                invalidateExecutionPlans();
+            }
+
+            return removed;
         }   //unregisterTask
 
         /**
@@ -353,6 +422,142 @@ public class TrcTaskMgr
             return task;
         }   //getTask
 
+        /**
+         * This method sets the time budget and criticality of the task. If a run of the task takes longer than the
+         * budget, registered overrun listeners are notified. NON_CRITICAL tasks may be demoted to run only on slow
+         * periodic loops while the robot loop is over budget.
+         *
+         * @param timeBudget specifies the time budget in seconds, 0 to use the default (the STANDALONE_TASK
+         *        interval if any, TASKTIME_THRESHOLD_MS otherwise).
+         * @param criticality specifies the criticality class of the task.
+         * @return this task object so calls can be chained.
+         */
+        public TaskObject setTimeBudget(double timeBudget, Criticality criticality)
+        {
+            if (timeBudget < 0.0)
+            {
+                throw new IllegalArgumentException("timeBudget must be greater than or equal to 0.");
+            }
+
+            this.timeBudgetNanos = (long) (timeBudget*1000000000L);
+            this.criticality = criticality;
+            updateTimeBudget();
+
+            return this;
+        }   //setTimeBudget
+
+        /**
+         * This method returns the time budget of the task.
+         *
+         * @return time budget in seconds.
+         */
+        public double getTimeBudget()
+        {
+            return effectiveTimeBudgetNanos/1000000000.0;
+        }   //getTimeBudget
+
+        /**
+         * This method recomputes the budget in effect from the time budget and the STANDALONE_TASK interval.
+         */
+        private synchronized void updateTimeBudget()
+        {
+            long budget = timeBudgetNanos;
+
+            if (budget == 0)
+            {
+                budget = (taskThread != null? taskThread.getProcessingInterval(): 0)*1000000;
+                if (budget == 0) budget = TASKTIME_THRESHOLD_MS*1000000L;
+            }
+            effectiveTimeBudgetNanos = budget;
+        }   //updateTimeBudget
+
+        /**
+         * This method returns the criticality class of the task.
+         *
+         * @return task criticality.
+         */
+        public Criticality getCriticality()
+        {
+            return criticality;
+        }   //getCriticality
+
+        /**
+         * This method returns the number of times the task has overrun its time budget.
+         *
+         * @param taskType specifies the task type.
+         * @return number of overruns.
+         */
+        public int getOverrunCount(TaskType taskType)
+        {
+            return (int) taskOverrunCounts[taskType.value].get();
+        }   //getOverrunCount
+
+        /**
+         * This method declares that this task must run after the given tasks whenever they are registered for the
+         * same task type. Dependencies do not apply across task types or to STANDALONE_TASK.
+         *
+         * @param tasks specifies the tasks that must finish before this task runs.
+         * @return this task object so calls can be chained.
+         */
+        public TaskObject runsAfter(TaskObject... tasks)
+        {
+            for (TaskObject task: tasks)
+            {
+                if (task == this)
+                {
+                    throw new IllegalArgumentException("Task " + taskName + " cannot depend on itself.");
+                }
+
+                if (task != null && !predecessors.contains(task))
+                {
+                    predecessors.add(task);
+                    numDependencies.incrementAndGet();
+                }
+            }
+            invalidateExecutionPlans();
+
+            return this;
+        }   //runsAfter
+
+        /**
+         * This method declares that this task must run before the given tasks whenever they are registered for the
+         * same task type.
+         *
+         * @param tasks specifies the tasks that must run after this task.
+         * @return this task object so calls can be chained.
+         */
+        public TaskObject runsBefore(TaskObject... tasks)
+        {
+            for (TaskObject task: tasks)
+            {
+                if (task != null)
+                {
+                    task.runsAfter(this);
+                }
+            }
+
+            return this;
+        }   //runsBefore
+
+        /**
+         * This method removes a dependency previously declared with runsAfter.
+         *
+         * @param task specifies the task this task no longer depends on.
+         * @return true if the dependency was removed, false if it did not exist.
+         */
+        public boolean removeDependency(TaskObject task)
+        {
+            boolean removed = predecessors.remove(task);
+
+            if (removed)
+            {
+                numDependencies.decrementAndGet();
+                invalidateExecutionPlans();
+            }
+
+            return removed;
+        }   //removeDependency
+
         /**
          * This method returns the task interval for TaskType.STANDALONE_TASK.
          *
@@ -374,6 +579,7 @@ public class TrcTaskMgr
             if (taskThread != null)
             {
                 taskThread.setProcessingInterval(taskInterval);
+                updateTimeBudget();
             }
         }   //setTaskInterval
 
@@ -399,80 +605,154 @@ public class TrcTaskMgr
         {
             recordStartTime(TaskType.STANDALONE_TASK);
             task.runTask(TaskType.STANDALONE_TASK, TrcRobot.getRunMode(), false);
-            recordElapsedTime(TaskType.STANDALONE_TASK);
+            checkTimeBudget(TaskType.STANDALONE_TASK, recordElapsedTime(TaskType.STANDALONE_TASK));
         }   //standaloneTask
 
         /**
-         * This method records the task start timestamp in the task performance arrays. It is used to calculate
-         * task elapsed time after the execution of a task.
+         * This method records the task start timestamp and the interval since the previous start. It is used to
+         * calculate task elapsed time after the execution of a task. A task type of a task object is only ever run
+         * by one thread at a time, so no lock is needed.
          *
-         * @param taskType specifies the task type to index into the task performance arrays.
+         * @param taskType specifies the task type to index into the task performance metrics.
          */
-        private synchronized void recordStartTime(TaskType taskType)
+        private void recordStartTime(TaskType taskType)
         {
             long currNanoTime = TrcTimer.getNanoTime();
-            long taskInterval = taskStartTimes[taskType.value] > 0 ? currNanoTime - taskStartTimes[taskType.value] : 0;
 
+            if (taskStartTimes[taskType.value] > 0)
+            {
+                taskIntervals[taskType.value].record(currNanoTime - taskStartTimes[taskType.value]);
+            }
             taskStartTimes[taskType.value] = currNanoTime;
-            taskTotalIntervals[taskType.value] += taskInterval;
         }   //recordStartTime
 
         /**
-         * This method records the task elapsed time in the task performance arrays.
+         * This method records the task elapsed time in the task performance metrics.
          *
-         * @param taskType specifies the task type to index into the task performance arrays.
+         * @param taskType specifies the task type to index into the task performance metrics.
+         * @return task elapsed time in nanoseconds.
          */
-        private synchronized void recordElapsedTime(TaskType taskType)
+        private long recordElapsedTime(TaskType taskType)
         {
             long currNanoTime = TrcTimer.getNanoTime();
             long startTime = taskStartTimes[taskType.value];
             long elapsedTime = currNanoTime - startTime;
 
-            taskTotalElapsedTimes[taskType.value] += elapsedTime;
-            taskTimeSlotCounts[taskType.value]++;
+            taskElapsedTimes[taskType.value].record(elapsedTime);
 
             if (tracer.getTraceLevel().getValue() >= TrcDbgTrace.MsgLevel.DEBUG.getValue())
             {
                 tracer.traceVerbose(
                     moduleName, "%s.%s: start=.6f, elapsed=%.6f",
                     taskName, taskType, (startTime/1000000000.0), elapsedTime/1000000000.0);
-                long timeThreshold = getTaskInterval()*1000000; //convert to nanoseconds.
-                if (timeThreshold == 0) timeThreshold = TASKTIME_THRESHOLD_MS * 1000000L;
-                if (timeThreshold > 0 && elapsedTime > timeThreshold)
+            }
+
+            return elapsedTime;
+        }   //recordElapsedTime
+
+        /**
+         * This method checks the task elapsed time against the time budget. If the task overran, the overrun is
+         * counted and the overrun listeners are notified.
+         *
+         * @param taskType specifies the task type that was running.
+         * @param elapsedTime specifies the task elapsed time in nanoseconds.
+         */
+        private void checkTimeBudget(TaskType taskType, long elapsedTime)
+        {
+            long budgetNanos = effectiveTimeBudgetNanos;
+
+            if (elapsedTime > budgetNanos)
+            {
+                taskOverrunCounts[taskType.value].increment();
+
+                if (tracer.getTraceLevel().getValue() >= TrcDbgTrace.MsgLevel.DEBUG.getValue())
                 {
                     tracer.traceWarn(
                         moduleName, "%s.%s takes too long (%.3f)", taskName, taskType, elapsedTime/1000000000.0);
                 }
+
+                for (OverrunListener listener: overrunListeners)
+                {
+                    listener.taskOverrun(this, taskType, elapsedTime/1000000000.0, budgetNanos/1000000000.0);
+                }
             }
-        }   //recordElapsedTime
+        }   //checkTimeBudget
+
+        /**
+         * This method returns the histogram of the task elapsed times.
+         *
+         * @param taskType specifies the task type.
+         * @return task elapsed time histogram.
+         */
+        public TrcMetrics.Histogram getElapsedTimeHistogram(TaskType taskType)
+        {
+            return taskElapsedTimes[taskType.value];
+        }   //getElapsedTimeHistogram
 
         /**
          * This method returns the average task elapsed time in seconds.
          *
-         * @param taskType specifies the task type to index into the task performance arrays.
+         * @param taskType specifies the task type to index into the task performance metrics.
          * @return average task elapsed time in seconds.
          */
-        private synchronized double getAverageTaskElapsedTime(TaskType taskType)
+        private double getAverageTaskElapsedTime(TaskType taskType)
         {
-            int slotCount = taskTimeSlotCounts[taskType.value];
-            return slotCount == 0 ? 0.0 : (double)taskTotalElapsedTimes[taskType.value]/slotCount/1000000000.0;
+            return taskElapsedTimes[taskType.value].getAverage();
         }   //getAverageTaskElapsedTime
 
         /**
          * This method returns the average task interval time in seconds.
          *
-         * @param taskType specifies the task type to index into the task performance arrays.
+         * @param taskType specifies the task type to index into the task performance metrics.
          * @return average task interval time in seconds.
          */
-        private synchronized double getAverageTaskInterval(TaskType taskType)
+        private double getAverageTaskInterval(TaskType taskType)
         {
-            int slotCount = taskTimeSlotCounts[taskType.value];
-            return slotCount == 0 ? 0.0 : (double)taskTotalIntervals[taskType.value]/slotCount/1000000000.0;
+            return taskIntervals[taskType.value].getAverage();
         }   //getAverageTaskInterval
 
     }   //class TaskObject
 
+    /**
+     * This class implements the execution plan of a task type. It is compiled from the task list and the declared
+     * dependencies and is cached until a task is created, registered, unregistered or its dependencies change.
+     */
+    private static class ExecutionPlan
+    {
+        final int version;
+        // Tasks in topological order, ties are broken by registration order.
+        final TaskObject[] tasks;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param version specifies the plan version the plan is compiled against.
+         * @param tasks specifies the tasks in execution order.
+         */
+        ExecutionPlan(int version, TaskObject[] tasks)
+        {
+            this.version = version;
+            this.tasks = tasks;
+        }   //ExecutionPlan
+
+    }   //class ExecutionPlan
+
     private static final List<TaskObject> taskList = new CopyOnWriteArrayList<>();
+    private static final AtomicInteger planVersion = new AtomicInteger(0);
+    private static final AtomicInteger numDependencies = new AtomicInteger(0);
+    private static final ExecutionPlan[] executionPlans = new ExecutionPlan[TaskType.values().length];
+    private static final int SHEDDING_ENTER_LOOPS = 3;
+    private static final int SHEDDING_EXIT_LOOPS = 10;
+    private static final double SHEDDING_EXIT_RATIO = 0.8;
+    private static final List<OverrunListener> overrunListeners = new CopyOnWriteArrayList<>();
+    private static volatile long loopTimeBudgetNanos = PERIODIC_INTERVAL_MS*1000000L;
+    private static volatile boolean loadSheddingEnabled = false;
+    private static volatile boolean loadShedding = false;
+    private static long lastLoopStartNanoTime = 0;
+    private static int overBudgetLoops = 0;
+    private static int underBudgetLoops = 0;
+    private static int loadSheddingCount = 0;
+    private static volatile TrcLoopProfiler taskProfiler = null;
     private static TrcPeriodicThread<Object> ioThread = null;
     private static IoTaskCallback ioTaskLoopBegin = null;
     private static IoTaskCallback ioTaskLoopEnd = null;
@@ -491,6 +771,7 @@ public class TrcTaskMgr
 
         taskObj = new TaskObject(taskName, task);
         taskList.add(taskObj);
+        invalidateExecutionPlans();
         tracer.traceDebug(moduleName, "taskName=" + taskName + ", taskObj=" + taskObj);
 
         return taskObj;
@@ -531,8 +812,260 @@ public class TrcTaskMgr
     {
         terminateAllThreads();
         taskList.clear();
+        numDependencies.set(0);
+        invalidateExecutionPlans();
+        TrcStateSnapshot.reset();
+        lastLoopStartNanoTime = 0;
+        overBudgetLoops = 0;
+        underBudgetLoops = 0;
+        loadShedding = false;
     }   //shutdown
 
+    /**
+     * This method sets the loop profiler that records the elapsed time of every task run by executeTaskType so that
+     * the robot loop time can be attributed to individual tasks.
+     *
+     * @param profiler specifies the loop profiler, null to stop recording.
+     */
+    public static void setTaskProfiler(TrcLoopProfiler profiler)
+    {
+        taskProfiler = profiler;
+    }   //setTaskProfiler
+
+    /**
+     * This method registers a listener to be notified of task overruns and load shedding changes.
+     *
+     * @param listener specifies the listener.
+     */
+    public static void registerOverrunListener(OverrunListener listener)
+    {
+        if (!overrunListeners.contains(listener))
+        {
+            overrunListeners.add(listener);
+        }
+    }   //registerOverrunListener
+
+    /**
+     * This method unregisters a previously registered overrun listener.
+     *
+     * @param listener specifies the listener.
+     * @return true if the listener was unregistered, false if it was not registered.
+     */
+    public static boolean unregisterOverrunListener(OverrunListener listener)
+    {
+        return overrunListeners.remove(listener);
+    }   //unregisterOverrunListener
+
+    /**
+     * This method enables/disables adaptive load shedding. When enabled, if the robot loop time exceeds the loop
+     * time budget for several consecutive loops, NON_CRITICAL PRE_PERIODIC_TASKs and POST_PERIODIC_TASKs are demoted
+     * to run only on slow periodic loops. They are restored once the loop has stayed comfortably within budget for
+     * a while.
+     *
+     * @param enabled specifies true to enable load shedding, false to disable.
+     * @param loopTimeBudget specifies the robot loop time budget in seconds, 0 to use PERIODIC_INTERVAL_MS.
+     */
+    public static void setLoadSheddingEnabled(boolean enabled, double loopTimeBudget)
+    {
+        loopTimeBudgetNanos = loopTimeBudget > 0.0? (long) (loopTimeBudget*1000000000L): PERIODIC_INTERVAL_MS*1000000L;
+        loadSheddingEnabled = enabled;
+        if (!enabled)
+        {
+            loadShedding = false;
+        }
+    }   //setLoadSheddingEnabled
+
+    /**
+     * This method checks if non-critical tasks are currently being demoted.
+     *
+     * @return true if load shedding is in effect, false otherwise.
+     */
+    public static boolean isLoadShedding()
+    {
+        return loadShedding;
+    }   //isLoadShedding
+
+    /**
+     * This method is called at the start of every robot loop with the time of the previous loop to turn load
+     * shedding on or off with hysteresis.
+     *
+     * @param loopNanoTime specifies the previous robot loop time in nanoseconds.
+     */
+    private static void updateLoadShedding(long loopNanoTime)
+    {
+        if (loadSheddingEnabled)
+        {
+            boolean changed = false;
+
+            if (loopNanoTime > loopTimeBudgetNanos)
+            {
+                underBudgetLoops = 0;
+                overBudgetLoops++;
+                if (!loadShedding && overBudgetLoops >= SHEDDING_ENTER_LOOPS)
+                {
+                    loadShedding = true;
+                    loadSheddingCount++;
+                    changed = true;
+                }
+            }
+            else
+            {
+                overBudgetLoops = 0;
+                if (loopNanoTime < loopTimeBudgetNanos*SHEDDING_EXIT_RATIO)
+                {
+                    underBudgetLoops++;
+                    if (loadShedding && underBudgetLoops >= SHEDDING_EXIT_LOOPS)
+                    {
+                        loadShedding = false;
+                        changed = true;
+                    }
+                }
+            }
+
+            if (changed)
+            {
+                double loopTime = loopNanoTime/1000000000.0;
+                tracer.traceInfo(moduleName, "LoadShedding=%s (loopTime=%.6f)", loadShedding, loopTime);
+                for (OverrunListener listener: overrunListeners)
+                {
+                    listener.loadSheddingChanged(loadShedding, loopTime);
+                }
+            }
+        }
+    }   //updateLoadShedding
+
+    /**
+     * This method is called whenever the task list, task registrations or dependencies change so that the execution
+     * plans will be recompiled before their next use.
+     */
+    private static void invalidateExecutionPlans()
+    {
+        planVersion.incrementAndGet();
+    }   //invalidateExecutionPlans
+
+    /**
+     * This method compiles the execution plan of the given task type. Tasks are sorted topologically by their
+     * dependencies using registration order to break ties, so that the serial order is deterministic and identical
+     * to registration order when there are no dependencies. If the dependencies contain a cycle, the dependencies
+     * are ignored, a warning is logged and the plan falls back to registration order.
+     *
+     * @param type specifies the task type.
+     * @param version specifies the plan version the plan is compiled against.
+     * @return compiled execution plan.
+     */
+    private static ExecutionPlan compileExecutionPlan(TaskType type, int version)
+    {
+        ArrayList<TaskObject> typeTasks = new ArrayList<>();
+
+        for (TaskObject taskObj: taskList)
+        {
+            if (taskObj.hasType(type))
+            {
+                typeTasks.add(taskObj);
+            }
+        }
+
+        int numTasks = typeTasks.size();
+        int[] inDegrees = new int[numTasks];
+        ArrayList<ArrayList<Integer>> edges = new ArrayList<>(numTasks);
+        for (int i = 0; i < numTasks; i++)
+        {
+            edges.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < numTasks; i++)
+        {
+            for (TaskObject predecessor: typeTasks.get(i).predecessors)
+            {
+                int predIndex = typeTasks.indexOf(predecessor);
+                if (predIndex >= 0)
+                {
+                    edges.get(predIndex).add(i);
+                    inDegrees[i]++;
+                }
+            }
+        }
+        // Kahn's algorithm, always picking the earliest registered ready task.
+        int[] order = new int[numTasks];
+        int[] remaining = inDegrees.clone();
+        boolean[] scheduled = new boolean[numTasks];
+        int numSorted = 0;
+        while (numSorted < numTasks)
+        {
+            int next = -1;
+            for (int i = 0; i < numTasks; i++)
+            {
+                if (!scheduled[i] && remaining[i] == 0)
+                {
+                    next = i;
+                    break;
+                }
+            }
+
+            if (next == -1)
+            {
+                break;
+            }
+
+            scheduled[next] = true;
+            order[numSorted++] = next;
+            for (int successor: edges.get(next))
+            {
+                remaining[successor]--;
+            }
+        }
+
+        if (numSorted < numTasks)
+        {
+            tracer.traceWarn(
+                moduleName, "Task dependencies of " + type + " contain a cycle, falling back to registration order.");
+            for (int i = 0; i < numTasks; i++)
+            {
+                order[i] = i;
+            }
+        }
+
+        TaskObject[] tasks = new TaskObject[numTasks];
+        for (int i = 0; i < numTasks; i++)
+        {
+            tasks[i] = typeTasks.get(order[i]);
+        }
+
+        return new ExecutionPlan(version, tasks);
+    }   //compileExecutionPlan
+
+    /**
+     * This method runs a task object of the given type and records its performance metrics. If load shedding is
+     * in effect, non-critical periodic tasks are skipped except on slow periodic loops.
+     *
+     * @param taskObj specifies the task object to run.
+     * @param type specifies the task type to be executed.
+     * @param mode specifies the robot run mode.
+     * @param slowPeriodicLoop specifies true if it is running the slow periodic loop on the main robot thread,
+     *        false otherwise.
+     */
+    private static void runTaskObject(
+        TaskObject taskObj, TaskType type, TrcRobot.RunMode mode, boolean slowPeriodicLoop)
+    {
+        if (loadShedding && !slowPeriodicLoop && taskObj.criticality == Criticality.NON_CRITICAL &&
+            (type == TaskType.PRE_PERIODIC_TASK || type == TaskType.POST_PERIODIC_TASK))
+        {
+            // The loop is over budget, non-critical tasks only run on slow periodic loops.
+            return;
+        }
+
+        Task task = taskObj.getTask();
+        taskObj.recordStartTime(type);
+        task.runTask(type, mode, slowPeriodicLoop);
+        long elapsedTime = taskObj.recordElapsedTime(type);
+        TrcLoopProfiler profiler = taskProfiler;
+        if (profiler != null)
+        {
+            profiler.recordTask(taskObj, type, elapsedTime);
+        }
+        taskObj.checkTimeBudget(type, elapsedTime);
+    }   //runTaskObject
+
     /**
      * This method is called by the main robot thread to enumerate the task list and calls all the tasks that matches
      * the given task type.
@@ -544,14 +1077,44 @@ public class TrcTaskMgr
      */
     public static void executeTaskType(TaskType type, TrcRobot.RunMode mode, boolean slowPeriodicLoop)
     {
-        for (TaskObject taskObj: taskList)
+        if (type == TaskType.PRE_PERIODIC_TASK)
         {
-            if (taskObj.hasType(type))
+            // PRE_PERIODIC_TASK runs at the start of every robot loop, so this measures the robot loop time.
+            long currNanoTime = TrcTimer.getNanoTime();
+            if (lastLoopStartNanoTime != 0)
+            {
+                updateLoadShedding(currNanoTime - lastLoopStartNanoTime);
+            }
+            lastLoopStartNanoTime = currNanoTime;
+            // Give every consumer in this loop the same view of the robot state.
+            TrcStateSnapshot.latchFrame();
+        }
+
+        if (numDependencies.get() == 0)
+        {
+            // Nothing to order, just run the tasks in registration order.
+            for (TaskObject taskObj: taskList)
+            {
+                if (taskObj.hasType(type))
+                {
+                    runTaskObject(taskObj, type, mode, slowPeriodicLoop);
+                }
+            }
+        }
+        else
+        {
+            int version = planVersion.get();
+            ExecutionPlan plan = executionPlans[type.value];
+
+            if (plan == null || plan.version != version)
             {
-                Task task = taskObj.getTask();
-                taskObj.recordStartTime(type);
-                task.runTask(type, mode, slowPeriodicLoop);
-                taskObj.recordElapsedTime(type);
+                plan = compileExecutionPlan(type, version);
+                executionPlans[type.value] = plan;
+            }
+
+            for (TaskObject taskObj: plan.tasks)
+            {
+                runTaskObject(taskObj, type, mode, slowPeriodicLoop);
             }
         }
     }   //executeTaskType
@@ -590,6 +1153,17 @@ public class TrcTaskMgr
         }
     }   //ioTask
 
+    /**
+     * This method returns the loop timing statistics of the IO thread.
+     *
+     * @return IO thread loop timing statistics, null if the IO thread has not been created.
+     */
+    public static TrcPeriodicThread.LoopTimingStats getIoThreadLoopTimingStats()
+    {
+        TrcPeriodicThread<Object> thread = ioThread;
+        return thread != null? thread.getLoopTimingStats(): null;
+    }   //getIoThreadLoopTimingStats
+
     /**
      * This method prints the performance metrics of all tasks.
      */
@@ -607,8 +1181,13 @@ public class TrcTaskMgr
 
                 if (taskElapsedTime > 0.0)
                 {
+                    int overruns = taskObj.getOverrunCount(taskType);
                     taskTypeCounter++;
                     msg.append(String.format(Locale.US, " %s=%.6f/%.6f", taskType, taskElapsedTime, taskInterval));
+                    if (overruns > 0)
+                    {
+                        msg.append("(overruns=").append(overruns).append(")");
+                    }
                 }
             }
 
@@ -617,6 +1196,17 @@ public class TrcTaskMgr
                 tracer.traceInfo(moduleName, msg.toString());
             }
         }
+
+        if (loadSheddingCount > 0)
+        {
+            tracer.traceInfo(moduleName, "Load shedding was triggered %d time(s).", loadSheddingCount);
+        }
+
+        TrcPeriodicThread.LoopTimingStats ioStats = getIoThreadLoopTimingStats();
+        if (ioStats != null)
+        {
+            tracer.traceInfo(moduleName, "IoThread: " + ioStats);
+        }
     }   //printTaskPerformanceMetrics
 
     /**
@@ -0,0 +1,1118 @@
+
+package TrcCommonLib.trclib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class implements a columnar telemetry recorder. Named channels of doubles or enums are registered once, the
+ * robot code then sets the channel values and commits a row per loop. Channel values are held until they are set
+ * again, so a row always has the latest value of every channel. Rows are collected in preallocated blocks with one
+ * array per channel, so recording a row only copies doubles. Full blocks are handed to a writer thread that encodes
+ * each column (doubles are XOR'd with the previous value of the column so unchanged values become zero bytes),
+ * compresses the block with Deflater and appends it to the file.
+ * <p>
+ * The Reader and the main method read a recording back on a laptop, list its channels and export all of it or a
+ * time range of selected channels as CSV. Blocks outside the requested time range are skipped without being
+ * decompressed.
+ * </p>
+ * <pre>
+ * File format (big endian):
+ *   Header:         magic, version.
+ *   CHANNEL record: type byte (1), channel index, channel type, name, enum constant count, enum constant names.
+ *   BLOCK record:   type byte (2), row count, channel count, start time, end time, raw length, compressed length,
+ *                   compressed data (timestamps followed by one column per channel).
+ * </pre>
+ */
+public class TrcTelemetryRecorder
+{
+    private static final String moduleName = TrcTelemetryRecorder.class.getSimpleName();
+
+    public static final int MAGIC = 0x54524354;         // "TRCT"
+    public static final int VERSION = 1;
+    public static final int DEF_BLOCK_ROWS = 1024;
+
+    private static final int MAX_BLOCKS = 4;
+    private static final byte RECORD_CHANNEL = 1;
+    private static final byte RECORD_BLOCK = 2;
+    private static final byte TYPE_DOUBLE = 0;
+    private static final byte TYPE_ENUM = 1;
+    private static final Object STOP_ENTRY = new Object();
+
+    /**
+     * This class is the base class of a recorder channel.
+     */
+    public static class Channel
+    {
+        final TrcTelemetryRecorder recorder;
+        final int index;
+        final String name;
+        final String[] enumNames;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param recorder specifies the recorder the channel belongs to.
+         * @param index specifies the column index of the channel.
+         * @param name specifies the channel name.
+         * @param enumNames specifies the enum constant names of an enum channel, null for a double channel.
+         */
+        Channel(TrcTelemetryRecorder recorder, int index, String name, String[] enumNames)
+        {
+            this.recorder = recorder;
+            this.index = index;
+            this.name = name;
+            this.enumNames = enumNames;
+        }   //Channel
+
+        /**
+         * This method returns the channel name.
+         *
+         * @return channel name.
+         */
+        @Override
+        public String toString()
+        {
+            return name;
+        }   //toString
+
+    }   //class Channel
+
+    /**
+     * This class implements a channel of double values.
+     */
+    public static class DoubleChannel extends Channel
+    {
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param recorder specifies the recorder the channel belongs to.
+         * @param index specifies the column index of the channel.
+         * @param name specifies the channel name.
+         */
+        DoubleChannel(TrcTelemetryRecorder recorder, int index, String name)
+        {
+            super(recorder, index, name, null);
+        }   //DoubleChannel
+
+        /**
+         * This method sets the channel value for the rows committed from now on.
+         *
+         * @param value specifies the value, NaN if unknown.
+         */
+        public void set(double value)
+        {
+            recorder.setValue(index, value);
+        }   //set
+
+    }   //class DoubleChannel
+
+    /**
+     * This class implements a channel of enum values.
+     *
+     * @param <E> specifies the enum type.
+     */
+    public static class EnumChannel<E extends Enum<E>> extends Channel
+    {
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param recorder specifies the recorder the channel belongs to.
+         * @param index specifies the column index of the channel.
+         * @param name specifies the channel name.
+         * @param enumNames specifies the names of the enum constants.
+         */
+        EnumChannel(TrcTelemetryRecorder recorder, int index, String name, String[] enumNames)
+        {
+            super(recorder, index, name, enumNames);
+        }   //EnumChannel
+
+        /**
+         * This method sets the channel value for the rows committed from now on.
+         *
+         * @param value specifies the value, null if unknown.
+         */
+        public void set(E value)
+        {
+            recorder.setValue(index, value != null? value.ordinal(): Double.NaN);
+        }   //set
+
+    }   //class EnumChannel
+
+    /**
+     * This class holds the rows of a block, one array per channel.
+     */
+    private static class Block
+    {
+        final double[] timestamps;
+        double[][] columns = new double[0][];
+        int channelCount = 0;
+        int rowCount = 0;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param capacity specifies the number of rows in the block.
+         */
+        Block(int capacity)
+        {
+            timestamps = new double[capacity];
+        }   //Block
+
+        /**
+         * This method starts filling the block with rows of the given number of channels.
+         *
+         * @param channelCount specifies the number of channels.
+         */
+        void start(int channelCount)
+        {
+            if (columns.length < channelCount)
+            {
+                int oldLength = columns.length;
+
+                columns = Arrays.copyOf(columns, channelCount);
+                for (int i = oldLength; i < channelCount; i++)
+                {
+                    columns[i] = new double[timestamps.length];
+                }
+            }
+            this.channelCount = channelCount;
+            this.rowCount = 0;
+        }   //start
+
+    }   //class Block
+
+    /**
+     * This class holds the channels used to record the state info of a state machine (see recordStateInfo).
+     */
+    private static class StateInfoChannels
+    {
+        EnumChannel<?> state;
+        DoubleChannel robotX, robotY, robotAngle;
+        DoubleChannel targetX, targetY, targetAngle;
+        DoubleChannel velX, velY, velAngle;
+        DoubleChannel volt, lowestVolt;
+    }   //class StateInfoChannels
+
+    private final String fileName;
+    private final int blockRows;
+    private final ArrayList<Channel> channels = new ArrayList<>();
+    private final HashMap<String, Channel> channelMap = new HashMap<>();
+    private final HashMap<String, StateInfoChannels> stateInfoChannels = new HashMap<>();
+    private final LinkedBlockingQueue<Object> writeQueue = new LinkedBlockingQueue<>();
+    private final ArrayBlockingQueue<Block> freeBlocks = new ArrayBlockingQueue<>(MAX_BLOCKS);
+    private double[] currRow = new double[0];
+    private Block currBlock = null;
+    private int allocatedBlocks = 0;
+    private long rowsRecorded = 0;
+    private long droppedRows = 0;
+    private Thread writerThread = null;
+    private volatile boolean enabled = false;
+    // Only accessed by the writer thread.
+    private final ArrayList<Channel> writtenChannels = new ArrayList<>();
+    private DataOutputStream out = null;
+    private ByteBuffer rawBuffer = ByteBuffer.allocate(0);
+    private byte[] compressedBuffer = new byte[0];
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param fileName specifies the recording file name (.trct).
+     * @param blockRows specifies the number of rows per block.
+     */
+    public TrcTelemetryRecorder(String fileName, int blockRows)
+    {
+        this.fileName = fileName;
+        this.blockRows = blockRows;
+    }   //TrcTelemetryRecorder
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param fileName specifies the recording file name (.trct).
+     */
+    public TrcTelemetryRecorder(String fileName)
+    {
+        this(fileName, DEF_BLOCK_ROWS);
+    }   //TrcTelemetryRecorder
+
+    /**
+     * This method returns the recorder info in string form.
+     *
+     * @return recorder info in string form.
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return String.format(
+            Locale.US, "%s(channels=%d,rows=%d,dropped=%d)", fileName, channels.size(), rowsRecorded, droppedRows);
+    }   //toString
+
+    /**
+     * This method registers a double channel. Registering a name again returns the existing channel.
+     *
+     * @param name specifies the channel name.
+     * @return the channel.
+     * @throws IllegalArgumentException if the name is already registered as an enum channel.
+     */
+    public synchronized DoubleChannel addDoubleChannel(String name)
+    {
+        Channel channel = channelMap.get(name);
+
+        if (channel == null)
+        {
+            channel = addChannel(new DoubleChannel(this, channels.size(), name));
+        }
+        else if (!(channel instanceof DoubleChannel))
+        {
+            throw new IllegalArgumentException("Channel " + name + " is not a double channel.");
+        }
+
+        return (DoubleChannel) channel;
+    }   //addDoubleChannel
+
+    /**
+     * This method registers an enum channel. Registering a name again returns the existing channel.
+     *
+     * @param <E> specifies the enum type.
+     * @param name specifies the channel name.
+     * @param enumClass specifies the enum class.
+     * @return the channel.
+     * @throws IllegalArgumentException if the name is already registered as a double channel.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <E extends Enum<E>> EnumChannel<E> addEnumChannel(String name, Class<E> enumClass)
+    {
+        Channel channel = channelMap.get(name);
+
+        if (channel == null)
+        {
+            E[] constants = enumClass.getEnumConstants();
+            String[] enumNames = new String[constants.length];
+
+            for (int i = 0; i < constants.length; i++)
+            {
+                enumNames[i] = constants[i].name();
+            }
+            channel = addChannel(new EnumChannel<E>(this, channels.size(), name, enumNames));
+        }
+        else if (!(channel instanceof EnumChannel))
+        {
+            throw new IllegalArgumentException("Channel " + name + " is not an enum channel.");
+        }
+
+        return (EnumChannel<E>) channel;
+    }   //addEnumChannel
+
+    /**
+     * This method adds a new channel. The current block is handed to the writer first since all rows of a block
+     * have the same channels. The caller must hold the lock.
+     *
+     * @param channel specifies the new channel.
+     * @return the new channel.
+     */
+    private Channel addChannel(Channel channel)
+    {
+        flushBlock();
+        channels.add(channel);
+        channelMap.put(channel.name, channel);
+        currRow = Arrays.copyOf(currRow, channels.size());
+        currRow[channel.index] = Double.NaN;
+        writeQueue.add(channel);
+        return channel;
+    }   //addChannel
+
+    /**
+     * This method sets the value of a channel.
+     *
+     * @param index specifies the channel index.
+     * @param value specifies the value.
+     */
+    private synchronized void setValue(int index, double value)
+    {
+        currRow[index] = value;
+    }   //setValue
+
+    /**
+     * This method commits a row with the current value of every channel.
+     *
+     * @param timestamp specifies the timestamp of the row in seconds.
+     */
+    public synchronized void commit(double timestamp)
+    {
+        if (enabled)
+        {
+            if (currBlock == null)
+            {
+                currBlock = freeBlocks.poll();
+                if (currBlock == null && allocatedBlocks < MAX_BLOCKS)
+                {
+                    currBlock = new Block(blockRows);
+                    allocatedBlocks++;
+                }
+
+                if (currBlock != null)
+                {
+                    currBlock.start(channels.size());
+                }
+            }
+
+            if (currBlock != null)
+            {
+                int row = currBlock.rowCount++;
+
+                currBlock.timestamps[row] = timestamp;
+                for (int i = 0; i < currBlock.channelCount; i++)
+                {
+                    currBlock.columns[i][row] = currRow[i];
+                }
+                rowsRecorded++;
+
+                if (currBlock.rowCount == currBlock.timestamps.length)
+                {
+                    flushBlock();
+                }
+            }
+            else
+            {
+                // The writer is falling behind and all blocks are in use.
+                droppedRows++;
+            }
+        }
+    }   //commit
+
+    /**
+     * This method commits a row timestamped with the mode elapsed time.
+     */
+    public void commit()
+    {
+        commit(TrcTimer.getModeElapsedTime());
+    }   //commit
+
+    /**
+     * This method returns the number of rows dropped because the writer thread fell behind.
+     *
+     * @return number of dropped rows.
+     */
+    public synchronized long getDroppedRows()
+    {
+        return droppedRows;
+    }   //getDroppedRows
+
+    /**
+     * This method hands the current block to the writer thread. The caller must hold the lock.
+     */
+    private void flushBlock()
+    {
+        if (currBlock != null && currBlock.rowCount > 0)
+        {
+            writeQueue.add(currBlock);
+            currBlock = null;
+        }
+    }   //flushBlock
+
+    /**
+     * This method opens the recording file and starts the writer thread.
+     *
+     * @throws RuntimeException if the file could not be opened.
+     */
+    public synchronized void start()
+    {
+        if (writerThread == null)
+        {
+            try
+            {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 64*1024));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+                throw new RuntimeException("Failed to open telemetry recording " + fileName);
+            }
+            enabled = true;
+            writerThread = new Thread(this::writerTask, moduleName);
+            writerThread.setPriority(Thread.MIN_PRIORITY);
+            writerThread.start();
+        }
+    }   //start
+
+    /**
+     * This method stops recording. The writer thread writes the remaining rows and closes the file.
+     */
+    public synchronized void close()
+    {
+        if (enabled)
+        {
+            enabled = false;
+            flushBlock();
+            writeQueue.add(STOP_ENTRY);
+        }
+    }   //close
+
+    /**
+     * This method checks if the recorder is recording.
+     *
+     * @return true if recording, false otherwise.
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }   //isEnabled
+
+    /**
+     * This method records the state info of a state machine as typed channels named after the state machine: the
+     * state, the robot and target poses of an active PID or pure pursuit drive, the robot velocity of an active pure
+     * pursuit drive and the battery voltages, then commits a row. Channels that do not apply are set to NaN. It is
+     * the columnar replacement of the StateInfo event of TrcDbgTrace.traceStateInfo. The pure pursuit path is not
+     * recorded, TrcPurePursuitDrive traces it when the drive starts.
+     *
+     * @param name specifies the instance name of the state machine.
+     * @param state specifies the current state of the state machine.
+     * @param driveBase specifies the robot drive base, can be null if the state does not involve robot movement.
+     * @param pidDrive specifies the pidDrive object, can be null if the state does not involve robot movement.
+     * @param ppDrive specifies the purePursuitDrive object, can be null if the state does not involve pp drive.
+     * @param battery specifies the robot battery object, can be null if not interested in battery info.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public synchronized void recordStateInfo(
+        String name, Enum<?> state, TrcDriveBase driveBase, TrcPidDrive pidDrive, TrcPurePursuitDrive ppDrive,
+        TrcRobotBattery battery)
+    {
+        StateInfoChannels info = stateInfoChannels.get(name);
+        TrcPose2D robotPose = null, targetPose = null, robotVel = null;
+
+        if (info == null)
+        {
+            info = new StateInfoChannels();
+            info.state = addEnumChannel(name + ".state", (Class) state.getDeclaringClass());
+            info.robotX = addDoubleChannel(name + ".robotPose.x");
+            info.robotY = addDoubleChannel(name + ".robotPose.y");
+            info.robotAngle = addDoubleChannel(name + ".robotPose.angle");
+            info.targetX = addDoubleChannel(name + ".targetPose.x");
+            info.targetY = addDoubleChannel(name + ".targetPose.y");
+            info.targetAngle = addDoubleChannel(name + ".targetPose.angle");
+            info.velX = addDoubleChannel(name + ".vel.x");
+            info.velY = addDoubleChannel(name + ".vel.y");
+            info.velAngle = addDoubleChannel(name + ".vel.angle");
+            info.volt = addDoubleChannel(name + ".volt");
+            info.lowestVolt = addDoubleChannel(name + ".lowestVolt");
+            stateInfoChannels.put(name, info);
+        }
+
+        if (driveBase != null)
+        {
+            if (pidDrive != null && pidDrive.isActive())
+            {
+                robotPose = driveBase.getFieldPosition();
+                targetPose = pidDrive.getAbsoluteTargetPose();
+            }
+
+            if (ppDrive != null && ppDrive.isActive())
+            {
+                robotPose = driveBase.getFieldPosition();
+                robotVel = driveBase.getFieldVelocity();
+                targetPose = ppDrive.getTargetFieldPosition();
+            }
+        }
+
+        setValue(info.state.index, state.ordinal());
+        setPose(info.robotX, info.robotY, info.robotAngle, robotPose);
+        setPose(info.targetX, info.targetY, info.targetAngle, targetPose);
+        setPose(info.velX, info.velY, info.velAngle, robotVel);
+        setValue(info.volt.index, battery != null? battery.getVoltage(): Double.NaN);
+        setValue(info.lowestVolt.index, battery != null? battery.getLowestVoltage(): Double.NaN);
+        commit();
+    }   //recordStateInfo
+
+    /**
+     * This method sets the channels of a pose. The caller must hold the lock.
+     *
+     * @param xChannel specifies the x channel.
+     * @param yChannel specifies the y channel.
+     * @param angleChannel specifies the angle channel.
+     * @param pose specifies the pose, null to set the channels to NaN.
+     */
+    private void setPose(DoubleChannel xChannel, DoubleChannel yChannel, DoubleChannel angleChannel, TrcPose2D pose)
+    {
+        setValue(xChannel.index, pose != null? pose.x: Double.NaN);
+        setValue(yChannel.index, pose != null? pose.y: Double.NaN);
+        setValue(angleChannel.index, pose != null? pose.angle: Double.NaN);
+    }   //setPose
+
+    /**
+     * This method runs the writer thread. It writes the queued channel definitions and blocks in order and returns
+     * the written blocks to the free pool.
+     */
+    private void writerTask()
+    {
+        try
+        {
+            while (true)
+            {
+                Object entry = writeQueue.take();
+
+                if (entry == STOP_ENTRY)
+                {
+                    break;
+                }
+                else if (entry instanceof Channel)
+                {
+                    writeChannel((Channel) entry);
+                }
+                else
+                {
+                    Block block = (Block) entry;
+
+                    writeBlock(block);
+                    freeBlocks.offer(block);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            TrcDbgTrace.globalTraceWarn(moduleName, "Writer interrupted, recording %s is incomplete.", fileName);
+        }
+        catch (IOException e)
+        {
+            TrcDbgTrace.globalTraceErr(moduleName, "Failed to write %s: %s", fileName, e);
+            enabled = false;
+        }
+        finally
+        {
+            try
+            {
+                out.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+            deflater.end();
+        }
+    }   //writerTask
+
+    /**
+     * This method writes a channel definition record.
+     *
+     * @param channel specifies the channel.
+     * @throws IOException if the write failed.
+     */
+    private void writeChannel(Channel channel) throws IOException
+    {
+        writtenChannels.add(channel);
+        out.writeByte(RECORD_CHANNEL);
+        out.writeInt(channel.index);
+        out.writeByte(channel.enumNames != null? TYPE_ENUM: TYPE_DOUBLE);
+        out.writeUTF(channel.name);
+        out.writeInt(channel.enumNames != null? channel.enumNames.length: 0);
+        if (channel.enumNames != null)
+        {
+            for (String enumName: channel.enumNames)
+            {
+                out.writeUTF(enumName);
+            }
+        }
+    }   //writeChannel
+
+    /**
+     * This method encodes, compresses and writes a block record. Timestamps and double columns are written as the
+     * XOR of consecutive values, enum columns as int ordinals (-1 for unknown).
+     *
+     * @param block specifies the block.
+     * @throws IOException if the write failed.
+     */
+    private void writeBlock(Block block) throws IOException
+    {
+        int rowCount = block.rowCount;
+        int rawLength = rowCount*Double.BYTES*(block.channelCount + 1);
+
+        if (rawBuffer.capacity() < rawLength)
+        {
+            rawBuffer = ByteBuffer.allocate(rawLength);
+            compressedBuffer = new byte[rawLength + rawLength/8 + 64];
+        }
+        rawBuffer.clear();
+
+        putXorColumn(block.timestamps, rowCount);
+        for (int i = 0; i < block.channelCount; i++)
+        {
+            if (writtenChannels.get(i).enumNames != null)
+            {
+                double[] column = block.columns[i];
+
+                for (int row = 0; row < rowCount; row++)
+                {
+                    rawBuffer.putInt(Double.isNaN(column[row])? -1: (int) column[row]);
+                }
+            }
+            else
+            {
+                putXorColumn(block.columns[i], rowCount);
+            }
+        }
+
+        deflater.reset();
+        deflater.setInput(rawBuffer.array(), 0, rawBuffer.position());
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished())
+        {
+            if (compressedLength == compressedBuffer.length)
+            {
+                compressedBuffer = Arrays.copyOf(compressedBuffer, compressedBuffer.length*2);
+            }
+            compressedLength += deflater.deflate(
+                compressedBuffer, compressedLength, compressedBuffer.length - compressedLength);
+        }
+
+        out.writeByte(RECORD_BLOCK);
+        out.writeInt(rowCount);
+        out.writeInt(block.channelCount);
+        out.writeDouble(block.timestamps[0]);
+        out.writeDouble(block.timestamps[rowCount - 1]);
+        out.writeInt(rawBuffer.position());
+        out.writeInt(compressedLength);
+        out.write(compressedBuffer, 0, compressedLength);
+    }   //writeBlock
+
+    /**
+     * This method writes a double column as the XOR of consecutive values.
+     *
+     * @param column specifies the column.
+     * @param rowCount specifies the number of rows.
+     */
+    private void putXorColumn(double[] column, int rowCount)
+    {
+        long prevBits = 0;
+
+        for (int row = 0; row < rowCount; row++)
+        {
+            long bits = Double.doubleToRawLongBits(column[row]);
+
+            rawBuffer.putLong(bits ^ prevBits);
+            prevBits = bits;
+        }
+    }   //putXorColumn
+
+    /**
+     * This interface is implemented by the receiver of the rows read from a recording.
+     */
+    public interface RowHandler
+    {
+        /**
+         * This method is called for every row in the requested time range.
+         *
+         * @param timestamp specifies the row timestamp in seconds.
+         * @param values specifies the row values indexed by channel index, NaN if unknown. The array is reused for
+         *        the next row.
+         */
+        void handleRow(double timestamp, double[] values);
+
+    }   //interface RowHandler
+
+    /**
+     * This class implements the reader of a recording, typically used on a laptop for post-match analysis.
+     */
+    public static class Reader
+    {
+        private final String fileName;
+        private final ArrayList<String> channelNames = new ArrayList<>();
+        private final ArrayList<String[]> channelEnumNames = new ArrayList<>();
+
+        /**
+         * Constructor: Creates an instance of the object. It scans the recording for its channel definitions.
+         *
+         * @param fileName specifies the recording file name.
+         * @throws IOException if the file could not be read or is not a recording.
+         */
+        public Reader(String fileName) throws IOException
+        {
+            this.fileName = fileName;
+            readRecords(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, null);
+        }   //Reader
+
+        /**
+         * This method returns the names of all channels, indexed by channel index.
+         *
+         * @return channel names.
+         */
+        public List<String> getChannelNames()
+        {
+            return channelNames;
+        }   //getChannelNames
+
+        /**
+         * This method returns the index of a channel.
+         *
+         * @param name specifies the channel name.
+         * @return channel index, -1 if there is no such channel.
+         */
+        public int getChannelIndex(String name)
+        {
+            return channelNames.indexOf(name);
+        }   //getChannelIndex
+
+        /**
+         * This method converts a channel value to a string, the constant name for an enum channel and an empty
+         * string for an unknown value.
+         *
+         * @param index specifies the channel index.
+         * @param value specifies the value.
+         * @return value string.
+         */
+        public String valueToString(int index, double value)
+        {
+            String[] enumNames = channelEnumNames.get(index);
+            String str;
+
+            if (Double.isNaN(value))
+            {
+                str = "";
+            }
+            else if (enumNames != null)
+            {
+                int ordinal = (int) value;
+                str = ordinal >= 0 && ordinal < enumNames.length? enumNames[ordinal]: Integer.toString(ordinal);
+            }
+            else
+            {
+                str = Double.toString(value);
+            }
+
+            return str;
+        }   //valueToString
+
+        /**
+         * This method reads the rows in a time range.
+         *
+         * @param startTime specifies the start of the time range in seconds.
+         * @param endTime specifies the end of the time range in seconds.
+         * @param handler specifies the receiver of the rows.
+         * @throws IOException if the file could not be read.
+         */
+        public void readRows(double startTime, double endTime, RowHandler handler) throws IOException
+        {
+            readRecords(startTime, endTime, handler);
+        }   //readRows
+
+        /**
+         * This method exports the rows in a time range as CSV with a time column followed by the selected channels.
+         *
+         * @param out specifies the CSV output.
+         * @param names specifies the channels to export, null for all channels.
+         * @param startTime specifies the start of the time range in seconds.
+         * @param endTime specifies the end of the time range in seconds.
+         * @throws IOException if the file could not be read or the CSV could not be written.
+         * @throws IllegalArgumentException if a channel does not exist.
+         */
+        public void exportCsv(Writer out, List<String> names, double startTime, double endTime) throws IOException
+        {
+            List<String> columns = names != null? names: channelNames;
+            int[] indices = new int[columns.size()];
+            StringBuilder sb = new StringBuilder("time");
+
+            for (int i = 0; i < indices.length; i++)
+            {
+                indices[i] = getChannelIndex(columns.get(i));
+                if (indices[i] < 0)
+                {
+                    throw new IllegalArgumentException("Channel " + columns.get(i) + " does not exist.");
+                }
+                sb.append(',').append(columns.get(i));
+            }
+            out.write(sb.append('\n').toString());
+
+            PrintWriter writer = new PrintWriter(out);
+            // The row handler cannot throw IOException, so write errors are checked at the end.
+            readRows(
+                startTime, endTime,
+                (timestamp, values) ->
+                {
+                    sb.setLength(0);
+                    sb.append(timestamp);
+                    for (int index: indices)
+                    {
+                        sb.append(',').append(valueToString(index, values[index]));
+                    }
+                    writer.write(sb.append('\n').toString());
+                });
+            if (writer.checkError())
+            {
+                throw new IOException("Failed to write CSV.");
+            }
+        }   //exportCsv
+
+        /**
+         * This method reads the recording. Channel definitions are collected on the first pass, blocks are decoded
+         * only if they overlap the time range and there is a handler.
+         *
+         * @param startTime specifies the start of the time range in seconds.
+         * @param endTime specifies the end of the time range in seconds.
+         * @param handler specifies the receiver of the rows, null to only read the channel definitions.
+         * @throws IOException if the file could not be read.
+         */
+        private void readRecords(double startTime, double endTime, RowHandler handler) throws IOException
+        {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(fileName), 64*1024)))
+            {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                {
+                    throw new IOException(fileName + " is not a telemetry recording.");
+                }
+
+                Inflater inflater = new Inflater();
+                try
+                {
+                    int recordType;
+                    while ((recordType = in.read()) != -1)
+                    {
+                        if (recordType == RECORD_CHANNEL)
+                        {
+                            readChannel(in, handler == null);
+                        }
+                        else if (recordType == RECORD_BLOCK)
+                        {
+                            readBlock(in, inflater, startTime, endTime, handler);
+                        }
+                        else
+                        {
+                            throw new IOException("Invalid record type " + recordType + ".");
+                        }
+                    }
+                }
+                finally
+                {
+                    inflater.end();
+                }
+            }
+        }   //readRecords
+
+        /**
+         * This method reads a channel definition record.
+         *
+         * @param in specifies the input stream.
+         * @param addChannel specifies true to add the channel to the channel list.
+         * @throws IOException if the file could not be read.
+         */
+        private void readChannel(DataInputStream in, boolean addChannel) throws IOException
+        {
+            in.readInt();
+            boolean isEnum = in.readByte() == TYPE_ENUM;
+            String name = in.readUTF();
+            String[] enumNames = new String[in.readInt()];
+
+            for (int i = 0; i < enumNames.length; i++)
+            {
+                enumNames[i] = in.readUTF();
+            }
+
+            if (addChannel)
+            {
+                channelNames.add(name);
+                channelEnumNames.add(isEnum? enumNames: null);
+            }
+        }   //readChannel
+
+        /**
+         * This method reads a block record, skipping it if it is outside the time range.
+         *
+         * @param in specifies the input stream.
+         * @param inflater specifies the inflater to decompress the block.
+         * @param startTime specifies the start of the time range in seconds.
+         * @param endTime specifies the end of the time range in seconds.
+         * @param handler specifies the receiver of the rows, null to skip the block.
+         * @throws IOException if the file could not be read.
+         */
+        private void readBlock(
+            DataInputStream in, Inflater inflater, double startTime, double endTime, RowHandler handler)
+            throws IOException
+        {
+            int rowCount = in.readInt();
+            int channelCount = in.readInt();
+            double blockStartTime = in.readDouble();
+            double blockEndTime = in.readDouble();
+            int rawLength = in.readInt();
+            int compressedLength = in.readInt();
+
+            if (handler == null || blockEndTime < startTime || blockStartTime > endTime)
+            {
+                in.readFully(new byte[compressedLength]);
+            }
+            else
+            {
+                byte[] compressed = new byte[compressedLength];
+                byte[] raw = new byte[rawLength];
+
+                in.readFully(compressed);
+                inflater.reset();
+                inflater.setInput(compressed);
+                try
+                {
+                    if (inflater.inflate(raw) != rawLength)
+                    {
+                        throw new IOException("Corrupted block.");
+                    }
+                }
+                catch (DataFormatException e)
+                {
+                    throw new IOException("Corrupted block.", e);
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(raw);
+                double[] timestamps = getXorColumn(buffer, rowCount);
+                double[][] columns = new double[channelCount][];
+                for (int i = 0; i < channelCount; i++)
+                {
+                    if (channelEnumNames.get(i) != null)
+                    {
+                        columns[i] = new double[rowCount];
+                        for (int row = 0; row < rowCount; row++)
+                        {
+                            int ordinal = buffer.getInt();
+                            columns[i][row] = ordinal < 0? Double.NaN: ordinal;
+                        }
+                    }
+                    else
+                    {
+                        columns[i] = getXorColumn(buffer, rowCount);
+                    }
+                }
+
+                double[] values = new double[channelNames.size()];
+                Arrays.fill(values, Double.NaN);
+                for (int row = 0; row < rowCount; row++)
+                {
+                    if (timestamps[row] >= startTime && timestamps[row] <= endTime)
+                    {
+                        for (int i = 0; i < channelCount; i++)
+                        {
+                            values[i] = columns[i][row];
+                        }
+                        handler.handleRow(timestamps[row], values);
+                    }
+                }
+            }
+        }   //readBlock
+
+        /**
+         * This method reads a double column written as the XOR of consecutive values.
+         *
+         * @param buffer specifies the buffer to read from.
+         * @param rowCount specifies the number of rows.
+         * @return column values.
+         */
+        private static double[] getXorColumn(ByteBuffer buffer, int rowCount)
+        {
+            double[] column = new double[rowCount];
+            long prevBits = 0;
+
+            for (int row = 0; row < rowCount; row++)
+            {
+                prevBits ^= buffer.getLong();
+                column[row] = Double.longBitsToDouble(prevBits);
+            }
+
+            return column;
+        }   //getXorColumn
+
+    }   //class Reader
+
+    /**
+     * This method lists the channels of a recording or exports it as CSV.
+     * <pre>
+     * Usage: TrcTelemetryRecorder [-list] [-from sec] [-to sec] [-channels name,...] [-out file.csv] recording.trct
+     * </pre>
+     *
+     * @param args specifies the command line arguments.
+     * @throws IOException if the recording could not be read or the CSV could not be written.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        double startTime = Double.NEGATIVE_INFINITY;
+        double endTime = Double.POSITIVE_INFINITY;
+        List<String> names = null;
+        String outFile = null;
+        String recording = null;
+        boolean list = false;
+
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "-list":
+                    list = true;
+                    break;
+
+                case "-from":
+                    startTime = Double.parseDouble(args[++i]);
+                    break;
+
+                case "-to":
+                    endTime = Double.parseDouble(args[++i]);
+                    break;
+
+                case "-channels":
+                    names = Arrays.asList(args[++i].split(","));
+                    break;
+
+                case "-out":
+                    outFile = args[++i];
+                    break;
+
+                default:
+                    recording = args[i];
+                    break;
+            }
+        }
+
+        if (recording == null)
+        {
+            System.err.println(
+                "Usage: TrcTelemetryRecorder [-list] [-from sec] [-to sec] [-channels name,...] [-out file.csv] " +
+                "recording.trct");
+        }
+        else
+        {
+            Reader reader = new Reader(recording);
+
+            if (list)
+            {
+                for (String name: reader.getChannelNames())
+                {
+                    System.out.println(name);
+                }
+            }
+            else
+            {
+                try (Writer out = outFile != null? new FileWriter(outFile): new PrintWriter(System.out))
+                {
+                    reader.exportCsv(out, names, startTime, endTime);
+                }
+            }
+        }
+    }   //main
+
+}   //class TrcTelemetryRecorder
@@ -2,7 +2,7 @@
 package TrcCommonLib.trclib;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Locale;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -11,6 +11,18 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * This class implements a timer that will signal an event or make a notification callback when the time has expired.
  * This is useful for doing delays in autonomous, for example.
+ * <p>
+ * All armed timers are kept in a binary min-heap ordered by expiration time. Each timer remembers its position in
+ * the heap so that arming and canceling a timer are both O(log n) without scanning the timer list. The timer thread
+ * parks until the earliest expiration time and is only unparked when a newly armed timer becomes the earliest one.
+ * The heap is keyed by a copy of the expiration time that is only touched under the heap lock, and every arming of a
+ * timer gets a new generation number so that an expiration of an older arming is ignored if the timer was re-armed
+ * after the timer thread took it out of the heap.
+ * </p>
+ * <p>
+ * All time keeping goes through a pluggable clock source (see setClock). By default it is the system clock, but a
+ * TrcSimulatedClock can be installed to run timers and periodic threads on virtual time.
+ * </p>
  */
 public class TrcTimer
 {
@@ -23,15 +35,19 @@ public class TrcTimer
      */
     private static class State
     {
-        AtomicLong expiredTimeInMsec = new AtomicLong(0);
+        AtomicLong expiredTimeInNanos = new AtomicLong(0);
+        AtomicBoolean armed = new AtomicBoolean(false);
         AtomicBoolean expired = new AtomicBoolean(false);
         AtomicBoolean canceled = new AtomicBoolean(false);
         TrcEvent notifyEvent = null;
+        // Incremented every time the timer is armed.
+        long generation = 0;
 
         @Override
         public String toString()
         {
-            return "(expiredTimeMS=" + expiredTimeInMsec.get() +
+            return "(expiredTimeNS=" + expiredTimeInNanos.get() +
+                   ",armed=" + armed.get() +
                    ",expired=" + expired.get() +
                    ",canceled=" + canceled.get() +
                    ",event=" + notifyEvent + ")";
@@ -42,6 +58,11 @@ public class TrcTimer
     private final State state = new State();
     private final TrcDbgTrace tracer;
     private final String instanceName;
+    // Position of this timer in the timer heap, -1 if not in the heap. Guarded by timerHeapLock.
+    private int heapIndex = -1;
+    // Heap key and generation of the arming in the heap. Guarded by timerHeapLock.
+    private long heapExpiredTimeInNanos = 0;
+    private long heapGeneration = 0;
 
     /**
      * Constructor: Creates an instance of the timer with the given name.
@@ -94,17 +115,21 @@ public class TrcTimer
             // If we are re-arming an active timer, don't notify the event about the cancel.
             //
             cancel(false);
-            state.expiredTimeInMsec.set(TrcTimer.getCurrentTimeMillis() + (long)(time*1000));
+            state.expiredTimeInNanos.set(TrcTimer.getNanoTime() + (long)(time*1000000000L));
+            state.armed.set(true);
             state.expired.set(false);
             state.canceled.set(false);
+            state.generation++;
             // Notification callback requires an event. If the caller did not provide one, create one ourselves.
             state.notifyEvent = event != null? event: new TrcEvent(instanceName + ".callbackEvent");
             if (callback != null)
             {
                 state.notifyEvent.setCallback(callback, callbackContext);
             }
+            // Add the timer while holding the state lock so that concurrent set and cancel calls update the heap in
+            // the same order as the state.
+            addTimer(this, state.expiredTimeInNanos.get(), state.generation);
         }
-        addTimer(this);
         tracer.traceDebug(
             instanceName, "timer=%s, time=%.3f, event=%s, callback=%s, context=%s",
             this, time, event, callback != null, callbackContext != null);
@@ -159,9 +184,12 @@ public class TrcTimer
 
         synchronized (state)
         {
+            // Take the timer out of the heap first, the heap never looks at the state.
+            removeTimer(this);
             if (isActive())
             {
-                state.expiredTimeInMsec.set(0);
+                state.expiredTimeInNanos.set(0);
+                state.armed.set(false);
                 state.expired.set(false);
                 state.canceled.set(true);
                 event = state.notifyEvent;
@@ -173,7 +201,6 @@ public class TrcTimer
                 event = null;
             }
         }
-        removeTimer(this);
 
         if (doNotify && event != null)
         {
@@ -191,16 +218,6 @@ public class TrcTimer
         cancel(true);
     }   //cancel
 
-    /**
-     * This method returns the expired timestamp in milliseconds. If the timer is not set, it returns 0.
-     *
-     * @return expired timestamp in msec.
-     */
-    private long getExpiredTimeInMsec()
-    {
-        return state.expiredTimeInMsec.get();
-    }   //getExpiredTimeInMsec
-
     /**
      * This method checks if the timer has expired.
      *
@@ -232,24 +249,28 @@ public class TrcTimer
 
         synchronized (state)
         {
-            active = state.expiredTimeInMsec.get() > 0 && !state.expired.get() && !state.canceled.get();
+            active = state.armed.get() && !state.expired.get() && !state.canceled.get();
         }
 
         return active;
     }   //isActive
 
     /**
-     * This method is called when the timer has expired.
+     * This method is called when the timer has expired. It does nothing if the timer was canceled or re-armed after
+     * the timer thread took it out of the heap.
+     *
+     * @param generation specifies the generation of the arming that has expired.
      */
-    private void setExpired()
+    private void setExpired(long generation)
     {
         TrcEvent event;
 
         synchronized (state)
         {
-            if (!state.canceled.get())
+            if (state.generation == generation && isActive())
             {
-                state.expiredTimeInMsec.set(0);
+                state.expiredTimeInNanos.set(0);
+                state.armed.set(false);
                 state.expired.set(true);
                 state.canceled.set(false);
                 event = state.notifyEvent;
@@ -257,7 +278,8 @@ public class TrcTimer
             }
             else
             {
-                // Timer was canceled, event would have been notified already.
+                // Timer was canceled, event would have been notified already, or it was re-armed and is back in
+                // the heap.
                 event = null;
             }
         }
@@ -273,12 +295,38 @@ public class TrcTimer
     // Timer Management: It is a singleton. Therefore, everything here are static.
     //
 
+    private static final int INITIAL_HEAP_CAPACITY = 32;
+    // The clock must be initialized before modeStartTime which reads it.
+    private static volatile TrcClock clock = TrcClock.SYSTEM;
     private static final TrcHighPrecisionTime modeStartTime = new TrcHighPrecisionTime("ModeStartTime");
-    private static final ArrayList<TrcTimer> timerList = new ArrayList<>();
-    private static Thread timerThread = null;
+    private static final Object timerHeapLock = new Object();
+    private static TrcTimer[] timerHeap = new TrcTimer[INITIAL_HEAP_CAPACITY];
+    private static int timerCount = 0;
+    private static volatile Thread timerThread = null;
     private static volatile boolean shuttingDown = false;
-    private static volatile TrcTimer nextTimerToExpire = null;
-    private static volatile TrcTimer preemptingTimer = null;
+
+    /**
+     * This method sets the clock source used by all of trclib. It should be called before any timer or periodic
+     * thread is started, typically by a simulation harness installing a TrcSimulatedClock. The mode start time is
+     * re-recorded on the new clock.
+     *
+     * @param clock specifies the clock source, null to restore the system clock.
+     */
+    public static void setClock(TrcClock clock)
+    {
+        TrcTimer.clock = clock != null? clock: TrcClock.SYSTEM;
+        modeStartTime.recordTimestamp();
+    }   //setClock
+
+    /**
+     * This method returns the clock source used by all of trclib.
+     *
+     * @return clock source.
+     */
+    public static TrcClock getClock()
+    {
+        return clock;
+    }   //getClock
 
     /**
      * This method is called at the start of a competition mode to set the mode start timestamp so that
@@ -334,7 +382,7 @@ public class TrcTimer
      */
     public static long getNanoTime()
     {
-        return System.nanoTime();
+        return clock.nanoTime();
     }   //getNanoTime
 
     /**
@@ -344,7 +392,7 @@ public class TrcTimer
      */
     public static long getCurrentTimeMillis()
     {
-        return System.currentTimeMillis();
+        return clock.currentTimeMillis();
     }   //getCurrentTimeMillis
 
     /**
@@ -356,7 +404,7 @@ public class TrcTimer
     public static String getCurrentTimeString(String format)
     {
         SimpleDateFormat dateFormat = new SimpleDateFormat(format, Locale.US);
-        return dateFormat.format(new Date());
+        return dateFormat.format(new Date(getCurrentTimeMillis()));
     }   //getCurrentTimeString
 
     /**
@@ -377,97 +425,88 @@ public class TrcTimer
      */
     public static void sleep(long milliTime)
     {
-        long wakeupTime = System.currentTimeMillis() + milliTime;
+        TrcClock clock = TrcTimer.clock;
+        long sleepTime = milliTime*1000000;
+        long wakeupTime = clock.nanoTime() + sleepTime;
 
-        while (milliTime > 0)
+        while (sleepTime > 0)
         {
             try
             {
-                Thread.sleep(milliTime);
+                clock.sleep(sleepTime);
                 break;
             }
             catch (InterruptedException e)
             {
-                milliTime = wakeupTime - System.currentTimeMillis();
+                sleepTime = wakeupTime - clock.nanoTime();
             }
         }
     }   //sleep
 
     /**
-     * This method adds the timer to the timer list in the order of expiration.
+     * This method adds the timer to the timer heap in the order of expiration. If the timer becomes the earliest
+     * timer to expire, the timer thread is unparked so that it can re-evaluate its wait time.
      *
-     * @param timer specifies the timer to be added to the list.
+     * @param timer specifies the timer to be added to the heap.
+     * @param expiredTimeInNanos specifies the expiration time of the timer.
+     * @param generation specifies the generation of the arming.
      */
-    private static void addTimer(TrcTimer timer)
+    private static void addTimer(TrcTimer timer, long expiredTimeInNanos, long generation)
     {
-        long expiredTimeInMsec = timer.getExpiredTimeInMsec();
+        boolean newHead;
 
-        synchronized (timerList)
+        synchronized (timerHeapLock)
         {
-            if (nextTimerToExpire != null && expiredTimeInMsec < nextTimerToExpire.getExpiredTimeInMsec())
+            if (timer.heapIndex >= 0)
             {
-                staticTracer.traceDebug(moduleName, "Adding timer " + timer + " preempting " + nextTimerToExpire + ".");
-                //
-                // The added new timer expires sooner than the one we are sleeping on. Let's interrupt its sleep and
-                // process this one first.
-                //
-                preemptingTimer = timer;
-                timerThread.interrupt();
+                // The timer is somehow still in the heap, take it out first so it won't be in there twice.
+                heapRemove(timer.heapIndex);
             }
-            else
+            // The heap key may only change while the timer is out of the heap.
+            timer.heapExpiredTimeInNanos = expiredTimeInNanos;
+            timer.heapGeneration = generation;
+            heapInsert(timer);
+            newHead = timer.heapIndex == 0;
+            staticTracer.traceVerbose(
+                moduleName, "Adding timer %s (heapIndex=%d, timerCount=%d).", timer, timer.heapIndex, timerCount);
+
+            if (timerThread == null)
             {
-                // Default to end of list in case this timer is the last in the list or the only one in the list.
-                int position = timerList.size();
-
-                for (int i = 0; i < timerList.size(); i++)
-                {
-                    if (expiredTimeInMsec < timerList.get(i).getExpiredTimeInMsec())
-                    {
-                        position = i;
-                        break;
-                    }
-                }
-
-                staticTracer.traceDebug(moduleName, "Adding timer " + timer + " to queue position " + position + ".");
-                timerList.add(position, timer);
-                //
-                // In case this is the first and only timer in the list, kick start the timer thread.
-                //
-                timerList.notify();
+                // Timer thread does not exist, let's create one and start it.
+                timerThread = new Thread(TrcTimer::timerTask, moduleName);
+                timerThread.start();
+                newHead = false;
             }
         }
 
-        if (timerThread == null)
+        if (newHead)
         {
-            // Timer thread does not exist, let's create one and start it.
-            timerThread = new Thread(TrcTimer::timerTask, moduleName);
-            timerThread.start();
+            // The added timer expires sooner than the one the timer thread is waiting on, wake it up to re-evaluate.
+            clock.unpark(timerThread);
         }
     }   //addTimer
 
     /**
-     * This method removes a timer from the list.
+     * This method removes a timer from the heap. It does not wake up the timer thread even if the timer was the
+     * earliest to expire. The timer thread will simply wake up at the old expiration time and find the next timer.
      *
      * @param timer specifies the timer to be removed.
      */
     private static void removeTimer(TrcTimer timer)
     {
         // Only do this if we are not shutting down. If we are shutting down, thread cleanup will take care of
-        // the timer list.
+        // the timer heap.
         if (!shuttingDown)
         {
-            synchronized (timerList)
+            synchronized (timerHeapLock)
             {
-                if (timer == nextTimerToExpire)
-                {
-                    timerThread.interrupt();
-                    staticTracer.traceDebug(moduleName, "Removing current active timer " + timer);
-                }
-                else
+                int index = timer.heapIndex;
+
+                if (index >= 0)
                 {
-                    boolean success = timerList.remove(timer);
-                    staticTracer.traceDebug(moduleName, "Removing timer " + timer + " in the list=" + success);
+                    heapRemove(index);
                 }
+                staticTracer.traceVerbose(moduleName, "Removing timer %s (heapIndex=%d).", timer, index);
             }
         }
         else
@@ -476,21 +515,162 @@ public class TrcTimer
         }
     }   //removeTimer
 
+    /**
+     * This method returns the number of armed timers waiting to expire.
+     *
+     * @return number of pending timers.
+     */
+    public static int getPendingTimerCount()
+    {
+        synchronized (timerHeapLock)
+        {
+            return timerCount;
+        }
+    }   //getPendingTimerCount
+
+    /**
+     * This method inserts a timer into the heap. The caller must hold timerHeapLock.
+     *
+     * @param timer specifies the timer to be inserted.
+     */
+    private static void heapInsert(TrcTimer timer)
+    {
+        if (timerCount == timerHeap.length)
+        {
+            timerHeap = Arrays.copyOf(timerHeap, timerHeap.length*2);
+        }
+        timerHeap[timerCount] = timer;
+        timer.heapIndex = timerCount;
+        timerCount++;
+        heapSiftUp(timer.heapIndex);
+    }   //heapInsert
+
+    /**
+     * This method removes the timer at the given heap position. The caller must hold timerHeapLock.
+     *
+     * @param index specifies the heap position of the timer to be removed.
+     * @return removed timer.
+     */
+    private static TrcTimer heapRemove(int index)
+    {
+        TrcTimer timer = timerHeap[index];
+        int lastIndex = timerCount - 1;
+
+        if (index != lastIndex)
+        {
+            heapSet(index, timerHeap[lastIndex]);
+        }
+        timerHeap[lastIndex] = null;
+        timerCount--;
+        timer.heapIndex = -1;
+
+        if (index < timerCount)
+        {
+            // The moved timer may need to go either way depending on its expiration time.
+            if (!heapSiftUp(index))
+            {
+                heapSiftDown(index);
+            }
+        }
+
+        return timer;
+    }   //heapRemove
+
+    /**
+     * This method moves the timer at the given heap position up towards the root until the heap order is restored.
+     * The caller must hold timerHeapLock.
+     *
+     * @param index specifies the heap position of the timer.
+     * @return true if the timer has moved, false otherwise.
+     */
+    private static boolean heapSiftUp(int index)
+    {
+        TrcTimer timer = timerHeap[index];
+        long expiredTime = timer.heapExpiredTimeInNanos;
+        int startIndex = index;
+
+        while (index > 0)
+        {
+            int parentIndex = (index - 1) >>> 1;
+            TrcTimer parent = timerHeap[parentIndex];
+
+            if (expiredTime - parent.heapExpiredTimeInNanos >= 0)
+            {
+                break;
+            }
+            heapSet(index, parent);
+            index = parentIndex;
+        }
+        heapSet(index, timer);
+
+        return index != startIndex;
+    }   //heapSiftUp
+
+    /**
+     * This method moves the timer at the given heap position down towards the leaves until the heap order is
+     * restored. The caller must hold timerHeapLock.
+     *
+     * @param index specifies the heap position of the timer.
+     */
+    private static void heapSiftDown(int index)
+    {
+        TrcTimer timer = timerHeap[index];
+        long expiredTime = timer.heapExpiredTimeInNanos;
+        int halfCount = timerCount >>> 1;
+
+        while (index < halfCount)
+        {
+            int childIndex = 2*index + 1;
+            int rightIndex = childIndex + 1;
+            TrcTimer child = timerHeap[childIndex];
+
+            if (rightIndex < timerCount &&
+                timerHeap[rightIndex].heapExpiredTimeInNanos - child.heapExpiredTimeInNanos < 0)
+            {
+                childIndex = rightIndex;
+                child = timerHeap[childIndex];
+            }
+
+            if (expiredTime - child.heapExpiredTimeInNanos <= 0)
+            {
+                break;
+            }
+            heapSet(index, child);
+            index = childIndex;
+        }
+        heapSet(index, timer);
+    }   //heapSiftDown
+
+    /**
+     * This method puts the timer at the given heap position and updates its heap index. The caller must hold
+     * timerHeapLock.
+     *
+     * @param index specifies the heap position.
+     * @param timer specifies the timer.
+     */
+    private static void heapSet(int index, TrcTimer timer)
+    {
+        timerHeap[index] = timer;
+        timer.heapIndex = index;
+    }   //heapSet
+
     /**
      * This method is called by the TrcTaskMgr to shut down the timer thread when it is exiting.
      */
     public static void shutdown()
     {
-        if (timerThread != null)
+        Thread thread = timerThread;
+
+        if (thread != null)
         {
             shuttingDown = true;
-            timerThread.interrupt();
+            clock.unpark(thread);
         }
     }   //shutdown
 
     /**
-     * This method runs by the timer thread to wait for the next timer in the list and signal the timer object when
-     * it expires.
+     * This method runs by the timer thread to wait for the earliest timer in the heap and signal the timer object
+     * when it expires.
      */
     private static void timerTask()
     {
@@ -498,135 +678,80 @@ public class TrcTimer
         TrcWatchdogMgr.Watchdog timerThreadWatchdog = TrcWatchdogMgr.registerWatchdog(moduleName);
         while (!shuttingDown)
         {
+            TrcTimer expiredTimer = null;
+            long expiredGeneration = 0;
+            long waitTimeInNanos = 0;
+
             // Sending heartbeat will also unpause the watchdog if it was paused.
             timerThreadWatchdog.sendHeartBeat();
-
-            try
+            synchronized (timerHeapLock)
             {
-                long sleepTimeInMsec;
-
-                synchronized (timerList)
+                if (timerCount > 0)
                 {
-                    if (nextTimerToExpire == null && timerList.isEmpty())
+                    waitTimeInNanos = timerHeap[0].heapExpiredTimeInNanos - TrcTimer.getNanoTime();
+                    if (waitTimeInNanos <= 0)
                     {
-                        staticTracer.traceDebug(moduleName, "Waiting for timer ...");
-                        // Must take the timerList lock before calling wait because it will release the ownership
-                        // and wait for notification.
-                        // We need to pause the watchdog before we wait because we can't send heartbeat while waiting.
-                        timerThreadWatchdog.pauseWatch();
-                        timerList.wait();
-                        timerThreadWatchdog.resumeWatch();
-                        staticTracer.traceDebug(moduleName, "New timer arrived.");
-                    }
-
-                    if (nextTimerToExpire == null)
-                    {
-                        if (!timerList.isEmpty())
-                        {
-                            staticTracer.traceDebug(
-                                moduleName, "Get a timer from the queue (qSize=" + timerList.size() + ").");
-                            // There is no timer in progress, get one from the timer queue.
-                            nextTimerToExpire = timerList.remove(0);
-                            if (nextTimerToExpire.isCanceled())
-                            {
-                                // This timer has been canceled, skip it.
-                                nextTimerToExpire = null;
-                            }
-                        }
-                        else
-                        {
-                            // There should be a timer in the queue. If not, somebody has canceled it and taken it
-                            // out of the queue before we get to it. It's really not a problem but let's log a
-                            // warning and move on.
-                            staticTracer.traceWarn(moduleName, "Expecting a timer from the queue but there is none.");
-                        }
+                        expiredTimer = heapRemove(0);
+                        expiredGeneration = expiredTimer.heapGeneration;
                     }
                 }
+            }
 
-                // sleepTimeInMsec is not zero only if we have a pending timer to process.
-                sleepTimeInMsec = nextTimerToExpire != null?
-                    nextTimerToExpire.getExpiredTimeInMsec() - TrcTimer.getCurrentTimeMillis(): 0;
-                staticTracer.traceDebug(
-                    moduleName, "timer=" + nextTimerToExpire + ", sleepTimeInMsec=" + sleepTimeInMsec);
-
-                if (sleepTimeInMsec > 0)
-                {
-                    // We need to pause the watchdog before we go to sleep because we can't send heartbeat while
-                    // sleeping.
-                    timerThreadWatchdog.pauseWatch();
-                    Thread.sleep(sleepTimeInMsec);
-                    timerThreadWatchdog.resumeWatch();
-                }
-
-                if (nextTimerToExpire != null)
-                {
-                    // Timer has expired, signal it.
-                    staticTracer.traceDebug(moduleName, "Timer " + nextTimerToExpire + " expired.");
-                    nextTimerToExpire.setExpired();
-                    nextTimerToExpire = null;
-                }
+            if (expiredTimer != null)
+            {
+                // Timer has expired, signal it.
+                staticTracer.traceDebug(moduleName, "Timer " + expiredTimer + " expired.");
+                expiredTimer.setExpired(expiredGeneration);
             }
-            catch (InterruptedException e)
+            else
             {
-                // There are three reasons we get interrupted:
-                //  1. Somebody just added a preempting timer.
-                //  2. Somebody just canceled and removed the current active timer.
-                //  3. Somebody is shutting down the timer thread.
-                synchronized (timerList)
+                // We need to pause the watchdog before we park because we can't send heartbeat while parking.
+                // Parking may return early because of a preempting timer, shutdown or spuriously. In any case,
+                // we will loop back and re-evaluate the earliest timer.
+                timerThreadWatchdog.pauseWatch();
+                if (waitTimeInNanos > 0)
                 {
-                    if (preemptingTimer != null)
-                    {
-                        // Somebody just added a preempting timer.
-                        if (nextTimerToExpire != null)
-                        {
-                            // Somebody just added a timer that will expire sooner than the one we are sleeping on.
-                            // Push this timer back to the front of the list and continue the next loop so the
-                            // preempting timer will be processed first. If nextTimerToExpire is null, it means
-                            // the current timer has been canceled, so don't put it back in the timer queue.
-                            timerList.add(0, nextTimerToExpire);
-                        }
-
-                        staticTracer.traceDebug(
-                            moduleName, "Timer " + preemptingTimer + " is preempting " + nextTimerToExpire + ".");
-                        nextTimerToExpire = preemptingTimer;
-                        preemptingTimer = null;
-                    }
-                    else if (nextTimerToExpire != null && nextTimerToExpire.isCanceled())
-                    {
-                        // Somebody just canceled and removed the current active timer.
-                        staticTracer.traceDebug(moduleName, "timer " + nextTimerToExpire + " was canceled.");
-                        nextTimerToExpire = null;
-                    }
-                    else if (shuttingDown)
-                    {
-                        // Somebody is shutting down the timer thread.
-                        staticTracer.traceDebug(moduleName, "Terminating Timer thread.");
-                        break;
-                    }
+                    clock.parkNanos(timerHeapLock, waitTimeInNanos);
                 }
+                else
+                {
+                    staticTracer.traceDebug(moduleName, "Waiting for timer ...");
+                    clock.park(timerHeapLock);
+                }
+                timerThreadWatchdog.resumeWatch();
             }
         }
         //
         // The thread is terminating, cancel all pending timers before exiting.
         //
-        synchronized (timerList)
+        TrcTimer[] pendingTimers;
+        synchronized (timerHeapLock)
         {
-            staticTracer.traceDebug(moduleName, "Terminating: canceling " + timerList.size() + " timers.");
-            for (TrcTimer timer: timerList)
+            pendingTimers = Arrays.copyOf(timerHeap, timerCount);
+            for (int i = 0; i < timerCount; i++)
             {
-                staticTracer.traceDebug(moduleName, "Canceling " + timer);
-                timer.cancel();
+                timerHeap[i].heapIndex = -1;
+                timerHeap[i] = null;
             }
+            timerCount = 0;
+        }
 
-            timerList.clear();
+        staticTracer.traceDebug(moduleName, "Terminating: canceling " + pendingTimers.length + " timers.");
+        for (TrcTimer timer: pendingTimers)
+        {
+            staticTracer.traceDebug(moduleName, "Canceling " + timer);
+            timer.cancel();
         }
         staticTracer.traceDebug(moduleName, "Timer thread is terminated.");
         //
         // The thread is now terminated. Destroy this instance so we will recreate the thread the next time around.
         //
         timerThreadWatchdog.unregister();
-        timerThread = null;
-        shuttingDown = false;
+        synchronized (timerHeapLock)
+        {
+            timerThread = null;
+            shuttingDown = false;
+        }
     }   //timerTask
 
 }   //class TrcTimer
@@ -6,29 +6,114 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 public class TrcTraceLogger
 {
+    /**
+     * This enum specifies what happens to a message when the message queue is full.
+     */
+    public enum OverflowPolicy
+    {
+        /**
+         * The caller blocks until there is room in the queue.
+         */
+        BLOCK,
+        /**
+         * The oldest queued message is dropped to make room.
+         */
+        DROP_OLDEST,
+        /**
+         * The new message is dropped.
+         */
+        DROP_NEWEST
+    }   //enum OverflowPolicy
+
+    /**
+     * This class tags a queued message with its level so that dropped messages can be counted per level.
+     */
+    private static class LevelMsg
+    {
+        final TrcDbgTrace.MsgLevel level;
+        final String msg;
+
+        LevelMsg(TrcDbgTrace.MsgLevel level, String msg)
+        {
+            this.level = level;
+            this.msg = msg;
+        }   //LevelMsg
+    }   //class LevelMsg
+
+    public static final int DEF_QUEUE_CAPACITY = 8192;
+
     private final TrcDbgTrace tracer;
     private final String traceLogName;
-    private final LinkedBlockingQueue<String> msgQueue;
+    private final LinkedBlockingQueue<Object> msgQueue;
+    private final TrcBinaryTraceLog binaryLog;
+    private final TrcLogRotator rotator;
 
     private PrintWriter traceLog = null;
+    private long segmentBytes = 0;
     private volatile Thread loggerThread = null;
     private volatile boolean enabled = false;
     private double totalNanoTime = 0.0;
     private int totalMessages = 0;
+    private final AtomicLongArray droppedCounts = new AtomicLongArray(TrcDbgTrace.MsgLevel.values().length + 1);
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private long reportedDroppedCount = 0;
+    private long reportedSampledOutCount = 0;
 
     /**
      * Constructor: Create an instance of the trace logger.
      *
      * @param traceLogName specifies the log file name.
+     * @param binaryFormat specifies true to write a binary trace log (see TrcBinaryTraceLog), false for text.
+     * @param queueCapacity specifies the maximum number of queued messages (records in binary format).
+     * @param rotation specifies the log rotation parameters, null to write a single log file.
      */
-    public TrcTraceLogger(String traceLogName)
+    public TrcTraceLogger(
+        String traceLogName, boolean binaryFormat, int queueCapacity, TrcLogRotator.Parameters rotation)
     {
         this.tracer = new TrcDbgTrace(traceLogName);
         this.traceLogName = traceLogName;
-        msgQueue = new LinkedBlockingQueue<>();
+        rotator = rotation != null? new TrcLogRotator(traceLogName, rotation): null;
+        msgQueue = binaryFormat? null: new LinkedBlockingQueue<>(queueCapacity);
+        binaryLog = binaryFormat? new TrcBinaryTraceLog(traceLogName, queueCapacity, rotator): null;
+    }   //TrcTraceLogger
+
+    /**
+     * Constructor: Create an instance of the trace logger.
+     *
+     * @param traceLogName specifies the log file name.
+     * @param binaryFormat specifies true to write a binary trace log (see TrcBinaryTraceLog), false for text.
+     * @param queueCapacity specifies the maximum number of queued messages (records in binary format).
+     */
+    public TrcTraceLogger(String traceLogName, boolean binaryFormat, int queueCapacity)
+    {
+        this(traceLogName, binaryFormat, queueCapacity, null);
+    }   //TrcTraceLogger
+
+    /**
+     * Constructor: Create an instance of the trace logger.
+     *
+     * @param traceLogName specifies the log file name.
+     * @param binaryFormat specifies true to write a binary trace log (see TrcBinaryTraceLog), false for text.
+     */
+    public TrcTraceLogger(String traceLogName, boolean binaryFormat)
+    {
+        this(traceLogName, binaryFormat, DEF_QUEUE_CAPACITY);
+    }   //TrcTraceLogger
+
+    /**
+     * Constructor: Create an instance of the text trace logger.
+     *
+     * @param traceLogName specifies the log file name.
+     */
+    public TrcTraceLogger(String traceLogName)
+    {
+        this(traceLogName, false);
     }   //TrcTraceLogger
 
     /**
@@ -52,6 +137,63 @@ public class TrcTraceLogger
         tracer.setTraceLevel(msgLevel);
     }   //setTraceLevel
 
+    /**
+     * This method returns the log rotator.
+     *
+     * @return log rotator, null if the log is written to a single file.
+     */
+    public TrcLogRotator getRotator()
+    {
+        return rotator;
+    }   //getRotator
+
+    /**
+     * This method sets the policy for handling messages when the message queue is full. The default is DROP_OLDEST.
+     * A binary trace log cannot reclaim records that are already queued, so DROP_OLDEST behaves like DROP_NEWEST.
+     *
+     * @param policy specifies the overflow policy.
+     */
+    public void setOverflowPolicy(OverflowPolicy policy)
+    {
+        overflowPolicy = policy;
+        if (binaryLog != null)
+        {
+            binaryLog.setBlockOnOverflow(policy == OverflowPolicy.BLOCK);
+        }
+    }   //setOverflowPolicy
+
+    /**
+     * This method returns the overflow policy.
+     *
+     * @return overflow policy.
+     */
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return overflowPolicy;
+    }   //getOverflowPolicy
+
+    /**
+     * This method returns the number of messages dropped because the message queue was full.
+     *
+     * @return number of dropped messages.
+     */
+    public long getDroppedCount()
+    {
+        return binaryLog != null? binaryLog.getDroppedCount(): droppedCount.get();
+    }   //getDroppedCount
+
+    /**
+     * This method returns the number of messages of the given level dropped because the message queue was full.
+     *
+     * @param level specifies the message level, null for messages of unknown level.
+     * @return number of dropped messages.
+     */
+    public long getDroppedCount(TrcDbgTrace.MsgLevel level)
+    {
+        int index = level != null? level.getValue(): 0;
+        return binaryLog != null? binaryLog.getDroppedCount(level): droppedCounts.get(index);
+    }   //getDroppedCount
+
     /**
      * This method enables/disables the trace logger thread.
      *
@@ -59,20 +201,27 @@ public class TrcTraceLogger
      */
     public synchronized void setEnabled(boolean enabled)
     {
-        if (loggerThread == null && enabled)
+        if (binaryLog != null)
+        {
+            binaryLog.setEnabled(enabled);
+            this.enabled = enabled;
+        }
+        else if (loggerThread == null && enabled)
         {
             //
             // Trace logger was not enabled, somebody wants to enable it.
             // Open the log file for append and create the logger thread.
             //
+            String fileName = rotator != null? rotator.openSegment(): traceLogName;
             try
             {
-                traceLog = new PrintWriter(new BufferedWriter(new FileWriter(traceLogName, true)));
+                traceLog = new PrintWriter(new BufferedWriter(new FileWriter(fileName, true)));
+                segmentBytes = 0;
             }
             catch (IOException e)
             {
                 e.printStackTrace();
-                throw new RuntimeException("Failed to open trace log file " + traceLogName);
+                throw new RuntimeException("Failed to open trace log file " + fileName);
             }
             loggerThread = new Thread(this::loggerTask, traceLogName);
             loggerThread.start();
@@ -110,20 +259,218 @@ public class TrcTraceLogger
     /**
      * This method is called to log a message to the log file.
      *
+     * @param level specifies the message level, null if unknown.
      * @param msg specifies the message to be logged.
+     * @return true if the message was queued, false if it was dropped.
      */
-    public synchronized boolean logMessage(String msg)
+    public boolean logMessage(TrcDbgTrace.MsgLevel level, String msg)
     {
         boolean success = false;
 
-        if (isEnabled())
+        if (binaryLog != null)
+        {
+            success = binaryLog.logText(level, TrcTimer.getModeElapsedTime(), msg);
+        }
+        else if (enabled)
         {
-            success = msgQueue.add(msg);
+            success = enqueue(level, level != null? new LevelMsg(level, msg): msg);
         }
 
         return success;
     }   //logMessage
 
+    /**
+     * This method is called to log a message to the log file.
+     *
+     * @param msg specifies the message to be logged.
+     * @return true if the message was queued, false if it was dropped.
+     */
+    public boolean logMessage(String msg)
+    {
+        return logMessage(null, msg);
+    }   //logMessage
+
+    /**
+     * This method adds a message to the bounded message queue according to the overflow policy.
+     *
+     * @param level specifies the message level, null if unknown.
+     * @param entry specifies the message, a String, a LevelMsg or a TrcDbgTrace.DeferredMsg.
+     * @return true if the message was queued, false if it was dropped.
+     */
+    private boolean enqueue(TrcDbgTrace.MsgLevel level, Object entry)
+    {
+        boolean success;
+        OverflowPolicy policy = overflowPolicy;
+
+        if (policy == OverflowPolicy.BLOCK && Thread.currentThread() != loggerThread)
+        {
+            try
+            {
+                msgQueue.put(entry);
+                success = true;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                success = false;
+            }
+        }
+        else if (policy == OverflowPolicy.DROP_OLDEST)
+        {
+            while (!msgQueue.offer(entry))
+            {
+                Object oldest = msgQueue.poll();
+
+                if (oldest != null)
+                {
+                    countDroppedMessage(getLevel(oldest));
+                }
+            }
+            success = true;
+        }
+        else
+        {
+            success = msgQueue.offer(entry);
+        }
+
+        if (!success)
+        {
+            countDroppedMessage(level);
+        }
+
+        return success;
+    }   //enqueue
+
+    /**
+     * This method returns the message level of a queued message.
+     *
+     * @param entry specifies the queued message.
+     * @return message level, null if unknown.
+     */
+    private static TrcDbgTrace.MsgLevel getLevel(Object entry)
+    {
+        return entry instanceof TrcDbgTrace.DeferredMsg? ((TrcDbgTrace.DeferredMsg) entry).getLevel():
+               entry instanceof LevelMsg? ((LevelMsg) entry).level: null;
+    }   //getLevel
+
+    /**
+     * This method counts a dropped message.
+     *
+     * @param level specifies the message level, null if unknown.
+     */
+    private void countDroppedMessage(TrcDbgTrace.MsgLevel level)
+    {
+        droppedCounts.incrementAndGet(level != null? level.getValue(): 0);
+        droppedCount.incrementAndGet();
+    }   //countDroppedMessage
+
+    /**
+     * This method writes a report into the log if messages were dropped since the last report. It is called by the
+     * logger thread.
+     */
+    private void reportDroppedMessages()
+    {
+        long dropped = droppedCount.get();
+
+        if (dropped != reportedDroppedCount)
+        {
+            long sampledOut = TrcDbgTrace.getSampledOutCount();
+
+            writeMessage(
+                traceLogName + ".loggerTask_WARN [" + TrcTimer.getModeElapsedTime() + "] Dropped " +
+                (dropped - reportedDroppedCount) + " messages (total=" + dropped +
+                TrcBinaryTraceLog.levelCounts(droppedCounts) + ",sampledOut=" + sampledOut + ")");
+            reportedDroppedCount = dropped;
+            reportedSampledOutCount = sampledOut;
+        }
+    }   //reportDroppedMessages
+
+    /**
+     * This method queues a message to be formatted, printed to the debug log and logged by the logger thread. Only
+     * the text format supports it, in binary format only call site messages are deferred.
+     *
+     * @param msg specifies the deferred message.
+     * @return true if the logger took the message, whether it was queued or dropped and counted by the overflow
+     *         policy, false if the logger cannot defer messages and the caller must write it itself.
+     */
+    boolean logDeferred(TrcDbgTrace.DeferredMsg msg)
+    {
+        boolean taken = binaryLog == null && enabled;
+
+        if (taken)
+        {
+            // enqueue applies the overflow policy and counts a dropped message, so it must not be written again.
+            enqueue(msg.getLevel(), msg);
+        }
+
+        return taken;
+    }   //logDeferred
+
+    /**
+     * This method checks if the trace log is in binary format.
+     *
+     * @return true if binary format, false if text.
+     */
+    public boolean isBinaryFormat()
+    {
+        return binaryLog != null;
+    }   //isBinaryFormat
+
+    /**
+     * This method logs a call site message with its raw arguments. In text format, the message is formatted and
+     * queued like any other message.
+     *
+     * @param site specifies the call site.
+     * @param timestamp specifies the mode elapsed time in seconds.
+     * @param argCount specifies the number of valid arguments.
+     * @param arg0 specifies argument 0.
+     * @param arg1 specifies argument 1.
+     * @param arg2 specifies argument 2.
+     * @param arg3 specifies argument 3.
+     * @param arg4 specifies argument 4.
+     * @param arg5 specifies argument 5.
+     * @return true if the message was logged, false otherwise.
+     */
+    public boolean logEvent(
+        TrcDbgTrace.CallSite site, double timestamp, int argCount, double arg0, double arg1, double arg2,
+        double arg3, double arg4, double arg5)
+    {
+        return binaryLog != null?
+            binaryLog.logEvent(site, timestamp, argCount, arg0, arg1, arg2, arg3, arg4, arg5):
+            logMessage(
+                site.formatMessage(timestamp, argCount, new double[] {arg0, arg1, arg2, arg3, arg4, arg5}));
+    }   //logEvent
+
+    /**
+     * This method logs the definition of a newly registered call site. It is only needed in binary format.
+     *
+     * @param site specifies the call site.
+     */
+    public void logCallSite(TrcDbgTrace.CallSite site)
+    {
+        if (binaryLog != null)
+        {
+            binaryLog.logCallSite(site);
+        }
+    }   //logCallSite
+
+    /**
+     * This method writes a queued message to the trace log. Deferred messages are formatted and printed to the
+     * debug log here.
+     *
+     * @param entry specifies the queued message, a String, a LevelMsg or a TrcDbgTrace.DeferredMsg.
+     * @return the message written.
+     */
+    private String writeEntry(Object entry)
+    {
+        String msg =
+            entry instanceof TrcDbgTrace.DeferredMsg? ((TrcDbgTrace.DeferredMsg) entry).emit():
+            entry instanceof LevelMsg? ((LevelMsg) entry).msg: (String) entry;
+
+        writeMessage(msg);
+        return msg;
+    }   //writeEntry
+
     /**
      * This method writes the message to the trace log and also keeps track of logging performance.
      *
@@ -132,8 +479,16 @@ public class TrcTraceLogger
     private void writeMessage(String msg)
     {
         long startNanoTime = TrcTimer.getNanoTime();
-        traceLog.print(msg + "\r\n");
-        traceLog.flush();
+        if (traceLog != null)
+        {
+            traceLog.print(msg + "\r\n");
+            traceLog.flush();
+            segmentBytes += msg.length() + 2;
+            if (rotator != null && rotator.isRotationDue(segmentBytes))
+            {
+                rotateTraceLog();
+            }
+        }
         double elapsedNanoTime = TrcTimer.getNanoTime() - startNanoTime;
         totalNanoTime += elapsedNanoTime;
         totalMessages++;
@@ -147,6 +502,30 @@ public class TrcTraceLogger
         }
     }   //writeMessage
 
+    /**
+     * This method closes the current log segment and continues the log in a new one. It is called by the logger
+     * thread. If the new segment cannot be opened, the trace log is disabled and the remaining messages are
+     * discarded.
+     */
+    private void rotateTraceLog()
+    {
+        traceLog.close();
+        String fileName = rotator.rotate(segmentBytes);
+        try
+        {
+            traceLog = new PrintWriter(new BufferedWriter(new FileWriter(fileName, true)));
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            enabled = false;
+            traceLog = null;
+            Thread.currentThread().interrupt();
+            TrcDbgTrace.globalTraceErr(traceLogName, "Failed to open trace log segment %s: %s", fileName, e);
+        }
+        segmentBytes = 0;
+    }   //rotateTraceLog
+
     /**
      * This method closes the trace log file.
      */
@@ -157,6 +536,11 @@ public class TrcTraceLogger
             traceLog.close();
             traceLog = null;
         }
+
+        if (rotator != null)
+        {
+            rotator.close(segmentBytes);
+        }
     }   //closeTraceLog
 
     /**
@@ -167,6 +551,7 @@ public class TrcTraceLogger
      */
     private void loggerTask()
     {
+        Object entry;
         String msg;
 
         tracer.traceDebug(traceLogName, "Trace Logger starting...");
@@ -174,8 +559,9 @@ public class TrcTraceLogger
         {
             try
             {
-                msg = msgQueue.take();
-                writeMessage(msg);
+                entry = msgQueue.take();
+                msg = writeEntry(entry);
+                reportDroppedMessages();
                 tracer.traceDebug(traceLogName, "Logging message <" + msg + ">");
             }
             catch (InterruptedException e)
@@ -187,11 +573,18 @@ public class TrcTraceLogger
         //
         // The thread is terminating, empty the queue before exiting.
         //
-        while ((msg = msgQueue.poll()) != null)
+        while ((entry = msgQueue.poll()) != null)
         {
-            writeMessage(msg);
+            msg = writeEntry(entry);
             tracer.traceDebug(traceLogName, "Emptying message <" + msg + ">");
         }
+        reportDroppedMessages();
+        if (TrcDbgTrace.getSampledOutCount() != reportedSampledOutCount)
+        {
+            writeMessage(
+                traceLogName + ".loggerTask_INFO [" + TrcTimer.getModeElapsedTime() + "] Sampled out " +
+                TrcDbgTrace.getSampledOutCount() + " messages.");
+        }
         tracer.traceDebug(traceLogName, "Closing Trace Log");
 
         closeTraceLog();
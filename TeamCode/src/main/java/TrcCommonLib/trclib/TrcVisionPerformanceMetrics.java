@@ -3,15 +3,15 @@ package TrcCommonLib.trclib;
 
 /**
  * This class implements Performance Metrics for Vision. It keeps track of the average time for vision to process a
- * frame as well as the process frame rate.
+ * frame as well as the process frame rate. The processing times are recorded into the "instanceName.processTime"
+ * histogram of the TrcMetrics registry and the frame rate is published as the "instanceName.frameRate" gauge.
  */
 public class TrcVisionPerformanceMetrics
 {
     private final String instanceName;
     private final TrcDbgTrace tracer;
-    private double startTime = 0.0;
-    private double totalProcessedTime = 0.0;
-    private long totalProcessedFrames = 0;
+    private final TrcMetrics.Histogram processTimeHistogram;
+    private volatile double startTime = 0.0;
 
     /**
      * Constructor: Create an instance of the object.
@@ -23,6 +23,8 @@ public class TrcVisionPerformanceMetrics
     {
         this.instanceName = instanceName;
         this.tracer = tracer;
+        this.processTimeHistogram = TrcMetrics.getHistogram(instanceName + ".processTime");
+        TrcMetrics.getGauge(instanceName + ".frameRate").setSupplier(this::getFrameRate);
     }   //TrcVisionPerformanceMetrics
 
     /**
@@ -31,8 +33,7 @@ public class TrcVisionPerformanceMetrics
     public void reset()
     {
         startTime = TrcTimer.getCurrentTime();
-        totalProcessedTime = 0.0;
-        totalProcessedFrames = 0;
+        processTimeHistogram.reset();
     }   //reset
 
     /**
@@ -42,18 +43,27 @@ public class TrcVisionPerformanceMetrics
      */
     public void logProcessingTime(double startTime)
     {
-        totalProcessedTime += TrcTimer.getCurrentTime() - startTime;
-        totalProcessedFrames++;
+        processTimeHistogram.record((long) ((TrcTimer.getCurrentTime() - startTime)*1000000000L));
     }   //logProcessingTime
 
+    /**
+     * This method returns the processed frame rate since the last reset.
+     *
+     * @return frame rate in frames per second.
+     */
+    public double getFrameRate()
+    {
+        double elapsedTime = TrcTimer.getCurrentTime() - startTime;
+        return elapsedTime > 0.0? processTimeHistogram.getCount()/elapsedTime: 0.0;
+    }   //getFrameRate
+
     /**
      * This method prints the pipeline performance metrics using the given tracer.
      */
     public void printMetrics()
     {
         tracer.traceInfo(
-            instanceName, "AvgProcessTime=%.6f, FrameRate=%f",
-            totalProcessedTime/totalProcessedFrames, totalProcessedFrames/(TrcTimer.getCurrentTime() - startTime));
+            instanceName, "AvgProcessTime=%.6f, FrameRate=%f", processTimeHistogram.getAverage(), getFrameRate());
     }   //printMetrics
 
 }   //class TrcVisionPerformanceMetrics
@@ -2,8 +2,11 @@
 package TrcCommonLib.trclib;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import TrcCommonLib.trclib.TrcTaskMgr.TaskType;
 
@@ -13,6 +16,11 @@ import TrcCommonLib.trclib.TrcTaskMgr.TaskType;
  * If a heart beat is not sent within the heart beat threshold time, a stack trace for the thread will be dump to the
  * trace log. This allows us to catch thread deadlocks quite easily. Since watchdog is designed per thread, only one
  * watchdog needs to be registered for each thread.
+ * The Watchdog Manager also has an optional flight recorder. Each watchdog keeps the most recent heartbeat intervals
+ * (i.e. the loop times of the thread) and, when the flight recorder is enabled, the manager takes stack samples of a
+ * thread as soon as it starts lagging behind its heartbeat instead of waiting for the heart beat threshold to expire.
+ * When the thread recovers, a stall report with the recent loop times and the stack samples is dumped to the trace
+ * log. This helps diagnosing intermittent hiccups that are too short to trip the watchdog.
  */
 public class TrcWatchdogMgr
 {
@@ -21,10 +29,19 @@ public class TrcWatchdogMgr
 
     private static final double DEF_TASK_INTERVAL = 1.0;        // in seconds.
     private static final double DEF_HEARTBEAT_THRESHOLD = 1.0;  // in seconds.
+    private static final int LOOP_TIME_HISTORY_SIZE = 256;      // must be a power of 2.
+    private static final int MAX_STALL_SAMPLES = 16;
+    private static final int STALL_REPORT_LOOP_TIMES = 20;
+
+    private static volatile long lagThresholdNanos = 0;         // 0 means flight recorder is disabled.
 
     private static TrcWatchdogMgr instance;
+    private final double taskInterval;
+    private final TrcTaskMgr.TaskObject watchdogTaskObj;
     private static final ArrayList<Watchdog> watchdogList = new ArrayList<>();
     private static final HashMap<Thread, Watchdog> watchdogMap = new HashMap<>();
+    // Copy of the watchdog list the watchdog task checks outside of the list lock, only used by the watchdog task.
+    private Watchdog[] checkList = new Watchdog[0];
 
     /**
      * This class encapsulates the state of the watchdog. A watchdog has an identifiable name, an associated thread,
@@ -34,10 +51,21 @@ public class TrcWatchdogMgr
     {
         private final String name;
         private final double heartBeatThreshold;
+        private final long heartBeatThresholdNanos;
         private final Thread thread;
-        private volatile double heartBeatExpiredTime;
+        // Heart beat states are only written by the owner thread and published with lazySet so sending a heart beat
+        // does not need any synchronization.
+        private final AtomicLong lastHeartBeatNanoTime;
+        private final AtomicLong heartBeatCount = new AtomicLong();
+        private final AtomicLongArray loopTimes = new AtomicLongArray(LOOP_TIME_HISTORY_SIZE);
         private volatile boolean expired;
         private volatile boolean paused;
+        // Stall states are only accessed by the Watchdog Manager task.
+        private final ArrayList<StackTraceElement[]> stallSamples = new ArrayList<>();
+        private boolean lagging = false;
+        private long lagHeartBeatCount = 0;
+        private long maxLagNanos = 0;
+        private volatile int stallCount = 0;
 
         /**
          * Constructor: Creates an instance of the object.
@@ -51,8 +79,9 @@ public class TrcWatchdogMgr
         {
             this.name = name;
             this.heartBeatThreshold = heartBeatThreshold;
+            this.heartBeatThresholdNanos = (long) (heartBeatThreshold*1000000000L);
             this.thread = thread;
-            this.heartBeatExpiredTime = TrcTimer.getCurrentTime() + heartBeatThreshold;
+            this.lastHeartBeatNanoTime = new AtomicLong(TrcTimer.getNanoTime());
             this.expired = false;
             this.paused = paused;
         }   //Watchdog
@@ -61,7 +90,7 @@ public class TrcWatchdogMgr
          * This method is called to pause watchdog monitoring. It is useful for a thread to call this before going
          * into sleep or a wait knowing it won't be able to send periodic heartbeat to prevent a watchdog timeout.
          */
-        public synchronized void pauseWatch()
+        public void pauseWatch()
         {
             paused = true;
         }   //pauseWatch
@@ -70,26 +99,34 @@ public class TrcWatchdogMgr
          * This method is called to resume watchdog monitoring. It is useful for a thread to call this right after
          * waking up from a sleep or a wait so watchdog monitoring will be resumed.
          */
-        public synchronized void resumeWatch()
+        public void resumeWatch()
         {
+            if (thread == Thread.currentThread())
+            {
+                // Restart the heart beat clock so the paused period is not counted as a stall.
+                lastHeartBeatNanoTime.lazySet(TrcTimer.getNanoTime());
+            }
             paused = false;
         }   //resumeWatch
 
         /**
          * This method is called by the thread that registered the watchdog to send a heart beat. This will update
-         * the next heart beat expiration time.
+         * the heart beat timestamp and record the loop time since the previous heart beat. It does not take any lock.
          */
         public void sendHeartBeat()
         {
             if (this.thread == Thread.currentThread())
             {
-                double currTime = TrcTimer.getCurrentTime();
-
-                synchronized (this)
+                long currNanoTime = TrcTimer.getNanoTime();
+                long count = heartBeatCount.get();
+                int index = (int) (count & (LOOP_TIME_HISTORY_SIZE - 1));
+
+                loopTimes.lazySet(index, currNanoTime - lastHeartBeatNanoTime.get());
+                lastHeartBeatNanoTime.lazySet(currNanoTime);
+                heartBeatCount.lazySet(count + 1);
+                // Sending a heartbeat will also unpause a paused watchdog.
+                if (paused)
                 {
-                    // Sending a heartbeat will also unpause a paused watchdog.
-                    heartBeatExpiredTime = currTime + heartBeatThreshold;
-                    expired = false;
                     paused = false;
                 }
             }
@@ -104,24 +141,144 @@ public class TrcWatchdogMgr
         }   //sendHeartBeat
 
         /**
-         * This method checks if the watchdog has expired.
+         * This method checks if the watchdog has expired. If the flight recorder is enabled, it also takes a stack
+         * sample of the thread when it is lagging and dumps a stall report when the thread recovers.
          *
          * @return true if no heartbeat has been received for the specified threshold period, false otherwise.
          */
-        private synchronized boolean checkForExpiration()
+        private boolean checkForExpiration()
         {
-            double currTime = TrcTimer.getCurrentTime();
+            long lagThreshold = lagThresholdNanos;
+            long count = heartBeatCount.get();
+            long lag = TrcTimer.getNanoTime() - lastHeartBeatNanoTime.get();
+
+            if (lagging && (paused || count != lagHeartBeatCount))
+            {
+                // The thread has recovered (or has been paused) since we detected the lag.
+                if (!paused)
+                {
+                    reportStall(count);
+                }
+                lagging = false;
+                stallSamples.clear();
+            }
 
-            if (!paused && !expired && currTime > heartBeatExpiredTime)
+            if (paused)
             {
-                expired = true;
-                staticTracer.traceWarn(moduleName, "%s expired.", this);
-                TrcDbgTrace.printThreadStack(thread);
+                expired = false;
+            }
+            else
+            {
+                if (lagThreshold > 0 && lag > lagThreshold)
+                {
+                    if (!lagging)
+                    {
+                        lagging = true;
+                        lagHeartBeatCount = count;
+                        maxLagNanos = 0;
+                    }
+                    maxLagNanos = Math.max(maxLagNanos, lag);
+
+                    if (stallSamples.size() < MAX_STALL_SAMPLES)
+                    {
+                        stallSamples.add(thread.getStackTrace());
+                    }
+                }
+
+                if (lag <= heartBeatThresholdNanos)
+                {
+                    expired = false;
+                }
+                else if (!expired)
+                {
+                    expired = true;
+                    staticTracer.traceWarn(moduleName, "%s expired.", this);
+                    TrcDbgTrace.printThreadStack(thread);
+                }
             }
 
             return expired;
         }   //checkForExpiration
 
+        /**
+         * This method dumps a stall report of the thread to the trace log. It contains the longest loop time since
+         * the lag was detected, the most recent loop times and the stack samples taken while the thread was lagging.
+         * Consecutive identical stack samples are collapsed.
+         *
+         * @param count specifies the current heart beat count.
+         */
+        private void reportStall(long count)
+        {
+            long firstCount = Math.max(lagHeartBeatCount, count - LOOP_TIME_HISTORY_SIZE);
+            // The stalled loop may have been pushed out of the history already, so start with the largest lag seen.
+            long stallTime = maxLagNanos;
+
+            for (long i = firstCount; i < count; i++)
+            {
+                stallTime = Math.max(stallTime, loopTimes.get((int) (i & (LOOP_TIME_HISTORY_SIZE - 1))));
+            }
+            stallCount++;
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(
+                Locale.US, "%s stalled for %.3f sec (stall #%d, samples=%d).\nRecent loop times (msec):",
+                name, stallTime/1000000000.0, stallCount, stallSamples.size()));
+            for (long i = Math.max(0, count - STALL_REPORT_LOOP_TIMES); i < count; i++)
+            {
+                sb.append(String.format(
+                    Locale.US, " %.1f", loopTimes.get((int) (i & (LOOP_TIME_HISTORY_SIZE - 1)))/1000000.0));
+            }
+
+            for (int i = 0; i < stallSamples.size();)
+            {
+                StackTraceElement[] sample = stallSamples.get(i);
+                int repeats = 1;
+
+                while (i + repeats < stallSamples.size() && Arrays.equals(sample, stallSamples.get(i + repeats)))
+                {
+                    repeats++;
+                }
+
+                sb.append(String.format(Locale.US, "\nStack sample %d (x%d):", i, repeats));
+                for (StackTraceElement ste: sample)
+                {
+                    sb.append("\n    ").append(ste);
+                }
+                i += repeats;
+            }
+
+            staticTracer.traceWarn(moduleName, sb.toString());
+        }   //reportStall
+
+        /**
+         * This method returns the most recent loop times of the thread, i.e. the intervals between heart beats.
+         *
+         * @return array of loop times in seconds, oldest first.
+         */
+        public double[] getRecentLoopTimes()
+        {
+            long count = heartBeatCount.get();
+            int numLoops = (int) Math.min(count, LOOP_TIME_HISTORY_SIZE);
+            double[] times = new double[numLoops];
+
+            for (int i = 0; i < numLoops; i++)
+            {
+                times[i] = loopTimes.get((int) ((count - numLoops + i) & (LOOP_TIME_HISTORY_SIZE - 1)))/1000000000.0;
+            }
+
+            return times;
+        }   //getRecentLoopTimes
+
+        /**
+         * This method returns the number of stalls detected by the flight recorder on this watchdog.
+         *
+         * @return number of stalls.
+         */
+        public int getStallCount()
+        {
+            return stallCount;
+        }   //getStallCount
+
         /**
          * This method unregisters this watchdog from Watchdog Manager.
          * Important: this method must be called in the thread the watchdog is monitoring. In other words, the
@@ -158,8 +315,9 @@ public class TrcWatchdogMgr
         public String toString()
         {
             return String.format(
-                Locale.US, "([%.3f]%s:threshold=%f,expiredTime=%f,expired=%s,paused=s)",
-                TrcTimer.getCurrentTime(), name, heartBeatThreshold, heartBeatExpiredTime, expired, paused);
+                Locale.US, "([%.3f]%s:threshold=%f,lastHeartBeatAge=%f,expired=%s,paused=%s)",
+                TrcTimer.getCurrentTime(), name, heartBeatThreshold,
+                (TrcTimer.getNanoTime() - lastHeartBeatNanoTime.get())/1000000000.0, expired, paused);
         }   //toString
 
         /**
@@ -209,11 +367,40 @@ public class TrcWatchdogMgr
      */
     private TrcWatchdogMgr(double taskInterval)
     {
-        TrcTaskMgr.TaskObject watchdogTaskObj = TrcTaskMgr.createTask(moduleName, this::watchdogTask);
+        this.taskInterval = taskInterval;
+        watchdogTaskObj = TrcTaskMgr.createTask(moduleName, this::watchdogTask);
         watchdogTaskObj.registerTask(TaskType.STANDALONE_TASK, (long) (taskInterval*1000));
         staticTracer.traceDebug(moduleName, "Starting Watchdog Manager.");
     }   //TrcWatchdogMgr
 
+    /**
+     * This method enables or disables the flight recorder. When enabled, a thread whose last heart beat is older than
+     * the lag threshold is sampled every sampling interval until it sends a heart beat again, at which point a stall
+     * report is dumped to the trace log. The sampling interval is also the watchdog task interval, so it should be
+     * a fraction of the lag threshold for the samples to be meaningful.
+     *
+     * @param lagThreshold specifies the lag threshold in seconds, 0 to disable the flight recorder.
+     * @param samplingInterval specifies the sampling interval in seconds, ignored if lagThreshold is 0.
+     */
+    public static void setFlightRecorderEnabled(double lagThreshold, double samplingInterval)
+    {
+        TrcWatchdogMgr mgr = getInstance();
+
+        lagThresholdNanos = (long) (lagThreshold*1000000000L);
+        mgr.watchdogTaskObj.setTaskInterval(
+            (long) ((lagThreshold > 0.0? samplingInterval: mgr.taskInterval)*1000));
+    }   //setFlightRecorderEnabled
+
+    /**
+     * This method checks if the flight recorder is enabled.
+     *
+     * @return true if the flight recorder is enabled, false otherwise.
+     */
+    public static boolean isFlightRecorderEnabled()
+    {
+        return lagThresholdNanos > 0;
+    }   //isFlightRecorderEnabled
+
     /**
      * This method registers a new watchdog for the current thread if one is not already registered.
      * Important: this method must be called in the thread the watchdog is monitoring.
@@ -340,12 +527,18 @@ public class TrcWatchdogMgr
      */
     private void watchdogTask(TrcTaskMgr.TaskType taskType, TrcRobot.RunMode runMode, boolean slowPeriodicLoop)
     {
+        int numWatchdogs;
+
         synchronized (watchdogList)
         {
-            for (Watchdog watchdog: watchdogList)
-            {
-                watchdog.checkForExpiration();
-            }
+            numWatchdogs = watchdogList.size();
+            checkList = watchdogList.toArray(checkList);
+        }
+        // Stack sampling and stall reports are slow, do them without holding up registration and lookups.
+        for (int i = 0; i < numWatchdogs; i++)
+        {
+            checkList[i].checkForExpiration();
+            checkList[i] = null;
         }
     }   //watchdogTask
 
@@ -244,6 +244,17 @@ public class FtcImu extends TrcGyro
     // Overriding TrcGyro methods.
     //
 
+    /**
+     * This method returns the task object of the gyro task that reads and caches the gyro data.
+     *
+     * @return gyro task object.
+     */
+    @Override
+    public TrcTaskMgr.TaskObject getGyroTaskObject()
+    {
+        return gyroTaskObj;
+    }   //getGyroTaskObject
+
     /**
      * This method overrides the TrcGyro class and calls its own.
      */
@@ -32,8 +32,11 @@ import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.List;
 
+import TrcCommonLib.trclib.TrcConfig;
 import TrcCommonLib.trclib.TrcDbgTrace;
 import TrcCommonLib.trclib.TrcEvent;
+import TrcCommonLib.trclib.TrcLoopProfiler;
+import TrcCommonLib.trclib.TrcMetrics;
 import TrcCommonLib.trclib.TrcMotor;
 import TrcCommonLib.trclib.TrcPeriodicThread;
 import TrcCommonLib.trclib.TrcRobot;
@@ -51,6 +54,13 @@ public abstract class FtcOpMode extends LinearOpMode implements TrcRobot.RobotMo
 
     protected final static int NUM_DASHBOARD_LINES = 16;
     private final static long SLOW_LOOP_INTERVAL_NANO = 50000000;   // 50 msec (20 Hz)
+    private final static double LOOP_TIME_BUDGET = 0.02;            // 20 msec
+    // Loop phases recorded by the loop profiler.
+    private final static int PHASE_PRE_PERIODIC = 0;
+    private final static int PHASE_EVENT_CALLBACK = 1;
+    private final static int PHASE_PERIODIC = 2;
+    private final static int PHASE_POST_PERIODIC = 3;
+    private final static int PHASE_SDK = 4;
 
     private static TrcDbgTrace globalTracer = null;
     private static FtcOpMode instance = null;
@@ -62,6 +72,9 @@ public abstract class FtcOpMode extends LinearOpMode implements TrcRobot.RobotMo
 
     private static long loopStartNanoTime = 0;
     private final long[] totalElapsedTime = new long[10];
+    private final TrcLoopProfiler loopProfiler = new TrcLoopProfiler(
+        moduleName + ".loopProfiler", LOOP_TIME_BUDGET,
+        "prePeriodicTask", "eventCallback", "periodic", "postPeriodicTask", "sdk");
     private long initLoopCount;
     private long loopCount;
 
@@ -122,6 +135,29 @@ public abstract class FtcOpMode extends LinearOpMode implements TrcRobot.RobotMo
         return loopStartNanoTime/1000000000.0;
     }   //getElapsedTime
 
+    /**
+     * This method returns the loop profiler of the main robot loop. It records the time of each loop phase and of
+     * each task run by TrcTaskMgr, and keeps a history of the loops that exceeded the loop time budget.
+     *
+     * @return loop profiler.
+     */
+    public TrcLoopProfiler getLoopProfiler()
+    {
+        return loopProfiler;
+    }   //getLoopProfiler
+
+    /**
+     * This method dumps a snapshot of the loop profile to the given file. It can be called any time, including in
+     * the middle of a match.
+     *
+     * @param filePath specifies the file path, the snapshot is appended if the file exists.
+     * @return true if successful, false otherwise.
+     */
+    public boolean dumpLoopProfile(String filePath)
+    {
+        return loopProfiler.dumpToFile(filePath);
+    }   //dumpLoopProfile
+
     /**
      * This method returns the annotation object of the specifies opmode type if it is present.
      *
@@ -302,6 +338,11 @@ public abstract class FtcOpMode extends LinearOpMode implements TrcRobot.RobotMo
             }
         }
         TrcRobot.setRunMode(runMode);
+        //
+        // The app outlives the OpMode, drop the metrics registered by the previous OpMode so that printMetrics only
+        // reports the tasks, motors and timers of this one.
+        //
+        TrcMetrics.removeAll();
 
         robotThread = Thread.currentThread();
         robotThreadWatchdog = TrcWatchdogMgr.registerWatchdog(Thread.currentThread().getName() + ".watchdog");
@@ -325,8 +366,13 @@ public abstract class FtcOpMode extends LinearOpMode implements TrcRobot.RobotMo
         try
         {
             long startNanoTime;
+            long elapsedNanoTime;
             Arrays.fill(totalElapsedTime, 0L);
             //
+            // The app outlives the OpMode, pick up configuration files edited since the last OpMode.
+            //
+            TrcConfig.reloadAllModified();
+            //
             // robotInit contains code to initialize the robot.
             //
             globalTracer.traceDebug(moduleName, "RunMode(" + runMode + "): starting robotInit.");
@@ -368,6 +414,9 @@ public abstract class FtcOpMode extends LinearOpMode implements TrcRobot.RobotMo
             globalTracer.traceDebug(moduleName, "Running StartMode.");
             startMode(null, runMode);
 
+            loopProfiler.reset();
+            TrcTaskMgr.setTaskProfiler(loopProfiler);
+
             long prevLoopStartTime = 0L;
             long nextSlowLoopNanoTime = TrcTimer.getNanoTime();
             startNanoTime = nextSlowLoopNanoTime;
@@ -379,7 +428,10 @@ public abstract class FtcOpMode extends LinearOpMode implements TrcRobot.RobotMo
                 if (prevLoopStartTime > 0)
                 {
                     totalElapsedTime[3] += loopStartNanoTime - prevLoopStartTime;
+                    loopProfiler.recordPhase(PHASE_SDK, loopStartNanoTime - startNanoTime);
+                    loopProfiler.endLoop(loopStartNanoTime - prevLoopStartTime);
                 }
+                loopProfiler.startLoop();
                 prevLoopStartTime = loopStartNanoTime;
                 totalElapsedTime[4] += loopStartNanoTime - startNanoTime;
                 double opModeElapsedTime = TrcTimer.getModeElapsedTime();
@@ -392,29 +444,40 @@ public abstract class FtcOpMode extends LinearOpMode implements TrcRobot.RobotMo
                 //
                 // Pre-Periodic Task.
                 //
-                globalTracer.traceDebug(moduleName, "[" + loopCount + "]: running Pre-periodic tasks.");
+                globalTracer.traceDebug(
+                    moduleName, "runOpMode", this, op -> "[" + op.loopCount + "]: running Pre-periodic tasks.");
                 startNanoTime = TrcTimer.getNanoTime();
                 TrcTaskMgr.executeTaskType(TrcTaskMgr.TaskType.PRE_PERIODIC_TASK, runMode, slowPeriodicLoop);
-                totalElapsedTime[5] += TrcTimer.getNanoTime() - startNanoTime;
+                elapsedNanoTime = TrcTimer.getNanoTime() - startNanoTime;
+                totalElapsedTime[5] += elapsedNanoTime;
+                loopProfiler.recordPhase(PHASE_PRE_PERIODIC, elapsedNanoTime);
                 //
                 // Perform event callback here because pre-periodic tasks have finished processing sensor inputs and
                 // may have signaled events. We will do all the callbacks before running periodic code.
                 //
+                startNanoTime = TrcTimer.getNanoTime();
                 TrcEvent.performEventCallback();
+                loopProfiler.recordPhase(PHASE_EVENT_CALLBACK, TrcTimer.getNanoTime() - startNanoTime);
                 //
                 // Periodic.
                 //
-                globalTracer.traceDebug(moduleName, "[" + loopCount + "]: running Periodic.");
+                globalTracer.traceDebug(
+                    moduleName, "runOpMode", this, op -> "[" + op.loopCount + "]: running Periodic.");
                 startNanoTime = TrcTimer.getNanoTime();
                 periodic(opModeElapsedTime, slowPeriodicLoop);
-                totalElapsedTime[6] += TrcTimer.getNanoTime() - startNanoTime;
+                elapsedNanoTime = TrcTimer.getNanoTime() - startNanoTime;
+                totalElapsedTime[6] += elapsedNanoTime;
+                loopProfiler.recordPhase(PHASE_PERIODIC, elapsedNanoTime);
                 //
                 // Post-Periodic Task.
                 //
-                globalTracer.traceDebug(moduleName, "[" + loopCount + "]: running Post-periodic tasks.");
+                globalTracer.traceDebug(
+                    moduleName, "runOpMode", this, op -> "[" + op.loopCount + "]: running Post-periodic tasks.");
                 startNanoTime = TrcTimer.getNanoTime();
                 TrcTaskMgr.executeTaskType(TrcTaskMgr.TaskType.POST_PERIODIC_TASK, runMode, slowPeriodicLoop);
-                totalElapsedTime[7] += TrcTimer.getNanoTime() - startNanoTime;
+                elapsedNanoTime = TrcTimer.getNanoTime() - startNanoTime;
+                totalElapsedTime[7] += elapsedNanoTime;
+                loopProfiler.recordPhase(PHASE_POST_PERIODIC, elapsedNanoTime);
 
                 robotThreadWatchdog.sendHeartBeat();
                 //
@@ -424,6 +487,7 @@ public abstract class FtcOpMode extends LinearOpMode implements TrcRobot.RobotMo
                 totalElapsedTime[8] += startNanoTime - loopStartNanoTime;
             }
 
+            TrcTaskMgr.setTaskProfiler(null);
             globalTracer.traceDebug(moduleName, "Running StopMode.");
             startNanoTime = TrcTimer.getNanoTime();
             stopMode(runMode, null);
@@ -487,6 +551,23 @@ public abstract class FtcOpMode extends LinearOpMode implements TrcRobot.RobotMo
             totalElapsedTime[7] / 1000000000.0 / loopCount,         //postPeriodicTask
             totalElapsedTime[8] / 1000000000.0 / loopCount,         //loopSum
             totalElapsedTime[9] / 1000000000.0);                    //stopMode
+        globalTracer.traceInfo(
+            moduleName,
+            "[%s] Main robot loop profile (msec):\n" +
+            "            loop: %s\n" +
+            " prePeriodicTask: %s\n" +
+            "   eventCallback: %s\n" +
+            "        periodic: %s\n" +
+            "postPeriodicTask: %s\n" +
+            "             sdk: %s",
+            opModeName,
+            loopProfiler.getLoopHistogram(),
+            loopProfiler.getPhaseHistogram(PHASE_PRE_PERIODIC),
+            loopProfiler.getPhaseHistogram(PHASE_EVENT_CALLBACK),
+            loopProfiler.getPhaseHistogram(PHASE_PERIODIC),
+            loopProfiler.getPhaseHistogram(PHASE_POST_PERIODIC),
+            loopProfiler.getPhaseHistogram(PHASE_SDK));
+        TrcMetrics.printMetrics(globalTracer);
     }   //printPerformanceMetrics
 
     /**
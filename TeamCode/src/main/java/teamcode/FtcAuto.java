@@ -10,6 +10,7 @@ import TrcCommonLib.command.CmdTimedDrive;
 import TrcCommonLib.trclib.TrcDbgTrace;
 import TrcCommonLib.trclib.TrcPose2D;
 import TrcCommonLib.trclib.TrcRobot;
+import TrcCommonLib.trclib.TrcTelemetryRecorder;
 import TrcCommonLib.trclib.TrcTimer;
 import ftclib.FtcChoiceMenu;
 import ftclib.FtcMatchInfo;
@@ -95,6 +96,7 @@ public class FtcAuto extends FtcOpMode
     public static final AutoChoices autoChoices = new AutoChoices();
     private Robot robot;
     private TrcRobot.RobotCommand autoCommand;
+    private TrcTelemetryRecorder telemetryRecorder = null;
 
     //
     // Implements FtcOpMode abstract method.
@@ -119,7 +121,17 @@ public class FtcAuto extends FtcOpMode
             Robot.matchInfo = FtcMatchInfo.getMatchInfo();
             String filePrefix = String.format(
                 Locale.US, "%s%02d_Auto", Robot.matchInfo.matchType, Robot.matchInfo.matchNumber);
-            TrcDbgTrace.openTraceLog(RobotParams.LOG_FOLDER_PATH, filePrefix);
+            TrcDbgTrace.openTraceLog(
+                RobotParams.LOG_FOLDER_PATH, filePrefix, RobotParams.Preferences.useBinaryTraceLog,
+                RobotParams.TRACE_LOG_ROTATION);
+            TrcDbgTrace.setDeferredFormatting(RobotParams.Preferences.useDeferredTraceFormatting);
+            if (RobotParams.Preferences.useTelemetryRecorder)
+            {
+                // Record the autonomous state info as columnar telemetry instead of StateInfo events.
+                telemetryRecorder = new TrcTelemetryRecorder(
+                    RobotParams.LOG_FOLDER_PATH + "/" + TrcTimer.getCurrentTimeString() + "!" + filePrefix + ".trct");
+                TrcDbgTrace.setTelemetryRecorder(telemetryRecorder);
+            }
         }
         //
         // Create and run choice menus.
@@ -224,6 +236,11 @@ public class FtcAuto extends FtcOpMode
         {
             TrcDbgTrace.setTraceLogEnabled(true);
         }
+
+        if (telemetryRecorder != null)
+        {
+            telemetryRecorder.start();
+        }
         robot.globalTracer.traceInfo(
             moduleName, "***** Starting autonomous: " + TrcTimer.getCurrentTimeString() + " *****");
         if (Robot.matchInfo != null)
@@ -285,6 +302,13 @@ public class FtcAuto extends FtcOpMode
         robot.globalTracer.traceInfo(
             moduleName, "***** Stopping autonomous: " + TrcTimer.getCurrentTimeString() + " *****");
 
+        if (telemetryRecorder != null)
+        {
+            TrcDbgTrace.setTelemetryRecorder(null);
+            telemetryRecorder.close();
+            telemetryRecorder = null;
+        }
+
         if (TrcDbgTrace.isTraceLogOpened())
         {
             TrcDbgTrace.closeTraceLog();
@@ -69,7 +69,10 @@ public class FtcTeleOp extends FtcOpMode
             String filePrefix = Robot.matchInfo != null?
                 String.format(Locale.US, "%s%02d_TeleOp", Robot.matchInfo.matchType, Robot.matchInfo.matchNumber):
                 "Unknown_TeleOp";
-            TrcDbgTrace.openTraceLog(RobotParams.LOG_FOLDER_PATH, filePrefix);
+            TrcDbgTrace.openTraceLog(
+                RobotParams.LOG_FOLDER_PATH, filePrefix, RobotParams.Preferences.useBinaryTraceLog,
+                RobotParams.TRACE_LOG_ROTATION);
+            TrcDbgTrace.setDeferredFormatting(RobotParams.Preferences.useDeferredTraceFormatting);
         }
         //
         // Create and initialize Gamepads.
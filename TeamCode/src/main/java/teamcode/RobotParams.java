@@ -9,6 +9,7 @@ import org.openftc.easyopencv.OpenCvCameraRotation;
 
 import TrcCommonLib.trclib.TrcDriveBase.DriveOrientation;
 import TrcCommonLib.trclib.TrcHomographyMapper;
+import TrcCommonLib.trclib.TrcLogRotator;
 import TrcCommonLib.trclib.TrcPidController;
 import TrcCommonLib.trclib.TrcPose2D;
 import TrcCommonLib.trclib.TrcUtil;
@@ -38,6 +39,11 @@ public class RobotParams
         public static boolean inCompetition = false;
         // Miscellaneous
         public static boolean useTraceLog = true;
+        // Binary trace logs are cheaper to write but must be decoded with TrcBinaryTraceLog to be read.
+        public static boolean useBinaryTraceLog = inCompetition;
+        // Format text trace messages on the trace logger thread instead of the robot loop.
+        public static boolean useDeferredTraceFormatting = true;
+        public static boolean useTelemetryRecorder = true;
         public static boolean useLoopPerformanceMonitor = true;
         public static boolean useBlinkin = robotType == RobotType.CenterStageRobot || robotType == RobotType.PowerPlayRobot;
         public static boolean useBatteryMonitor = false;
@@ -78,6 +84,9 @@ public class RobotParams
     public static final String TEAM_FOLDER_PATH                 =
         Environment.getExternalStorageDirectory().getPath() + "/FIRST/ftc16607";
     public static final String LOG_FOLDER_PATH                  = TEAM_FOLDER_PATH + "/tracelogs";
+    // Rotate trace logs into 4MB compressed segments and keep at most 256MB of trace logs on the Control Hub.
+    public static final TrcLogRotator.Parameters TRACE_LOG_ROTATION =
+        new TrcLogRotator.Parameters().setSegmentLimits(4*1024*1024, 0.0).setRetention(256*1024*1024, 0, 0.0);
     public static final String STEERING_CALIBRATION_DATA_FILE   = "SteerCalibration.txt";
     //
     // Hardware names.
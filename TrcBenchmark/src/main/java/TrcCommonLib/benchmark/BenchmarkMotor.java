@@ -0,0 +1,280 @@
+package TrcCommonLib.benchmark;
+
+import TrcCommonLib.trclib.TrcMotor;
+import TrcCommonLib.trclib.TrcPidController;
+
+/**
+ * This class implements a motor without hardware for benchmarks. The position and velocity are set by the benchmark
+ * and everything else is a no-op, so a benchmark only measures the trclib code on top of the motor controller.
+ */
+public class BenchmarkMotor extends TrcMotor
+{
+    private volatile double position = 0.0;
+    private volatile double velocity = 0.0;
+    private double power = 0.0;
+    private boolean inverted = false;
+    private boolean positionSensorInverted = false;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     */
+    public BenchmarkMotor(String instanceName)
+    {
+        super(instanceName, null, null, null);
+    }   //BenchmarkMotor
+
+    /**
+     * This method sets the raw encoder position and velocity the motor controller reports.
+     *
+     * @param position specifies the raw encoder position.
+     * @param velocity specifies the raw encoder velocity.
+     */
+    public void setSensorData(double position, double velocity)
+    {
+        this.position = position;
+        this.velocity = velocity;
+    }   //setSensorData
+
+    //
+    // Implements TrcMotorController interface.
+    //
+
+    @Override
+    public void resetFactoryDefault()
+    {
+    }   //resetFactoryDefault
+
+    @Override
+    public double getBusVoltage()
+    {
+        return 12.0;
+    }   //getBusVoltage
+
+    @Override
+    public void setCurrentLimit(double currentLimit, double triggerThresholdCurrent, double triggerThresholdTime)
+    {
+    }   //setCurrentLimit
+
+    @Override
+    public void setCloseLoopRampRate(double rampTime)
+    {
+    }   //setCloseLoopRampRate
+
+    @Override
+    public void setOpenLoopRampRate(double rampTime)
+    {
+    }   //setOpenLoopRampRate
+
+    @Override
+    public void setBrakeModeEnabled(boolean enabled)
+    {
+    }   //setBrakeModeEnabled
+
+    @Override
+    public void enableMotorRevLimitSwitch(boolean normalClose)
+    {
+    }   //enableMotorRevLimitSwitch
+
+    @Override
+    public void enableMotorFwdLimitSwitch(boolean normalClose)
+    {
+    }   //enableMotorFwdLimitSwitch
+
+    @Override
+    public void disableMotorRevLimitSwitch()
+    {
+    }   //disableMotorRevLimitSwitch
+
+    @Override
+    public void disableMotorFwdLimitSwitch()
+    {
+    }   //disableMotorFwdLimitSwitch
+
+    @Override
+    public boolean isMotorRevLimitSwitchEnabled()
+    {
+        return false;
+    }   //isMotorRevLimitSwitchEnabled
+
+    @Override
+    public boolean isMotorFwdLimitSwitchEnabled()
+    {
+        return false;
+    }   //isMotorFwdLimitSwitchEnabled
+
+    @Override
+    public void setMotorRevLimitSwitchInverted(boolean inverted)
+    {
+    }   //setMotorRevLimitSwitchInverted
+
+    @Override
+    public void setMotorFwdLimitSwitchInverted(boolean inverted)
+    {
+    }   //setMotorFwdLimitSwitchInverted
+
+    @Override
+    public boolean isMotorRevLimitSwitchActive()
+    {
+        return false;
+    }   //isMotorRevLimitSwitchActive
+
+    @Override
+    public boolean isMotorFwdLimitSwitchActive()
+    {
+        return false;
+    }   //isMotorFwdLimitSwitchActive
+
+    @Override
+    public void setMotorRevSoftPositionLimit(Double limit)
+    {
+    }   //setMotorRevSoftPositionLimit
+
+    @Override
+    public void setMotorFwdSoftPositionLimit(Double limit)
+    {
+    }   //setMotorFwdSoftPositionLimit
+
+    @Override
+    public void setMotorPositionSensorInverted(boolean inverted)
+    {
+        positionSensorInverted = inverted;
+    }   //setMotorPositionSensorInverted
+
+    @Override
+    public boolean isMotorPositionSensorInverted()
+    {
+        return positionSensorInverted;
+    }   //isMotorPositionSensorInverted
+
+    @Override
+    public void resetMotorPosition()
+    {
+        position = 0.0;
+    }   //resetMotorPosition
+
+    @Override
+    public void setMotorInverted(boolean inverted)
+    {
+        this.inverted = inverted;
+    }   //setMotorInverted
+
+    @Override
+    public boolean isMotorInverted()
+    {
+        return inverted;
+    }   //isMotorInverted
+
+    @Override
+    public void setMotorPower(double power)
+    {
+        this.power = power;
+    }   //setMotorPower
+
+    @Override
+    public double getMotorPower()
+    {
+        return power;
+    }   //getMotorPower
+
+    @Override
+    public void setMotorVelocity(double velocity)
+    {
+    }   //setMotorVelocity
+
+    @Override
+    public double getMotorVelocity()
+    {
+        return velocity;
+    }   //getMotorVelocity
+
+    @Override
+    public void setMotorPosition(double position, double powerLimit)
+    {
+    }   //setMotorPosition
+
+    @Override
+    public double getMotorPosition()
+    {
+        return position;
+    }   //getMotorPosition
+
+    @Override
+    public void setMotorCurrent(double current)
+    {
+    }   //setMotorCurrent
+
+    @Override
+    public double getMotorCurrent()
+    {
+        return 0.0;
+    }   //getMotorCurrent
+
+    @Override
+    public void setMotorVelocityPidCoefficients(TrcPidController.PidCoefficients pidCoeff)
+    {
+    }   //setMotorVelocityPidCoefficients
+
+    @Override
+    public void setMotorVelocityPidTolerance(double tolerance)
+    {
+    }   //setMotorVelocityPidTolerance
+
+    @Override
+    public TrcPidController.PidCoefficients getMotorVelocityPidCoefficients()
+    {
+        return null;
+    }   //getMotorVelocityPidCoefficients
+
+    @Override
+    public boolean getMotorVelocityOnTarget()
+    {
+        return false;
+    }   //getMotorVelocityOnTarget
+
+    @Override
+    public void setMotorPositionPidCoefficients(TrcPidController.PidCoefficients pidCoeff)
+    {
+    }   //setMotorPositionPidCoefficients
+
+    @Override
+    public void setMotorPositionPidTolerance(double tolerance)
+    {
+    }   //setMotorPositionPidTolerance
+
+    @Override
+    public TrcPidController.PidCoefficients getMotorPositionPidCoefficients()
+    {
+        return null;
+    }   //getMotorPositionPidCoefficients
+
+    @Override
+    public boolean getMotorPositionOnTarget()
+    {
+        return false;
+    }   //getMotorPositionOnTarget
+
+    @Override
+    public void setMotorCurrentPidCoefficients(TrcPidController.PidCoefficients pidCoeff)
+    {
+    }   //setMotorCurrentPidCoefficients
+
+    @Override
+    public void setMotorCurrentPidTolerance(double tolerance)
+    {
+    }   //setMotorCurrentPidTolerance
+
+    @Override
+    public TrcPidController.PidCoefficients getMotorCurrentPidCoefficients()
+    {
+        return null;
+    }   //getMotorCurrentPidCoefficients
+
+    @Override
+    public boolean getMotorCurrentOnTarget()
+    {
+        return false;
+    }   //getMotorCurrentOnTarget
+
+}   //class BenchmarkMotor
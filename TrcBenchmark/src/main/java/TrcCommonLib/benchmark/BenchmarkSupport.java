@@ -0,0 +1,146 @@
+package TrcCommonLib.benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import TrcCommonLib.trclib.TrcDbgTrace;
+import TrcCommonLib.trclib.TrcPath;
+import TrcCommonLib.trclib.TrcWaypoint;
+
+/**
+ * This class provides the platform glue the trclib code expects from the robot framework so that it can run on a
+ * desktop JVM. On the robot, FtcOpMode sets up the global tracer with a debug log. Here we install one that discards
+ * all messages so that tracing does not skew the measurements.
+ */
+public class BenchmarkSupport
+{
+    private static TrcDbgTrace globalTracer = null;
+
+    /**
+     * This method installs a silent global debug log if it has not been installed already. It must be called in the
+     * setup of every benchmark before any trclib code is exercised.
+     */
+    public static synchronized void init()
+    {
+        if (globalTracer == null)
+        {
+            // FtcOpMode is the only caller name allowed to replace the global tracer.
+            globalTracer = new TrcDbgTrace("FtcOpMode", "Benchmark", (level, msg) -> {});
+        }
+    }   //init
+
+    /**
+     * This method creates an S shaped path with the given number of waypoints spaced 2 inches apart along the y-axis,
+     * which is about the resolution of a path generated by a path planner.
+     *
+     * @param numWaypoints specifies the number of waypoints.
+     * @return created path.
+     */
+    public static TrcPath createPath(int numWaypoints)
+    {
+        TrcWaypoint[] waypoints = new TrcWaypoint[numWaypoints];
+
+        for (int i = 0; i < numWaypoints; i++)
+        {
+            double y = i*2.0;
+            double x = 24.0*Math.sin(y/48.0);
+            double heading = Math.toDegrees(Math.atan2(0.5*Math.cos(y/48.0), 1.0));
+            waypoints[i] = new TrcWaypoint(0.05, x, y, heading, y, 0.0, 0.0, 0.0);
+        }
+
+        return new TrcPath(true, waypoints);
+    }   //createPath
+
+    /**
+     * This method returns a method handle for a private method so that a benchmark can measure the exact code the
+     * robot runs without widening its access. When the handle is kept in a static final field, the JIT inlines the
+     * call so it adds no overhead to the measurement.
+     *
+     * @param cls specifies the class declaring the method.
+     * @param name specifies the method name.
+     * @param parameterTypes specifies the method parameter types.
+     * @return method handle of the method.
+     */
+    public static MethodHandle findPrivateMethod(Class<?> cls, String name, Class<?>... parameterTypes)
+    {
+        try
+        {
+            Method method = cls.getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("Failed to access " + cls.getSimpleName() + "." + name, e);
+        }
+    }   //findPrivateMethod
+
+    /**
+     * This method returns a method handle that sets a private field so that a benchmark can reset internal state
+     * between invocations. When the handle is kept in a static final field, the JIT inlines it.
+     *
+     * @param cls specifies the class declaring the field.
+     * @param name specifies the field name.
+     * @return method handle of the field setter.
+     */
+    public static MethodHandle findPrivateSetter(Class<?> cls, String name)
+    {
+        try
+        {
+            Field field = cls.getDeclaredField(name);
+            field.setAccessible(true);
+            return MethodHandles.lookup().unreflectSetter(field);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("Failed to access " + cls.getSimpleName() + "." + name, e);
+        }
+    }   //findPrivateSetter
+
+    /**
+     * This method returns the value of a private field. It is only meant to be used in benchmark setup.
+     *
+     * @param cls specifies the class declaring the field.
+     * @param obj specifies the object to get the field from, null for a static field.
+     * @param name specifies the field name.
+     * @return field value.
+     */
+    public static Object getPrivateField(Class<?> cls, Object obj, String name)
+    {
+        try
+        {
+            Field field = cls.getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(obj);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("Failed to access " + cls.getSimpleName() + "." + name, e);
+        }
+    }   //getPrivateField
+
+    /**
+     * This method sets the value of a private field. It is only meant to be used in benchmark setup.
+     *
+     * @param cls specifies the class declaring the field.
+     * @param obj specifies the object to set the field of, null for a static field.
+     * @param name specifies the field name.
+     * @param value specifies the value to set.
+     */
+    public static void setPrivateField(Class<?> cls, Object obj, String name, Object value)
+    {
+        try
+        {
+            Field field = cls.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(obj, value);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("Failed to access " + cls.getSimpleName() + "." + name, e);
+        }
+    }   //setPrivateField
+
+}   //class BenchmarkSupport
@@ -0,0 +1,76 @@
+package TrcCommonLib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import TrcCommonLib.trclib.TrcConfig;
+import TrcCommonLib.trclib.TrcHashMap;
+
+/**
+ * This class benchmarks reading a parameter from a TrcHashMap, which hashes the name and unboxes the value on every
+ * read, and from a TrcConfig with a key resolved at setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrcConfigBenchmark
+{
+    private static final int NUM_PARAMS = 32;
+
+    private final TrcHashMap<String, Object> hashMap = new TrcHashMap<>();
+    private String paramName;
+    private TrcConfig config;
+    private TrcConfig.DoubleKey paramKey;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        BenchmarkSupport.init();
+        TrcConfig.Builder builder = new TrcConfig.Builder("benchConfig");
+        for (int i = 0; i < NUM_PARAMS; i++)
+        {
+            hashMap.add("param" + i, i*0.5);
+            builder.addDouble("param" + i, i*0.5);
+        }
+        config = builder.build();
+        paramName = "param" + NUM_PARAMS/2;
+        paramKey = config.getDoubleKey(paramName);
+    }   //setup
+
+    /**
+     * Reads a double parameter from a TrcHashMap.
+     *
+     * @return parameter value.
+     */
+    @Benchmark
+    public double hashMapGetDouble()
+    {
+        return hashMap.getDouble(paramName);
+    }   //hashMapGetDouble
+
+    /**
+     * Reads a double parameter from a TrcConfig by its key.
+     *
+     * @return parameter value.
+     */
+    @Benchmark
+    public double configGetDouble()
+    {
+        return config.getDouble(paramKey);
+    }   //configGetDouble
+
+}   //class TrcConfigBenchmark
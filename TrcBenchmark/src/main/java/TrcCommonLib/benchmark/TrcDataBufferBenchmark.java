@@ -0,0 +1,115 @@
+package TrcCommonLib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import TrcCommonLib.trclib.TrcDataBuffer;
+
+/**
+ * This class benchmarks TrcDataBuffer on a full buffer, which is the steady state of the sensor filters that use it:
+ * every add evicts the oldest value. All operations should be independent of the buffer size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrcDataBufferBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int bufferSize;
+
+    private TrcDataBuffer dataBuffer;
+    private double[] copyBuffer;
+    private double nextValue;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        BenchmarkSupport.init();
+        dataBuffer = new TrcDataBuffer("benchBuffer", bufferSize);
+        copyBuffer = new double[bufferSize];
+        for (int i = 0; i < bufferSize; i++)
+        {
+            dataBuffer.addValue(getNextValue());
+        }
+    }   //setup
+
+    /**
+     * This method generates a slowly varying signal with some jitter.
+     *
+     * @return next value.
+     */
+    private double getNextValue()
+    {
+        nextValue += 0.1;
+        return Math.sin(nextValue)*100.0 + (nextValue*7.0)%3.0;
+    }   //getNextValue
+
+    /**
+     * Adds a value to the full buffer, which evicts the oldest value.
+     */
+    @Benchmark
+    public void addValue()
+    {
+        dataBuffer.addValue(getNextValue());
+    }   //addValue
+
+    /**
+     * Returns the minimum value in the buffer.
+     *
+     * @return minimum value.
+     */
+    @Benchmark
+    public Double getMinimumValue()
+    {
+        return dataBuffer.getMinimumValue();
+    }   //getMinimumValue
+
+    /**
+     * Returns the maximum value in the buffer.
+     *
+     * @return maximum value.
+     */
+    @Benchmark
+    public Double getMaximumValue()
+    {
+        return dataBuffer.getMaximumValue();
+    }   //getMaximumValue
+
+    /**
+     * Returns the average value of the buffer.
+     *
+     * @return average value.
+     */
+    @Benchmark
+    public double getAverageValue()
+    {
+        return dataBuffer.getAverageValue();
+    }   //getAverageValue
+
+    /**
+     * Copies the buffer into a preallocated array.
+     *
+     * @return number of values copied.
+     */
+    @Benchmark
+    public int getBufferedData()
+    {
+        return dataBuffer.getBufferedData(copyBuffer);
+    }   //getBufferedData
+
+}   //class TrcDataBufferBenchmark
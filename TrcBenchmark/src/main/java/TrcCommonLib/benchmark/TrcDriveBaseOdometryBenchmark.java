@@ -0,0 +1,100 @@
+package TrcCommonLib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import TrcCommonLib.trclib.TrcDriveBase;
+import TrcCommonLib.trclib.TrcMecanumDriveBase;
+import TrcCommonLib.trclib.TrcMotor;
+import TrcCommonLib.trclib.TrcRobot;
+import TrcCommonLib.trclib.TrcTaskMgr;
+
+/**
+ * This class benchmarks one odometry update of a mecanum drive base as the IO thread does it: the motor odometry
+ * task samples the encoders of the four wheels, then the drive base odometry task computes the pose delta and
+ * integrates it on a curved path. The wheels are driven along an arc so the curvature math is exercised. The tasks
+ * are called directly on the benchmark thread instead of being registered with TrcTaskMgr.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrcDriveBaseOdometryBenchmark
+{
+    private static final MethodHandle motorOdometryTask = BenchmarkSupport.findPrivateMethod(
+        TrcMotor.class, "odometryTask", TrcTaskMgr.TaskType.class, TrcRobot.RunMode.class, boolean.class);
+    private static final MethodHandle driveBaseOdometryTask = BenchmarkSupport.findPrivateMethod(
+        TrcDriveBase.class, "odometryTask", TrcTaskMgr.TaskType.class, TrcRobot.RunMode.class, boolean.class);
+    // Encoder counts per loop of the left and right wheels, different so the robot drives along an arc.
+    private static final double LEFT_COUNTS_PER_LOOP = 12.0;
+    private static final double RIGHT_COUNTS_PER_LOOP = 10.0;
+
+    private BenchmarkMotor[] motors;
+    private TrcDriveBase driveBase;
+    private List<TrcMotor> odometryMotors;
+    private double leftPos;
+    private double rightPos;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup()
+    {
+        BenchmarkSupport.init();
+        motors = new BenchmarkMotor[] {
+            new BenchmarkMotor("lfMotor"), new BenchmarkMotor("lbMotor"),
+            new BenchmarkMotor("rfMotor"), new BenchmarkMotor("rbMotor")};
+        driveBase = new TrcMecanumDriveBase(motors[0], motors[1], motors[2], motors[3]);
+        driveBase.setOdometryScales(0.01, 0.01);
+        // Enable motor odometry without registering the odometry tasks, the benchmark calls them directly.
+        odometryMotors = (List<TrcMotor>) BenchmarkSupport.getPrivateField(TrcMotor.class, null, "odometryMotors");
+        for (BenchmarkMotor motor: motors)
+        {
+            BenchmarkSupport.setPrivateField(TrcMotor.class, motor, "odometryEnabled", true);
+            odometryMotors.add(motor);
+        }
+        leftPos = rightPos = 0.0;
+    }   //setup
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        odometryMotors.clear();
+    }   //tearDown
+
+    /**
+     * Advances the wheel encoders by one loop and runs the motor and drive base odometry tasks.
+     *
+     * @throws Throwable if the odometry tasks throw.
+     */
+    @Benchmark
+    public void updateOdometry() throws Throwable
+    {
+        leftPos += LEFT_COUNTS_PER_LOOP;
+        rightPos += RIGHT_COUNTS_PER_LOOP;
+        motors[0].setSensorData(leftPos, LEFT_COUNTS_PER_LOOP*100.0);
+        motors[1].setSensorData(leftPos, LEFT_COUNTS_PER_LOOP*100.0);
+        motors[2].setSensorData(rightPos, RIGHT_COUNTS_PER_LOOP*100.0);
+        motors[3].setSensorData(rightPos, RIGHT_COUNTS_PER_LOOP*100.0);
+
+        motorOdometryTask.invokeExact(TrcTaskMgr.TaskType.STANDALONE_TASK, TrcRobot.RunMode.TELEOP_MODE, false);
+        driveBaseOdometryTask.invokeExact(
+            driveBase, TrcTaskMgr.TaskType.INPUT_TASK, TrcRobot.RunMode.TELEOP_MODE, false);
+    }   //updateOdometry
+
+}   //class TrcDriveBaseOdometryBenchmark
@@ -0,0 +1,100 @@
+package TrcCommonLib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+import TrcCommonLib.trclib.TrcMecanumDriveBase;
+import TrcCommonLib.trclib.TrcPath;
+import TrcCommonLib.trclib.TrcPidController;
+import TrcCommonLib.trclib.TrcPose2D;
+import TrcCommonLib.trclib.TrcPurePursuitDrive;
+import TrcCommonLib.trclib.TrcRobot;
+import TrcCommonLib.trclib.TrcTaskMgr;
+import TrcCommonLib.trclib.TrcWaypoint;
+
+/**
+ * This class benchmarks one robot loop of the drive stack: a full pure pursuit drive task pass (robot pose, following
+ * point, PID outputs and motor powers) and the drive base getters the PID drive reads every loop. Run with -prof gc;
+ * gc.alloc.rate.norm is the number of bytes allocated per loop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrcDriveControlCycleBenchmark
+{
+    private static final MethodHandle driveTask = BenchmarkSupport.findPrivateMethod(
+        TrcPurePursuitDrive.class, "driveTask", TrcTaskMgr.TaskType.class, TrcRobot.RunMode.class, boolean.class);
+    private static final MethodHandle setPathIndex =
+        BenchmarkSupport.findPrivateSetter(TrcPurePursuitDrive.class, "pathIndex");
+    private static final int NUM_WAYPOINTS = 100;
+
+    private TrcMecanumDriveBase driveBase;
+    private TrcPurePursuitDrive purePursuitDrive;
+    private int onPathIndex;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable
+    {
+        BenchmarkSupport.init();
+        driveBase = new TrcMecanumDriveBase(
+            new BenchmarkMotor("lfMotor"), new BenchmarkMotor("lbMotor"),
+            new BenchmarkMotor("rfMotor"), new BenchmarkMotor("rbMotor"));
+        TrcPidController.PidCoefficients posPidCoeff = new TrcPidController.PidCoefficients(0.1);
+        purePursuitDrive = new TrcPurePursuitDrive(
+            "benchPurePursuit", driveBase, 6.0, 1.0, 2.0, posPidCoeff, posPidCoeff,
+            new TrcPidController.PidCoefficients(0.02), new TrcPidController.PidCoefficients(0.0, 0.0, 0.0, 0.01));
+
+        TrcPath path = BenchmarkSupport.createPath(NUM_WAYPOINTS);
+        // Start from the field origin without a timeout. The task manager is not running, so the drive task only
+        // runs when the benchmark calls it.
+        purePursuitDrive.start(path, null, 0.0);
+        // Put the robot next to the middle of the path and let the drive catch up once so that the benchmark
+        // measures the steady state where the path index does not change.
+        TrcWaypoint midPoint = path.getWaypoint(NUM_WAYPOINTS/2);
+        driveBase.setFieldPosition(new TrcPose2D(midPoint.pose.x + 0.5, midPoint.pose.y, midPoint.pose.angle));
+        setPathIndex.invokeExact(purePursuitDrive, NUM_WAYPOINTS/2);
+        purePursuitCycle();
+        onPathIndex = (int) BenchmarkSupport.getPrivateField(TrcPurePursuitDrive.class, purePursuitDrive, "pathIndex");
+    }   //setup
+
+    /**
+     * Runs one pass of the pure pursuit drive task with the robot on the path.
+     *
+     * @throws Throwable if the drive task throws.
+     */
+    @Benchmark
+    public void purePursuitCycle() throws Throwable
+    {
+        setPathIndex.invokeExact(purePursuitDrive, onPathIndex);
+        driveTask.invokeExact(
+            purePursuitDrive, TrcTaskMgr.TaskType.POST_PERIODIC_TASK, TrcRobot.RunMode.AUTO_MODE, false);
+    }   //purePursuitCycle
+
+    /**
+     * Reads the drive base position and velocity the way the PID drive's controllers do every loop.
+     *
+     * @return sum of the readings.
+     */
+    @Benchmark
+    public double pidDriveInputs()
+    {
+        return driveBase.getXPosition() + driveBase.getYPosition() +
+               driveBase.getXVelocity() + driveBase.getYVelocity();
+    }   //pidDriveInputs
+
+}   //class TrcDriveControlCycleBenchmark
@@ -0,0 +1,99 @@
+package TrcCommonLib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import TrcCommonLib.trclib.TrcEvent;
+
+/**
+ * This class benchmarks TrcEvent callback dispatch: hooking up callbacks, signaling the events and draining them
+ * on the owner thread the way a periodic thread loop does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrcEventBenchmark
+{
+    @Param({"1", "16"})
+    public int numEvents;
+
+    private TrcEvent[] events;
+    private TrcEvent idleEvent;
+    private TrcEvent.Callback callback;
+    private long callbackCount;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        BenchmarkSupport.init();
+        // Register the benchmark thread for event callbacks the same way a periodic thread would.
+        TrcEvent.registerEventCallback();
+        events = new TrcEvent[numEvents];
+        for (int i = 0; i < numEvents; i++)
+        {
+            events[i] = new TrcEvent("benchEvent" + i);
+        }
+        // Most events have a callback pending for a long time, keep one around that is never signaled.
+        idleEvent = new TrcEvent("idleEvent");
+        idleEvent.setCallback(context -> callbackCount++, null);
+        callback = context -> callbackCount++;
+        callbackCount = 0;
+    }   //setup
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        TrcEvent.unregisterEventCallback();
+    }   //tearDown
+
+    /**
+     * Sets callbacks on the events, signals them and performs the callbacks.
+     *
+     * @return number of callbacks performed so far.
+     */
+    @Benchmark
+    public long signalAndDispatch()
+    {
+        for (TrcEvent event: events)
+        {
+            event.setCallback(callback, null);
+        }
+
+        for (TrcEvent event: events)
+        {
+            event.signal();
+        }
+        TrcEvent.performEventCallback();
+
+        return callbackCount;
+    }   //signalAndDispatch
+
+    /**
+     * Performs the callbacks when no event has been signaled, which is what most loops do.
+     *
+     * @return number of callbacks performed so far.
+     */
+    @Benchmark
+    public long dispatchIdle()
+    {
+        TrcEvent.performEventCallback();
+        return callbackCount;
+    }   //dispatchIdle
+
+}   //class TrcEventBenchmark
@@ -0,0 +1,164 @@
+package TrcCommonLib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import TrcCommonLib.trclib.TrcCompiledPath;
+import TrcCommonLib.trclib.TrcPath;
+import TrcCommonLib.trclib.TrcPathFile;
+import TrcCommonLib.trclib.TrcPose2D;
+import TrcCommonLib.trclib.TrcWaypoint;
+
+/**
+ * This class benchmarks TrcPath.trapezoidVelocity, which is run on the robot thread every time a pure pursuit drive
+ * starts with a velocity limit, compares the arc length of a TrcPath with lookups on its compiled form, and compares
+ * loading a path from a CSV file with loading it from a binary path file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrcPathBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int numWaypoints;
+
+    private TrcPath path;
+    private TrcCompiledPath compiledPath;
+    private final TrcPose2D pose = new TrcPose2D();
+    private String csvFile;
+    private String binaryFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        BenchmarkSupport.init();
+        path = BenchmarkSupport.createPath(numWaypoints);
+        compiledPath = path.compile();
+
+        File csv = File.createTempFile("benchPath", ".csv");
+        csv.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(csv))
+        {
+            out.println("timeStep,x,y,heading,position,velocity,acceleration,jerk");
+            for (int i = 0; i < numWaypoints; i++)
+            {
+                TrcWaypoint waypoint = path.getWaypoint(i);
+                out.println(
+                    waypoint.timeStep + "," + waypoint.pose.x + "," + waypoint.pose.y + "," + waypoint.pose.angle +
+                    "," + waypoint.encoderPosition + "," + waypoint.velocity + "," + waypoint.acceleration + "," +
+                    waypoint.jerk);
+            }
+        }
+        csvFile = csv.getPath();
+        binaryFile = csvFile.replaceFirst("\\.csv$", TrcPathFile.FILE_EXTENSION);
+        new File(binaryFile).deleteOnExit();
+        TrcPathFile.convertCsv(csvFile, binaryFile, true);
+    }   //setup
+
+    /**
+     * Applies a trapezoidal velocity profile to the path.
+     *
+     * @return new path with the velocity profile.
+     */
+    @Benchmark
+    public TrcPath trapezoidVelocity()
+    {
+        return path.trapezoidVelocity(60.0, 120.0);
+    }   //trapezoidVelocity
+
+    /**
+     * Compiles the path into parallel arrays, which is done once every time a pure pursuit drive starts.
+     *
+     * @return compiled path.
+     */
+    @Benchmark
+    public TrcCompiledPath compile()
+    {
+        return path.compile();
+    }   //compile
+
+    /**
+     * Calculates the arc length of the path by walking all of its segments.
+     *
+     * @return arc length of the path.
+     */
+    @Benchmark
+    public double arcLength()
+    {
+        return path.getArcLength();
+    }   //arcLength
+
+    /**
+     * Looks up the pose two thirds along the compiled path by arc length.
+     *
+     * @return pose at the distance.
+     */
+    @Benchmark
+    public TrcPose2D poseAtDistance()
+    {
+        return compiledPath.getPoseAtDistance(compiledPath.getArcLength()*2.0/3.0, pose);
+    }   //poseAtDistance
+
+    /**
+     * Looks up the pose two thirds along the compiled path by time.
+     *
+     * @return pose at the time.
+     */
+    @Benchmark
+    public TrcPose2D poseAtTime()
+    {
+        return compiledPath.getPoseAtTime(compiledPath.getDuration()*2.0/3.0, pose);
+    }   //poseAtTime
+
+    /**
+     * Loads the path from a CSV file.
+     *
+     * @return loaded path.
+     */
+    @Benchmark
+    public TrcPath loadCsv()
+    {
+        return TrcPath.loadPathFromCsv(true, csvFile, false);
+    }   //loadCsv
+
+    /**
+     * Loads the path from a memory mapped binary path file.
+     *
+     * @return loaded path.
+     */
+    @Benchmark
+    public TrcPath loadBinary()
+    {
+        return TrcPath.loadPathFromBinary(binaryFile, false);
+    }   //loadBinary
+
+    /**
+     * Loads the compiled path from a memory mapped binary path file, without creating waypoint objects.
+     *
+     * @return loaded compiled path.
+     */
+    @Benchmark
+    public TrcCompiledPath loadCompiledBinary()
+    {
+        return TrcPathFile.loadCompiledPath(binaryFile, false);
+    }   //loadCompiledBinary
+
+}   //class TrcPathBenchmark
@@ -0,0 +1,84 @@
+package TrcCommonLib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import TrcCommonLib.trclib.TrcPidController;
+
+/**
+ * This class benchmarks TrcPidController.getOutput, which every PID controlled motor and drive calls once per loop.
+ * The input moves towards the target so the integral and derivative terms are exercised like on the robot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrcPidControllerBenchmark
+{
+    private static final double TARGET = 100.0;
+
+    private TrcPidController pidCtrl;
+    private TrcPidController rampedPidCtrl;
+    private double input;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        BenchmarkSupport.init();
+        TrcPidController.PidCoefficients pidCoeff = new TrcPidController.PidCoefficients(0.02, 0.001, 0.0015, 0.0, 20.0);
+        pidCtrl = new TrcPidController("benchPid", pidCoeff, 1.0, this::getInput);
+        pidCtrl.setTarget(TARGET);
+        rampedPidCtrl = new TrcPidController("benchRampedPid", pidCoeff, 1.0, this::getInput);
+        rampedPidCtrl.setRampRate(0.5);
+        rampedPidCtrl.setTarget(TARGET);
+        input = 0.0;
+    }   //setup
+
+    /**
+     * This method simulates the feedback device. It sweeps the input up to the target and starts over so the error
+     * covers the whole range including the integration zone.
+     *
+     * @return simulated input value.
+     */
+    private double getInput()
+    {
+        input = input >= TARGET? 0.0: input + 0.5;
+        return input;
+    }   //getInput
+
+    /**
+     * Calculates the PID output.
+     *
+     * @return PID output.
+     */
+    @Benchmark
+    public double getOutput()
+    {
+        return pidCtrl.getOutput();
+    }   //getOutput
+
+    /**
+     * Calculates the PID output with a ramp rate limit.
+     *
+     * @return PID output.
+     */
+    @Benchmark
+    public double getOutputWithRampRate()
+    {
+        return rampedPidCtrl.getOutput();
+    }   //getOutputWithRampRate
+
+}   //class TrcPidControllerBenchmark
@@ -0,0 +1,90 @@
+package TrcCommonLib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import TrcCommonLib.trclib.TrcPose2D;
+
+/**
+ * This class benchmarks the TrcPose2D transforms used by odometry, pure pursuit and vision on every loop, both the
+ * allocating form and the form writing into a destination pose. Run with -prof gc to compare gc.alloc.rate.norm.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrcPose2DBenchmark
+{
+    private TrcPose2D robotPose;
+    private TrcPose2D targetPose;
+    private TrcPose2D relativePose;
+    private TrcPose2D resultPose;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        BenchmarkSupport.init();
+        robotPose = new TrcPose2D(24.0, -36.0, 30.0);
+        targetPose = new TrcPose2D(-12.0, 48.0, 135.0);
+        relativePose = new TrcPose2D(6.0, 18.0, -45.0);
+        resultPose = new TrcPose2D();
+    }   //setup
+
+    /**
+     * Transforms the target pose into the robot's reference frame.
+     *
+     * @return target pose relative to the robot.
+     */
+    @Benchmark
+    public TrcPose2D relativeTo()
+    {
+        return targetPose.relativeTo(robotPose);
+    }   //relativeTo
+
+    /**
+     * Applies a robot relative pose to the robot pose.
+     *
+     * @return resulting absolute pose.
+     */
+    @Benchmark
+    public TrcPose2D addRelativePose()
+    {
+        return robotPose.addRelativePose(relativePose);
+    }   //addRelativePose
+
+    /**
+     * Transforms the target pose into the robot's reference frame without allocating.
+     *
+     * @return target pose relative to the robot.
+     */
+    @Benchmark
+    public TrcPose2D relativeToOut()
+    {
+        return targetPose.relativeTo(robotPose, resultPose);
+    }   //relativeToOut
+
+    /**
+     * Applies a robot relative pose to the robot pose without allocating.
+     *
+     * @return resulting absolute pose.
+     */
+    @Benchmark
+    public TrcPose2D addRelativePoseOut()
+    {
+        return robotPose.addRelativePose(relativePose, resultPose);
+    }   //addRelativePoseOut
+
+}   //class TrcPose2DBenchmark
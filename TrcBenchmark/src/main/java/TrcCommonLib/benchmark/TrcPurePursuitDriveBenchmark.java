@@ -0,0 +1,105 @@
+package TrcCommonLib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+import TrcCommonLib.trclib.TrcMecanumDriveBase;
+import TrcCommonLib.trclib.TrcPath;
+import TrcCommonLib.trclib.TrcPidController;
+import TrcCommonLib.trclib.TrcPose2D;
+import TrcCommonLib.trclib.TrcPurePursuitDrive;
+import TrcCommonLib.trclib.TrcWaypoint;
+
+/**
+ * This class benchmarks TrcPurePursuitDrive.getFollowingPoint, which the drive task calls every loop to find the
+ * point on the path the robot should chase. The path and its compiled form are assigned directly instead of calling
+ * start so that no drive task runs in the background.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrcPurePursuitDriveBenchmark
+{
+    private static final MethodHandle getFollowingPoint = BenchmarkSupport.findPrivateMethod(
+        TrcPurePursuitDrive.class, "getFollowingPoint", TrcPose2D.class);
+    private static final MethodHandle setPathIndex =
+        BenchmarkSupport.findPrivateSetter(TrcPurePursuitDrive.class, "pathIndex");
+    private static final double PROXIMITY_RADIUS = 6.0;
+
+    @Param({"100", "1000"})
+    public int numWaypoints;
+
+    private TrcPurePursuitDrive purePursuitDrive;
+    private TrcPose2D onPathPose;
+    private TrcPose2D offPathPose;
+    private int onPathIndex;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable
+    {
+        BenchmarkSupport.init();
+        TrcMecanumDriveBase driveBase = new TrcMecanumDriveBase(
+            new BenchmarkMotor("lfMotor"), new BenchmarkMotor("lbMotor"),
+            new BenchmarkMotor("rfMotor"), new BenchmarkMotor("rbMotor"));
+        TrcPidController.PidCoefficients posPidCoeff = new TrcPidController.PidCoefficients(0.1);
+        purePursuitDrive = new TrcPurePursuitDrive(
+            "benchPurePursuit", driveBase, PROXIMITY_RADIUS, 1.0, 2.0, posPidCoeff, posPidCoeff,
+            new TrcPidController.PidCoefficients(0.02), new TrcPidController.PidCoefficients(0.0, 0.0, 0.0, 0.01));
+
+        TrcPath path = BenchmarkSupport.createPath(numWaypoints);
+        BenchmarkSupport.setPrivateField(TrcPurePursuitDrive.class, purePursuitDrive, "path", path);
+        BenchmarkSupport.setPrivateField(TrcPurePursuitDrive.class, purePursuitDrive, "compiledPath", path.compile());
+        TrcWaypoint midPoint = path.getWaypoint(numWaypoints/2);
+        onPathPose = new TrcPose2D(midPoint.pose.x + 0.5, midPoint.pose.y, midPoint.pose.angle);
+        // Let the drive catch up to the robot once so that the benchmark measures the steady state where the path
+        // index does not change.
+        setPathIndex.invokeExact(purePursuitDrive, numWaypoints/2);
+        TrcWaypoint followingPoint = (TrcWaypoint) getFollowingPoint.invokeExact(purePursuitDrive, onPathPose);
+        onPathIndex = (int) BenchmarkSupport.getPrivateField(TrcPurePursuitDrive.class, purePursuitDrive, "pathIndex");
+        // Far away from the path, no segment intersects the proximity circle so every segment is checked.
+        offPathPose = new TrcPose2D(500.0, 0.0, 0.0);
+    }   //setup
+
+    /**
+     * Finds the following point with the robot on the path, which is the normal case while following a path.
+     *
+     * @return following point.
+     * @throws Throwable if getFollowingPoint throws.
+     */
+    @Benchmark
+    public TrcWaypoint onPath() throws Throwable
+    {
+        setPathIndex.invokeExact(purePursuitDrive, onPathIndex);
+        return (TrcWaypoint) getFollowingPoint.invokeExact(purePursuitDrive, onPathPose);
+    }   //onPath
+
+    /**
+     * Finds the following point with the robot off the path, which scans every remaining segment of the path.
+     *
+     * @return following point.
+     * @throws Throwable if getFollowingPoint throws.
+     */
+    @Benchmark
+    public TrcWaypoint offPath() throws Throwable
+    {
+        setPathIndex.invokeExact(purePursuitDrive, 1);
+        return (TrcWaypoint) getFollowingPoint.invokeExact(purePursuitDrive, offPathPose);
+    }   //offPath
+
+}   //class TrcPurePursuitDriveBenchmark
@@ -0,0 +1,109 @@
+package TrcCommonLib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import TrcCommonLib.trclib.TrcEvent;
+import TrcCommonLib.trclib.TrcTimer;
+
+/**
+ * This class benchmarks the cost of arming and canceling a TrcTimer while a given number of other timers are
+ * pending. This is what motor delay/duration timers do every loop in TeleOp.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrcTimerBenchmark
+{
+    // Pending timers are set far into the future so none of them expires during the benchmark.
+    private static final double PENDING_TIMER_TIME = 3600.0;
+
+    @Param({"10", "100", "1000"})
+    public int pendingTimers;
+
+    private TrcTimer[] timers;
+    private TrcEvent[] events;
+    private TrcTimer benchTimer;
+    private TrcEvent benchEvent;
+    private int nextTimer;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        BenchmarkSupport.init();
+        // Register the benchmark thread for event callbacks the same way a periodic thread would.
+        TrcEvent.registerEventCallback();
+        timers = new TrcTimer[pendingTimers];
+        events = new TrcEvent[pendingTimers];
+        for (int i = 0; i < pendingTimers; i++)
+        {
+            timers[i] = new TrcTimer("pendingTimer" + i);
+            events[i] = new TrcEvent("pendingEvent" + i);
+            // Spread the expiration times so the new timer lands in the middle of the queue.
+            timers[i].set(PENDING_TIMER_TIME + i, events[i]);
+        }
+        benchTimer = new TrcTimer("benchTimer");
+        benchEvent = new TrcEvent("benchEvent");
+        nextTimer = 0;
+    }   //setup
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        for (TrcTimer timer: timers)
+        {
+            timer.cancel();
+        }
+        benchTimer.cancel();
+        TrcEvent.unregisterEventCallback();
+    }   //tearDown
+
+    /**
+     * Arms a new timer that expires in the middle of the pending timers and then cancels it.
+     */
+    @Benchmark
+    public void setAndCancel()
+    {
+        benchTimer.set(PENDING_TIMER_TIME + pendingTimers/2.0, benchEvent);
+        benchTimer.cancel();
+    }   //setAndCancel
+
+    /**
+     * Re-arms one of the pending timers, which cancels and re-inserts it at a new position.
+     */
+    @Benchmark
+    public void rearmPending()
+    {
+        TrcTimer timer = timers[nextTimer];
+
+        timer.set(PENDING_TIMER_TIME + (pendingTimers - nextTimer), events[nextTimer]);
+        nextTimer = (nextTimer + 1) % pendingTimers;
+    }   //rearmPending
+
+    /**
+     * Arms a timer that expires sooner than all pending timers, which preempts the timer thread's wait.
+     */
+    @Benchmark
+    public void preemptAndCancel()
+    {
+        benchTimer.set(PENDING_TIMER_TIME/2.0, benchEvent);
+        benchTimer.cancel();
+    }   //preemptAndCancel
+
+}   //class TrcTimerBenchmark
@@ -0,0 +1,138 @@
+package TrcCommonLib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import TrcCommonLib.trclib.TrcUtil;
+import TrcCommonLib.trclib.TrcWarpSpace;
+
+/**
+ * This class benchmarks the TrcWarpSpace and TrcUtil helpers that the drive, PID and motor code call many times per
+ * loop. Inputs rotate through a small table so the JIT cannot constant fold them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrcUtilBenchmark
+{
+    private static final int NUM_INPUTS = 64;
+
+    private final double[] values = new double[NUM_INPUTS];
+    private TrcWarpSpace warpSpace;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        BenchmarkSupport.init();
+        warpSpace = new TrcWarpSpace("benchWarpSpace", 0.0, 360.0);
+        for (int i = 0; i < NUM_INPUTS; i++)
+        {
+            values[i] = (i*137.0)%720.0 - 360.0;
+        }
+        index = 0;
+    }   //setup
+
+    /**
+     * This method returns the next input value.
+     *
+     * @return next input value.
+     */
+    private double nextValue()
+    {
+        index = (index + 1) & (NUM_INPUTS - 1);
+        return values[index];
+    }   //nextValue
+
+    /**
+     * Optimizes a heading target in the 0-360 degree warp space.
+     *
+     * @return optimized target.
+     */
+    @Benchmark
+    public double warpSpaceOptimizedTarget()
+    {
+        return warpSpace.getOptimizedTarget(nextValue(), nextValue());
+    }   //warpSpaceOptimizedTarget
+
+    /**
+     * Clips a value to the motor power range.
+     *
+     * @return clipped value.
+     */
+    @Benchmark
+    public double clipRange()
+    {
+        return TrcUtil.clipRange(nextValue()/360.0);
+    }   //clipRange
+
+    /**
+     * Calculates the magnitude of a 2D vector, which is how drive speed and velocity magnitude are computed.
+     *
+     * @return magnitude.
+     */
+    @Benchmark
+    public double magnitude()
+    {
+        return TrcUtil.magnitude(nextValue(), nextValue());
+    }   //magnitude
+
+    /**
+     * Finds the largest magnitude of four wheel powers, which is how holonomic drives normalize.
+     *
+     * @return max magnitude.
+     */
+    @Benchmark
+    public double maxMagnitude()
+    {
+        return TrcUtil.maxMagnitude(nextValue(), nextValue(), nextValue(), nextValue());
+    }   //maxMagnitude
+
+    /**
+     * Calculates the floor modulo used for angle wrapping.
+     *
+     * @return modulo.
+     */
+    @Benchmark
+    public double modulo()
+    {
+        return TrcUtil.modulo(nextValue(), 360.0);
+    }   //modulo
+
+    /**
+     * Applies a joystick deadband.
+     *
+     * @return value with deadband applied.
+     */
+    @Benchmark
+    public double applyDeadband()
+    {
+        return TrcUtil.applyDeadband(nextValue()/360.0, 0.05);
+    }   //applyDeadband
+
+    /**
+     * Scales a value from one range to another.
+     *
+     * @return scaled value.
+     */
+    @Benchmark
+    public double scaleRange()
+    {
+        return TrcUtil.scaleRange(nextValue(), -360.0, 360.0, -1.0, 1.0);
+    }   //scaleRange
+
+}   //class TrcUtilBenchmark